@@ -20,6 +20,10 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -43,6 +47,7 @@ import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsHashMap;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
 import com.helger.commons.error.ErrorTextProvider;
 import com.helger.commons.error.IError;
 import com.helger.commons.error.level.EErrorLevel;
@@ -55,6 +60,7 @@ import com.helger.schematron.ESchematronMode;
 import com.helger.schematron.ISchematronResource;
 import com.helger.schematron.pure.SchematronResourcePure;
 import com.helger.schematron.pure.errorhandler.CollectingPSErrorHandler;
+import com.helger.schematron.pure.errorhandler.DetachablePSErrorHandler;
 import com.helger.schematron.svrl.AbstractSVRLMessage;
 import com.helger.schematron.svrl.DefaultSVRLErrorLevelDeterminator;
 import com.helger.schematron.svrl.SVRLHelper;
@@ -65,6 +71,7 @@ import com.helger.schematron.svrl.jaxb.SchematronOutputType;
 import com.helger.schematron.xslt.SCHTransformerCustomizer;
 import com.helger.schematron.xslt.SchematronResourceSCH;
 import com.helger.schematron.xslt.SchematronResourceXSLT;
+import com.helger.schematron.xslt.SharedSchematronResourceSCH;
 import com.helger.xml.transform.CollectingTransformErrorListener;
 import com.helger.xml.transform.TransformSourceFactory;
 
@@ -247,6 +254,14 @@ public class Schematron extends AbstractSchematronTask
    */
   private final ICommonsList <Schematron.Parameter> m_aParameters = new CommonsArrayList <> ();
 
+  /**
+   * The number of threads to be used for validation. All threads share the
+   * same compiled Schematron. Logging, SVRL output and error handling happen
+   * in the original order on the calling thread. Values &le; 1 mean that all
+   * files are validated sequentially. Defaults to 1.
+   */
+  private int m_nThreadCount = 1;
+
   public Schematron ()
   {}
 
@@ -371,6 +386,13 @@ public class Schematron extends AbstractSchematronTask
     return aParameter;
   }
 
+  public void setThreadCount (final int nThreadCount)
+  {
+    m_nThreadCount = nThreadCount;
+
+    _debug ("Using " + Math.max (nThreadCount, 1) + " thread(s) for validation");
+  }
+
   /**
    * Get the {@link EntityResolver} to be used.
    *
@@ -454,6 +476,9 @@ public class Schematron extends AbstractSchematronTask
         }
     }
 
+    // Collect all XML files in a stable order
+    final ICommonsList <File> aXMLFiles = new CommonsArrayList <> ();
+    final ICommonsList <String> aXMLFilenames = new CommonsArrayList <> ();
     for (final DirectoryData aBaseDirData : aFiles.values ())
     {
       _debug ("Scanning directory " + aBaseDirData.getBaseDir () + " for XMLs to be Schematron validated");
@@ -470,165 +495,225 @@ public class Schematron extends AbstractSchematronTask
       aScanner.setCaseSensitive (true);
       aScanner.scan ();
 
-      final String [] aXMLFilenames = aScanner.getIncludedFiles ();
-      if (aXMLFilenames != null)
+      final String [] aScannedFilenames = aScanner.getIncludedFiles ();
+      if (aScannedFilenames != null)
+        for (final String sXMLFilename : aScannedFilenames)
+        {
+          aXMLFiles.add (new File (aBaseDirData.getBaseDir (), sXMLFilename));
+          aXMLFilenames.add (sXMLFilename);
+        }
+    }
+
+    // The actual validation may run in parallel, everything else is handled
+    // sequentially in the original order
+    final int nFileCount = aXMLFiles.size ();
+    final ExecutorService aExecutor = m_nThreadCount > 1 && nFileCount > 1 ? Executors.newFixedThreadPool (m_nThreadCount)
+                                                                           : null;
+    // Limit the number of pending results
+    final int nMaxAhead = m_nThreadCount * 4;
+    final ICommonsList <Future <SchematronOutputType>> aFutures = new CommonsArrayList <> ();
+    try
+    {
+      for (int nFileIndex = 0; nFileIndex < nFileCount; ++nFileIndex)
       {
-        for (final String sXMLFilename : aXMLFilenames)
+        final File aXMLFile = aXMLFiles.get (nFileIndex);
+        final String sXMLFilename = aXMLFilenames.get (nFileIndex);
+
+        if (aExecutor != null)
+          while (aFutures.size () < nFileCount && aFutures.size () <= nFileIndex + nMaxAhead)
+          {
+            final File aFileToValidate = aXMLFiles.get (aFutures.size ());
+            aFutures.add (aExecutor.submit ( () -> aSch.applySchematronValidationToSVRL (TransformSourceFactory.create (aFileToValidate))));
+          }
+        final Future <SchematronOutputType> aFuture = aExecutor == null ? null : aFutures.get (nFileIndex);
+
+        // Validate XML file
+        _info ("Validating XML file '" +
+               aXMLFile.getPath () +
+               "' against Schematron rules from '" +
+               m_aSchematronFile.getName () +
+               "' expecting " +
+               (bExpectSuccess ? "success" : "failure"));
+        try
         {
-          final File aXMLFile = new File (aBaseDirData.getBaseDir (), sXMLFilename);
-
-          // Validate XML file
-          _info ("Validating XML file '" +
-                 aXMLFile.getPath () +
-                 "' against Schematron rules from '" +
-                 m_aSchematronFile.getName () +
-                 "' expecting " +
-                 (bExpectSuccess ? "success" : "failure"));
-          try
+          // This is performing the validation
+          final SchematronOutputType aSOT;
+          if (aFuture == null)
+            aSOT = aSch.applySchematronValidationToSVRL (TransformSourceFactory.create (aXMLFile));
+          else
+            aSOT = _getValidationResult (aFuture);
+
+          if (aSOT != null)
           {
-            // This is performing the validation
-            final SchematronOutputType aSOT = aSch.applySchematronValidationToSVRL (TransformSourceFactory.create (aXMLFile));
+            // Beautified SVRL :)
+            final SVRLMarshaller aMarshaller = new SVRLMarshaller (false);
+            aMarshaller.setFormattedOutput (true);
+            aMarshaller.setNamespaceContext (SVRLNamespaceContext.getInstance ());
 
-            if (aSOT != null)
+            // If aSOT == null a different error should be present
+            if (aSVRLDirectory != null)
             {
-              // Beautified SVRL :)
-              final SVRLMarshaller aMarshaller = new SVRLMarshaller (false);
-              aMarshaller.setFormattedOutput (true);
-              aMarshaller.setNamespaceContext (SVRLNamespaceContext.getInstance ());
-
-              // If aSOT == null a different error should be present
-              if (aSVRLDirectory != null)
-              {
-                // Save SVRL
-                final File aSVRLFile = new File (aSVRLDirectory, sXMLFilename + ".svrl");
-                if (FileOperations.createDirIfNotExisting (aSVRLFile.getParentFile ()).isFailure ())
-                  _error ("Failed to create parent directory of '" + aSVRLFile.getAbsolutePath () + "'!");
-
-                if (aMarshaller.write (aSOT, aSVRLFile).isSuccess ())
-                  _info ("Successfully saved SVRL file '" + aSVRLFile.getPath () + "'");
-                else
-                  _error ("Error saving SVRL file '" + aSVRLFile.getPath () + "'");
-              }
-
-              _debug ("Created SVRL:\n" + aMarshaller.getAsString (aSOT));
-            }
+              // Save SVRL
+              final File aSVRLFile = new File (aSVRLDirectory, sXMLFilename + ".svrl");
+              if (FileOperations.createDirIfNotExisting (aSVRLFile.getParentFile ()).isFailure ())
+                _error ("Failed to create parent directory of '" + aSVRLFile.getAbsolutePath () + "'!");
 
-            final ICommonsList <AbstractSVRLMessage> aMessages = SVRLHelper.getAllFailedAssertionsAndSuccessfulReports (aSOT);
-            final int nErrorMessages = aMessages.getCount (x -> x.getFlag ().isGT (EErrorLevel.WARN));
-            final int nWarningMessages = aMessages.getCount (x -> x.getFlag ().isEQ (EErrorLevel.WARN));
-            final int nInfoMessages = aMessages.getCount (x -> x.getFlag ().isLT (EErrorLevel.WARN));
-            final String sErrors = nErrorMessages + " Schematron error" + (nErrorMessages == 1 ? "" : "s");
-            final String sWarnings = nWarningMessages + " Schematron warning" + (nWarningMessages == 1 ? "" : "s");
-            // No plural - haha
-            final String sInfos = nInfoMessages + " Schematron information";
-
-            final boolean bExpectationFulfilled;
-            if (bExpectSuccess)
-            {
-              // No failed assertions expected
-              bExpectationFulfilled = nErrorMessages == 0;
-              if (bExpectationFulfilled)
-              {
-                // Success as expected
-                _info ("XML file '" +
-                       aXMLFile.getPath () +
-                       "' was validated against Schematron '" +
-                       aSch.getResource ().getPath () +
-                       "' and matches the rules" +
-                       (nWarningMessages > 0 ? " (" +
-                                               sWarnings +
-                                               (nWarningMessages == 1 ? " is" : " are") +
-                                               " contained)"
-                                             : "") +
-                       (nInfoMessages > 0 ? " (" + sInfos + (nInfoMessages == 1 ? " is" : " are") + " contained)"
-                                          : ""));
-              }
+              if (aMarshaller.write (aSOT, aSVRLFile).isSuccess ())
+                _info ("Successfully saved SVRL file '" + aSVRLFile.getPath () + "'");
               else
-              {
-                _error (sErrors +
-                        (nWarningMessages > 0 ? " and " + sWarnings : "") +
-                        (nInfoMessages > 0 ? " and " + sInfos : "") +
-                        " for XML file '" +
-                        aXMLFile.getPath () +
-                        "'");
-              }
+                _error ("Error saving SVRL file '" + aSVRLFile.getPath () + "'");
             }
-            else
+
+            _debug ("Created SVRL:\n" + aMarshaller.getAsString (aSOT));
+          }
+
+          final ICommonsList <AbstractSVRLMessage> aMessages = SVRLHelper.getAllFailedAssertionsAndSuccessfulReports (aSOT);
+          final int nErrorMessages = aMessages.getCount (x -> x.getFlag ().isGT (EErrorLevel.WARN));
+          final int nWarningMessages = aMessages.getCount (x -> x.getFlag ().isEQ (EErrorLevel.WARN));
+          final int nInfoMessages = aMessages.getCount (x -> x.getFlag ().isLT (EErrorLevel.WARN));
+          final String sErrors = nErrorMessages + " Schematron error" + (nErrorMessages == 1 ? "" : "s");
+          final String sWarnings = nWarningMessages + " Schematron warning" + (nWarningMessages == 1 ? "" : "s");
+          // No plural - haha
+          final String sInfos = nInfoMessages + " Schematron information";
+
+          final boolean bExpectationFulfilled;
+          if (bExpectSuccess)
+          {
+            // No failed assertions expected
+            bExpectationFulfilled = nErrorMessages == 0;
+            if (bExpectationFulfilled)
             {
-              // At least one failed assertions expected
-              bExpectationFulfilled = nErrorMessages > 0;
-              if (bExpectationFulfilled)
-              {
-                // Errors as expected
-                _info ("XML file '" +
-                       aXMLFile.getPath () +
-                       "' was validated against Schematron '" +
-                       aSch.getResource ().getPath () +
-                       "' - " +
-                       sErrors +
-                       (nWarningMessages > 0 ? " and " + sWarnings : "") +
-                       (nInfoMessages > 0 ? " and " + sInfos : "") +
-                       (nErrorMessages == 1 && (nWarningMessages + nInfoMessages) == 0 ? " was" : " were") +
-                       " found (as expected)");
-              }
-              else
-              {
-                _error ("No Schematron errors for erroneous XML file '" +
-                        aXMLFile.getPath () +
-                        "'" +
-                        (nWarningMessages > 0 ? " (" +
-                                                sWarnings +
-                                                (nWarningMessages == 1 ? " is" : " are") +
-                                                " contained)"
-                                              : "") +
-                        (nInfoMessages > 0 ? " (" + sInfos + (nInfoMessages == 1 ? " is" : " are") + " contained)"
-                                           : ""));
-              }
+              // Success as expected
+              _info ("XML file '" +
+                     aXMLFile.getPath () +
+                     "' was validated against Schematron '" +
+                     aSch.getResource ().getPath () +
+                     "' and matches the rules" +
+                     (nWarningMessages > 0 ? " (" +
+                                             sWarnings +
+                                             (nWarningMessages == 1 ? " is" : " are") +
+                                             " contained)"
+                                           : "") +
+                     (nInfoMessages > 0 ? " (" + sInfos + (nInfoMessages == 1 ? " is" : " are") + " contained)"
+                                        : ""));
             }
-
-            // List details
-            for (final AbstractSVRLMessage aMessage : aMessages)
+            else
             {
-              final SVRLResourceError aResError = aMessage.getAsResourceError (aXMLFile.getPath ());
-              final String sText = ErrorTextProvider.DEFAULT.getErrorText (aResError, Locale.US);
-
-              if (aMessage.getFlag ().isGE (EErrorLevel.ERROR))
-                _error (sText);
-              else
-                if (aMessage.getFlag ().isGE (EErrorLevel.WARN))
-                  _warn (sText);
-                else
-                  _info (sText);
+              _error (sErrors +
+                      (nWarningMessages > 0 ? " and " + sWarnings : "") +
+                      (nInfoMessages > 0 ? " and " + sInfos : "") +
+                      " for XML file '" +
+                      aXMLFile.getPath () +
+                      "'");
             }
-
-            if (!bExpectationFulfilled)
-              _errorOrFail ("The expectations were not fullfilled, therefore the overall result is negative");
-            if (nErrorMessages > 0 && m_bFailOnValidationError)
-              throw new BuildException ("Validation errors are present.");
-            if (nWarningMessages > 0 && m_bFailOnValidationWarn)
-              throw new BuildException ("Validation warnings are present.");
-            if (nInfoMessages > 0 && m_bFailOnValidationInfo)
-              throw new BuildException ("Validation information are present.");
           }
-          catch (final BuildException up)
+          else
           {
-            throw up;
+            // At least one failed assertions expected
+            bExpectationFulfilled = nErrorMessages > 0;
+            if (bExpectationFulfilled)
+            {
+              // Errors as expected
+              _info ("XML file '" +
+                     aXMLFile.getPath () +
+                     "' was validated against Schematron '" +
+                     aSch.getResource ().getPath () +
+                     "' - " +
+                     sErrors +
+                     (nWarningMessages > 0 ? " and " + sWarnings : "") +
+                     (nInfoMessages > 0 ? " and " + sInfos : "") +
+                     (nErrorMessages == 1 && (nWarningMessages + nInfoMessages) == 0 ? " was" : " were") +
+                     " found (as expected)");
+            }
+            else
+            {
+              _error ("No Schematron errors for erroneous XML file '" +
+                      aXMLFile.getPath () +
+                      "'" +
+                      (nWarningMessages > 0 ? " (" +
+                                              sWarnings +
+                                              (nWarningMessages == 1 ? " is" : " are") +
+                                              " contained)"
+                                            : "") +
+                      (nInfoMessages > 0 ? " (" + sInfos + (nInfoMessages == 1 ? " is" : " are") + " contained)"
+                                         : ""));
+            }
           }
-          catch (final Exception ex)
+
+          // List details
+          for (final AbstractSVRLMessage aMessage : aMessages)
           {
-            final String sMessage = "Exception validating XML '" +
-                                    aXMLFile.getPath () +
-                                    "' against Schematron rules from '" +
-                                    m_aSchematronFile.getName () +
-                                    "'. Technical details: " +
-                                    ex.getClass ().getSimpleName () +
-                                    " - " +
-                                    ex.getMessage ();
-            _errorOrFail (sMessage, ex);
+            final SVRLResourceError aResError = aMessage.getAsResourceError (aXMLFile.getPath ());
+            final String sText = ErrorTextProvider.DEFAULT.getErrorText (aResError, Locale.US);
+
+            if (aMessage.getFlag ().isGE (EErrorLevel.ERROR))
+              _error (sText);
+            else
+              if (aMessage.getFlag ().isGE (EErrorLevel.WARN))
+                _warn (sText);
+              else
+                _info (sText);
           }
+
+          if (!bExpectationFulfilled)
+            _errorOrFail ("The expectations were not fullfilled, therefore the overall result is negative");
+          if (nErrorMessages > 0 && m_bFailOnValidationError)
+            throw new BuildException ("Validation errors are present.");
+          if (nWarningMessages > 0 && m_bFailOnValidationWarn)
+            throw new BuildException ("Validation warnings are present.");
+          if (nInfoMessages > 0 && m_bFailOnValidationInfo)
+            throw new BuildException ("Validation information are present.");
+        }
+        catch (final BuildException up)
+        {
+          throw up;
+        }
+        catch (final Exception ex)
+        {
+          final String sMessage = "Exception validating XML '" +
+                                  aXMLFile.getPath () +
+                                  "' against Schematron rules from '" +
+                                  m_aSchematronFile.getName () +
+                                  "'. Technical details: " +
+                                  ex.getClass ().getSimpleName () +
+                                  " - " +
+                                  ex.getMessage ();
+          _errorOrFail (sMessage, ex);
         }
       }
     }
+    finally
+    {
+      if (aExecutor != null)
+      {
+        // In case of failure
+        for (final Future <SchematronOutputType> aFuture : aFutures)
+          aFuture.cancel (false);
+        ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutor);
+      }
+    }
+  }
+
+  @Nullable
+  private static SchematronOutputType _getValidationResult (@Nonnull final Future <SchematronOutputType> aFuture) throws Exception
+  {
+    try
+    {
+      return aFuture.get ();
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw ex;
+    }
+    catch (final ExecutionException ex)
+    {
+      // Unwrap to have the same error handling as in the sequential case
+      final Throwable aCause = ex.getCause ();
+      if (aCause instanceof Exception)
+        throw (Exception) aCause;
+      throw ex;
+    }
   }
 
   @Override
@@ -692,9 +777,13 @@ public class Schematron extends AbstractSchematronTask
           final CollectingPSErrorHandler aErrorHdl = new CollectingPSErrorHandler ();
           final SchematronResourcePure aRealSCH = new SchematronResourcePure (new FileSystemResource (m_aSchematronFile));
           aRealSCH.setPhase (m_sPhaseName);
-          aRealSCH.setErrorHandler (aErrorHdl);
+          // The collecting handler is not thread-safe - detach it after the
+          // Schematron is bound, as the files may be validated concurrently
+          final DetachablePSErrorHandler aDetachableHdl = new DetachablePSErrorHandler (aErrorHdl);
+          aRealSCH.setErrorHandler (aDetachableHdl);
           aRealSCH.setEntityResolver (getEntityResolver ());
           aRealSCH.validateCompletely ();
+          aDetachableHdl.detach ();
 
           aSch = aRealSCH;
           aSCHErrors = aErrorHdl.getAllErrors ();
@@ -709,7 +798,7 @@ public class Schematron extends AbstractSchematronTask
             _info ("Using the following custom parameters: " + aParams);
 
           final CollectingTransformErrorListener aErrorHdl = new CollectingTransformErrorListener ();
-          final SchematronResourceSCH aRealSCH = new SchematronResourceSCH (new FileSystemResource (m_aSchematronFile));
+          final SchematronResourceSCH aRealSCH = new SharedSchematronResourceSCH (new FileSystemResource (m_aSchematronFile));
           aRealSCH.setPhase (m_sPhaseName);
           aRealSCH.setLanguageCode (m_sLanguageCode);
           aRealSCH.setForceCacheResult (m_bForceCacheResult);
@@ -718,6 +807,9 @@ public class Schematron extends AbstractSchematronTask
           aRealSCH.setEntityResolver (getEntityResolver ());
           aRealSCH.parameters ().setAll (aParams);
           aRealSCH.isValidSchematron ();
+          // The collecting listener is not thread-safe and the files may be
+          // validated concurrently
+          aRealSCH.setErrorListener (null);
 
           aSch = aRealSCH;
           aSCHErrors = aErrorHdl.getErrorList ();
@@ -740,6 +832,9 @@ public class Schematron extends AbstractSchematronTask
           aRealSCH.setEntityResolver (getEntityResolver ());
           aRealSCH.parameters ().setAll (aParams);
           aRealSCH.isValidSchematron ();
+          // The collecting listener is not thread-safe and the files may be
+          // validated concurrently
+          aRealSCH.setErrorListener (null);
 
           aSch = aRealSCH;
           aSCHErrors = aErrorHdl.getErrorList ();
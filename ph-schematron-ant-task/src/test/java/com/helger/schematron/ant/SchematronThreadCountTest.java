@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2017-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.ant;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildFileRule;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Test the <code>threadCount</code> attribute of class {@link Schematron}.
+ *
+ * @author Philip Helger
+ */
+public final class SchematronThreadCountTest
+{
+  @Rule
+  public final BuildFileRule m_aBuildRule = new BuildFileRule ();
+
+  @Before
+  public void init ()
+  {
+    m_aBuildRule.configureProject ("src/test/resources/threadcount/build.xml");
+    m_aBuildRule.getProject ().setBaseDir (new File ("src/test/resources/threadcount"));
+    m_aBuildRule.getProject ().addBuildListener (new LoggingBuildListener ());
+  }
+
+  @Test
+  public void testPure ()
+  {
+    m_aBuildRule.getProject ().executeTarget ("pure");
+  }
+
+  @Test
+  public void testSchematron ()
+  {
+    m_aBuildRule.getProject ().executeTarget ("schematron");
+  }
+
+  @Test
+  public void testFailure ()
+  {
+    try
+    {
+      m_aBuildRule.getProject ().executeTarget ("failure");
+      fail ();
+    }
+    catch (final BuildException ex)
+    {
+      // Expected - bad1.xml is invalid
+    }
+  }
+}
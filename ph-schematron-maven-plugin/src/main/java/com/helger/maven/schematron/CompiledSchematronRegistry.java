@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.maven.schematron;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.error.list.IErrorList;
+import com.helger.schematron.ISchematronResource;
+
+/**
+ * A registry for compiled Schematron resources that lives as long as the
+ * plugin class realm - that is usually the whole Maven reactor build. This
+ * way the same Schematron is only compiled once, even if it is used by many
+ * modules. The key must be based on the content of the Schematron (incl. all
+ * includes) and all settings that influence the compilation.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+final class CompiledSchematronRegistry
+{
+  /**
+   * The maximum number of compiled Schematrons kept. If the limit is reached,
+   * the registry is cleared.
+   */
+  public static final int MAX_ENTRIES = 32;
+
+  /**
+   * A compiled Schematron together with the errors that occurred when it was
+   * compiled.
+   */
+  static final class CompiledSchematron
+  {
+    private final ISchematronResource m_aResource;
+    private final IErrorList m_aErrors;
+
+    CompiledSchematron (@Nonnull final ISchematronResource aResource, @Nullable final IErrorList aErrors)
+    {
+      ValueEnforcer.notNull (aResource, "Resource");
+      m_aResource = aResource;
+      m_aErrors = aErrors;
+    }
+
+    @Nonnull
+    ISchematronResource getResource ()
+    {
+      return m_aResource;
+    }
+
+    @Nullable
+    IErrorList getErrors ()
+    {
+      return m_aErrors;
+    }
+  }
+
+  /**
+   * Callback to create a new compiled Schematron.
+   */
+  @FunctionalInterface
+  interface ICompiledSchematronCreator
+  {
+    @Nonnull
+    CompiledSchematron create () throws MojoExecutionException;
+  }
+
+  private static final Map <String, CompiledSchematron> s_aMap = new ConcurrentHashMap <> ();
+
+  private CompiledSchematronRegistry ()
+  {}
+
+  /**
+   * Get the compiled Schematron with the provided key or create and register
+   * a new one.
+   *
+   * @param sKey
+   *        The key to use. If it is <code>null</code> the Schematron is always
+   *        created and not registered.
+   * @param aCreator
+   *        The creator to be invoked if no compiled Schematron is present. May
+   *        not be <code>null</code>.
+   * @return Never <code>null</code>.
+   * @throws MojoExecutionException
+   *         If the creator failed
+   */
+  @Nonnull
+  static CompiledSchematron getOrCreate (@Nullable final String sKey,
+                                         @Nonnull final ICompiledSchematronCreator aCreator) throws MojoExecutionException
+  {
+    ValueEnforcer.notNull (aCreator, "Creator");
+
+    if (sKey == null)
+      return aCreator.create ();
+
+    final CompiledSchematron aExisting = s_aMap.get (sKey);
+    if (aExisting != null)
+      return aExisting;
+
+    // Compile outside of any lock - in the rare case of a race, the first one
+    // wins
+    final CompiledSchematron aNew = aCreator.create ();
+    if (s_aMap.size () >= MAX_ENTRIES)
+      s_aMap.clear ();
+    final CompiledSchematron aOld = s_aMap.putIfAbsent (sKey, aNew);
+    return aOld != null ? aOld : aNew;
+  }
+
+  /**
+   * @return A copy of all registered compiled Schematrons. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  static ICommonsList <CompiledSchematron> getAll ()
+  {
+    return new CommonsArrayList <> (s_aMap.values ());
+  }
+
+  /**
+   * @return The number of registered compiled Schematrons.
+   */
+  @Nonnegative
+  static int size ()
+  {
+    return s_aMap.size ();
+  }
+
+  /**
+   * Remove all registered compiled Schematrons.
+   */
+  static void clear ()
+  {
+    s_aMap.clear ();
+  }
+}
@@ -0,0 +1,342 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.maven.schematron;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsLinkedHashSet;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.file.FilenameHelper;
+import com.helger.commons.io.file.SimpleFileIO;
+import com.helger.commons.string.StringHelper;
+import com.helger.xml.microdom.IMicroDocument;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.serialize.MicroReader;
+
+/**
+ * Persistent state for incremental builds. It maps arbitrary keys (usually
+ * based on file names) to content hashes and is stored as a simple text file
+ * (one <code>hash TAB key</code> pair per line, sorted by key) so that the
+ * file is stable between builds.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public final class IncrementalBuildState
+{
+  private static final char SEPARATOR = '\t';
+
+  private final File m_aStateFile;
+  private final Map <String, String> m_aPrevious = new ConcurrentHashMap <> ();
+  private final Map <String, String> m_aCurrent = new ConcurrentHashMap <> ();
+  // All keys used in this build
+  private final Set <String> m_aTouched = ConcurrentHashMap.newKeySet ();
+
+  private IncrementalBuildState (@Nonnull final File aStateFile)
+  {
+    m_aStateFile = aStateFile;
+  }
+
+  /**
+   * @return The state file used for reading and writing. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public File getStateFile ()
+  {
+    return m_aStateFile;
+  }
+
+  /**
+   * Check if the passed key was stored with the same hash in the previous
+   * build.
+   *
+   * @param sKey
+   *        The key to check. May not be <code>null</code>.
+   * @param sHash
+   *        The current hash. May not be <code>null</code>.
+   * @return <code>true</code> if the hash of the previous build is identical.
+   */
+  public boolean isUnchanged (@Nonnull final String sKey, @Nonnull final String sHash)
+  {
+    m_aTouched.add (sKey);
+    return sHash.equals (m_aPrevious.get (sKey));
+  }
+
+  /**
+   * Remember a key with its hash for the next build.
+   *
+   * @param sKey
+   *        The key to use. May not be <code>null</code>.
+   * @param sHash
+   *        The hash to store. May not be <code>null</code>.
+   */
+  public void put (@Nonnull final String sKey, @Nonnull final String sHash)
+  {
+    m_aTouched.add (sKey);
+    m_aCurrent.put (sKey, sHash);
+  }
+
+  /**
+   * Forget about the passed key, so that it is re-processed in the next build.
+   *
+   * @param sKey
+   *        The key to remove. May not be <code>null</code>.
+   */
+  public void remove (@Nonnull final String sKey)
+  {
+    m_aTouched.add (sKey);
+    m_aCurrent.remove (sKey);
+  }
+
+  /**
+   * Forget about all keys with the passed prefix that were not used in this
+   * build. This should be called after all files with this prefix were
+   * handled, so that the entries of deleted or excluded files are removed
+   * from the state.
+   *
+   * @param sKeyPrefix
+   *        The key prefix to check. May not be <code>null</code>.
+   * @return The number of removed entries. Always &ge; 0.
+   */
+  @Nonnegative
+  public int removeAllUntouched (@Nonnull final String sKeyPrefix)
+  {
+    ValueEnforcer.notNull (sKeyPrefix, "KeyPrefix");
+
+    int ret = 0;
+    for (final String sKey : m_aCurrent.keySet ())
+      if (sKey.startsWith (sKeyPrefix) && !m_aTouched.contains (sKey))
+      {
+        m_aCurrent.remove (sKey);
+        ret++;
+      }
+    return ret;
+  }
+
+  /**
+   * Write the current state to the state file.
+   *
+   * @throws IOException
+   *         If writing fails
+   */
+  public void save () throws IOException
+  {
+    final CommonsTreeMap <String, String> aSorted = new CommonsTreeMap <> (m_aCurrent);
+    final StringBuilder aSB = new StringBuilder ();
+    for (final Map.Entry <String, String> aEntry : aSorted.entrySet ())
+      aSB.append (aEntry.getValue ()).append (SEPARATOR).append (aEntry.getKey ()).append ('\n');
+
+    final File aParent = m_aStateFile.getAbsoluteFile ().getParentFile ();
+    if (aParent != null && !aParent.exists () && !aParent.mkdirs ())
+      throw new IOException ("Failed to create directory " + aParent);
+    if (SimpleFileIO.writeFile (m_aStateFile, aSB.toString (), StandardCharsets.UTF_8).isFailure ())
+      throw new IOException ("Failed to write state file " + m_aStateFile);
+  }
+
+  /**
+   * Read the state file. If it does not exist or cannot be read, an empty
+   * state is returned.
+   *
+   * @param aStateFile
+   *        The state file to read. May not be <code>null</code>.
+   * @return The non-<code>null</code> state.
+   */
+  @Nonnull
+  public static IncrementalBuildState read (@Nonnull final File aStateFile)
+  {
+    ValueEnforcer.notNull (aStateFile, "StateFile");
+
+    final IncrementalBuildState ret = new IncrementalBuildState (aStateFile);
+    if (aStateFile.isFile ())
+    {
+      final String sContent = SimpleFileIO.getFileAsString (aStateFile, StandardCharsets.UTF_8);
+      if (sContent != null)
+        for (final String sLine : StringHelper.getExploded ('\n', sContent))
+        {
+          final int nIndex = sLine.indexOf (SEPARATOR);
+          if (nIndex > 0)
+          {
+            final String sHash = sLine.substring (0, nIndex);
+            final String sKey = sLine.substring (nIndex + 1);
+            ret.m_aPrevious.put (sKey, sHash);
+            // Keep entries of files that are not touched in this build
+            ret.m_aCurrent.put (sKey, sHash);
+          }
+        }
+    }
+    return ret;
+  }
+
+  @Nonnull
+  private static MessageDigest _createDigest ()
+  {
+    try
+    {
+      return MessageDigest.getInstance ("SHA-256");
+    }
+    catch (final NoSuchAlgorithmException ex)
+    {
+      throw new IllegalStateException ("SHA-256 message digest is not available", ex);
+    }
+  }
+
+  /**
+   * Get the hex encoded SHA-256 hash of the content of the passed file.
+   *
+   * @param aFile
+   *        The file to hash. May not be <code>null</code>.
+   * @return <code>null</code> if the file cannot be read.
+   */
+  @Nullable
+  public static String getFileHash (@Nonnull final File aFile)
+  {
+    final byte [] aBytes = SimpleFileIO.getAllFileBytes (aFile);
+    if (aBytes == null)
+      return null;
+    return StringHelper.getHexEncoded (_createDigest ().digest (aBytes));
+  }
+
+  /**
+   * Get the hex encoded SHA-256 hash of the passed strings. <code>null</code>
+   * values are distinguished from empty strings.
+   *
+   * @param aValues
+   *        The values to hash. May not be <code>null</code>.
+   * @return The hash. Never <code>null</code>.
+   */
+  @Nonnull
+  @Nonempty
+  public static String getHash (@Nonnull final String... aValues)
+  {
+    final MessageDigest aMD = _createDigest ();
+    for (final String sValue : aValues)
+    {
+      if (sValue == null)
+        aMD.update ((byte) 0);
+      else
+      {
+        aMD.update ((byte) 1);
+        aMD.update (sValue.getBytes (StandardCharsets.UTF_8));
+      }
+      // Separator
+      aMD.update ((byte) 0xff);
+    }
+    return StringHelper.getHexEncoded (aMD.digest ());
+  }
+
+  private static void _collectIncludes (@Nonnull final IMicroElement eElement,
+                                        @Nonnull final File aBaseDir,
+                                        @Nonnull final ICommonsOrderedSet <File> aTarget)
+  {
+    // Schematron include/extends and XSLT include/import
+    final String sLocalName = eElement.getLocalName ();
+    if ("include".equals (sLocalName) || "extends".equals (sLocalName) || "import".equals (sLocalName))
+    {
+      String sHref = eElement.getAttributeValue ("href");
+      if (StringHelper.hasText (sHref))
+      {
+        // Ignore fragment identifiers
+        final int nHashIndex = sHref.indexOf ('#');
+        if (nHashIndex >= 0)
+          sHref = sHref.substring (0, nHashIndex);
+        if (StringHelper.hasText (sHref) && !sHref.contains ("://"))
+          _collectIncludes (new File (aBaseDir, FilenameHelper.getPathUsingUnixSeparator (sHref)), aTarget);
+      }
+    }
+
+    for (final IMicroElement eChild : eElement.getAllChildElements ())
+      _collectIncludes (eChild, aBaseDir, aTarget);
+  }
+
+  private static void _collectIncludes (@Nonnull final File aFile, @Nonnull final ICommonsOrderedSet <File> aTarget)
+  {
+    final File aCanonical = FileHelper.getCanonicalFileOrNull (aFile);
+    if (aCanonical == null || !aTarget.add (aCanonical))
+      return;
+
+    if (!aCanonical.isFile ())
+      return;
+
+    final IMicroDocument aDoc = MicroReader.readMicroXML (aCanonical);
+    if (aDoc != null && aDoc.getDocumentElement () != null)
+      _collectIncludes (aDoc.getDocumentElement (), aCanonical.getParentFile (), aTarget);
+  }
+
+  /**
+   * Get the passed file and all files that are transitively included via
+   * Schematron <code>include</code>/<code>extends</code> or XSLT
+   * <code>include</code>/<code>import</code> with relative <code>href</code>
+   * attributes.
+   *
+   * @param aFile
+   *        The root file. May not be <code>null</code>.
+   * @return A non-<code>null</code> ordered set of canonical files, starting
+   *         with the passed file.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsOrderedSet <File> getFileWithAllIncludes (@Nonnull final File aFile)
+  {
+    final ICommonsOrderedSet <File> ret = new CommonsLinkedHashSet <> ();
+    _collectIncludes (aFile, ret);
+    return ret;
+  }
+
+  /**
+   * Get a combined hash over the content of the passed file and all its
+   * transitive includes.
+   *
+   * @param aFile
+   *        The root file. May not be <code>null</code>.
+   * @return <code>null</code> if any of the files cannot be read.
+   */
+  @Nullable
+  public static String getFileWithAllIncludesHash (@Nonnull final File aFile)
+  {
+    final ICommonsOrderedSet <File> aFiles = getFileWithAllIncludes (aFile);
+    final String [] aHashes = new String [aFiles.size () * 2];
+    int i = 0;
+    for (final File aCurFile : aFiles)
+    {
+      final String sHash = getFileHash (aCurFile);
+      if (sHash == null)
+        return null;
+      aHashes[i++] = aCurFile.getPath ();
+      aHashes[i++] = sHash;
+    }
+    return getHash (aHashes);
+  }
+}
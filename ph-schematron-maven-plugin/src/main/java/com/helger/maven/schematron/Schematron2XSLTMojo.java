@@ -17,13 +17,18 @@
 package com.helger.maven.schematron;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.xml.XMLConstants;
-import javax.xml.transform.ErrorListener;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -40,8 +45,14 @@ import org.sonatype.plexus.build.incremental.BuildContext;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.annotation.Since;
 import com.helger.commons.annotation.VisibleForTesting;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.error.IError;
+import com.helger.commons.error.list.IErrorList;
 import com.helger.commons.io.file.FileHelper;
 import com.helger.commons.io.file.FilenameHelper;
 import com.helger.commons.io.resource.FileSystemResource;
@@ -55,6 +66,7 @@ import com.helger.xml.XMLHelper;
 import com.helger.xml.namespace.MapBasedNamespaceContext;
 import com.helger.xml.serialize.write.XMLWriter;
 import com.helger.xml.serialize.write.XMLWriterSettings;
+import com.helger.xml.transform.CollectingTransformErrorListener;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -141,6 +153,33 @@ public final class Schematron2XSLTMojo extends AbstractMojo
   @Since ("5.2.1")
   private boolean m_bForceCacheResult = SCHTransformerCustomizer.DEFAULT_FORCE_CACHE_RESULT;
 
+  /**
+   * The number of threads to be used for converting the Schematron files.
+   * Values &le; 1 mean that all files are converted sequentially.
+   */
+  @Parameter (name = "threadCount", defaultValue = "1")
+  @Since ("5.6.1")
+  private int m_nThreadCount = 1;
+
+  /**
+   * Enable incremental conversion. If enabled, the content hashes of each
+   * Schematron file (incl. all transitively included files) and the
+   * conversion settings are stored in the <code>incrementalStateFile</code>.
+   * In subsequent builds, Schematron files that did not change are not
+   * converted again, as long as the resulting XSLT file still exists.
+   */
+  @Parameter (name = "incremental", defaultValue = "false")
+  @Since ("5.6.1")
+  private boolean m_bIncremental = false;
+
+  /**
+   * The file where the state for incremental conversion is stored. Only used
+   * if <code>incremental</code> is enabled.
+   */
+  @Parameter (name = "incrementalStateFile", defaultValue = "${project.build.directory}/ph-schematron/convert.state")
+  @Since ("5.6.1")
+  private File m_aIncrementalStateFile;
+
   public void setSchematronDirectory (@Nonnull final File aDir)
   {
     m_aSchematronDirectory = aDir;
@@ -222,6 +261,212 @@ public final class Schematron2XSLTMojo extends AbstractMojo
       getLog ().debug ("Results not not forcebly cached");
   }
 
+  public void setThreadCount (final int nThreadCount)
+  {
+    m_nThreadCount = nThreadCount;
+    if (getLog ().isDebugEnabled ())
+      getLog ().debug ("Using " + Math.max (nThreadCount, 1) + " thread(s) for conversion");
+  }
+
+  public void setIncremental (final boolean bIncremental)
+  {
+    m_bIncremental = bIncremental;
+    if (m_bIncremental)
+      getLog ().debug ("Unchanged Schematron files are not converted");
+    else
+      getLog ().debug ("All Schematron files are converted");
+  }
+
+  public void setIncrementalStateFile (@Nullable final File aFile)
+  {
+    m_aIncrementalStateFile = aFile;
+    if (m_aIncrementalStateFile != null && !m_aIncrementalStateFile.isAbsolute ())
+      m_aIncrementalStateFile = new File (project.getBasedir (), aFile.getPath ());
+    if (getLog ().isDebugEnabled ())
+      getLog ().debug ("Using incremental state file '" + m_aIncrementalStateFile + "'");
+  }
+
+  /**
+   * @param aFile
+   *        The Schematron file to be hashed.
+   * @return The hash over the Schematron file, all includes and the
+   *         conversion settings. May be <code>null</code> if the file could
+   *         not be read.
+   */
+  @Nullable
+  private String _getSchematronHash (@Nonnull final File aFile)
+  {
+    final String sFileHash = IncrementalBuildState.getFileWithAllIncludesHash (aFile);
+    if (sFileHash == null)
+      return null;
+    return IncrementalBuildState.getHash (sFileHash,
+                                          m_sPhaseName,
+                                          m_sLanguageCode,
+                                          m_aCustomParameters == null ? null
+                                                                      : new CommonsTreeMap <> (m_aCustomParameters).toString ());
+  }
+
+  /**
+   * The result of converting a single Schematron file. All messages and errors
+   * are collected, so that they can be reported on the mojo thread, because
+   * neither the Maven log nor the build context are thread-safe.
+   */
+  private static final class ConversionResult
+  {
+    private final ICommonsList <String> m_aDebugMessages = new CommonsArrayList <> ();
+    private IErrorList m_aErrors;
+    private boolean m_bWritten;
+    private String m_sErrorMessage;
+    private Exception m_aException;
+
+    boolean isSuccess ()
+    {
+      return m_aException == null;
+    }
+  }
+
+  /**
+   * Convert a single Schematron file to XSLT. This method may be called
+   * concurrently and must therefore neither log nor access the build context.
+   *
+   * @param aFile
+   *        The source Schematron file. May not be <code>null</code>.
+   * @param aXSLTFile
+   *        The destination XSLT file. May not be <code>null</code>.
+   * @return The conversion result. Never <code>null</code>.
+   */
+  @Nonnull
+  private ConversionResult _convert (@Nonnull final File aFile, @Nonnull final File aXSLTFile)
+  {
+    final ConversionResult ret = new ConversionResult ();
+
+    // The Schematron resource
+    final IReadableResource aSchematronResource = new FileSystemResource (aFile);
+
+    // Create the directory, if necessary
+    final File aXsltFileDirectory = aXSLTFile.getParentFile ();
+    if (aXsltFileDirectory != null && !aXsltFileDirectory.exists ())
+    {
+      ret.m_aDebugMessages.add ("Creating directory '" + aXsltFileDirectory.getPath () + "'");
+      if (!aXsltFileDirectory.mkdirs () && !aXsltFileDirectory.isDirectory ())
+      {
+        ret.m_sErrorMessage = "Failed to convert '" +
+                              aFile.getPath () +
+                              "' because directory '" +
+                              aXsltFileDirectory.getPath () +
+                              "' could not be created";
+        ret.m_aException = new MojoFailureException (ret.m_sErrorMessage);
+        return ret;
+      }
+    }
+    // Okay, write the XSLT file
+    // Collect all errors - they are passed to the build context later on
+    final CollectingTransformErrorListener aErrorListener = new CollectingTransformErrorListener ();
+    try
+    {
+      // Custom error listener
+      // No custom URI resolver
+      // Specified phase - default = null
+      // Specified language code - default = null
+      final SCHTransformerCustomizer aCustomizer = new SCHTransformerCustomizer ().setErrorListener (aErrorListener)
+                                                                                  .setPhase (m_sPhaseName)
+                                                                                  .setLanguageCode (m_sLanguageCode)
+                                                                                  .setParameters (m_aCustomParameters)
+                                                                                  .setForceCacheResult (m_bForceCacheResult);
+      final ISchematronXSLTBasedProvider aXsltProvider = SchematronResourceSCHCache.createSchematronXSLTProvider (aSchematronResource,
+                                                                                                                  aCustomizer);
+      if (aXsltProvider != null)
+      {
+        // Write the resulting XSLT file to disk
+        final MapBasedNamespaceContext aNSContext = new MapBasedNamespaceContext ().addMapping ("svrl",
+                                                                                                CSVRL.SVRL_NAMESPACE_URI);
+        // Add all namespaces from XSLT document root
+        final String sNSPrefix = XMLConstants.XMLNS_ATTRIBUTE + ":";
+        XMLHelper.forAllAttributes (aXsltProvider.getXSLTDocument ().getDocumentElement (), (sAttrName, sAttrValue) -> {
+          if (sAttrName.startsWith (sNSPrefix))
+            aNSContext.addMapping (sAttrName.substring (sNSPrefix.length ()), sAttrValue);
+        });
+
+        final XMLWriterSettings aXWS = new XMLWriterSettings ();
+        aXWS.setNamespaceContext (aNSContext).setPutNamespaceContextPrefixesInRoot (true);
+
+        final OutputStream aOS = FileHelper.getOutputStream (aXSLTFile);
+        if (aOS == null)
+          throw new IllegalStateException ("Failed to open output stream for file " + aXSLTFile.getAbsolutePath ());
+        XMLWriter.writeToStream (aXsltProvider.getXSLTDocument (), aOS, aXWS);
+
+        ret.m_aDebugMessages.add ("Finished creating XSLT file '" + aXSLTFile.getPath () + "'");
+        ret.m_bWritten = true;
+      }
+      else
+      {
+        ret.m_sErrorMessage = "Failed to convert '" + aFile.getPath () + "': the Schematron resource is invalid";
+        ret.m_aException = new MojoFailureException (ret.m_sErrorMessage);
+      }
+    }
+    catch (final Exception ex)
+    {
+      ret.m_sErrorMessage = "Failed to convert '" + aFile.getPath () + "' to XSLT file '" + aXSLTFile.getPath () + "'";
+      ret.m_aException = new MojoExecutionException (ret.m_sErrorMessage, ex);
+    }
+    ret.m_aErrors = aErrorListener.getErrorList ();
+    return ret;
+  }
+
+  /**
+   * Report the result of a single conversion. Must be called on the mojo
+   * thread.
+   *
+   * @param aFile
+   *        The source Schematron file. May not be <code>null</code>.
+   * @param aXSLTFile
+   *        The destination XSLT file. May not be <code>null</code>.
+   * @param aResult
+   *        The conversion result. May not be <code>null</code>.
+   * @throws MojoExecutionException
+   *         Internal error
+   * @throws MojoFailureException
+   *         Conversion error
+   */
+  private void _handleResult (@Nonnull final File aFile,
+                              @Nonnull final File aXSLTFile,
+                              @Nonnull final ConversionResult aResult) throws MojoExecutionException,
+                                                                       MojoFailureException
+  {
+    buildContext.removeMessages (aFile);
+    if (aResult.m_aErrors != null)
+      for (final IError aError : aResult.m_aErrors)
+        PluginErrorListener.logIError (buildContext, aFile, aError);
+    for (final String sMessage : aResult.m_aDebugMessages)
+      getLog ().debug (sMessage);
+    if (aResult.m_bWritten)
+      buildContext.refresh (aXSLTFile.getParentFile ());
+
+    if (aResult.m_aException instanceof MojoFailureException)
+    {
+      getLog ().error (aResult.m_sErrorMessage);
+      throw (MojoFailureException) aResult.m_aException;
+    }
+    if (aResult.m_aException instanceof MojoExecutionException)
+    {
+      getLog ().error (aResult.m_sErrorMessage, aResult.m_aException.getCause ());
+      throw (MojoExecutionException) aResult.m_aException;
+    }
+  }
+
+  private void _saveState (@Nullable final IncrementalBuildState aState)
+  {
+    if (aState != null)
+      try
+      {
+        aState.save ();
+      }
+      catch (final IOException ex)
+      {
+        getLog ().warn ("Failed to save incremental state file '" + aState.getStateFile () + "'", ex);
+      }
+  }
+
   public void execute () throws MojoExecutionException, MojoFailureException
   {
     StaticLoggerBinder.getSingleton ().setMavenLog (getLog ());
@@ -243,6 +488,14 @@ public final class Schematron2XSLTMojo extends AbstractMojo
     if (!m_aXsltDirectory.exists () && !m_aXsltDirectory.mkdirs ())
       throw new MojoExecutionException ("Failed to create the XSLT directory " + m_aXsltDirectory);
 
+    IncrementalBuildState aState = null;
+    if (m_bIncremental)
+    {
+      if (m_aIncrementalStateFile == null)
+        throw new MojoExecutionException ("No incremental state file specified!");
+      aState = IncrementalBuildState.read (m_aIncrementalStateFile);
+    }
+
     // for all Schematron files that match the pattern
     final DirectoryScanner aScanner = new DirectoryScanner ();
     aScanner.setBasedir (m_aSchematronDirectory);
@@ -252,114 +505,129 @@ public final class Schematron2XSLTMojo extends AbstractMojo
     final String [] aFilenames = aScanner.getIncludedFiles ();
     if (aFilenames != null)
     {
+      // Ensure a deterministic order, independent of the file system
+      Arrays.sort (aFilenames);
+
+      // 1. Determine all files to be converted
+      final ICommonsList <File> aSrcFiles = new CommonsArrayList <> ();
+      final ICommonsList <File> aDstFiles = new CommonsArrayList <> ();
+      final ICommonsList <String> aHashes = new CommonsArrayList <> ();
       for (final String sFilename : aFilenames)
       {
         final File aFile = new File (m_aSchematronDirectory, sFilename);
 
-        // 1. build XSLT file name (outputdir + localpath with new extension)
+        // 1.1 build XSLT file name (outputdir + localpath with new extension)
         final File aXSLTFile = new File (m_aXsltDirectory,
                                          FilenameHelper.getWithoutExtension (sFilename) + m_sXsltExtension);
 
+        // 1.2 Check if the XSLT file already exists
+        if (aXSLTFile.exists () && !m_bOverwriteWithoutQuestion)
+        {
+          // Not overwriting the existing file
+          getLog ().debug ("Skipping XSLT file '" + aXSLTFile.getPath () + "' because it already exists!");
+          continue;
+        }
+
+        // 1.3 Check if anything changed since the last conversion
+        String sHash = null;
+        if (aState != null)
+        {
+          sHash = _getSchematronHash (aFile);
+          if (sHash != null &&
+              aXSLTFile.exists () &&
+              aState.isUnchanged ("convert|" + aXSLTFile.getAbsolutePath (), sHash))
+          {
+            getLog ().info ("Skipping XSLT file '" +
+                            aXSLTFile.getPath () +
+                            "' because Schematron file '" +
+                            aFile.getPath () +
+                            "' is unchanged");
+            continue;
+          }
+        }
+
         getLog ().info ("Converting Schematron file '" +
                         aFile.getPath () +
                         "' to XSLT file '" +
                         aXSLTFile.getPath () +
                         "'");
+        aSrcFiles.add (aFile);
+        aDstFiles.add (aXSLTFile);
+        aHashes.add (sHash);
+      }
 
-        // 2. The Schematron resource
-        final IReadableResource aSchematronResource = new FileSystemResource (aFile);
+      // 2. Convert all files
+      final ExecutorService aExecutor = m_nThreadCount > 1 && aSrcFiles.size () > 1 ? Executors.newFixedThreadPool (m_nThreadCount)
+                                                                                    : null;
+      final ICommonsList <Future <ConversionResult>> aFutures = new CommonsArrayList <> ();
+      try
+      {
+        if (aExecutor != null)
+          for (int i = 0; i < aSrcFiles.size (); ++i)
+          {
+            final File aFile = aSrcFiles.get (i);
+            final File aXSLTFile = aDstFiles.get (i);
+            aFutures.add (aExecutor.submit ( () -> _convert (aFile, aXSLTFile)));
+          }
 
-        // 3. Check if the XSLT file already exists
-        if (aXSLTFile.exists () && !m_bOverwriteWithoutQuestion)
-        {
-          // 3.1 Not overwriting the existing file
-          getLog ().debug ("Skipping XSLT file '" + aXSLTFile.getPath () + "' because it already exists!");
-        }
-        else
+        // Report all conversions in the original order
+        Exception aFirstException = null;
+        for (int i = 0; i < aSrcFiles.size (); ++i)
         {
-          // 3.2 Create the directory, if necessary
-          final File aXsltFileDirectory = aXSLTFile.getParentFile ();
-          if (aXsltFileDirectory != null && !aXsltFileDirectory.exists ())
-          {
-            getLog ().debug ("Creating directory '" + aXsltFileDirectory.getPath () + "'");
-            if (!aXsltFileDirectory.mkdirs ())
+          final ConversionResult aResult;
+          if (aExecutor == null)
+            aResult = _convert (aSrcFiles.get (i), aDstFiles.get (i));
+          else
+            try
             {
-              final String message = "Failed to convert '" +
-                                     aFile.getPath () +
-                                     "' because directory '" +
-                                     aXsltFileDirectory.getPath () +
-                                     "' could not be created";
-              getLog ().error (message);
-              throw new MojoFailureException (message);
+              aResult = aFutures.get (i).get ();
             }
-          }
-          // 3.3 Okay, write the XSLT file
-          try
-          {
-            buildContext.removeMessages (aFile);
-            // Custom error listener to log to the Mojo logger
-            final ErrorListener aMojoErrorListener = new PluginErrorListener (buildContext, aFile);
-
-            // Custom error listener
-            // No custom URI resolver
-            // Specified phase - default = null
-            // Specified language code - default = null
-            final SCHTransformerCustomizer aCustomizer = new SCHTransformerCustomizer ().setErrorListener (aMojoErrorListener)
-                                                                                        .setPhase (m_sPhaseName)
-                                                                                        .setLanguageCode (m_sLanguageCode)
-                                                                                        .setParameters (m_aCustomParameters)
-                                                                                        .setForceCacheResult (m_bForceCacheResult);
-            final ISchematronXSLTBasedProvider aXsltProvider = SchematronResourceSCHCache.createSchematronXSLTProvider (aSchematronResource,
-                                                                                                                        aCustomizer);
-            if (aXsltProvider != null)
+            catch (final InterruptedException ex)
             {
-              // Write the resulting XSLT file to disk
-              final MapBasedNamespaceContext aNSContext = new MapBasedNamespaceContext ().addMapping ("svrl",
-                                                                                                      CSVRL.SVRL_NAMESPACE_URI);
-              // Add all namespaces from XSLT document root
-              final String sNSPrefix = XMLConstants.XMLNS_ATTRIBUTE + ":";
-              XMLHelper.forAllAttributes (aXsltProvider.getXSLTDocument ().getDocumentElement (),
-                                          (sAttrName, sAttrValue) -> {
-                                            if (sAttrName.startsWith (sNSPrefix))
-                                              aNSContext.addMapping (sAttrName.substring (sNSPrefix.length ()),
-                                                                     sAttrValue);
-                                          });
-
-              final XMLWriterSettings aXWS = new XMLWriterSettings ();
-              aXWS.setNamespaceContext (aNSContext).setPutNamespaceContextPrefixesInRoot (true);
-
-              final OutputStream aOS = FileHelper.getOutputStream (aXSLTFile);
-              if (aOS == null)
-                throw new IllegalStateException ("Failed to open output stream for file " +
-                                                 aXSLTFile.getAbsolutePath ());
-              XMLWriter.writeToStream (aXsltProvider.getXSLTDocument (), aOS, aXWS);
-
-              getLog ().debug ("Finished creating XSLT file '" + aXSLTFile.getPath () + "'");
-
-              buildContext.refresh (aXsltFileDirectory);
+              Thread.currentThread ().interrupt ();
+              throw new MojoExecutionException ("Interrupted while converting Schematron files", ex);
             }
-            else
+            catch (final ExecutionException ex)
             {
-              final String message = "Failed to convert '" + aFile.getPath () + "': the Schematron resource is invalid";
-              getLog ().error (message);
-              throw new MojoFailureException (message);
+              throw new MojoExecutionException ("Internal error converting '" + aSrcFiles.get (i).getPath () + "'",
+                                                ex.getCause ());
             }
-          }
-          catch (final MojoFailureException up)
+
+          // Remember all successful conversions, even if another one failed
+          if (aState != null && aResult.isSuccess () && aHashes.get (i) != null)
+            aState.put ("convert|" + aDstFiles.get (i).getAbsolutePath (), aHashes.get (i));
+
+          try
           {
-            throw up;
+            _handleResult (aSrcFiles.get (i), aDstFiles.get (i), aResult);
           }
-          catch (final Exception ex)
+          catch (final MojoExecutionException | MojoFailureException ex)
           {
-            final String sMessage = "Failed to convert '" +
-                                    aFile.getPath () +
-                                    "' to XSLT file '" +
-                                    aXSLTFile.getPath () +
-                                    "'";
-            getLog ().error (sMessage, ex);
-            throw new MojoExecutionException (sMessage, ex);
+            // Sequential conversion stops at the first error
+            if (aExecutor == null)
+              throw ex;
+            // The other files were converted anyway - report them as well
+            if (aFirstException == null)
+              aFirstException = ex;
           }
         }
+        if (aFirstException instanceof MojoExecutionException)
+          throw (MojoExecutionException) aFirstException;
+        if (aFirstException instanceof MojoFailureException)
+          throw (MojoFailureException) aFirstException;
+      }
+      finally
+      {
+        if (aExecutor != null)
+        {
+          for (final Future <?> aFuture : aFutures)
+            aFuture.cancel (false);
+          ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutor);
+        }
+
+        // Save the state in any case, so that a single failing file does not
+        // force a conversion of all files in the next build
+        _saveState (aState);
       }
     }
   }
@@ -17,13 +17,20 @@
 package com.helger.maven.schematron;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Component;
@@ -40,18 +47,22 @@ import com.helger.commons.annotation.Since;
 import com.helger.commons.annotation.VisibleForTesting;
 import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsTreeMap;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
 import com.helger.commons.error.IError;
 import com.helger.commons.error.level.EErrorLevel;
 import com.helger.commons.error.list.IErrorList;
 import com.helger.commons.io.resource.FileSystemResource;
 import com.helger.commons.string.StringHelper;
+import com.helger.maven.schematron.CompiledSchematronRegistry.CompiledSchematron;
 import com.helger.schematron.CSchematron;
 import com.helger.schematron.ESchematronMode;
 import com.helger.schematron.ISchematronResource;
 import com.helger.schematron.pure.SchematronResourcePure;
 import com.helger.schematron.pure.errorhandler.CollectingPSErrorHandler;
+import com.helger.schematron.pure.errorhandler.DetachablePSErrorHandler;
 import com.helger.schematron.svrl.SVRLFailedAssert;
 import com.helger.schematron.svrl.SVRLHelper;
 import com.helger.schematron.svrl.SVRLMarshaller;
@@ -59,6 +70,7 @@ import com.helger.schematron.svrl.jaxb.SchematronOutputType;
 import com.helger.schematron.xslt.SCHTransformerCustomizer;
 import com.helger.schematron.xslt.SchematronResourceSCH;
 import com.helger.schematron.xslt.SchematronResourceXSLT;
+import com.helger.schematron.xslt.SharedSchematronResourceSCH;
 import com.helger.xml.transform.CollectingTransformErrorListener;
 import com.helger.xml.transform.TransformSourceFactory;
 
@@ -86,6 +98,13 @@ public final class SchematronValidationMojo extends AbstractMojo
   @Parameter (defaultValue = "${project}", readonly = true)
   private MavenProject project;
 
+  /**
+   * The current Mojo execution. Used to separate the incremental state of
+   * several executions.
+   */
+  @Parameter (defaultValue = "${mojoExecution}", readonly = true)
+  private MojoExecution mojoExecution;
+
   /**
    * The Schematron file. This may also be an XSLT file if it is precompiled.
    */
@@ -222,6 +241,67 @@ public final class SchematronValidationMojo extends AbstractMojo
   @Since ("5.4.1")
   private boolean m_bLenient = CSchematron.DEFAULT_ALLOW_DEPRECATED_NAMESPACES;
 
+  /**
+   * The number of threads to be used for validating the XML files. All threads
+   * share the same compiled Schematron. Values &le; 1 mean that all files are
+   * validated sequentially. Independent of the number of threads, the log
+   * output and the error report are created in the (sorted) order of the XML
+   * files.
+   */
+  @Parameter (name = "threadCount", defaultValue = "1")
+  @Since ("5.6.1")
+  private int m_nThreadCount = 1;
+
+  /**
+   * Enable incremental validation. If enabled, the content hashes of the
+   * Schematron file (incl. all includes), the validation settings and all XML
+   * files that were validated successfully are stored in the
+   * <code>incrementalStateFile</code>. In subsequent builds, XML files that
+   * did not change are skipped as long as the Schematron and the settings did
+   * not change either.
+   */
+  @Parameter (name = "incremental", defaultValue = "false")
+  @Since ("5.6.1")
+  private boolean m_bIncremental = false;
+
+  /**
+   * The file where the state for incremental validation is stored. Only used
+   * if <code>incremental</code> is enabled.
+   */
+  @Parameter (name = "incrementalStateFile",
+              defaultValue = "${project.build.directory}/ph-schematron/validation.state")
+  @Since ("5.6.1")
+  private File m_aIncrementalStateFile;
+
+  /**
+   * Reuse the compiled Schematron across all executions of this plugin in the
+   * same build (e.g. in all modules of a multi-module build). The compiled
+   * Schematron is identified by the content hash of the Schematron file (incl.
+   * all includes) and all settings.
+   */
+  @Parameter (name = "reuseCompiledSchematron", defaultValue = "true")
+  @Since ("5.6.1")
+  private boolean m_bReuseCompiledSchematron = true;
+
+  /**
+   * The result of validating a single XML file. All log messages are
+   * collected, so that they can be emitted in a deterministic order.
+   */
+  private static final class FileValidationResult
+  {
+    private final ICommonsList <EErrorLevel> m_aLogLevels = new CommonsArrayList <> ();
+    private final ICommonsList <String> m_aLogMessages = new CommonsArrayList <> ();
+    private String m_sFailureMessage;
+    private String m_sExceptionMessage;
+    private Exception m_aException;
+
+    void log (@Nonnull final EErrorLevel eLevel, @Nonnull final String sMessage)
+    {
+      m_aLogLevels.add (eLevel);
+      m_aLogMessages.add (sMessage);
+    }
+  }
+
   public void setSchematronFile (@Nonnull final File aFile)
   {
     m_aSchematronFile = aFile;
@@ -361,6 +441,40 @@ public final class SchematronValidationMojo extends AbstractMojo
       getLog ().debug ("Old deprecated namespace URIs are not supported");
   }
 
+  public void setThreadCount (final int nThreadCount)
+  {
+    m_nThreadCount = nThreadCount;
+    if (getLog ().isDebugEnabled ())
+      getLog ().debug ("Using " + Math.max (nThreadCount, 1) + " thread(s) for validation");
+  }
+
+  public void setIncremental (final boolean bIncremental)
+  {
+    m_bIncremental = bIncremental;
+    if (m_bIncremental)
+      getLog ().debug ("Unchanged XML files are skipped");
+    else
+      getLog ().debug ("All XML files are validated");
+  }
+
+  public void setReuseCompiledSchematron (final boolean bReuseCompiledSchematron)
+  {
+    m_bReuseCompiledSchematron = bReuseCompiledSchematron;
+    if (m_bReuseCompiledSchematron)
+      getLog ().debug ("Compiled Schematrons are reused within the build");
+    else
+      getLog ().debug ("Compiled Schematrons are not reused");
+  }
+
+  public void setIncrementalStateFile (@Nullable final File aFile)
+  {
+    m_aIncrementalStateFile = aFile;
+    if (m_aIncrementalStateFile != null && !m_aIncrementalStateFile.isAbsolute ())
+      m_aIncrementalStateFile = new File (project.getBasedir (), aFile.getPath ());
+    if (getLog ().isDebugEnabled ())
+      getLog ().debug ("Using incremental state file '" + m_aIncrementalStateFile + "'");
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   @VisibleForTesting
@@ -369,6 +483,205 @@ public final class SchematronValidationMojo extends AbstractMojo
     return new CommonsHashMap <> (m_aCustomParameters);
   }
 
+  private void _log (@Nonnull final FileValidationResult aResult)
+  {
+    for (int i = 0; i < aResult.m_aLogLevels.size (); ++i)
+    {
+      final EErrorLevel eLevel = aResult.m_aLogLevels.get (i);
+      final String sMessage = aResult.m_aLogMessages.get (i);
+      if (eLevel.isGE (EErrorLevel.ERROR))
+        getLog ().error (sMessage);
+      else
+        if (eLevel.isGE (EErrorLevel.WARN))
+          getLog ().warn (sMessage);
+        else
+          if (eLevel.isGE (EErrorLevel.INFO))
+            getLog ().info (sMessage);
+          else
+            getLog ().debug (sMessage);
+    }
+  }
+
+  /**
+   * Get the prefix for all incremental state keys of one validation run. Next
+   * to the Schematron it contains the execution ID and the scanned XML
+   * directory, so that several executions sharing the same state file do not
+   * prune each other's entries.
+   *
+   * @param bExpectSuccess
+   *        <code>true</code> for the positive validation, <code>false</code>
+   *        for the erroneous files.
+   * @return The key prefix. Never <code>null</code>.
+   */
+  @Nonnull
+  private String _getStateKeyPrefix (final boolean bExpectSuccess)
+  {
+    final File aXMLDirectory = bExpectSuccess ? m_aXmlDirectory : m_aXmlErrorDirectory;
+    final String sScope = IncrementalBuildState.getHash (mojoExecution == null ? null : mojoExecution.getExecutionId (),
+                                                         m_aSchematronFile.getAbsolutePath (),
+                                                         aXMLDirectory == null ? null
+                                                                               : aXMLDirectory.getAbsolutePath ());
+    return "validate|" + (bExpectSuccess ? "+" : "-") + "|" + sScope + "|";
+  }
+
+  /**
+   * Validate a single XML file. This method may be called concurrently and
+   * must therefore not log directly.
+   *
+   * @param aSch
+   *        Schematron resource to apply on validation artefacts
+   * @param aXMLDirectory
+   *        XML directory that was scanned
+   * @param sXMLFilename
+   *        The XML file name relative to the XML directory
+   * @param aSVRLDirectory
+   *        SVRL directory to write to (maybe <code>null</code> in which case
+   *        the SVRL is not written)
+   * @param bExpectSuccess
+   *        <code>true</code> if this is a positive validation,
+   *        <code>false</code> if error is expected
+   * @param aState
+   *        The incremental build state. May be <code>null</code>.
+   * @param sSchematronHash
+   *        The hash of the Schematron and the settings. May be
+   *        <code>null</code> if aState is <code>null</code>.
+   * @return The validation result. Never <code>null</code>.
+   */
+  @Nonnull
+  private FileValidationResult _validateFile (@Nonnull final ISchematronResource aSch,
+                                              @Nonnull final File aXMLDirectory,
+                                              @Nonnull final String sXMLFilename,
+                                              @Nullable final File aSVRLDirectory,
+                                              final boolean bExpectSuccess,
+                                              @Nullable final IncrementalBuildState aState,
+                                              @Nullable final String sSchematronHash)
+  {
+    final FileValidationResult ret = new FileValidationResult ();
+    final File aXMLFile = new File (aXMLDirectory, sXMLFilename);
+    final File aSVRLFile = aSVRLDirectory == null ? null : new File (aSVRLDirectory, sXMLFilename + ".svrl");
+
+    // Check if the file is unchanged since the last successful run
+    String sStateKey = null;
+    String sStateHash = null;
+    if (aState != null)
+    {
+      final String sXMLHash = IncrementalBuildState.getFileHash (aXMLFile);
+      if (sXMLHash != null)
+      {
+        sStateKey = _getStateKeyPrefix (bExpectSuccess) + aXMLFile.getAbsolutePath ();
+        sStateHash = IncrementalBuildState.getHash (sSchematronHash, sXMLHash);
+        if (aState.isUnchanged (sStateKey, sStateHash) && (aSVRLFile == null || aSVRLFile.exists ()))
+        {
+          ret.log (EErrorLevel.INFO, "Skipping unchanged XML file '" + aXMLFile.getPath () + "'");
+          return ret;
+        }
+      }
+    }
+
+    // Validate XML file
+    ret.log (EErrorLevel.INFO,
+             "Validating XML file '" +
+                               aXMLFile.getPath () +
+                               "' against Schematron rules from '" +
+                               m_aSchematronFile +
+                               "' expecting " +
+                               (bExpectSuccess ? "success" : "failure"));
+    try
+    {
+      final SchematronOutputType aSOT = aSch.applySchematronValidationToSVRL (TransformSourceFactory.create (aXMLFile));
+
+      if (aSVRLFile != null)
+      {
+        // Save SVRL
+        if (!aSVRLFile.getParentFile ().mkdirs ())
+          ret.log (EErrorLevel.ERROR, "Failed to create parent directory of '" + aSVRLFile.getAbsolutePath () + "'!");
+
+        if (new SVRLMarshaller ().write (aSOT, aSVRLFile).isSuccess ())
+          ret.log (EErrorLevel.INFO, "Successfully saved SVRL file '" + aSVRLFile.getPath () + "'");
+        else
+          ret.log (EErrorLevel.ERROR, "Error saving SVRL file '" + aSVRLFile.getPath () + "'");
+      }
+
+      final ICommonsList <SVRLFailedAssert> aFailedAsserts = SVRLHelper.getAllFailedAssertions (aSOT);
+      if (bExpectSuccess)
+      {
+        // No failed assertions expected
+        if (aFailedAsserts.isNotEmpty ())
+        {
+          final String sMessage = aFailedAsserts.size () +
+                                  " failed Schematron assertions for XML file '" +
+                                  aXMLFile.getPath () +
+                                  "'";
+          ret.log (EErrorLevel.ERROR, sMessage);
+          aFailedAsserts.forEach (x -> ret.log (EErrorLevel.ERROR,
+                                                x.getAsResourceError (aXMLFile.getPath ()).getAsString (Locale.US)));
+          ret.m_sFailureMessage = sMessage;
+        }
+      }
+      else
+      {
+        // At least one failed assertions expected
+        if (aFailedAsserts.isEmpty ())
+        {
+          final String sMessage = "No failed Schematron assertions for erroneous XML file '" +
+                                  aXMLFile.getPath () +
+                                  "'";
+          ret.log (EErrorLevel.ERROR, sMessage);
+          ret.m_sFailureMessage = sMessage;
+        }
+      }
+    }
+    catch (final Exception ex)
+    {
+      ret.m_sExceptionMessage = "Exception validating XML '" +
+                                aXMLFile.getPath () +
+                                "' against Schematron rules from '" +
+                                m_aSchematronFile +
+                                "'";
+      ret.m_aException = ex;
+    }
+
+    if (aState != null && sStateKey != null)
+    {
+      if (ret.m_sFailureMessage == null && ret.m_aException == null)
+        aState.put (sStateKey, sStateHash);
+      else
+        aState.remove (sStateKey);
+    }
+    return ret;
+  }
+
+  /**
+   * Handle the result of a single file in the deterministic order.
+   *
+   * @param aResult
+   *        The result to handle. May not be <code>null</code>.
+   * @param aErrorMessages
+   *        The list of collected error messages (only used if fail-fast is
+   *        disabled)
+   * @throws MojoExecutionException
+   *         Internal error
+   * @throws MojoFailureException
+   *         Validation error
+   */
+  private void _handleResult (@Nonnull final FileValidationResult aResult,
+                              @Nonnull final ICommonsList <String> aErrorMessages) throws MojoExecutionException,
+                                                                                   MojoFailureException
+  {
+    _log (aResult);
+    if (aResult.m_aException != null)
+    {
+      getLog ().error (aResult.m_sExceptionMessage, aResult.m_aException);
+      throw new MojoExecutionException (aResult.m_sExceptionMessage, aResult.m_aException);
+    }
+    if (aResult.m_sFailureMessage != null)
+    {
+      if (m_bFailFast)
+        throw new MojoFailureException (aResult.m_sFailureMessage);
+      aErrorMessages.add (aResult.m_sFailureMessage);
+    }
+  }
+
   /**
    * @param aSch
    *        Schematron resource to apply on validation artefacts
@@ -387,6 +700,14 @@ public final class SchematronValidationMojo extends AbstractMojo
    * @param aErrorMessages
    *        The list of collected error messages (only used if fail-fast is
    *        disabled)
+   * @param aExecutor
+   *        The executor service for parallel validation. May be
+   *        <code>null</code> for sequential validation.
+   * @param aState
+   *        The incremental build state. May be <code>null</code>.
+   * @param sSchematronHash
+   *        The hash of the Schematron and the settings. May be
+   *        <code>null</code> if aState is <code>null</code>.
    * @throws MojoExecutionException
    *         Internal error
    * @throws MojoFailureException
@@ -398,8 +719,11 @@ public final class SchematronValidationMojo extends AbstractMojo
                                    @Nullable final String sXMLExcludes,
                                    @Nullable final File aSVRLDirectory,
                                    final boolean bExpectSuccess,
-                                   @Nonnull final ICommonsList <String> aErrorMessages) throws MojoExecutionException,
-                                                                                        MojoFailureException
+                                   @Nonnull final ICommonsList <String> aErrorMessages,
+                                   @Nullable final ExecutorService aExecutor,
+                                   @Nullable final IncrementalBuildState aState,
+                                   @Nullable final String sSchematronHash) throws MojoExecutionException,
+                                                                           MojoFailureException
   {
     final DirectoryScanner aScanner = new DirectoryScanner ();
     aScanner.setBasedir (aXMLDirectory);
@@ -412,85 +736,152 @@ public final class SchematronValidationMojo extends AbstractMojo
     final String [] aXMLFilenames = aScanner.getIncludedFiles ();
     if (aXMLFilenames != null)
     {
-      for (final String sXMLFilename : aXMLFilenames)
-      {
-        final File aXMLFile = new File (aXMLDirectory, sXMLFilename);
+      // Ensure a deterministic order, independent of the file system
+      Arrays.sort (aXMLFilenames);
 
-        // Validate XML file
-        getLog ().info ("Validating XML file '" +
-                        aXMLFile.getPath () +
-                        "' against Schematron rules from '" +
-                        m_aSchematronFile +
-                        "' expecting " +
-                        (bExpectSuccess ? "success" : "failure"));
+      if (aExecutor == null)
+      {
+        // Sequential validation
+        for (final String sXMLFilename : aXMLFilenames)
+          _handleResult (_validateFile (aSch,
+                                        aXMLDirectory,
+                                        sXMLFilename,
+                                        aSVRLDirectory,
+                                        bExpectSuccess,
+                                        aState,
+                                        sSchematronHash),
+                         aErrorMessages);
+      }
+      else
+      {
+        // Parallel validation - handle the results in the original order.
+        // Only a limited number of files is submitted ahead of the one that is
+        // handled, so that the memory consumption is bounded.
+        final int nMaxAhead = m_nThreadCount * 4;
+        final ICommonsList <Future <FileValidationResult>> aFutures = new CommonsArrayList <> ();
         try
         {
-          final SchematronOutputType aSOT = aSch.applySchematronValidationToSVRL (TransformSourceFactory.create (aXMLFile));
-
-          if (aSVRLDirectory != null)
+          for (int nFileIndex = 0; nFileIndex < aXMLFilenames.length; ++nFileIndex)
           {
-            // Save SVRL
-            final File aSVRLFile = new File (aSVRLDirectory, sXMLFilename + ".svrl");
-            if (!aSVRLFile.getParentFile ().mkdirs ())
-              getLog ().error ("Failed to create parent directory of '" + aSVRLFile.getAbsolutePath () + "'!");
-
-            if (new SVRLMarshaller ().write (aSOT, aSVRLFile).isSuccess ())
-              getLog ().info ("Successfully saved SVRL file '" + aSVRLFile.getPath () + "'");
-            else
-              getLog ().error ("Error saving SVRL file '" + aSVRLFile.getPath () + "'");
-          }
+            while (aFutures.size () < aXMLFilenames.length && aFutures.size () <= nFileIndex + nMaxAhead)
+            {
+              final String sXMLFilename = aXMLFilenames[aFutures.size ()];
+              aFutures.add (aExecutor.submit ( () -> _validateFile (aSch,
+                                                                    aXMLDirectory,
+                                                                    sXMLFilename,
+                                                                    aSVRLDirectory,
+                                                                    bExpectSuccess,
+                                                                    aState,
+                                                                    sSchematronHash)));
+            }
 
-          final ICommonsList <SVRLFailedAssert> aFailedAsserts = SVRLHelper.getAllFailedAssertions (aSOT);
-          if (bExpectSuccess)
-          {
-            // No failed assertions expected
-            if (aFailedAsserts.isNotEmpty ())
+            final FileValidationResult aResult;
+            try
             {
-              final String sMessage = aFailedAsserts.size () +
-                                      " failed Schematron assertions for XML file '" +
-                                      aXMLFile.getPath () +
-                                      "'";
-              getLog ().error (sMessage);
-              aFailedAsserts.forEach (x -> getLog ().error (x.getAsResourceError (aXMLFile.getPath ())
-                                                             .getAsString (Locale.US)));
-              if (m_bFailFast)
-                throw new MojoFailureException (sMessage);
-              aErrorMessages.add (sMessage);
+              aResult = aFutures.get (nFileIndex).get ();
             }
-          }
-          else
-          {
-            // At least one failed assertions expected
-            if (aFailedAsserts.isEmpty ())
+            catch (final InterruptedException ex)
             {
-              final String sMessage = "No failed Schematron assertions for erroneous XML file '" +
-                                      aXMLFile.getPath () +
-                                      "'";
-              getLog ().error (sMessage);
-              if (m_bFailFast)
-                throw new MojoFailureException (sMessage);
-              aErrorMessages.add (sMessage);
+              Thread.currentThread ().interrupt ();
+              throw new MojoExecutionException ("Interrupted while validating XML files", ex);
             }
+            catch (final ExecutionException ex)
+            {
+              throw new MojoExecutionException ("Internal error validating XML files", ex.getCause ());
+            }
+            // Don't keep the results of handled files
+            aFutures.set (nFileIndex, null);
+            _handleResult (aResult, aErrorMessages);
           }
         }
-        catch (final MojoExecutionException | MojoFailureException up)
-        {
-          throw up;
-        }
-        catch (final Exception ex)
+        finally
         {
-          final String sMessage = "Exception validating XML '" +
-                                  aXMLFile.getPath () +
-                                  "' against Schematron rules from '" +
-                                  m_aSchematronFile +
-                                  "'";
-          getLog ().error (sMessage, ex);
-          throw new MojoExecutionException (sMessage, ex);
+          // In case of fail fast
+          for (final Future <FileValidationResult> aFuture : aFutures)
+            if (aFuture != null)
+              aFuture.cancel (false);
         }
       }
     }
   }
 
+  @Nullable
+  private String _getSchematronHash ()
+  {
+    final String sFileHash = IncrementalBuildState.getFileWithAllIncludesHash (m_aSchematronFile);
+    if (sFileHash == null)
+      return null;
+    return IncrementalBuildState.getHash (sFileHash,
+                                          m_sSchematronProcessingEngine,
+                                          m_sPhaseName,
+                                          m_sLanguageCode,
+                                          m_aCustomParameters == null ? null
+                                                                      : new CommonsTreeMap <> (m_aCustomParameters).toString (),
+                                          Boolean.toString (m_bLenient),
+                                          Boolean.toString (m_bForceCacheResult));
+  }
+
+  @Nonnull
+  private CompiledSchematron _createCompiledSchematron () throws MojoExecutionException
+  {
+    switch (ESchematronMode.getFromIDOrNull (m_sSchematronProcessingEngine))
+    {
+      case PURE:
+      {
+        // pure
+        final CollectingPSErrorHandler aErrorHdl = new CollectingPSErrorHandler ();
+        final SchematronResourcePure aRealSCH = new SchematronResourcePure (new FileSystemResource (m_aSchematronFile));
+        aRealSCH.setPhase (m_sPhaseName);
+        aRealSCH.setLenient (m_bLenient);
+        // language code is ignored
+        // custom parameters are ignored
+        // The bound schema keeps its error handler and may be reused by later
+        // executions - don't keep collecting into the handler of this execution
+        final DetachablePSErrorHandler aDetachableHdl = new DetachablePSErrorHandler (aErrorHdl);
+        aRealSCH.setErrorHandler (aDetachableHdl);
+        aRealSCH.validateCompletely ();
+        aDetachableHdl.detach ();
+
+        return new CompiledSchematron (aRealSCH, aErrorHdl.getAllErrors ());
+      }
+      case SCHEMATRON:
+      {
+        // SCH
+        final CollectingTransformErrorListener aErrorHdl = new CollectingTransformErrorListener ();
+        final SchematronResourceSCH aRealSCH = new SharedSchematronResourceSCH (new FileSystemResource (m_aSchematronFile));
+        aRealSCH.setPhase (m_sPhaseName);
+        aRealSCH.setLanguageCode (m_sLanguageCode);
+        aRealSCH.setForceCacheResult (m_bForceCacheResult);
+        aRealSCH.parameters ().setAll (m_aCustomParameters);
+        aRealSCH.setErrorListener (aErrorHdl);
+        aRealSCH.isValidSchematron ();
+        // The resource may be reused by later executions - don't keep
+        // collecting into the listener of this execution
+        aRealSCH.setErrorListener (null);
+
+        return new CompiledSchematron (aRealSCH, aErrorHdl.getErrorList ());
+      }
+      case XSLT:
+      {
+        // SCH
+        final CollectingTransformErrorListener aErrorHdl = new CollectingTransformErrorListener ();
+        final SchematronResourceXSLT aRealSCH = new SchematronResourceXSLT (new FileSystemResource (m_aSchematronFile));
+        // phase is ignored
+        // language code is ignored
+        aRealSCH.parameters ().setAll (m_aCustomParameters);
+        aRealSCH.setErrorListener (aErrorHdl);
+        aRealSCH.isValidSchematron ();
+        // The resource may be reused by later executions - don't keep
+        // collecting into the listener of this execution
+        aRealSCH.setErrorListener (null);
+
+        return new CompiledSchematron (aRealSCH, aErrorHdl.getErrorList ());
+      }
+      default:
+        throw new MojoExecutionException ("No handler for processing engine '" + m_sSchematronProcessingEngine + "'");
+    }
+  }
+
   public void execute () throws MojoExecutionException, MojoFailureException
   {
     StaticLoggerBinder.getSingleton ().setMavenLog (getLog ());
@@ -536,61 +927,12 @@ public final class SchematronValidationMojo extends AbstractMojo
       }
     }
 
-    // 1. Parse Schematron file
-    ISchematronResource aSch;
-    IErrorList aSCHErrors;
-    switch (ESchematronMode.getFromIDOrNull (m_sSchematronProcessingEngine))
-    {
-      case PURE:
-      {
-        // pure
-        final CollectingPSErrorHandler aErrorHdl = new CollectingPSErrorHandler ();
-        final SchematronResourcePure aRealSCH = new SchematronResourcePure (new FileSystemResource (m_aSchematronFile));
-        aRealSCH.setPhase (m_sPhaseName);
-        aRealSCH.setLenient (m_bLenient);
-        // language code is ignored
-        // custom parameters are ignored
-        aRealSCH.setErrorHandler (aErrorHdl);
-        aRealSCH.validateCompletely ();
-
-        aSch = aRealSCH;
-        aSCHErrors = aErrorHdl.getAllErrors ();
-        break;
-      }
-      case SCHEMATRON:
-      {
-        // SCH
-        final CollectingTransformErrorListener aErrorHdl = new CollectingTransformErrorListener ();
-        final SchematronResourceSCH aRealSCH = new SchematronResourceSCH (new FileSystemResource (m_aSchematronFile));
-        aRealSCH.setPhase (m_sPhaseName);
-        aRealSCH.setLanguageCode (m_sLanguageCode);
-        aRealSCH.setForceCacheResult (m_bForceCacheResult);
-        aRealSCH.parameters ().setAll (m_aCustomParameters);
-        aRealSCH.setErrorListener (aErrorHdl);
-        aRealSCH.isValidSchematron ();
-
-        aSch = aRealSCH;
-        aSCHErrors = aErrorHdl.getErrorList ();
-        break;
-      }
-      case XSLT:
-      {
-        // SCH
-        final CollectingTransformErrorListener aErrorHdl = new CollectingTransformErrorListener ();
-        final SchematronResourceXSLT aRealSCH = new SchematronResourceXSLT (new FileSystemResource (m_aSchematronFile));
-        // phase is ignored
-        // language code is ignored
-        aRealSCH.parameters ().setAll (m_aCustomParameters);
-        aRealSCH.setErrorListener (aErrorHdl);
-        aRealSCH.isValidSchematron ();
-
-        aSch = aRealSCH;
-        aSCHErrors = aErrorHdl.getErrorList ();
-        break;
-      }
-      default:
-        throw new MojoExecutionException ("No handler for processing engine '" + m_sSchematronProcessingEngine + "'");
-    }
+    // 1. Parse Schematron file - or reuse it from an earlier execution
+    final String sRegistryKey = m_bReuseCompiledSchematron ? _getSchematronHash () : null;
+    final CompiledSchematron aCompiled = CompiledSchematronRegistry.getOrCreate (sRegistryKey,
+                                                                                 this::_createCompiledSchematron);
+    final ISchematronResource aSch = aCompiled.getResource ();
+    final IErrorList aSCHErrors = aCompiled.getErrors ();
     if (aSCHErrors != null)
     {
       // Error validating the Schematrons!!
@@ -606,27 +948,75 @@ public final class SchematronValidationMojo extends AbstractMojo
     }
     getLog ().info ("Successfully parsed Schematron file '" + m_aSchematronFile.getPath () + "'");
 
-    // 2. for all XML files that match the pattern
+    // 2. Prepare incremental state
+    IncrementalBuildState aState = null;
+    String sSchematronHash = null;
+    if (m_bIncremental)
+    {
+      if (m_aIncrementalStateFile == null)
+        throw new MojoExecutionException ("No incremental state file specified!");
+      sSchematronHash = sRegistryKey != null ? sRegistryKey : _getSchematronHash ();
+      if (sSchematronHash == null)
+        getLog ().warn ("Failed to determine the hash of the Schematron file '" +
+                        m_aSchematronFile +
+                        "' - validating all files");
+      else
+        aState = IncrementalBuildState.read (m_aIncrementalStateFile);
+    }
+
+    // 3. for all XML files that match the pattern
+    final ExecutorService aExecutor = m_nThreadCount > 1 ? Executors.newFixedThreadPool (m_nThreadCount) : null;
     final ICommonsList <String> aErrorMessages = new CommonsArrayList <> ();
-    if (m_aXmlDirectory != null)
+    try
     {
-      _performValidation (aSch,
-                          m_aXmlDirectory,
-                          m_sXmlIncludes,
-                          m_sXmlExcludes,
-                          m_aSvrlDirectory,
-                          true,
-                          aErrorMessages);
+      if (m_aXmlDirectory != null)
+      {
+        _performValidation (aSch,
+                            m_aXmlDirectory,
+                            m_sXmlIncludes,
+                            m_sXmlExcludes,
+                            m_aSvrlDirectory,
+                            true,
+                            aErrorMessages,
+                            aExecutor,
+                            aState,
+                            sSchematronHash);
+      }
+      if (m_aXmlErrorDirectory != null)
+      {
+        _performValidation (aSch,
+                            m_aXmlErrorDirectory,
+                            m_sXmlErrorIncludes,
+                            m_sXmlErrorExcludes,
+                            m_aSvrlErrorDirectory,
+                            false,
+                            aErrorMessages,
+                            aExecutor,
+                            aState,
+                            sSchematronHash);
+      }
+
+      if (aState != null)
+      {
+        // All files were handled - forget about deleted or excluded files
+        aState.removeAllUntouched (_getStateKeyPrefix (true));
+        aState.removeAllUntouched (_getStateKeyPrefix (false));
+      }
     }
-    if (m_aXmlErrorDirectory != null)
+    finally
     {
-      _performValidation (aSch,
-                          m_aXmlErrorDirectory,
-                          m_sXmlErrorIncludes,
-                          m_sXmlErrorExcludes,
-                          m_aSvrlErrorDirectory,
-                          false,
-                          aErrorMessages);
+      if (aExecutor != null)
+        ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutor);
+
+      if (aState != null)
+        try
+        {
+          aState.save ();
+        }
+        catch (final IOException ex)
+        {
+          getLog ().warn ("Failed to save incremental state file '" + aState.getStateFile () + "'", ex);
+        }
     }
 
     if (!m_bFailFast && aErrorMessages.isNotEmpty ())
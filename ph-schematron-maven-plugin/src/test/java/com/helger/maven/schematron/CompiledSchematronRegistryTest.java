@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.maven.schematron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.maven.schematron.CompiledSchematronRegistry.CompiledSchematron;
+import com.helger.schematron.pure.SchematronResourcePure;
+
+/**
+ * Test class for class {@link CompiledSchematronRegistry}.
+ *
+ * @author Philip Helger
+ */
+public final class CompiledSchematronRegistryTest
+{
+  @Before
+  public void before ()
+  {
+    // Other tests in the same JVM may have registered Schematrons
+    CompiledSchematronRegistry.clear ();
+  }
+
+  @After
+  public void after ()
+  {
+    CompiledSchematronRegistry.clear ();
+  }
+
+  private static CompiledSchematron _create ()
+  {
+    return new CompiledSchematron (new SchematronResourcePure (new ClassPathResource ("does-not-matter.sch")), null);
+  }
+
+  @Test
+  public void testNoKey () throws Exception
+  {
+    final CompiledSchematron a1 = CompiledSchematronRegistry.getOrCreate (null, CompiledSchematronRegistryTest::_create);
+    final CompiledSchematron a2 = CompiledSchematronRegistry.getOrCreate (null, CompiledSchematronRegistryTest::_create);
+    assertNotSame (a1, a2);
+    assertEquals (0, CompiledSchematronRegistry.size ());
+  }
+
+  @Test
+  public void testReuse () throws Exception
+  {
+    final CompiledSchematron a1 = CompiledSchematronRegistry.getOrCreate ("a", CompiledSchematronRegistryTest::_create);
+    final CompiledSchematron a2 = CompiledSchematronRegistry.getOrCreate ("a", CompiledSchematronRegistryTest::_create);
+    assertSame (a1, a2);
+    assertEquals (1, CompiledSchematronRegistry.size ());
+
+    final CompiledSchematron b = CompiledSchematronRegistry.getOrCreate ("b", CompiledSchematronRegistryTest::_create);
+    assertNotSame (a1, b);
+    assertEquals (2, CompiledSchematronRegistry.size ());
+  }
+
+  @Test
+  public void testMaxEntries () throws Exception
+  {
+    for (int i = 0; i < CompiledSchematronRegistry.MAX_ENTRIES; ++i)
+      CompiledSchematronRegistry.getOrCreate ("key" + i, CompiledSchematronRegistryTest::_create);
+    assertEquals (CompiledSchematronRegistry.MAX_ENTRIES, CompiledSchematronRegistry.size ());
+
+    // The next one clears the registry
+    CompiledSchematronRegistry.getOrCreate ("another", CompiledSchematronRegistryTest::_create);
+    assertEquals (1, CompiledSchematronRegistry.size ());
+  }
+}
@@ -17,16 +17,26 @@
 package com.helger.maven.schematron;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 
+import javax.annotation.Nonnull;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.testing.MojoRule;
 import org.junit.Rule;
 import org.junit.Test;
 
 import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.io.file.FileOperations;
+import com.helger.commons.io.file.SimpleFileIO;
+import com.helger.commons.string.StringHelper;
 
 public final class Schematron2XSLTMojoTest
 {
@@ -58,4 +68,88 @@ public final class Schematron2XSLTMojoTest
 
     aMojo.execute ();
   }
+
+  @Nonnull
+  private Schematron2XSLTMojo _createMojo (@Nonnull final String sSchematronDir,
+                                           @Nonnull final String sXsltDir) throws Exception
+  {
+    final File aPOM = new File ("src/test/resources/poms/test-sch2xslt1/pom.xml");
+    final Schematron2XSLTMojo aMojo = (Schematron2XSLTMojo) m_aRule.lookupConfiguredMojo (aPOM.getParentFile (),
+                                                                                          "convert");
+    assertNotNull (aMojo);
+    aMojo.setSchematronDirectory (new File (sSchematronDir).getAbsoluteFile ());
+    aMojo.setXsltDirectory (new File (sXsltDir).getAbsoluteFile ());
+    return aMojo;
+  }
+
+  @Test
+  public void testThreadCount () throws Exception
+  {
+    final File aXsltDir = new File ("target/test/sch2xslt-threads").getAbsoluteFile ();
+    FileOperations.deleteDirRecursiveIfExisting (aXsltDir);
+
+    final Schematron2XSLTMojo aMojo = _createMojo ("src/test/resources/schematron-multi", aXsltDir.getPath ());
+    aMojo.setThreadCount (2);
+    aMojo.execute ();
+    assertTrue (new File (aXsltDir, "items1.xslt").isFile ());
+    assertTrue (new File (aXsltDir, "items2.xslt").isFile ());
+  }
+
+  @Test
+  public void testIncremental () throws Exception
+  {
+    final File aXsltDir = new File ("target/test/sch2xslt-incremental").getAbsoluteFile ();
+    FileOperations.deleteDirRecursiveIfExisting (aXsltDir);
+    final File aStateFile = new File (aXsltDir, "convert.state");
+
+    Schematron2XSLTMojo aMojo = _createMojo ("src/test/resources/schematron-multi", aXsltDir.getPath ());
+    aMojo.setIncremental (true);
+    aMojo.setIncrementalStateFile (aStateFile);
+    aMojo.execute ();
+    final String sState = SimpleFileIO.getFileAsString (aStateFile, StandardCharsets.UTF_8);
+    assertNotNull (sState);
+    assertEquals (2, StringHelper.getExploded ('\n', sState.trim ()).size ());
+
+    // Only the missing XSLT file is converted again
+    final File aXsltFile = new File (aXsltDir, "items1.xslt");
+    assertTrue (aXsltFile.delete ());
+    final File aUnchangedFile = new File (aXsltDir, "items2.xslt");
+    assertTrue (aUnchangedFile.setLastModified (1000));
+    aMojo = _createMojo ("src/test/resources/schematron-multi", aXsltDir.getPath ());
+    aMojo.setIncremental (true);
+    aMojo.setIncrementalStateFile (aStateFile);
+    aMojo.execute ();
+    assertTrue (aXsltFile.isFile ());
+    assertEquals (1000, aUnchangedFile.lastModified ());
+    assertEquals (sState, SimpleFileIO.getFileAsString (aStateFile, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testIncrementalStateIsSavedOnError () throws Exception
+  {
+    final File aXsltDir = new File ("target/test/sch2xslt-broken").getAbsoluteFile ();
+    FileOperations.deleteDirRecursiveIfExisting (aXsltDir);
+    final File aStateFile = new File (aXsltDir, "convert.state");
+
+    final Schematron2XSLTMojo aMojo = _createMojo ("src/test/resources/schematron-broken", aXsltDir.getPath ());
+    aMojo.setThreadCount (2);
+    aMojo.setIncremental (true);
+    aMojo.setIncrementalStateFile (aStateFile);
+    try
+    {
+      aMojo.execute ();
+      fail ();
+    }
+    catch (final MojoExecutionException | MojoFailureException ex)
+    {
+      // Expected - items2.sch is not well-formed
+    }
+
+    // The valid file was converted and remembered
+    assertTrue (new File (aXsltDir, "items1.xslt").isFile ());
+    final String sState = SimpleFileIO.getFileAsString (aStateFile, StandardCharsets.UTF_8);
+    assertNotNull (sState);
+    assertTrue (sState.contains ("items1.xslt"));
+    assertFalse (sState.contains ("items2.xslt"));
+  }
 }
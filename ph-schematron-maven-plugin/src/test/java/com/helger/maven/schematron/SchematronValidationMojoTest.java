@@ -18,10 +18,14 @@ package com.helger.maven.schematron;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
 
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.testing.MojoRule;
@@ -29,6 +33,14 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.io.file.FileOperations;
+import com.helger.commons.io.file.SimpleFileIO;
+import com.helger.commons.string.StringHelper;
+import com.helger.schematron.ISchematronResource;
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.pure.errorhandler.DetachablePSErrorHandler;
+import com.helger.schematron.pure.errorhandler.IPSErrorHandler;
+import com.helger.schematron.xslt.SchematronResourceSCH;
 
 public final class SchematronValidationMojoTest
 {
@@ -91,4 +103,121 @@ public final class SchematronValidationMojoTest
       // Expected error
     }
   }
+
+  @Nonnull
+  private SchematronValidationMojo _createMojo (@Nonnull final String sXmlIncludes) throws Exception
+  {
+    final File aPOM = new File ("src/test/resources/poms/test-validate1/pom.xml").getAbsoluteFile ();
+    final SchematronValidationMojo aMojo = (SchematronValidationMojo) m_aRule.lookupConfiguredMojo (aPOM.getParentFile (),
+                                                                                                    "validate");
+    assertNotNull (aMojo);
+    aMojo.setSchematronFile (new File ("src/test/resources/schematron/check-classifications.sch").getAbsoluteFile ());
+    aMojo.setXmlDirectory (new File ("src/test/resources/data").getAbsoluteFile ());
+    aMojo.setXmlIncludes (sXmlIncludes);
+    return aMojo;
+  }
+
+  @Test
+  public void testThreadCount () throws Exception
+  {
+    final SchematronValidationMojo aMojo = _createMojo ("*-valid.xml");
+    aMojo.setXmlErrorDirectory (new File ("src/test/resources/data2").getAbsoluteFile ());
+    aMojo.setXmlErrorIncludes ("*-invalid.xml");
+    aMojo.setThreadCount (4);
+    aMojo.execute ();
+  }
+
+  @Test
+  public void testIncremental () throws Exception
+  {
+    final File aStateFile = new File ("target/test-incremental/validation.state").getAbsoluteFile ();
+    FileOperations.deleteFileIfExisting (aStateFile);
+
+    // First run validates and remembers the file
+    SchematronValidationMojo aMojo = _createMojo ("*-valid.xml");
+    aMojo.setIncremental (true);
+    aMojo.setIncrementalStateFile (aStateFile);
+    aMojo.execute ();
+    final String sState = SimpleFileIO.getFileAsString (aStateFile, StandardCharsets.UTF_8);
+    assertNotNull (sState);
+    assertEquals (1, StringHelper.getExploded ('\n', sState.trim ()).size ());
+
+    // Second run skips the unchanged file and keeps the state
+    aMojo = _createMojo ("*-valid.xml");
+    aMojo.setIncremental (true);
+    aMojo.setIncrementalStateFile (aStateFile);
+    aMojo.execute ();
+    assertEquals (sState, SimpleFileIO.getFileAsString (aStateFile, StandardCharsets.UTF_8));
+
+    // Files that are no longer validated are removed from the state
+    aMojo = _createMojo ("*-does-not-exist.xml");
+    aMojo.setIncremental (true);
+    aMojo.setIncrementalStateFile (aStateFile);
+    aMojo.execute ();
+    assertEquals ("", SimpleFileIO.getFileAsString (aStateFile, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testIncrementalSharedStateFile () throws Exception
+  {
+    final File aStateFile = new File ("target/test-incremental-shared/validation.state").getAbsoluteFile ();
+    FileOperations.deleteFileIfExisting (aStateFile);
+    final File aOtherDir = new File ("target/test-incremental-shared/xml").getAbsoluteFile ();
+    FileOperations.createDirRecursiveIfNotExisting (aOtherDir);
+    FileOperations.copyFile (new File ("src/test/resources/data/check-classification-valid.xml"),
+                             new File (aOtherDir, "check-classification-valid.xml"));
+
+    // Two executions on different directories share the state file
+    SchematronValidationMojo aMojo = _createMojo ("*-valid.xml");
+    aMojo.setIncremental (true);
+    aMojo.setIncrementalStateFile (aStateFile);
+    aMojo.execute ();
+
+    aMojo = _createMojo ("*-valid.xml");
+    aMojo.setXmlDirectory (aOtherDir);
+    aMojo.setIncremental (true);
+    aMojo.setIncrementalStateFile (aStateFile);
+    aMojo.execute ();
+
+    // The second execution must not prune the entries of the first one
+    final String sState = SimpleFileIO.getFileAsString (aStateFile, StandardCharsets.UTF_8);
+    assertNotNull (sState);
+    assertEquals (2, StringHelper.getExploded ('\n', sState.trim ()).size ());
+  }
+
+  @Test
+  public void testReusedResourceDoesNotCollect () throws Exception
+  {
+    for (final String sEngine : new String [] { "pure", "schematron" })
+    {
+      CompiledSchematronRegistry.clear ();
+      try
+      {
+        for (int i = 0; i < 2; ++i)
+        {
+          final SchematronValidationMojo aMojo = _createMojo ("*-valid.xml");
+          aMojo.setSchematronProcessingEngine (sEngine);
+          aMojo.setReuseCompiledSchematron (true);
+          aMojo.execute ();
+        }
+        assertEquals (1, CompiledSchematronRegistry.size ());
+
+        // The error handler of the first execution must not be kept
+        final ISchematronResource aRes = CompiledSchematronRegistry.getAll ().getFirst ().getResource ();
+        if (aRes instanceof SchematronResourcePure)
+        {
+          // The bound schema keeps its handler, so it must be detached
+          final IPSErrorHandler aErrorHdl = ((SchematronResourcePure) aRes).getErrorHandler ();
+          assertTrue (aErrorHdl instanceof DetachablePSErrorHandler);
+          assertTrue (((DetachablePSErrorHandler) aErrorHdl).isDetached ());
+        }
+        else
+          assertNull (((SchematronResourceSCH) aRes).getErrorListener ());
+      }
+      finally
+      {
+        CompiledSchematronRegistry.clear ();
+      }
+    }
+  }
 }
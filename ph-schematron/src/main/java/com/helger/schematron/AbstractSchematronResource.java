@@ -16,12 +16,15 @@
  */
 package com.helger.schematron;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamSource;
 
 import org.slf4j.Logger;
@@ -29,11 +32,14 @@ import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.io.IHasInputStream;
 import com.helger.commons.io.resource.IReadableResource;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
 import com.helger.commons.state.EValidity;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.schematron.svrl.jaxb.SchematronOutputType;
@@ -53,12 +59,14 @@ import com.helger.xml.transform.TransformSourceFactory;
 public abstract class AbstractSchematronResource implements ISchematronResource
 {
   public static final boolean DEFAULT_USE_CACHE = true;
+  public static final boolean DEFAULT_USE_POOLED_PARSER = true;
 
   private static final Logger LOGGER = LoggerFactory.getLogger (AbstractSchematronResource.class);
 
   private final IReadableResource m_aResource;
   private final String m_sResourceID;
   private boolean m_bUseCache = DEFAULT_USE_CACHE;
+  private boolean m_bUsePooledParser = DEFAULT_USE_POOLED_PARSER;
   private boolean m_bLenient = CSchematron.DEFAULT_ALLOW_DEPRECATED_NAMESPACES;
   private EntityResolver m_aEntityResolver;
 
@@ -98,6 +106,34 @@ public abstract class AbstractSchematronResource implements ISchematronResource
     m_bUseCache = bUseCache;
   }
 
+  /**
+   * @return <code>true</code> if the XML to be validated is read with the
+   *         per-thread parsers of {@link PooledDOMReader}, <code>false</code>
+   *         if a new parser is created from
+   *         {@link #internalCreateDOMReaderSettings()} for each document.
+   * @since 5.6.1
+   */
+  public final boolean isUsePooledParser ()
+  {
+    return m_bUsePooledParser;
+  }
+
+  /**
+   * Define whether the XML to be validated is read with the per-thread parsers
+   * of {@link PooledDOMReader}. Implementations that override
+   * {@link #internalCreateDOMReaderSettings()} must disable this, otherwise
+   * their settings are not used.
+   *
+   * @param bUsePooledParser
+   *        <code>true</code> to use the pooled parsers, <code>false</code> to
+   *        use {@link #internalCreateDOMReaderSettings()}.
+   * @since 5.6.1
+   */
+  public final void setUsePooledParser (final boolean bUsePooledParser)
+  {
+    m_bUsePooledParser = bUsePooledParser;
+  }
+
   public final boolean isLenient ()
   {
     return m_bLenient;
@@ -129,11 +165,41 @@ public abstract class AbstractSchematronResource implements ISchematronResource
     m_aEntityResolver = aEntityResolver;
   }
 
+  /**
+   * Create the validation time settings of the result fingerprint (see
+   * {@link #getResultFingerprint()}) that are common to all implementations:
+   * the implementation class, the resource, the lenient flag, the pooled
+   * parser flag and the type of the entity resolver.
+   *
+   * @return A new string builder that may be extended by the implementations.
+   *         Never <code>null</code>.
+   * @since 5.6.1
+   */
+  @Nonnull
+  protected final StringBuilder createResultConfiguration ()
+  {
+    final StringBuilder ret = new StringBuilder ();
+    ret.append (getClass ().getName ())
+       .append ('|')
+       .append (m_sResourceID)
+       .append ("|lenient=")
+       .append (m_bLenient)
+       .append ("|pooledParser=")
+       .append (m_bUsePooledParser);
+    if (m_aEntityResolver != null)
+      ret.append ("|entityResolver=").append (m_aEntityResolver.getClass ().getName ());
+    return ret;
+  }
+
   /**
    * @return The {@link DOMReaderSettings} to be used for reading the XML files
    *         to be validated. This includes the {@link EntityResolver} to be
-   *         used.
+   *         used. This method is only used if the pooled parsers are disabled,
+   *         otherwise the equally configured per-thread parsers of
+   *         {@link PooledDOMReader} are used instead.
    * @see #getEntityResolver()
+   * @see #setUsePooledParser(boolean)
+   * @see #internalReadXMLDOM(InputStream, String)
    */
   @Nonnull
   @ReturnsMutableCopy
@@ -155,6 +221,39 @@ public abstract class AbstractSchematronResource implements ISchematronResource
     return aDRS;
   }
 
+  /**
+   * Read an XML document to be validated. The per-thread parser of the
+   * {@link PooledDOMReader} is used, unless the pooled parsers are disabled
+   * (see {@link #setUsePooledParser(boolean)}). In that case
+   * {@link #internalCreateDOMReaderSettings()} is used.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>. It is
+   *        not closed by this method.
+   * @param sSystemID
+   *        The system ID (base URI) of the document. May be <code>null</code>.
+   * @return The parsed document. Never <code>null</code>.
+   * @throws SAXException
+   *         If the document is not well-formed
+   * @throws IOException
+   *         If reading fails
+   * @since 5.6.1
+   */
+  @Nonnull
+  protected final Document internalReadXMLDOM (@Nonnull final InputStream aIS,
+                                               @Nullable final String sSystemID) throws SAXException, IOException
+  {
+    if (m_bUsePooledParser)
+      return PooledDOMReader.readXMLDOM (aIS, sSystemID, m_aEntityResolver);
+
+    final InputSource aInputSource = new InputSource (aIS);
+    aInputSource.setSystemId (sSystemID);
+    final Document ret = DOMReader.readXMLDOM (aInputSource, internalCreateDOMReaderSettings ());
+    if (ret == null)
+      throw new SAXException ("Failed to read XML document " + sSystemID);
+    return ret;
+  }
+
   protected static final class NodeAndBaseURI
   {
     private final Document m_aDoc;
@@ -187,14 +286,52 @@ public abstract class AbstractSchematronResource implements ISchematronResource
       LOGGER.warn ("XML resource " + aXMLResource + " does not exist!");
       return null;
     }
-    final Document aDoc = DOMReader.readXMLDOM (aIS, internalCreateDOMReaderSettings ());
-    if (aDoc == null)
-      throw new IllegalArgumentException ("Failed to read resource " + aXMLResource + " as XML");
+    final Document aDoc;
+    try
+    {
+      aDoc = internalReadXMLDOM (aIS, aStreamSrc.getSystemId ());
+    }
+    catch (final SAXException ex)
+    {
+      throw new IllegalArgumentException ("Failed to read resource " + aXMLResource + " as XML", ex);
+    }
+    finally
+    {
+      aIS.close ();
+    }
 
-    LOGGER.info ("Read XML resource " + aXMLResource);
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Read XML resource " + aXMLResource);
     return new NodeAndBaseURI (aDoc, aStreamSrc.getSystemId ());
   }
 
+  /**
+   * Read the passed XML resource in the same way as the validation methods
+   * taking an {@link IHasInputStream} do. This can be used to separate XML
+   * parsing from the Schematron validation.
+   *
+   * @param aXMLResource
+   *        The XML resource to read. May not be <code>null</code>.
+   * @return The read document with the system ID of the resource or
+   *         <code>null</code> if the resource does not exist.
+   * @throws Exception
+   *         In case reading fails
+   * @since 5.6.1
+   */
+  @Nullable
+  public final DOMSource readXMLResource (@Nonnull final IHasInputStream aXMLResource) throws Exception
+  {
+    ValueEnforcer.notNull (aXMLResource, "XMLResource");
+
+    final NodeAndBaseURI aXMLNode = getAsNode (aXMLResource);
+    if (aXMLNode == null)
+      return null;
+
+    final DOMSource ret = new DOMSource (aXMLNode.m_aDoc);
+    ret.setSystemId (aXMLNode.m_sBaseURI);
+    return ret;
+  }
+
   @Nullable
   protected Node getAsNode (@Nonnull final Source aXMLSource) throws Exception
   {
@@ -282,11 +419,56 @@ public abstract class AbstractSchematronResource implements ISchematronResource
     return applySchematronValidationToSVRL (aXMLNode, aXMLSource.getSystemId ());
   }
 
+  @Override
+  @Nonnull
+  public EValidity getSchematronValidity (@Nonnull final byte [] aXML,
+                                          @Nullable final String sBaseURI) throws Exception
+  {
+    ValueEnforcer.notNull (aXML, "XML");
+    if (!isValidSchematron ())
+      return EValidity.INVALID;
+    return getSchematronValidity (internalReadXMLDOM (new NonBlockingByteArrayInputStream (aXML), sBaseURI), sBaseURI);
+  }
+
+  @Override
+  @Nonnull
+  public EValidity getSchematronValidity (@Nonnull final ByteBuffer aXML,
+                                          @Nullable final String sBaseURI) throws Exception
+  {
+    if (!isValidSchematron ())
+      return EValidity.INVALID;
+    return getSchematronValidity (internalReadXMLDOM (PooledDOMReader.getAsInputStream (aXML), sBaseURI), sBaseURI);
+  }
+
+  @Override
+  @Nullable
+  public SchematronOutputType applySchematronValidationToSVRL (@Nonnull final byte [] aXML,
+                                                               @Nullable final String sBaseURI) throws Exception
+  {
+    ValueEnforcer.notNull (aXML, "XML");
+    if (!isValidSchematron ())
+      return null;
+    return applySchematronValidationToSVRL (internalReadXMLDOM (new NonBlockingByteArrayInputStream (aXML), sBaseURI),
+                                            sBaseURI);
+  }
+
+  @Override
+  @Nullable
+  public SchematronOutputType applySchematronValidationToSVRL (@Nonnull final ByteBuffer aXML,
+                                                               @Nullable final String sBaseURI) throws Exception
+  {
+    if (!isValidSchematron ())
+      return null;
+    return applySchematronValidationToSVRL (internalReadXMLDOM (PooledDOMReader.getAsInputStream (aXML), sBaseURI),
+                                            sBaseURI);
+  }
+
   @Override
   public String toString ()
   {
     return new ToStringGenerator (this).append ("Resource", m_aResource)
                                        .append ("UseCache", m_bUseCache)
+                                       .append ("UsePooledParser", m_bUsePooledParser)
                                        .appendIfNotNull ("EntityResolver", m_aEntityResolver)
                                        .getToString ();
   }
@@ -16,6 +16,12 @@
  */
 package com.helger.schematron;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.xml.transform.Source;
@@ -98,6 +104,26 @@ public interface ISchematronResource extends IHasID <String>
    */
   boolean isValidSchematron ();
 
+  /**
+   * Get the fingerprint of everything that influences the validation results
+   * of this resource: the Schematron content including all includes and all
+   * result relevant settings. Two validations of the same XML with an equal
+   * fingerprint must deliver equal results. This is e.g. used by
+   * {@link com.helger.schematron.resultcache.SchematronResultCache}.
+   *
+   * @return <code>null</code> if the results of this resource must not be
+   *         cached, e.g. because the Schematron is invalid or because the
+   *         results may depend on settings that cannot be represented in a
+   *         fingerprint. The default implementation always returns
+   *         <code>null</code>.
+   * @since 5.6.1
+   */
+  @Nullable
+  default SchematronResultFingerprint getResultFingerprint ()
+  {
+    return null;
+  }
+
   /**
    * A method to check if the passed XML DOM node matches the Schematron rules
    * or not. This is the quick check method, as it breaks upon the first failed
@@ -254,4 +280,135 @@ public interface ISchematronResource extends IHasID <String>
    */
   @Nullable
   SchematronOutputType applySchematronValidationToSVRL (@Nonnull Source aXMLSource) throws Exception;
+
+  /**
+   * A method to check if the passed XML bytes match the Schematron rules or
+   * not. The XML is read with a per-thread reusable parser (see
+   * {@link PooledDOMReader}) without copying the bytes.
+   *
+   * @param aXML
+   *        The XML bytes to validate. May not be <code>null</code>.
+   * @param sBaseURI
+   *        The Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   * @return {@link EValidity#VALID} if the document is valid,
+   *         {@link EValidity#INVALID} if it is invalid.
+   * @throws Exception
+   *         in case of a sever error validating the schema
+   * @since 5.6.1
+   */
+  @Nonnull
+  default EValidity getSchematronValidity (@Nonnull final byte [] aXML,
+                                           @Nullable final String sBaseURI) throws Exception
+  {
+    if (!isValidSchematron ())
+      return EValidity.INVALID;
+    return getSchematronValidity (PooledDOMReader.readXMLDOM (aXML, sBaseURI, getEntityResolver ()), sBaseURI);
+  }
+
+  /**
+   * A method to check if the remaining bytes of the passed buffer match the
+   * Schematron rules or not. The XML is read with a per-thread reusable parser
+   * (see {@link PooledDOMReader}) without copying the bytes. The position of
+   * the buffer is not modified.
+   *
+   * @param aXML
+   *        The XML buffer to validate. May not be <code>null</code>.
+   * @param sBaseURI
+   *        The Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   * @return {@link EValidity#VALID} if the document is valid,
+   *         {@link EValidity#INVALID} if it is invalid.
+   * @throws Exception
+   *         in case of a sever error validating the schema
+   * @since 5.6.1
+   */
+  @Nonnull
+  default EValidity getSchematronValidity (@Nonnull final ByteBuffer aXML,
+                                           @Nullable final String sBaseURI) throws Exception
+  {
+    if (!isValidSchematron ())
+      return EValidity.INVALID;
+    return getSchematronValidity (PooledDOMReader.readXMLDOM (aXML, sBaseURI, getEntityResolver ()), sBaseURI);
+  }
+
+  /**
+   * Apply the Schematron validation on the passed XML bytes and return a
+   * {@link SchematronOutputType} object. The XML is read with a per-thread
+   * reusable parser (see {@link PooledDOMReader}) without copying the bytes.
+   *
+   * @param aXML
+   *        The XML bytes to validate. May not be <code>null</code>.
+   * @param sBaseURI
+   *        The Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   * @return The SVRL object containing the result. May be <code>null</code>
+   *         when interpreting the Schematron failed.
+   * @throws Exception
+   *         In case the transformation somehow goes wrong.
+   * @since 5.6.1
+   */
+  @Nullable
+  default SchematronOutputType applySchematronValidationToSVRL (@Nonnull final byte [] aXML,
+                                                                @Nullable final String sBaseURI) throws Exception
+  {
+    if (!isValidSchematron ())
+      return null;
+    return applySchematronValidationToSVRL (PooledDOMReader.readXMLDOM (aXML, sBaseURI, getEntityResolver ()),
+                                            sBaseURI);
+  }
+
+  /**
+   * Apply the Schematron validation on the remaining bytes of the passed
+   * buffer and return a {@link SchematronOutputType} object. The XML is read
+   * with a per-thread reusable parser (see {@link PooledDOMReader}) without
+   * copying the bytes. The position of the buffer is not modified.
+   *
+   * @param aXML
+   *        The XML buffer to validate. May not be <code>null</code>.
+   * @param sBaseURI
+   *        The Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   * @return The SVRL object containing the result. May be <code>null</code>
+   *         when interpreting the Schematron failed.
+   * @throws Exception
+   *         In case the transformation somehow goes wrong.
+   * @since 5.6.1
+   */
+  @Nullable
+  default SchematronOutputType applySchematronValidationToSVRL (@Nonnull final ByteBuffer aXML,
+                                                                @Nullable final String sBaseURI) throws Exception
+  {
+    if (!isValidSchematron ())
+      return null;
+    return applySchematronValidationToSVRL (PooledDOMReader.readXMLDOM (aXML, sBaseURI, getEntityResolver ()),
+                                            sBaseURI);
+  }
+
+  /**
+   * Apply the Schematron validation on the passed XML file and return a
+   * {@link SchematronOutputType} object. The file is memory-mapped and read
+   * with a per-thread reusable parser (see {@link PooledDOMReader}).
+   *
+   * @param aXMLFile
+   *        The XML file to validate. May not be <code>null</code>.
+   * @return The SVRL object containing the result. May be <code>null</code>
+   *         when interpreting the Schematron failed.
+   * @throws IOException
+   *         In case the file cannot be mapped
+   * @throws Exception
+   *         In case the transformation somehow goes wrong.
+   * @since 5.6.1
+   */
+  @Nullable
+  default SchematronOutputType applySchematronValidationToSVRLMapped (@Nonnull final Path aXMLFile) throws Exception
+  {
+    if (!isValidSchematron ())
+      return null;
+    try (final FileChannel aFC = FileChannel.open (aXMLFile, StandardOpenOption.READ))
+    {
+      final ByteBuffer aMapped = aFC.map (FileChannel.MapMode.READ_ONLY, 0, aFC.size ());
+      return applySchematronValidationToSVRL (aMapped, aXMLFile.toUri ().toString ());
+    }
+  }
 }
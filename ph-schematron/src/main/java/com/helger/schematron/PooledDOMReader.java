@@ -0,0 +1,396 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+
+/**
+ * Read XML documents to be validated with a per-thread, reusable
+ * {@link DocumentBuilder}. The builders are configured once with the same
+ * security features as
+ * {@link com.helger.xml.EXMLParserFeature#AVOID_XML_ATTACKS} (no DOCTYPE, no
+ * external entities, no external DTDs, no XInclude, secure processing) and
+ * are reset after each document. For XSLT processors that build their own
+ * tree model, {@link SAXSource}s with an equally configured per-thread
+ * {@link XMLReader} can be created.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@Immutable
+public final class PooledDOMReader
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (PooledDOMReader.class);
+
+  /**
+   * Logs warnings and errors and fails only on fatal errors - the same as the
+   * default DOMReader handling.
+   */
+  private static final ErrorHandler ERROR_HANDLER = new ErrorHandler ()
+  {
+    public void warning (@Nonnull final SAXParseException ex)
+    {
+      LOGGER.warn ("XML parser warning: " + ex.getMessage ());
+    }
+
+    public void error (@Nonnull final SAXParseException ex)
+    {
+      LOGGER.error ("XML parser error: " + ex.getMessage ());
+    }
+
+    public void fatalError (@Nonnull final SAXParseException ex) throws SAXException
+    {
+      throw ex;
+    }
+  };
+
+  private static final DocumentBuilderFactory FACTORY = _createFactory ();
+
+  private static final ThreadLocal <DocumentBuilder> BUILDERS = ThreadLocal.withInitial ( () -> {
+    try
+    {
+      // The factory itself is not thread-safe
+      synchronized (FACTORY)
+      {
+        return FACTORY.newDocumentBuilder ();
+      }
+    }
+    catch (final ParserConfigurationException ex)
+    {
+      throw new IllegalStateException ("Failed to create DocumentBuilder", ex);
+    }
+  });
+
+  private static final SAXParserFactory SAX_FACTORY = _createSAXFactory ();
+
+  private static final ThreadLocal <SAXParser> SAX_PARSERS = ThreadLocal.withInitial ( () -> {
+    try
+    {
+      // The factory itself is not thread-safe
+      synchronized (SAX_FACTORY)
+      {
+        return SAX_FACTORY.newSAXParser ();
+      }
+    }
+    catch (final ParserConfigurationException | SAXException ex)
+    {
+      throw new IllegalStateException ("Failed to create SAXParser", ex);
+    }
+  });
+
+  private PooledDOMReader ()
+  {}
+
+  private static void _setFeature (@Nonnull final DocumentBuilderFactory aDBF,
+                                   @Nonnull final String sFeature,
+                                   final boolean bValue)
+  {
+    try
+    {
+      aDBF.setFeature (sFeature, bValue);
+    }
+    catch (final ParserConfigurationException ex)
+    {
+      LOGGER.warn ("XML parser does not support feature '" + sFeature + "'");
+    }
+  }
+
+  @Nonnull
+  private static DocumentBuilderFactory _createFactory ()
+  {
+    final DocumentBuilderFactory aDBF = DocumentBuilderFactory.newInstance ();
+    aDBF.setNamespaceAware (true);
+    aDBF.setValidating (false);
+    aDBF.setXIncludeAware (false);
+    aDBF.setExpandEntityReferences (false);
+    _setFeature (aDBF, XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    _setFeature (aDBF, "http://apache.org/xml/features/disallow-doctype-decl", true);
+    _setFeature (aDBF, "http://xml.org/sax/features/external-general-entities", false);
+    _setFeature (aDBF, "http://xml.org/sax/features/external-parameter-entities", false);
+    _setFeature (aDBF, "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+    return aDBF;
+  }
+
+  private static void _setFeature (@Nonnull final SAXParserFactory aSPF,
+                                   @Nonnull final String sFeature,
+                                   final boolean bValue)
+  {
+    try
+    {
+      aSPF.setFeature (sFeature, bValue);
+    }
+    catch (final ParserConfigurationException | SAXNotRecognizedException | SAXNotSupportedException ex)
+    {
+      LOGGER.warn ("XML parser does not support feature '" + sFeature + "'");
+    }
+  }
+
+  @Nonnull
+  private static SAXParserFactory _createSAXFactory ()
+  {
+    final SAXParserFactory aSPF = SAXParserFactory.newInstance ();
+    aSPF.setNamespaceAware (true);
+    aSPF.setValidating (false);
+    aSPF.setXIncludeAware (false);
+    _setFeature (aSPF, XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    _setFeature (aSPF, "http://apache.org/xml/features/disallow-doctype-decl", true);
+    _setFeature (aSPF, "http://xml.org/sax/features/external-general-entities", false);
+    _setFeature (aSPF, "http://xml.org/sax/features/external-parameter-entities", false);
+    _setFeature (aSPF, "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+    return aSPF;
+  }
+
+  /**
+   * Create a {@link SAXSource} for the passed input stream that uses the
+   * {@link XMLReader} of the current thread, which has the same security
+   * features as the pooled {@link DocumentBuilder}s. This allows XSLT
+   * processors to build their own native tree model instead of working on a
+   * DOM. As the reader is reused, the returned source must be parsed before
+   * the next source is created on the same thread.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>.
+   * @param sSystemID
+   *        The system ID (base URI) of the document. May be <code>null</code>.
+   * @param aEntityResolver
+   *        The entity resolver to use. May be <code>null</code>.
+   * @return The SAX source. Never <code>null</code>.
+   * @throws SAXException
+   *         If the XML reader cannot be configured
+   */
+  @Nonnull
+  public static SAXSource createSAXSource (@Nonnull final InputStream aIS,
+                                           @Nullable final String sSystemID,
+                                           @Nullable final EntityResolver aEntityResolver) throws SAXException
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+
+    final SAXParser aSAXParser = SAX_PARSERS.get ();
+    // Make it usable for the next document on this thread
+    aSAXParser.reset ();
+    final XMLReader aXMLReader = aSAXParser.getXMLReader ();
+    aXMLReader.setEntityResolver (aEntityResolver);
+    aXMLReader.setErrorHandler (ERROR_HANDLER);
+
+    final InputSource aInputSource = new InputSource (aIS);
+    aInputSource.setSystemId (sSystemID);
+    final SAXSource ret = new SAXSource (aXMLReader, aInputSource);
+    ret.setSystemId (sSystemID);
+    return ret;
+  }
+
+  /**
+   * Create a {@link SAXSource} for the remaining bytes of a {@link ByteBuffer}
+   * without copying them. The position of the passed buffer is not modified.
+   *
+   * @param aXML
+   *        The buffer to read. May not be <code>null</code>.
+   * @param sSystemID
+   *        The system ID (base URI) of the document. May be <code>null</code>.
+   * @param aEntityResolver
+   *        The entity resolver to use. May be <code>null</code>.
+   * @return The SAX source. Never <code>null</code>.
+   * @throws SAXException
+   *         If the XML reader cannot be configured
+   * @see #createSAXSource(InputStream, String, EntityResolver)
+   */
+  @Nonnull
+  public static SAXSource createSAXSource (@Nonnull final ByteBuffer aXML,
+                                           @Nullable final String sSystemID,
+                                           @Nullable final EntityResolver aEntityResolver) throws SAXException
+  {
+    return createSAXSource (getAsInputStream (aXML), sSystemID, aEntityResolver);
+  }
+
+  /**
+   * Read an XML document with the {@link DocumentBuilder} of the current
+   * thread.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>. It is
+   *        not closed by this method.
+   * @param sSystemID
+   *        The system ID (base URI) of the document. May be <code>null</code>.
+   * @param aEntityResolver
+   *        The entity resolver to use. May be <code>null</code>.
+   * @return The parsed document. Never <code>null</code>.
+   * @throws SAXException
+   *         If the document is not well-formed
+   * @throws IOException
+   *         If reading fails
+   */
+  @Nonnull
+  public static Document readXMLDOM (@Nonnull final InputStream aIS,
+                                     @Nullable final String sSystemID,
+                                     @Nullable final EntityResolver aEntityResolver) throws SAXException, IOException
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+
+    final InputSource aInputSource = new InputSource (aIS);
+    aInputSource.setSystemId (sSystemID);
+
+    final DocumentBuilder aBuilder = BUILDERS.get ();
+    try
+    {
+      aBuilder.setEntityResolver (aEntityResolver);
+      aBuilder.setErrorHandler (ERROR_HANDLER);
+      return aBuilder.parse (aInputSource);
+    }
+    finally
+    {
+      // Make it usable for the next document on this thread
+      aBuilder.reset ();
+    }
+  }
+
+  /**
+   * Read an XML document from a byte array without copying it.
+   *
+   * @param aXML
+   *        The bytes to read. May not be <code>null</code>.
+   * @param sSystemID
+   *        The system ID (base URI) of the document. May be <code>null</code>.
+   * @param aEntityResolver
+   *        The entity resolver to use. May be <code>null</code>.
+   * @return The parsed document. Never <code>null</code>.
+   * @throws SAXException
+   *         If the document is not well-formed
+   * @throws IOException
+   *         If reading fails
+   */
+  @Nonnull
+  public static Document readXMLDOM (@Nonnull final byte [] aXML,
+                                     @Nullable final String sSystemID,
+                                     @Nullable final EntityResolver aEntityResolver) throws SAXException, IOException
+  {
+    ValueEnforcer.notNull (aXML, "XML");
+    return readXMLDOM (new NonBlockingByteArrayInputStream (aXML), sSystemID, aEntityResolver);
+  }
+
+  /**
+   * Read an XML document from the remaining bytes of a {@link ByteBuffer}
+   * (e.g. a memory-mapped file) without copying it. The position of the
+   * passed buffer is not modified.
+   *
+   * @param aXML
+   *        The buffer to read. May not be <code>null</code>.
+   * @param sSystemID
+   *        The system ID (base URI) of the document. May be <code>null</code>.
+   * @param aEntityResolver
+   *        The entity resolver to use. May be <code>null</code>.
+   * @return The parsed document. Never <code>null</code>.
+   * @throws SAXException
+   *         If the document is not well-formed
+   * @throws IOException
+   *         If reading fails
+   */
+  @Nonnull
+  public static Document readXMLDOM (@Nonnull final ByteBuffer aXML,
+                                     @Nullable final String sSystemID,
+                                     @Nullable final EntityResolver aEntityResolver) throws SAXException, IOException
+  {
+    return readXMLDOM (getAsInputStream (aXML), sSystemID, aEntityResolver);
+  }
+
+  /**
+   * Get an {@link InputStream} on the remaining bytes of a {@link ByteBuffer}
+   * without copying them. The position of the passed buffer is not modified.
+   *
+   * @param aXML
+   *        The buffer to read. May not be <code>null</code>.
+   * @return The input stream. Never <code>null</code>.
+   */
+  @Nonnull
+  public static InputStream getAsInputStream (@Nonnull final ByteBuffer aXML)
+  {
+    ValueEnforcer.notNull (aXML, "XML");
+    if (aXML.hasArray ())
+    {
+      // Heap buffer
+      return new NonBlockingByteArrayInputStream (aXML.array (),
+                                                  aXML.arrayOffset () + aXML.position (),
+                                                  aXML.remaining ());
+    }
+    return new ByteBufferInputStream (aXML.duplicate ());
+  }
+
+  /**
+   * A simple {@link InputStream} on the remaining bytes of a
+   * {@link ByteBuffer}.
+   */
+  private static final class ByteBufferInputStream extends InputStream
+  {
+    private final ByteBuffer m_aBuffer;
+
+    ByteBufferInputStream (@Nonnull final ByteBuffer aBuffer)
+    {
+      m_aBuffer = aBuffer;
+    }
+
+    @Override
+    public int read ()
+    {
+      return m_aBuffer.hasRemaining () ? m_aBuffer.get () & 0xff : -1;
+    }
+
+    @Override
+    public int read (@Nonnull final byte [] aBuf, final int nOfs, final int nLen)
+    {
+      if (nLen == 0)
+        return 0;
+      if (!m_aBuffer.hasRemaining ())
+        return -1;
+      final int nRead = Math.min (nLen, m_aBuffer.remaining ());
+      m_aBuffer.get (aBuf, nOfs, nRead);
+      return nRead;
+    }
+
+    @Override
+    public int available ()
+    {
+      return m_aBuffer.remaining ();
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A cancellation token with an optional deadline for a single Schematron
+ * validation. The token is bound to the current thread via
+ * {@link #call(Callable)} and is checked cooperatively by the validation
+ * engines:
+ * <ul>
+ * <li>the pure engine checks it before each rule and each rule context
+ * node</li>
+ * <li>the XSLT based engines check it whenever the transformation emits an
+ * SVRL element. Therefore they require the full SVRL including active patterns
+ * and fired rules - other variants fail with an
+ * {@link IllegalStateException}.</li>
+ * </ul>
+ * If the token is cancelled, the validation stops and the SVRL created so far
+ * is returned, marked as incomplete (see
+ * {@link com.helger.schematron.svrl.SVRLHelper#isIncomplete(com.helger.schematron.svrl.jaxb.SchematronOutputType)}).
+ * A single long running XPath expression cannot be interrupted.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public class SchematronCancellationToken
+{
+  private static final ThreadLocal <SchematronCancellationToken> s_aCurrent = new ThreadLocal <> ();
+
+  private final long m_nDeadlineNanos;
+  private final boolean m_bHasDeadline;
+  private final AtomicBoolean m_aCancelled = new AtomicBoolean (false);
+
+  /**
+   * Create a token without a deadline. It can only be cancelled via
+   * {@link #cancel()}.
+   */
+  public SchematronCancellationToken ()
+  {
+    m_nDeadlineNanos = 0;
+    m_bHasDeadline = false;
+  }
+
+  /**
+   * Create a token with a deadline.
+   *
+   * @param aTimeout
+   *        The time budget, starting now. May not be <code>null</code>.
+   */
+  public SchematronCancellationToken (@Nonnull final Duration aTimeout)
+  {
+    ValueEnforcer.notNull (aTimeout, "Timeout");
+    m_nDeadlineNanos = System.nanoTime () + aTimeout.toNanos ();
+    m_bHasDeadline = true;
+  }
+
+  /**
+   * @return <code>true</code> if this token has a deadline.
+   */
+  public boolean hasDeadline ()
+  {
+    return m_bHasDeadline;
+  }
+
+  /**
+   * @return <code>true</code> if the deadline of this token has passed.
+   */
+  public boolean isDeadlineExceeded ()
+  {
+    return m_bHasDeadline && System.nanoTime () - m_nDeadlineNanos >= 0;
+  }
+
+  /**
+   * Cancel the validation(s) using this token. May be called from any thread.
+   */
+  public void cancel ()
+  {
+    m_aCancelled.set (true);
+  }
+
+  /**
+   * @return <code>true</code> if {@link #cancel()} was called or if the
+   *         deadline has passed.
+   */
+  public boolean isCancelled ()
+  {
+    return m_aCancelled.get () || isDeadlineExceeded ();
+  }
+
+  /**
+   * @return A human readable reason why this token is cancelled. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public String getCancellationReason ()
+  {
+    return m_aCancelled.get () ? "Validation was cancelled" : "Validation deadline exceeded";
+  }
+
+  /**
+   * Run the passed callable with this token bound to the current thread. All
+   * validations started from the callable in the current thread are checked
+   * against this token.
+   *
+   * @param aCallable
+   *        The callable to run. May not be <code>null</code>.
+   * @return The result of the callable.
+   * @throws Exception
+   *         If the callable throws an exception.
+   * @param <T>
+   *        The result type
+   */
+  public <T> T call (@Nonnull final Callable <T> aCallable) throws Exception
+  {
+    ValueEnforcer.notNull (aCallable, "Callable");
+
+    final SchematronCancellationToken aOld = s_aCurrent.get ();
+    s_aCurrent.set (this);
+    try
+    {
+      return aCallable.call ();
+    }
+    finally
+    {
+      if (aOld == null)
+        s_aCurrent.remove ();
+      else
+        s_aCurrent.set (aOld);
+    }
+  }
+
+  /**
+   * @return The token bound to the current thread. May be <code>null</code>.
+   */
+  @Nullable
+  public static SchematronCancellationToken getCurrent ()
+  {
+    return s_aCurrent.get ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("deadlineNanos", m_nDeadlineNanos)
+                                       .append ("hasDeadline", m_bHasDeadline)
+                                       .append ("cancelled", m_aCancelled.get ())
+                                       .getToString ();
+  }
+}
@@ -301,7 +301,7 @@ public final class SchematronHelper
                             "'");
 
             // Read XML to be included
-            final IMicroDocument aIncludedDoc = MicroReader.readMicroXML (aIncludeRes, aSettings);
+            final IMicroDocument aIncludedDoc = aIncludeResolver.readIncludedDocument (aIncludeRes, aSettings);
             if (aIncludedDoc == null)
             {
               aErrorHandler.handleError (SingleError.builderError ()
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The fingerprint of everything that influences the validation results of an
+ * {@link ISchematronResource}. It consists of the compiled Schematron (e.g. the
+ * bound schema or the XSLT provider) that is compared by identity, and of a
+ * string with all settings that are only applied at validation time. Because
+ * the compiled Schematron is replaced whenever the Schematron or one of its
+ * includes is reloaded, a reload always results in a new fingerprint.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ * @see ISchematronResource#getResultFingerprint()
+ */
+@Immutable
+public final class SchematronResultFingerprint
+{
+  private final Object m_aCompiledSchematron;
+  private final String m_sConfiguration;
+
+  /**
+   * Constructor
+   *
+   * @param aCompiledSchematron
+   *        The compiled Schematron that is used for validation. It is compared
+   *        by identity. May not be <code>null</code>.
+   * @param sConfiguration
+   *        A stable string representation of all validation time settings. May
+   *        not be <code>null</code>.
+   */
+  public SchematronResultFingerprint (@Nonnull final Object aCompiledSchematron, @Nonnull final String sConfiguration)
+  {
+    ValueEnforcer.notNull (aCompiledSchematron, "CompiledSchematron");
+    ValueEnforcer.notNull (sConfiguration, "Configuration");
+    m_aCompiledSchematron = aCompiledSchematron;
+    m_sConfiguration = sConfiguration;
+  }
+
+  /**
+   * @return The compiled Schematron as passed in the constructor. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public Object getCompiledSchematron ()
+  {
+    return m_aCompiledSchematron;
+  }
+
+  /**
+   * @return The validation time settings as passed in the constructor. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public String getConfiguration ()
+  {
+    return m_sConfiguration;
+  }
+
+  @Override
+  public boolean equals (final Object o)
+  {
+    if (o == this)
+      return true;
+    if (o == null || !getClass ().equals (o.getClass ()))
+      return false;
+    final SchematronResultFingerprint rhs = (SchematronResultFingerprint) o;
+    return m_aCompiledSchematron == rhs.m_aCompiledSchematron && m_sConfiguration.equals (rhs.m_sConfiguration);
+  }
+
+  @Override
+  public int hashCode ()
+  {
+    return new HashCodeGenerator (this).append (System.identityHashCode (m_aCompiledSchematron))
+                                       .append (m_sConfiguration)
+                                       .getHashCode ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("CompiledSchematron", m_aCompiledSchematron.getClass ().getName ())
+                                       .append ("Configuration", m_sConfiguration)
+                                       .getToString ();
+  }
+}
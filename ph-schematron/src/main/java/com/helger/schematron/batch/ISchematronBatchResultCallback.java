@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.batch;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.io.IHasInputStream;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+
+/**
+ * Callback interface for {@link SchematronBatchValidator}. It is invoked once
+ * for every validated document, in the order in which the validations finish.
+ * Invocations may happen concurrently from different threads.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@FunctionalInterface
+public interface ISchematronBatchResultCallback
+{
+  /**
+   * Called after a single document was validated.
+   *
+   * @param nIndex
+   *        The 0-based index of the document in the input sequence.
+   * @param aXMLResource
+   *        The document that was validated. Never <code>null</code>.
+   * @param aSVRL
+   *        The validation result. May be <code>null</code> if the resource
+   *        does not exist or if an exception occurred.
+   * @param aException
+   *        The exception that occurred while reading or validating the
+   *        document. May be <code>null</code>.
+   */
+  void onResult (@Nonnegative int nIndex,
+                 @Nonnull IHasInputStream aXMLResource,
+                 @Nullable SchematronOutputType aSVRL,
+                 @Nullable Throwable aException);
+}
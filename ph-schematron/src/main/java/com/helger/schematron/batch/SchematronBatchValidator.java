@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.batch;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.transform.dom.DOMSource;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.schematron.AbstractSchematronResource;
+import com.helger.schematron.ISchematronResource;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+
+/**
+ * Validate a sequence of XML documents against a single, already compiled
+ * Schematron. XML parsing and Schematron validation are executed as two
+ * separate stages on the provided {@link Executor}, so that parsing of one
+ * document may overlap with the validation of another one. The XML is read
+ * with the settings of the Schematron (see
+ * {@link AbstractSchematronResource#readXMLResource(IHasInputStream)}). The number of
+ * documents that are submitted but not yet finished is limited, so that
+ * submitting blocks the caller if the executor cannot keep up
+ * ("backpressure").<br>
+ * The passed {@link ISchematronResource} must be fully configured before it is
+ * passed to this class and must not be modified afterwards. It is compiled
+ * once in the constructor and afterwards shared by all worker threads.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public class SchematronBatchValidator
+{
+  /** The default maximum number of documents in flight */
+  public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+  private final ISchematronResource m_aSchematron;
+  // Used to read the XML in a separate stage
+  private final AbstractSchematronResource m_aXMLReader;
+  private final Executor m_aExecutor;
+  private final int m_nMaxInFlight;
+  private final Semaphore m_aInFlight;
+
+  /**
+   * Constructor using {@link #DEFAULT_MAX_IN_FLIGHT} as the maximum number of
+   * documents in flight.
+   *
+   * @param aSchematron
+   *        The fully configured Schematron to validate against. May not be
+   *        <code>null</code>.
+   * @param aExecutor
+   *        The executor to run parsing and validation on. May not be
+   *        <code>null</code>.
+   */
+  public SchematronBatchValidator (@Nonnull final ISchematronResource aSchematron, @Nonnull final Executor aExecutor)
+  {
+    this (aSchematron, aExecutor, DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aSchematron
+   *        The fully configured Schematron to validate against. May not be
+   *        <code>null</code>.
+   * @param aExecutor
+   *        The executor to run parsing and validation on. May not be
+   *        <code>null</code>.
+   * @param nMaxInFlight
+   *        The maximum number of documents that were submitted but are not yet
+   *        finished. Must be &gt; 0.
+   * @throws IllegalArgumentException
+   *         If the passed Schematron is invalid
+   */
+  public SchematronBatchValidator (@Nonnull final ISchematronResource aSchematron,
+                                   @Nonnull final Executor aExecutor,
+                                   @Nonnegative final int nMaxInFlight)
+  {
+    ValueEnforcer.notNull (aSchematron, "Schematron");
+    ValueEnforcer.notNull (aExecutor, "Executor");
+    ValueEnforcer.isGT0 (nMaxInFlight, "MaxInFlight");
+
+    // Compile once, so that the workers only share the compiled version
+    if (!aSchematron.isValidSchematron ())
+      throw new IllegalArgumentException ("The provided Schematron " + aSchematron.getID () + " is invalid");
+
+    m_aSchematron = aSchematron;
+    m_aXMLReader = aSchematron instanceof AbstractSchematronResource ? (AbstractSchematronResource) aSchematron : null;
+    m_aExecutor = aExecutor;
+    m_nMaxInFlight = nMaxInFlight;
+    m_aInFlight = new Semaphore (nMaxInFlight);
+  }
+
+  /**
+   * @return The Schematron passed in the constructor. Never <code>null</code>.
+   */
+  @Nonnull
+  public final ISchematronResource getSchematron ()
+  {
+    return m_aSchematron;
+  }
+
+  /**
+   * @return The maximum number of documents in flight. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxInFlight ()
+  {
+    return m_nMaxInFlight;
+  }
+
+  /**
+   * @return The number of documents that are currently submitted but not yet
+   *         finished. Always &ge; 0.
+   */
+  @Nonnegative
+  public final int getInFlightCount ()
+  {
+    return m_nMaxInFlight - m_aInFlight.availablePermits ();
+  }
+
+  @Nullable
+  private DOMSource _parse (@Nonnull final IHasInputStream aXMLResource)
+  {
+    try
+    {
+      // Read with the same settings as the Schematron itself
+      return m_aXMLReader.readXMLResource (aXMLResource);
+    }
+    catch (final Exception ex)
+    {
+      throw new CompletionException (ex);
+    }
+  }
+
+  @Nullable
+  private SchematronOutputType _validate (@Nullable final DOMSource aParsed)
+  {
+    if (aParsed == null)
+      return null;
+
+    try
+    {
+      return m_aSchematron.applySchematronValidationToSVRL (aParsed.getNode (), aParsed.getSystemId ());
+    }
+    catch (final Exception ex)
+    {
+      throw new CompletionException (ex);
+    }
+  }
+
+  @Nullable
+  private SchematronOutputType _parseAndValidate (@Nonnull final IHasInputStream aXMLResource)
+  {
+    try
+    {
+      return m_aSchematron.applySchematronValidationToSVRL (aXMLResource);
+    }
+    catch (final Exception ex)
+    {
+      throw new CompletionException (ex);
+    }
+  }
+
+  @Nonnull
+  private static Throwable _unwrap (@Nonnull final Throwable t)
+  {
+    return t instanceof CompletionException && t.getCause () != null ? t.getCause () : t;
+  }
+
+  /**
+   * Submit a single XML document for validation. If the maximum number of
+   * documents in flight is reached, this method blocks until a slot becomes
+   * available.
+   *
+   * @param aXMLResource
+   *        The XML document to be validated. May not be <code>null</code>.
+   * @return The future result of the validation. The result is
+   *         <code>null</code> if the resource does not exist. If reading or
+   *         validation fails, the future completes exceptionally.
+   * @throws InterruptedException
+   *         If the current thread was interrupted while waiting for a free
+   *         slot.
+   */
+  @Nonnull
+  public CompletableFuture <SchematronOutputType> submit (@Nonnull final IHasInputStream aXMLResource) throws InterruptedException
+  {
+    ValueEnforcer.notNull (aXMLResource, "XMLResource");
+
+    m_aInFlight.acquire ();
+    final CompletableFuture <SchematronOutputType> aStages;
+    try
+    {
+      if (m_aXMLReader != null)
+      {
+        // Stage 1: parse; Stage 2: validate
+        aStages = CompletableFuture.supplyAsync ( () -> _parse (aXMLResource), m_aExecutor)
+                                   .thenApplyAsync (this::_validate, m_aExecutor);
+      }
+      else
+      {
+        // Unknown implementation - cannot separate parsing
+        aStages = CompletableFuture.supplyAsync ( () -> _parseAndValidate (aXMLResource), m_aExecutor);
+      }
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      m_aInFlight.release ();
+      throw ex;
+    }
+
+    // Release the slot before the caller sees the result
+    final CompletableFuture <SchematronOutputType> ret = new CompletableFuture <> ();
+    aStages.whenComplete ( (aSVRL, ex) -> {
+      m_aInFlight.release ();
+      if (ex != null)
+        ret.completeExceptionally (ex);
+      else
+        ret.complete (aSVRL);
+    });
+    return ret;
+  }
+
+  /**
+   * Submit all XML documents for validation. This method blocks whenever the
+   * maximum number of documents in flight is reached.
+   *
+   * @param aXMLResources
+   *        The XML documents to be validated. May not be <code>null</code>.
+   * @return A list of futures in the same order as the input documents. Never
+   *         <code>null</code>.
+   * @throws InterruptedException
+   *         If the current thread was interrupted while waiting for a free
+   *         slot.
+   * @see #submit(IHasInputStream)
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <CompletableFuture <SchematronOutputType>> submitAll (@Nonnull final Iterable <? extends IHasInputStream> aXMLResources) throws InterruptedException
+  {
+    ValueEnforcer.notNull (aXMLResources, "XMLResources");
+
+    final ICommonsList <CompletableFuture <SchematronOutputType>> ret = new CommonsArrayList <> ();
+    for (final IHasInputStream aXMLResource : aXMLResources)
+      ret.add (submit (aXMLResource));
+    return ret;
+  }
+
+  /**
+   * Validate all XML documents and invoke the provided callback for each
+   * result in the order of completion. This method returns after all
+   * documents were validated and all callbacks were invoked.
+   *
+   * @param aXMLResources
+   *        The XML documents to be validated. May not be <code>null</code>.
+   * @param aCallback
+   *        The callback to be invoked for each result. May not be
+   *        <code>null</code>. It may be invoked concurrently.
+   * @throws InterruptedException
+   *         If the current thread was interrupted while waiting for a free
+   *         slot.
+   */
+  public void validateAll (@Nonnull final Iterable <? extends IHasInputStream> aXMLResources,
+                           @Nonnull final ISchematronBatchResultCallback aCallback) throws InterruptedException
+  {
+    ValueEnforcer.notNull (aXMLResources, "XMLResources");
+    ValueEnforcer.notNull (aCallback, "Callback");
+
+    final ICommonsList <CompletableFuture <?>> aAll = new CommonsArrayList <> ();
+    int nIndex = 0;
+    for (final IHasInputStream aXMLResource : aXMLResources)
+    {
+      final int nCurIndex = nIndex++;
+      aAll.add (submit (aXMLResource).handle ( (aSVRL, ex) -> {
+        aCallback.onResult (nCurIndex, aXMLResource, aSVRL, ex == null ? null : _unwrap (ex));
+        return null;
+      }));
+    }
+    CompletableFuture.allOf (aAll.toArray (new CompletableFuture <?> [aAll.size ()])).join ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Schematron", m_aSchematron)
+                                       .append ("Executor", m_aExecutor)
+                                       .append ("MaxInFlight", m_nMaxInFlight)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.composite;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.transform.dom.DOMSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Node;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.schematron.AbstractSchematronResource;
+import com.helger.schematron.ISchematronResource;
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.pure.bound.xpath.PSXPathRuleContextCache;
+import com.helger.schematron.svrl.jaxb.NsPrefixInAttributeValues;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+
+/**
+ * Validate a single XML document against several Schematrons (e.g. a core
+ * specification, a CIUS and a national extension). The XML document is only
+ * read once and all Schematrons are applied on the same DOM tree. For pure
+ * Schematrons bound to XPath, identical rule contexts are evaluated only once
+ * for all Schematrons.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public class SchematronCompositeValidator
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SchematronCompositeValidator.class);
+
+  private final ICommonsList <ISchematronResource> m_aSchematrons;
+  private final AbstractSchematronResource m_aXMLReader;
+
+  /**
+   * Constructor
+   *
+   * @param aSchematrons
+   *        The Schematrons to apply in the provided order. May neither be
+   *        <code>null</code> nor empty.
+   */
+  public SchematronCompositeValidator (@Nonnull final ISchematronResource... aSchematrons)
+  {
+    this (new CommonsArrayList <> (aSchematrons));
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aSchematrons
+   *        The Schematrons to apply in the provided order. May neither be
+   *        <code>null</code> nor empty. The first Schematron derived from
+   *        {@link AbstractSchematronResource} is used to read the XML
+   *        documents.
+   */
+  public SchematronCompositeValidator (@Nonnull final Iterable <? extends ISchematronResource> aSchematrons)
+  {
+    ValueEnforcer.notNull (aSchematrons, "Schematrons");
+    m_aSchematrons = new CommonsArrayList <> (aSchematrons);
+    ValueEnforcer.notEmptyNoNullValue (m_aSchematrons, "Schematrons");
+    m_aXMLReader = (AbstractSchematronResource) m_aSchematrons.findFirst (x -> x instanceof AbstractSchematronResource);
+  }
+
+  /**
+   * @return A copy of all contained Schematrons. Never <code>null</code> nor
+   *         empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public final ICommonsList <ISchematronResource> getAllSchematrons ()
+  {
+    return m_aSchematrons.getClone ();
+  }
+
+  /**
+   * Read the XML resource once and apply all Schematrons on it.
+   *
+   * @param aXMLResource
+   *        The XML resource to validate. May not be <code>null</code>.
+   * @return <code>null</code> if the XML resource does not exist, one SVRL per
+   *         Schematron in the order of the Schematrons otherwise.
+   * @throws Exception
+   *         In case of a reading or validation error
+   */
+  @Nullable
+  @ReturnsMutableCopy
+  public ICommonsList <SchematronOutputType> applySchematronValidationToSVRL (@Nonnull final IHasInputStream aXMLResource) throws Exception
+  {
+    ValueEnforcer.notNull (aXMLResource, "XMLResource");
+
+    if (m_aXMLReader == null)
+    {
+      // No way to read the XML only once - let each Schematron read it
+      final ICommonsList <SchematronOutputType> ret = new CommonsArrayList <> (m_aSchematrons.size ());
+      for (final ISchematronResource aSchematron : m_aSchematrons)
+      {
+        final SchematronOutputType aSOT = aSchematron.applySchematronValidationToSVRL (aXMLResource);
+        if (aSOT == null)
+          return null;
+        ret.add (aSOT);
+      }
+      return ret;
+    }
+
+    final DOMSource aDOMSource = m_aXMLReader.readXMLResource (aXMLResource);
+    if (aDOMSource == null)
+      return null;
+    return applySchematronValidationToSVRL (aDOMSource.getNode (), aDOMSource.getSystemId ());
+  }
+
+  /**
+   * Apply all Schematrons on the passed node. The node must not be modified
+   * while this method runs.
+   *
+   * @param aXMLNode
+   *        The node to validate. May not be <code>null</code>.
+   * @param sBaseURI
+   *        Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   * @return One SVRL per Schematron in the order of the Schematrons. Never
+   *         <code>null</code>.
+   * @throws Exception
+   *         In case of a validation error
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <SchematronOutputType> applySchematronValidationToSVRL (@Nonnull final Node aXMLNode,
+                                                                             @Nullable final String sBaseURI) throws Exception
+  {
+    ValueEnforcer.notNull (aXMLNode, "XMLNode");
+
+    // Shared by all pure Schematrons
+    final PSXPathRuleContextCache aRuleContextCache = new PSXPathRuleContextCache (aXMLNode);
+
+    final ICommonsList <SchematronOutputType> ret = new CommonsArrayList <> (m_aSchematrons.size ());
+    for (final ISchematronResource aSchematron : m_aSchematrons)
+    {
+      final SchematronOutputType aSOT;
+      if (aSchematron instanceof SchematronResourcePure)
+        aSOT = ((SchematronResourcePure) aSchematron).applySchematronValidationToSVRL (aXMLNode,
+                                                                                       sBaseURI,
+                                                                                       aRuleContextCache);
+      else
+        aSOT = aSchematron.applySchematronValidationToSVRL (aXMLNode, sBaseURI);
+      if (aSOT == null)
+        throw new IllegalStateException ("Schematron " + aSchematron.getID () + " did not create an SVRL");
+      ret.add (aSOT);
+    }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Validated against " +
+                    m_aSchematrons.size () +
+                    " Schematrons - " +
+                    aRuleContextCache.getHitCount () +
+                    " rule contexts were shared, " +
+                    aRuleContextCache.getMissCount () +
+                    " were evaluated");
+    return ret;
+  }
+
+  /**
+   * Read the XML resource once, apply all Schematrons and merge the results.
+   *
+   * @param aXMLResource
+   *        The XML resource to validate. May not be <code>null</code>.
+   * @return <code>null</code> if the XML resource does not exist, the merged
+   *         SVRL otherwise.
+   * @throws Exception
+   *         In case of a reading or validation error
+   * @see #getMergedSVRL(Iterable)
+   */
+  @Nullable
+  public SchematronOutputType applySchematronValidationToMergedSVRL (@Nonnull final IHasInputStream aXMLResource) throws Exception
+  {
+    final ICommonsList <SchematronOutputType> aSOTs = applySchematronValidationToSVRL (aXMLResource);
+    return aSOTs == null ? null : getMergedSVRL (aSOTs);
+  }
+
+  /**
+   * Apply all Schematrons on the passed node and merge the results.
+   *
+   * @param aXMLNode
+   *        The node to validate. May not be <code>null</code>.
+   * @param sBaseURI
+   *        Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   * @return The merged SVRL. Never <code>null</code>.
+   * @throws Exception
+   *         In case of a validation error
+   * @see #getMergedSVRL(Iterable)
+   */
+  @Nonnull
+  public SchematronOutputType applySchematronValidationToMergedSVRL (@Nonnull final Node aXMLNode,
+                                                                     @Nullable final String sBaseURI) throws Exception
+  {
+    return getMergedSVRL (applySchematronValidationToSVRL (aXMLNode, sBaseURI));
+  }
+
+  /**
+   * Merge several SVRLs into one. Texts, namespace prefixes (unique by prefix)
+   * and all patterns, fired rules, failed asserts and successful reports are
+   * taken over in the provided order. Title, phase and schema version are
+   * taken from the first SVRL.
+   *
+   * @param aSOTs
+   *        The SVRLs to merge. May not be <code>null</code>.
+   * @return The merged SVRL. Never <code>null</code>.
+   */
+  @Nonnull
+  public static SchematronOutputType getMergedSVRL (@Nonnull final Iterable <SchematronOutputType> aSOTs)
+  {
+    ValueEnforcer.notNull (aSOTs, "SOTs");
+
+    final SchematronOutputType ret = new SchematronOutputType ();
+    final ICommonsSet <String> aUsedPrefixes = new CommonsHashSet <> ();
+    boolean bFirst = true;
+    for (final SchematronOutputType aSOT : aSOTs)
+    {
+      if (bFirst)
+      {
+        ret.setTitle (aSOT.getTitle ());
+        ret.setPhase (aSOT.getPhase ());
+        ret.setSchemaVersion (aSOT.getSchemaVersion ());
+        bFirst = false;
+      }
+      ret.getText ().addAll (aSOT.getText ());
+      for (final NsPrefixInAttributeValues aNsPrefix : aSOT.getNsPrefixInAttributeValues ())
+        if (aUsedPrefixes.add (aNsPrefix.getPrefix ()))
+          ret.getNsPrefixInAttributeValues ().add (aNsPrefix);
+      ret.getActivePatternAndFiredRuleAndFailedAssert ().addAll (aSOT.getActivePatternAndFiredRuleAndFailedAssert ());
+    }
+    return ret;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("schematrons", m_aSchematrons).getToString ();
+  }
+}
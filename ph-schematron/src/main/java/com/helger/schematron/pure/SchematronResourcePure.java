@@ -50,14 +50,20 @@ import com.helger.schematron.AbstractSchematronResource;
 import com.helger.schematron.CSchematron;
 import com.helger.schematron.SchematronDebug;
 import com.helger.schematron.SchematronException;
+import com.helger.schematron.SchematronResultFingerprint;
+import com.helger.schematron.pure.bound.AbstractPSBoundSchema;
 import com.helger.schematron.pure.bound.IPSBoundSchema;
 import com.helger.schematron.pure.bound.PSBoundSchemaCache;
 import com.helger.schematron.pure.bound.PSBoundSchemaCacheKey;
+import com.helger.schematron.pure.bound.xpath.PSXPathBoundSchema;
+import com.helger.schematron.pure.bound.xpath.PSXPathIncrementalSession;
+import com.helger.schematron.pure.bound.xpath.PSXPathRuleContextCache;
 import com.helger.schematron.pure.errorhandler.DoNothingPSErrorHandler;
 import com.helger.schematron.pure.errorhandler.IPSErrorHandler;
 import com.helger.schematron.pure.exchange.PSWriter;
 import com.helger.schematron.pure.model.PSSchema;
 import com.helger.schematron.pure.validation.IPSValidationHandler;
+import com.helger.schematron.pure.validation.xpath.PSXPathValidationHandlerSVRL;
 import com.helger.schematron.svrl.SVRLMarshaller;
 import com.helger.schematron.svrl.jaxb.SchematronOutputType;
 import com.helger.schematron.xpath.IXPathConfig;
@@ -87,8 +93,13 @@ public class SchematronResourcePure extends AbstractSchematronResource
   private IPSErrorHandler m_aErrorHandler;
   private IPSValidationHandler m_aCustomValidationHandler;
   private IXPathConfig m_aXPathConfig = XPathConfigBuilder.DEFAULT;
+  private int m_nMaxOccurrencesPerAssert = PSXPathValidationHandlerSVRL.UNLIMITED;
+  private int m_nMaxOccurrencesTotal = PSXPathValidationHandlerSVRL.UNLIMITED;
+  private boolean m_bSkipEvaluationWhenCapped = false;
   // Status var
   private IPSBoundSchema m_aBoundSchema;
+  private PSBoundSchemaCacheKey m_aCacheKey;
+  private int m_nRebindCount;
 
   public SchematronResourcePure (@Nonnull final IReadableResource aResource)
   {
@@ -199,6 +210,65 @@ public class SchematronResourcePure extends AbstractSchematronResource
     return this;
   }
 
+  /**
+   * @return The maximum number of failed asserts/successful reports per
+   *         assert/report element in the SVRL.
+   * @since 5.6.1
+   */
+  public final int getMaxOccurrencesPerAssert ()
+  {
+    return m_nMaxOccurrencesPerAssert;
+  }
+
+  /**
+   * @return The maximum number of failed asserts/successful reports in the
+   *         SVRL.
+   * @since 5.6.1
+   */
+  public final int getMaxOccurrencesTotal ()
+  {
+    return m_nMaxOccurrencesTotal;
+  }
+
+  /**
+   * @return <code>true</code> if asserts/reports that reached their cap are no
+   *         longer evaluated.
+   * @since 5.6.1
+   */
+  public final boolean isSkipEvaluationWhenCapped ()
+  {
+    return m_bSkipEvaluationWhenCapped;
+  }
+
+  /**
+   * Cap the number of failed asserts and successful reports in the created
+   * SVRL. This can be changed at any time, as it does not affect the bound
+   * schema.
+   *
+   * @param nMaxOccurrencesPerAssert
+   *        The maximum number per assert/report element. Use
+   *        {@link PSXPathValidationHandlerSVRL#UNLIMITED} for no limit.
+   * @param nMaxOccurrencesTotal
+   *        The maximum number in total. Use
+   *        {@link PSXPathValidationHandlerSVRL#UNLIMITED} for no limit.
+   * @param bSkipEvaluationWhenCapped
+   *        <code>true</code> to not evaluate asserts/reports that reached their
+   *        cap any more.
+   * @return this
+   * @see PSXPathValidationHandlerSVRL
+   * @since 5.6.1
+   */
+  @Nonnull
+  public final SchematronResourcePure setOccurrenceCaps (final int nMaxOccurrencesPerAssert,
+                                                         final int nMaxOccurrencesTotal,
+                                                         final boolean bSkipEvaluationWhenCapped)
+  {
+    m_nMaxOccurrencesPerAssert = nMaxOccurrencesPerAssert;
+    m_nMaxOccurrencesTotal = nMaxOccurrencesTotal;
+    m_bSkipEvaluationWhenCapped = bSkipEvaluationWhenCapped;
+    return this;
+  }
+
   /**
    * @return The variable resolver to be used. May be <code>null</code>.
    */
@@ -283,7 +353,10 @@ public class SchematronResourcePure extends AbstractSchematronResource
 
     // Resolve from cache - inside the cacheKey the reading and binding
     // happens
-    return PSBoundSchemaCache.getInstance ().getFromCache (aCacheKey);
+    final PSBoundSchemaCache aCache = PSBoundSchemaCache.getInstance ();
+    m_aCacheKey = aCacheKey;
+    m_nRebindCount = aCache.getRebindCount ();
+    return aCache.getFromCache (aCacheKey);
   }
 
   /**
@@ -295,6 +368,7 @@ public class SchematronResourcePure extends AbstractSchematronResource
   public IPSBoundSchema getOrCreateBoundSchema ()
   {
     if (m_aBoundSchema == null)
+    {
       try
       {
         m_aBoundSchema = createBoundSchema ();
@@ -309,10 +383,54 @@ public class SchematronResourcePure extends AbstractSchematronResource
                                                   .build ());
         throw ex;
       }
+    }
+    else
+      if (m_aCacheKey != null)
+      {
+        final PSBoundSchemaCache aCache = PSBoundSchemaCache.getInstance ();
+        final int nRebindCount = aCache.getRebindCount ();
+        if (nRebindCount != m_nRebindCount)
+        {
+          // A cached bound schema was replaced - use the latest version if it
+          // is still cached. Nothing is bound here.
+          final IPSBoundSchema aLatest = aCache.getCachedBoundSchema (m_aCacheKey);
+          if (aLatest != null)
+            m_aBoundSchema = aLatest;
+          m_nRebindCount = nRebindCount;
+        }
+      }
 
     return m_aBoundSchema;
   }
 
+  /**
+   * Create a new incremental validation session for the passed node. This is
+   * only supported for the default XPath query binding.
+   *
+   * @param aXMLNode
+   *        The node to be validated. It may be modified in place between the
+   *        validation runs. May not be <code>null</code>.
+   * @param sBaseURI
+   *        Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   * @return The new session. Never <code>null</code>. No validation was
+   *         performed yet.
+   * @throws IllegalStateException
+   *         If the bound schema does not use the XPath query binding
+   * @since 5.6.1
+   */
+  @Nonnull
+  public PSXPathIncrementalSession createIncrementalSession (@Nonnull final Node aXMLNode,
+                                                            @Nullable final String sBaseURI)
+  {
+    ValueEnforcer.notNull (aXMLNode, "XMLNode");
+
+    final IPSBoundSchema aBoundSchema = getOrCreateBoundSchema ();
+    if (!(aBoundSchema instanceof PSXPathBoundSchema))
+      throw new IllegalStateException ("Incremental validation is only supported for the XPath query binding");
+    return new PSXPathIncrementalSession ((PSXPathBoundSchema) aBoundSchema, aXMLNode, sBaseURI);
+  }
+
   public boolean isValidSchematron ()
   {
     // Use the provided error handler (if any)
@@ -328,6 +446,32 @@ public class SchematronResourcePure extends AbstractSchematronResource
     }
   }
 
+  /**
+   * {@inheritDoc} The bound schema covers the Schematron content including all
+   * includes, the phase, the XPath configuration, the entity resolver and the
+   * lenient flag. Results of resources with a custom validation handler or a
+   * custom XPath variable resolver are never cached, because they may have
+   * side effects or depend on values that change between validations.
+   */
+  @Override
+  @Nullable
+  public SchematronResultFingerprint getResultFingerprint ()
+  {
+    if (m_aCustomValidationHandler != null || m_aXPathConfig.getXPathVariableResolver () != null)
+      return null;
+    if (!isValidSchematron ())
+      return null;
+
+    final StringBuilder aSB = createResultConfiguration ();
+    aSB.append ("|caps=")
+       .append (m_nMaxOccurrencesPerAssert)
+       .append (',')
+       .append (m_nMaxOccurrencesTotal)
+       .append (',')
+       .append (m_bSkipEvaluationWhenCapped);
+    return new SchematronResultFingerprint (getOrCreateBoundSchema (), aSB.toString ());
+  }
+
   /**
    * Use the internal error handler to validate all elements in the schematron.
    * It tries to catch as many errors as possible.
@@ -387,10 +531,60 @@ public class SchematronResourcePure extends AbstractSchematronResource
   @Nonnull
   public SchematronOutputType applySchematronValidationToSVRL (@Nonnull final Node aXMLNode,
                                                                @Nullable final String sBaseURI) throws SchematronException
+  {
+    return applySchematronValidationToSVRL (aXMLNode, sBaseURI, null);
+  }
+
+  /**
+   * Convert a node to an SVRL document, sharing the rule context evaluation
+   * with other Schematrons validating the same node. The rule context cache is
+   * only used for the default XPath query binding.
+   *
+   * @param aXMLNode
+   *        The source node to be validated. May not be <code>null</code>.
+   * @param sBaseURI
+   *        Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   * @param aRuleContextCache
+   *        The rule context cache for the passed node. May be
+   *        <code>null</code>.
+   * @return The SVRL document. Never <code>null</code>.
+   * @throws SchematronException
+   *         in case of a sever error validating the schema
+   * @since 5.6.1
+   */
+  @Nonnull
+  public SchematronOutputType applySchematronValidationToSVRL (@Nonnull final Node aXMLNode,
+                                                               @Nullable final String sBaseURI,
+                                                               @Nullable final PSXPathRuleContextCache aRuleContextCache) throws SchematronException
   {
     ValueEnforcer.notNull (aXMLNode, "XMLNode");
 
-    final SchematronOutputType aSOT = getOrCreateBoundSchema ().validateComplete (aXMLNode, sBaseURI);
+    final IPSBoundSchema aBoundSchema = getOrCreateBoundSchema ();
+    final PSXPathBoundSchema aXPathBoundSchema = aRuleContextCache != null &&
+                                                 aBoundSchema instanceof PSXPathBoundSchema ? (PSXPathBoundSchema) aBoundSchema
+                                                                                            : null;
+    final SchematronOutputType aSOT;
+    if ((m_nMaxOccurrencesPerAssert >= 0 || m_nMaxOccurrencesTotal >= 0) &&
+        aBoundSchema instanceof AbstractPSBoundSchema)
+    {
+      // Use a capped SVRL handler
+      final PSXPathValidationHandlerSVRL aValidationHandler = new PSXPathValidationHandlerSVRL (((AbstractPSBoundSchema) aBoundSchema).getErrorHandler ());
+      aValidationHandler.setMaxOccurrencesPerAssert (m_nMaxOccurrencesPerAssert)
+                        .setMaxOccurrencesTotal (m_nMaxOccurrencesTotal)
+                        .setSkipEvaluationWhenCapped (m_bSkipEvaluationWhenCapped);
+      final IPSValidationHandler aRealHandler = aValidationHandler.and (m_aCustomValidationHandler);
+      if (aXPathBoundSchema != null)
+        aXPathBoundSchema.validate (aXMLNode, sBaseURI, aRealHandler, aRuleContextCache);
+      else
+        aBoundSchema.validate (aXMLNode, sBaseURI, aRealHandler);
+      aSOT = aValidationHandler.getSVRL ();
+    }
+    else
+      if (aXPathBoundSchema != null)
+        aSOT = aXPathBoundSchema.validateComplete (aXMLNode, sBaseURI, aRuleContextCache);
+      else
+        aSOT = aBoundSchema.validateComplete (aXMLNode, sBaseURI);
 
     // Debug print the created SVRL document
     if (SchematronDebug.isShowCreatedSVRL ())
@@ -152,4 +152,15 @@ public interface IPSBoundSchema
   @Nonnull
   SchematronOutputType validateComplete (@Nonnull Node aNode,
                                          @Nullable String sBaseURI) throws SchematronValidationException;
+
+  /**
+   * Release all resources held exclusively by this bound schema (e.g. a Saxon
+   * configuration). This is called when a bound schema is removed from a
+   * {@link PSBoundSchemaCache}. The bound schema should not be used
+   * afterwards. The default implementation does nothing.
+   *
+   * @since 5.6.1
+   */
+  default void retire ()
+  {}
 }
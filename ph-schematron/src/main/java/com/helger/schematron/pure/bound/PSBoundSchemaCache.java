@@ -16,17 +16,38 @@
  */
 package com.helger.schematron.pure.bound;
 
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.OverridingMethodsMustInvokeSuper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.helger.commons.CGlobal;
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.cache.Cache;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.EChange;
+import com.helger.commons.state.ESuccess;
 import com.helger.schematron.SchematronException;
 
 /**
  * A cache for {@link IPSBoundSchema} instances. Use {@link #getInstance()} to
  * retrieve a global singleton instance. Alternatively you may instantiate this
- * class regularly.
+ * class regularly.<br>
+ * All bound schemas that are removed from this cache via
+ * {@link #removeFromCache(PSBoundSchemaCacheKey)} or {@link #clearCache()} are
+ * retired (see {@link IPSBoundSchema#retire()}). A cached bound schema can be
+ * replaced with a freshly bound version via
+ * {@link #rebind(PSBoundSchemaCacheKey)}.
  *
  * @author Philip Helger
  */
@@ -37,6 +58,11 @@ public class PSBoundSchemaCache extends Cache <PSBoundSchemaCacheKey, IPSBoundSc
     static final PSBoundSchemaCache s_aInstance = new PSBoundSchemaCache ();
   }
 
+  private static final Logger LOGGER = LoggerFactory.getLogger (PSBoundSchemaCache.class);
+
+  private final Map <PSBoundSchemaCacheKey, WeakReference <IPSBoundSchema>> m_aCreated;
+  private final AtomicInteger m_aRebindCount = new AtomicInteger (0);
+
   /**
    * Default constructor for the singleton.
    */
@@ -46,13 +72,36 @@ public class PSBoundSchemaCache extends Cache <PSBoundSchemaCacheKey, IPSBoundSc
   }
 
   public PSBoundSchemaCache (@Nonnull final String sCacheName)
+  {
+    this (sCacheName, new ConcurrentHashMap <> ());
+  }
+
+  private PSBoundSchemaCache (@Nonnull final String sCacheName,
+                              @Nonnull final Map <PSBoundSchemaCacheKey, WeakReference <IPSBoundSchema>> aCreated)
   {
     super (aKey -> {
       ValueEnforcer.notNull (aKey, "Key");
 
       try
       {
-        return aKey.createBoundSchema ();
+        final IPSBoundSchema aNewBoundSchema = aKey.createBoundSchema ();
+        // If another thread created the same bound schema concurrently, the
+        // first one wins, so that every created bound schema is retired
+        final IPSBoundSchema [] aResult = new IPSBoundSchema [1];
+        aCreated.compute (aKey, (k, aOldRef) -> {
+          final IPSBoundSchema aOld = aOldRef == null ? null : aOldRef.get ();
+          if (aOld != null)
+          {
+            aResult[0] = aOld;
+            return aOldRef;
+          }
+          aResult[0] = aNewBoundSchema;
+          // Weak reference only, to not interfere with the cache eviction
+          return new WeakReference <> (aNewBoundSchema);
+        });
+        if (aResult[0] != aNewBoundSchema)
+          aNewBoundSchema.retire ();
+        return aResult[0];
       }
       catch (final SchematronException ex)
       {
@@ -60,6 +109,138 @@ public class PSBoundSchemaCache extends Cache <PSBoundSchemaCacheKey, IPSBoundSc
         throw new IllegalArgumentException (ex);
       }
     }, CGlobal.ILLEGAL_UINT, sCacheName);
+    m_aCreated = aCreated;
+  }
+
+  /**
+   * Retire a bound schema that was removed from this cache or that was
+   * replaced by a new version. Override this method to get notified.
+   *
+   * @param aBoundSchema
+   *        The bound schema to retire. Never <code>null</code>.
+   * @since 5.6.1
+   */
+  @OverridingMethodsMustInvokeSuper
+  protected void retire (@Nonnull final IPSBoundSchema aBoundSchema)
+  {
+    aBoundSchema.retire ();
+  }
+
+  private void _retire (@Nonnull final WeakReference <IPSBoundSchema> aRef)
+  {
+    final IPSBoundSchema aBoundSchema = aRef.get ();
+    if (aBoundSchema != null)
+      retire (aBoundSchema);
+  }
+
+  @Override
+  @Nonnull
+  public EChange removeFromCache (final PSBoundSchemaCacheKey aKey)
+  {
+    final EChange ret = super.removeFromCache (aKey);
+    final WeakReference <IPSBoundSchema> aRef = m_aCreated.remove (aKey);
+    if (aRef != null)
+      _retire (aRef);
+    return ret;
+  }
+
+  @Override
+  @Nonnull
+  public EChange clearCache ()
+  {
+    final EChange ret = super.clearCache ();
+    for (final PSBoundSchemaCacheKey aKey : m_aCreated.keySet ())
+    {
+      final WeakReference <IPSBoundSchema> aRef = m_aCreated.remove (aKey);
+      if (aRef != null)
+        _retire (aRef);
+    }
+    return ret;
+  }
+
+  /**
+   * @return A copy of the keys of all bound schemas that were created by this
+   *         cache and were not yet removed. Never <code>null</code>.
+   * @since 5.6.1
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <PSBoundSchemaCacheKey> getAllCachedKeys ()
+  {
+    final ICommonsList <PSBoundSchemaCacheKey> ret = new CommonsArrayList <> ();
+    for (final Map.Entry <PSBoundSchemaCacheKey, WeakReference <IPSBoundSchema>> aEntry : m_aCreated.entrySet ())
+      if (aEntry.getValue ().get () != null)
+        ret.add (aEntry.getKey ());
+    return ret;
+  }
+
+  /**
+   * Get the bound schema that is currently cached for the passed key. In
+   * contrast to {@link #getFromCache(PSBoundSchemaCacheKey)} no bound schema
+   * is created if none is cached.
+   *
+   * @param aKey
+   *        The key to query. May not be <code>null</code>.
+   * @return <code>null</code> if no bound schema is cached for the key.
+   * @since 5.6.1
+   */
+  @Nullable
+  public IPSBoundSchema getCachedBoundSchema (@Nonnull final PSBoundSchemaCacheKey aKey)
+  {
+    ValueEnforcer.notNull (aKey, "Key");
+    final WeakReference <IPSBoundSchema> aRef = m_aCreated.get (aKey);
+    return aRef == null ? null : aRef.get ();
+  }
+
+  /**
+   * @return The number of successful calls to
+   *         {@link #rebind(PSBoundSchemaCacheKey)}. Can be used to find out
+   *         cheaply whether any cached bound schema was replaced.
+   * @since 5.6.1
+   */
+  @Nonnegative
+  public int getRebindCount ()
+  {
+    return m_aRebindCount.get ();
+  }
+
+  /**
+   * Bind the schema of the passed key again and replace the cached bound
+   * schema with the new one. The binding happens in the calling thread while
+   * other threads continue to use the previous bound schema. If binding fails,
+   * the previous bound schema stays in the cache.
+   *
+   * @param aKey
+   *        The key to rebind. May not be <code>null</code>.
+   * @return {@link ESuccess#SUCCESS} if the bound schema was replaced.
+   * @since 5.6.1
+   */
+  @Nonnull
+  public ESuccess rebind (@Nonnull final PSBoundSchemaCacheKey aKey)
+  {
+    ValueEnforcer.notNull (aKey, "Key");
+
+    final IPSBoundSchema aNewBoundSchema;
+    try
+    {
+      aNewBoundSchema = aKey.createBoundSchema ();
+    }
+    catch (final SchematronException | RuntimeException ex)
+    {
+      LOGGER.warn ("Failed to rebind Schematron " + aKey.getResource () + " - keeping the previous version", ex);
+      return ESuccess.FAILURE;
+    }
+
+    // Atomically swap
+    putInCache (aKey, aNewBoundSchema);
+    final WeakReference <IPSBoundSchema> aOldRef = m_aCreated.put (aKey, new WeakReference <> (aNewBoundSchema));
+    m_aRebindCount.incrementAndGet ();
+
+    // Validations that are still running on the old bound schema are not
+    // affected by retiring it
+    if (aOldRef != null)
+      _retire (aOldRef);
+    return ESuccess.SUCCESS;
   }
 
   @Nonnull
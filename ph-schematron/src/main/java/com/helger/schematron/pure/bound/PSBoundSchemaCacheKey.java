@@ -39,6 +39,7 @@ import com.helger.schematron.pure.binding.IPSQueryBinding;
 import com.helger.schematron.pure.binding.PSQueryBindingRegistry;
 import com.helger.schematron.pure.errorhandler.IPSErrorHandler;
 import com.helger.schematron.pure.exchange.PSReader;
+import com.helger.schematron.pure.exchange.PSStreamingReader;
 import com.helger.schematron.pure.model.PSSchema;
 import com.helger.schematron.pure.preprocess.PSPreprocessor;
 import com.helger.schematron.pure.preprocess.SchematronPreprocessException;
@@ -191,7 +192,15 @@ public class PSBoundSchemaCacheKey
                               @Nullable final IPSErrorHandler aErrorHandler,
                               @Nullable final EntityResolver aEntityResolver) throws SchematronException
   {
-    return new PSReader (aResource, aErrorHandler, aEntityResolver).setLenient (isLenient ()).readSchema ();
+    final PSReader aReader;
+    if (SchematronDebug.isShowResolvedSourceSchematron ())
+    {
+      // The resolved source can only be shown with the DOM based reader
+      aReader = new PSReader (aResource, aErrorHandler, aEntityResolver);
+    }
+    else
+      aReader = new PSStreamingReader (aResource, aErrorHandler, aEntityResolver);
+    return aReader.setLenient (isLenient ()).readSchema ();
   }
 
   /**
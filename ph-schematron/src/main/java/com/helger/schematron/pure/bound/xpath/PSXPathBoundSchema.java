@@ -17,7 +17,6 @@
 package com.helger.schematron.pure.bound.xpath;
 
 import java.util.Map;
-import java.util.function.Function;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -25,6 +24,7 @@ import javax.annotation.concurrent.NotThreadSafe;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
 import javax.xml.xpath.XPathFactoryConfigurationException;
 import javax.xml.xpath.XPathFunctionResolver;
 import javax.xml.xpath.XPathVariableResolver;
@@ -35,15 +35,21 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
 import com.helger.commons.error.SingleError;
 import com.helger.commons.error.level.EErrorLevel;
 import com.helger.commons.location.ILocation;
 import com.helger.commons.location.SimpleLocation;
+import com.helger.commons.string.StringHelper;
 import com.helger.commons.string.ToStringGenerator;
+import com.helger.schematron.CSchematron;
+import com.helger.schematron.SchematronCancellationToken;
 import com.helger.schematron.pure.binding.IPSQueryBinding;
 import com.helger.schematron.pure.binding.SchematronBindException;
 import com.helger.schematron.pure.binding.xpath.PSXPathVariables;
@@ -61,10 +67,14 @@ import com.helger.schematron.pure.model.PSSchema;
 import com.helger.schematron.pure.model.PSValueOf;
 import com.helger.schematron.pure.validation.IPSValidationHandler;
 import com.helger.schematron.pure.validation.SchematronValidationException;
+import com.helger.schematron.pure.validation.xpath.PSXPathValidationHandlerSVRL;
+import com.helger.schematron.saxon.SaxonConfigurationManager;
 import com.helger.schematron.saxon.SaxonNamespaceContext;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
 import com.helger.schematron.xpath.IXPathConfig;
 import com.helger.schematron.xpath.XPathConfigBuilder;
 import com.helger.schematron.xpath.XPathEvaluationHelper;
+import com.helger.xml.microdom.IMicroElement;
 import com.helger.xml.namespace.MapBasedNamespaceContext;
 import com.helger.xml.xpath.XPathHelper;
 
@@ -72,6 +82,7 @@ import net.sf.saxon.Configuration;
 import net.sf.saxon.lib.ErrorReporter;
 import net.sf.saxon.s9api.XmlProcessingError;
 import net.sf.saxon.xpath.XPathEvaluator;
+import net.sf.saxon.xpath.XPathFactoryImpl;
 
 /**
  * The default XPath binding for the pure Schematron implementation.
@@ -87,12 +98,23 @@ public class PSXPathBoundSchema extends AbstractPSBoundSchema
 
   // Status vars
   private ICommonsList <PSXPathBoundPattern> m_aBoundPatterns;
+  private PSXPathKeyIndex m_aKeyIndex;
+  private boolean m_bHasXslKeys;
+  private boolean m_bOptimizeJoins;
+  private final ICommonsMap <String, String> m_aJoinKeyNames = new CommonsHashMap <> ();
+  private PSXPathCodeListOptimizer m_aCodeListOptimizer;
+  private final ICommonsOrderedMap <String, String> m_aRewrittenExpressions = new CommonsLinkedHashMap <> ();
+  private Configuration m_aOwnConfiguration;
 
   /**
    * Compile an XPath expression string to an {@link XPathExpressionException}
    * object. If expression contains any variables, the
    * {@link XPathVariableResolver} will be used to resolve them within this
-   * method!
+   * method! If the schema contains <code>xsl:key</code> declarations, all
+   * calls to <code>key()</code> are rewritten to the internal key function.
+   * If enabled in the {@link IXPathConfig}, equality joins and code list tests
+   * are rewritten to hash lookups if possible (see
+   * {@link PSXPathJoinOptimizer} and {@link PSXPathCodeListOptimizer}).
    *
    * @param aXPathContext
    *        Context to use. May not be <code>null</code>.
@@ -103,13 +125,43 @@ public class PSXPathBoundSchema extends AbstractPSBoundSchema
    *         If expression cannot be compiled.
    */
   @Nullable
-  private static XPathExpression _compileXPath (@Nonnull final XPath aXPathContext,
-                                                @Nonnull final String sXPathExpression) throws XPathExpressionException
+  private XPathExpression _compileXPath (@Nonnull final XPath aXPathContext,
+                                         @Nonnull final String sXPathExpression) throws XPathExpressionException
   {
+    final String sRealExpression = m_bHasXslKeys ? PSXPathKeyIndex.getRewrittenExpression (sXPathExpression)
+                                                 : sXPathExpression;
+    String sOptimizedExpression = sRealExpression;
+    if (m_bOptimizeJoins)
+      sOptimizedExpression = PSXPathJoinOptimizer.getRewrittenExpression (sOptimizedExpression,
+                                                                          (sMatch,
+                                                                           sUse) -> _getJoinKeyName (aXPathContext,
+                                                                                                     sMatch,
+                                                                                                     sUse));
+    if (m_aCodeListOptimizer != null)
+      sOptimizedExpression = m_aCodeListOptimizer.getRewrittenExpression (sOptimizedExpression);
+    if (sOptimizedExpression != sRealExpression)
+    {
+      try
+      {
+        final XPathExpression ret = aXPathContext.compile (sOptimizedExpression);
+        m_aRewrittenExpressions.put (sXPathExpression, sOptimizedExpression);
+        return ret;
+      }
+      catch (final XPathExpressionException ex)
+      {
+        // Fall back to the original expression
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Failed to compile optimized expression '" +
+                        sOptimizedExpression +
+                        "' - using the original expression",
+                        ex);
+      }
+    }
+
     XPathExpression ret = null;
     try
     {
-      ret = aXPathContext.compile (sXPathExpression);
+      ret = aXPathContext.compile (sRealExpression);
     }
     catch (final XPathExpressionException ex)
     {
@@ -408,13 +460,58 @@ public class PSXPathBoundSchema extends AbstractPSBoundSchema
       }
   }
 
+  @Nonnull
+  private ErrorReporter _createErrorReporter ()
+  {
+    // Wrap the PSErrorHandler to an ErrorReporter
+    final IPSErrorHandler aErrHdl = getErrorHandler ();
+    return (final XmlProcessingError error) -> {
+      final ILocation aLocation = error.getLocation () == null ? null
+                                                               : new SimpleLocation (error.getLocation ().getSystemId (),
+                                                                                     error.getLocation ().getLineNumber (),
+                                                                                     error.getLocation ()
+                                                                                          .getColumnNumber ());
+      aErrHdl.handleError (SingleError.builder ()
+                                      .setErrorLevel (error.isWarning () ? EErrorLevel.WARN : EErrorLevel.ERROR)
+                                      .setErrorID (error.getErrorCode () != null ? error.getErrorCode ().toString ()
+                                                                                 : null)
+                                      .setErrorLocation (aLocation)
+                                      .setErrorText (error.getMessage ())
+                                      .setLinkedException (error.getCause ())
+                                      .build ());
+    };
+  }
+
   @Nonnull
   private XPath _createXPathContext ()
   {
-    final MapBasedNamespaceContext aNamespaceContext = getNamespaceContext ();
-    final XPath aXPathContext = XPathHelper.createNewXPath (m_aXPathConfig.getXPathFactory (),
+    MapBasedNamespaceContext aNamespaceContext = getNamespaceContext ();
+    XPathFunctionResolver aFunctionResolver = m_aXPathConfig.getXPathFunctionResolver ();
+    if (m_aKeyIndex != null)
+    {
+      // Make the internal key function available
+      aNamespaceContext = new MapBasedNamespaceContext (aNamespaceContext).addMapping (PSXPathKeyIndex.NAMESPACE_PREFIX,
+                                                                                      PSXPathKeyIndex.NAMESPACE_URI);
+      aFunctionResolver = m_aKeyIndex.createFunctionResolver (aFunctionResolver);
+    }
+    if (m_aCodeListOptimizer != null)
+    {
+      // Make the internal code list functions available
+      if (aNamespaceContext == getNamespaceContext ())
+        aNamespaceContext = new MapBasedNamespaceContext (aNamespaceContext);
+      aNamespaceContext.addMapping (PSXPathCodeListOptimizer.NAMESPACE_PREFIX, PSXPathCodeListOptimizer.NAMESPACE_URI);
+      aFunctionResolver = m_aCodeListOptimizer.createFunctionResolver (aFunctionResolver);
+    }
+    XPathFactory aXPathFactory = m_aXPathConfig.getXPathFactory ();
+    if (aXPathFactory instanceof XPathFactoryImpl && SaxonConfigurationManager.isConfigurationPerSchema ())
+    {
+      // Use a separate configuration (and name pool) for this schema
+      m_aOwnConfiguration = SaxonConfigurationManager.createConfiguration ();
+      aXPathFactory = new XPathFactoryImpl (m_aOwnConfiguration);
+    }
+    final XPath aXPathContext = XPathHelper.createNewXPath (aXPathFactory,
                                                             m_aXPathConfig.getXPathVariableResolver (),
-                                                            m_aXPathConfig.getXPathFunctionResolver (),
+                                                            aFunctionResolver,
                                                             aNamespaceContext);
 
     if ("net.sf.saxon.xpath.XPathEvaluator".equals (aXPathContext.getClass ().getName ()))
@@ -425,34 +522,112 @@ public class PSXPathBoundSchema extends AbstractPSBoundSchema
       // Since 9.7.0-4 it must implement NamespaceResolver
       aSaxonXPath.setNamespaceContext (new SaxonNamespaceContext (aNamespaceContext));
 
-      // Wrap the PSErrorHandler to a ErrorListener
-      final Function <Configuration, ? extends ErrorReporter> factory = cfg -> {
-        final IPSErrorHandler aErrHdl = getErrorHandler ();
-        return (final XmlProcessingError error) -> {
-          final ILocation aLocation = error.getLocation () == null ? null
-                                                                   : new SimpleLocation (error.getLocation ()
-                                                                                              .getSystemId (),
-                                                                                         error.getLocation ()
-                                                                                              .getLineNumber (),
-                                                                                         error.getLocation ()
-                                                                                              .getColumnNumber ());
-          aErrHdl.handleError (SingleError.builder ()
-                                          .setErrorLevel (error.isWarning () ? EErrorLevel.WARN : EErrorLevel.ERROR)
-                                          .setErrorID (error.getErrorCode () != null ? error.getErrorCode ().toString ()
-                                                                                     : null)
-                                          .setErrorLocation (aLocation)
-                                          .setErrorText (error.getMessage ())
-                                          .setLinkedException (error.getCause ())
-                                          .build ());
-        };
-      };
-      aSaxonXPath.getConfiguration ().setErrorReporterFactory (factory);
+      // Errors are forwarded to the error reporter of the current thread -
+      // see bind and validate
+      SaxonConfigurationManager.installRoutingErrorReporter (aSaxonXPath.getConfiguration ());
     }
     return aXPathContext;
   }
 
+  /**
+   * Get or create the key for an equality join.
+   *
+   * @return <code>null</code> if the key expressions cannot be compiled
+   */
+  @Nullable
+  private String _getJoinKeyName (@Nonnull final XPath aXPathContext,
+                                  @Nonnull final String sMatch,
+                                  @Nonnull final String sUse)
+  {
+    final String sMapKey = sMatch + '\n' + sUse;
+    String ret = m_aJoinKeyNames.get (sMapKey);
+    if (ret == null)
+    {
+      // '#' is not allowed in xsl:key names, so there can be no conflict
+      ret = "#join-" + m_aJoinKeyNames.size ();
+      try
+      {
+        m_aKeyIndex.addKey (ret,
+                            aXPathContext.compile (sMatch),
+                            aXPathContext.compile (PSXPathKeyIndex.getUseAsXPath (sUse)));
+      }
+      catch (final XPathExpressionException ex)
+      {
+        return null;
+      }
+      m_aJoinKeyNames.put (sMapKey, ret);
+    }
+    return ret;
+  }
+
+  private boolean _createKeys (@Nonnull final ICommonsList <IMicroElement> aKeyElements,
+                               @Nonnull final XPath aXPathContext)
+  {
+    final PSSchema aSchema = getOriginalSchema ();
+    boolean bHasAnyError = false;
+    for (final IMicroElement eKey : aKeyElements)
+    {
+      final String sName = eKey.getAttributeValue ("name");
+      final String sMatch = eKey.getAttributeValue ("match");
+      final String sUse = eKey.getAttributeValue ("use");
+      if (StringHelper.hasNoText (sName) || StringHelper.hasNoText (sMatch) || StringHelper.hasNoText (sUse))
+      {
+        error (aSchema, "<xsl:key> requires the attributes 'name', 'match' and 'use'");
+        bHasAnyError = true;
+        continue;
+      }
+
+      final String sMatchXPath = PSXPathKeyIndex.getMatchAsXPath (sMatch);
+      final String sUseXPath = PSXPathKeyIndex.getUseAsXPath (sUse);
+      try
+      {
+        if (!m_aKeyIndex.addKey (sName,
+                                 _compileXPath (aXPathContext, sMatchXPath),
+                                 _compileXPath (aXPathContext, sUseXPath)))
+        {
+          error (aSchema, "Duplicate <xsl:key> with name '" + sName + "'");
+          bHasAnyError = true;
+        }
+      }
+      catch (final XPathExpressionException ex)
+      {
+        error (aSchema,
+               "Failed to compile XPath expressions of <xsl:key> with name '" +
+                        sName +
+                        "': '" +
+                        sMatchXPath +
+                        "' and '" +
+                        sUseXPath +
+                        "'",
+               ex.getCause () != null ? ex.getCause () : ex);
+        bHasAnyError = true;
+      }
+    }
+    return !bHasAnyError;
+  }
+
   @Nonnull
   public PSXPathBoundSchema bind () throws SchematronBindException
+  {
+    final ErrorReporter aOldErrorReporter = SaxonConfigurationManager.setCurrentErrorReporter (_createErrorReporter ());
+    try
+    {
+      _bind ();
+    }
+    catch (final SchematronBindException | RuntimeException ex)
+    {
+      // Release the configuration of a schema that cannot be used
+      retire ();
+      throw ex;
+    }
+    finally
+    {
+      SaxonConfigurationManager.setCurrentErrorReporter (aOldErrorReporter);
+    }
+    return this;
+  }
+
+  private void _bind () throws SchematronBindException
   {
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("Binding pure Schematron");
@@ -479,8 +654,24 @@ public class PSXPathBoundSchema extends AbstractPSBoundSchema
                  "Duplicate <let> with name '" + aEntry.getKey () + "' in <phase> with name '" + getPhaseID () + "'");
     }
 
+    // Check for xsl:key declarations
+    final ICommonsList <IMicroElement> aKeyElements = new CommonsArrayList <> ();
+    if (aSchema.hasForeignElements ())
+      for (final IMicroElement eForeign : aSchema.getAllForeignElements ())
+        if (eForeign.hasNamespaceURI (CSchematron.NAMESPACE_URI_XSL) && eForeign.hasLocalName ("key"))
+          aKeyElements.add (eForeign);
+    m_bHasXslKeys = aKeyElements.isNotEmpty ();
+    m_bOptimizeJoins = m_aXPathConfig.isOptimizeJoins ();
+    if (m_bHasXslKeys || m_bOptimizeJoins)
+      m_aKeyIndex = new PSXPathKeyIndex ();
+    if (m_aXPathConfig.isOptimizeCodeLists ())
+      m_aCodeListOptimizer = new PSXPathCodeListOptimizer ();
+
     final XPath aXPathContext = _createXPathContext ();
 
+    if (m_bHasXslKeys && !_createKeys (aKeyElements, aXPathContext))
+      throw new SchematronBindException ("Failed to precompile the xsl:key declarations of the supplied schema.");
+
     // Pre-compile all diagnostics first
     final ICommonsMap <String, PSXPathBoundDiagnostic> aBoundDiagnostics = _createBoundDiagnostics (aXPathContext,
                                                                                                     aGlobalVariables);
@@ -494,7 +685,62 @@ public class PSXPathBoundSchema extends AbstractPSBoundSchema
     m_aBoundPatterns = _createBoundPatterns (aXPathContext, aBoundDiagnostics, aGlobalVariables);
     if (m_aBoundPatterns == null)
       throw new SchematronBindException ("Failed to precompile the supplied schema.");
-    return this;
+
+    if (m_aRewrittenExpressions.isNotEmpty () && LOGGER.isDebugEnabled ())
+    {
+      final StringBuilder aSB = new StringBuilder ();
+      for (final Map.Entry <String, String> aEntry : m_aRewrittenExpressions.entrySet ())
+        aSB.append ("\n  '").append (aEntry.getKey ()).append ("' -> '").append (aEntry.getValue ()).append ('\'');
+      LOGGER.debug ("Rewrote " + m_aRewrittenExpressions.size () + " XPath expression(s) to use hash lookups:" + aSB.toString ());
+    }
+
+    // No index needed
+    if (m_aKeyIndex != null && !m_aKeyIndex.hasKeys ())
+      m_aKeyIndex = null;
+  }
+
+  /**
+   * @return A copy of all bound patterns in the order they are evaluated.
+   *         Never <code>null</code>.
+   * @throws IllegalStateException
+   *         if {@link #bind()} was not called before
+   * @since 5.6.1
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <PSXPathBoundPattern> getAllBoundPatterns ()
+  {
+    if (m_aBoundPatterns == null)
+      throw new IllegalStateException ("bind was never called!");
+    return m_aBoundPatterns.getClone ();
+  }
+
+  /**
+   * @return The key index used for the <code>xsl:key</code> declarations of
+   *         the schema and for the rewritten equality joins. May be
+   *         <code>null</code> if no keys are needed or if {@link #bind()} was
+   *         not yet called.
+   * @since 5.6.1
+   */
+  @Nullable
+  public PSXPathKeyIndex getKeyIndex ()
+  {
+    return m_aKeyIndex;
+  }
+
+  /**
+   * @return A copy of all XPath expressions that were rewritten by the
+   *         {@link PSXPathJoinOptimizer} or the
+   *         {@link PSXPathCodeListOptimizer} while binding. The key is the original
+   *         expression and the value is the rewritten expression. Never
+   *         <code>null</code>.
+   * @since 5.6.1
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsOrderedMap <String, String> getAllRewrittenExpressions ()
+  {
+    return m_aRewrittenExpressions.getClone ();
   }
 
   @Nullable
@@ -523,6 +769,59 @@ public class PSXPathBoundSchema extends AbstractPSBoundSchema
   public void validate (@Nonnull final Node aNode,
                         @Nullable final String sBaseURI,
                         @Nonnull final IPSValidationHandler aValidationHandler) throws SchematronValidationException
+  {
+    validate (aNode, sBaseURI, aValidationHandler, null);
+  }
+
+  /**
+   * Perform a complete validation and create the SVRL, sharing the rule
+   * context evaluation with other schemas validating the same node.
+   *
+   * @param aNode
+   *        The node to be validated. May not be <code>null</code>.
+   * @param sBaseURI
+   *        Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   * @param aRuleContextCache
+   *        The rule context cache for the passed node. May be
+   *        <code>null</code>.
+   * @return The SVRL. Never <code>null</code>.
+   * @throws SchematronValidationException
+   *         In case of validation errors
+   * @since 5.6.1
+   */
+  @Nonnull
+  public SchematronOutputType validateComplete (@Nonnull final Node aNode,
+                                                @Nullable final String sBaseURI,
+                                                @Nullable final PSXPathRuleContextCache aRuleContextCache) throws SchematronValidationException
+  {
+    final PSXPathValidationHandlerSVRL aValidationHandler = new PSXPathValidationHandlerSVRL (getErrorHandler ());
+    validate (aNode, sBaseURI, aValidationHandler.and (getCustomValidationHandler ()), aRuleContextCache);
+    return aValidationHandler.getSVRL ();
+  }
+
+  /**
+   * Perform the validation with an optional rule context cache.
+   *
+   * @param aNode
+   *        The node to be validated. May not be <code>null</code>.
+   * @param sBaseURI
+   *        Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   * @param aValidationHandler
+   *        The validation handler that receives the results. May not be
+   *        <code>null</code>.
+   * @param aRuleContextCache
+   *        The rule context cache for the passed node. If it is
+   *        <code>null</code> all rule contexts are evaluated.
+   * @throws SchematronValidationException
+   *         In case of validation errors
+   * @since 5.6.1
+   */
+  public void validate (@Nonnull final Node aNode,
+                        @Nullable final String sBaseURI,
+                        @Nonnull final IPSValidationHandler aValidationHandler,
+                        @Nullable final PSXPathRuleContextCache aRuleContextCache) throws SchematronValidationException
   {
     ValueEnforcer.notNull (aNode, "Node");
     ValueEnforcer.notNull (aValidationHandler, "ValidationHandler");
@@ -530,8 +829,38 @@ public class PSXPathBoundSchema extends AbstractPSBoundSchema
     if (m_aBoundPatterns == null)
       throw new IllegalStateException ("bind was never called!");
 
+    final ErrorReporter aOldErrorReporter = SaxonConfigurationManager.setCurrentErrorReporter (_createErrorReporter ());
+    try
+    {
+      _validate (aNode, sBaseURI, aValidationHandler, aRuleContextCache);
+    }
+    finally
+    {
+      SaxonConfigurationManager.setCurrentErrorReporter (aOldErrorReporter);
+    }
+  }
+
+  private static boolean _isCancelled (@Nullable final SchematronCancellationToken aCancellationToken,
+                                       @Nonnull final PSSchema aSchema,
+                                       @Nonnull final IPSValidationHandler aValidationHandler) throws SchematronValidationException
+  {
+    if (aCancellationToken == null || !aCancellationToken.isCancelled ())
+      return false;
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Stopping pure Schematron validation: " + aCancellationToken.getCancellationReason ());
+    aValidationHandler.onCancelled (aSchema, aCancellationToken.getCancellationReason ());
+    return true;
+  }
+
+  private void _validate (@Nonnull final Node aNode,
+                          @Nullable final String sBaseURI,
+                          @Nonnull final IPSValidationHandler aValidationHandler,
+                          @Nullable final PSXPathRuleContextCache aRuleContextCache) throws SchematronValidationException
+  {
     final PSSchema aSchema = getOriginalSchema ();
     final PSPhase aPhase = getPhase ();
+    final SchematronCancellationToken aCancellationToken = SchematronCancellationToken.getCurrent ();
 
     // Call the "start" callback method
     aValidationHandler.onStart (aSchema, aPhase, sBaseURI);
@@ -547,13 +876,19 @@ public class PSXPathBoundSchema extends AbstractPSBoundSchema
       {
         final PSRule aRule = aBoundRule.getRule ();
 
+        if (_isCancelled (aCancellationToken, aSchema, aValidationHandler))
+          return;
+
         // Find all nodes matching the rules
         NodeList aRuleContextNodes = null;
         try
         {
-          aRuleContextNodes = XPathEvaluationHelper.evaluateAsNodeList (aBoundRule.getBoundRuleContext (),
-                                                                        aNode,
-                                                                        sBaseURI);
+          if (aRuleContextCache != null)
+            aRuleContextNodes = aRuleContextCache.getRuleContextNodes (this, aBoundRule, aNode, sBaseURI);
+          else
+            aRuleContextNodes = XPathEvaluationHelper.evaluateAsNodeList (aBoundRule.getBoundRuleContext (),
+                                                                          aNode,
+                                                                          sBaseURI);
         }
         catch (final XPathExpressionException ex)
         {
@@ -570,6 +905,9 @@ public class PSXPathBoundSchema extends AbstractPSBoundSchema
         final int nRuleMatchingNodes = aRuleContextNodes.getLength ();
         for (int nMatchedNode = 0; nMatchedNode < nRuleMatchingNodes; ++nMatchedNode)
         {
+          if (_isCancelled (aCancellationToken, aSchema, aValidationHandler))
+            return;
+
           // XSLT does "fired-rule" for each node
           aValidationHandler.onFiredRule (aRule, aBoundRule.getRuleContext (), nMatchedNode, nRuleMatchingNodes);
 
@@ -577,6 +915,9 @@ public class PSXPathBoundSchema extends AbstractPSBoundSchema
           for (final PSXPathBoundAssertReport aBoundAssertReport : aBoundRule.getAllBoundAssertReports ())
           {
             final PSAssertReport aAssertReport = aBoundAssertReport.getAssertReport ();
+            if (aValidationHandler.isSkipEvaluation (aAssertReport))
+              continue;
+
             final boolean bIsAssert = aAssertReport.isAssert ();
             final XPathExpression aTestExpression = aBoundAssertReport.getBoundTestExpression ();
 
@@ -645,6 +986,29 @@ public class PSXPathBoundSchema extends AbstractPSBoundSchema
     aValidationHandler.onEnd (aSchema, aPhase);
   }
 
+  /**
+   * @return The Saxon configuration that is exclusively used by this schema.
+   *         May be <code>null</code> if a shared configuration is used or if
+   *         this schema was already retired.
+   * @see SaxonConfigurationManager#setConfigurationPerSchema(boolean)
+   * @since 5.6.1
+   */
+  @Nullable
+  public Configuration getOwnConfiguration ()
+  {
+    return m_aOwnConfiguration;
+  }
+
+  @Override
+  public void retire ()
+  {
+    if (m_aOwnConfiguration != null)
+    {
+      SaxonConfigurationManager.retireConfiguration (m_aOwnConfiguration);
+      m_aOwnConfiguration = null;
+    }
+  }
+
   @Override
   public String toString ()
   {
@@ -0,0 +1,462 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.bound.xpath;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathFunction;
+import javax.xml.xpath.XPathFunctionException;
+import javax.xml.xpath.XPathFunctionResolver;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.string.StringParser;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * Optimizer for tests against code lists. The following idioms are replaced
+ * by a lookup in an immutable hash set that is created at bind time:
+ * <ul>
+ * <li><code>contains(' A B C ', concat(' ', expr, ' '))</code></li>
+ * <li><code>path = 'A' or path = 'B' or path = 'C'</code> where all operands
+ * use the same simple path (or <code>normalize-space</code> of it) and string
+ * literals</li>
+ * </ul>
+ * The results are identical to the original expressions. For
+ * <code>contains</code> values containing a space are still checked with a
+ * plain substring search. Only lists with at least {@link #MIN_VALUES} values
+ * are rewritten.
+ * <p>
+ * The optimization is only applied if it is enabled via
+ * {@link com.helger.schematron.xpath.IXPathConfig#isOptimizeCodeLists()}. An
+ * instance of this class is used per bound schema. The rewriting must
+ * happen while binding, the created functions can be used from any thread.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@NotThreadSafe
+public class PSXPathCodeListOptimizer
+{
+  /** The namespace URI of the internal code list functions */
+  public static final String NAMESPACE_URI = "urn:ph-schematron:pure:codelist";
+  /** The namespace prefix used for the internal code list functions */
+  public static final String NAMESPACE_PREFIX = "ph-schematron-codelist";
+  /** The minimum number of values of a code list to be rewritten */
+  public static final int MIN_VALUES = 5;
+
+  private static final String FUNCTION_CONTAINS = "contains-";
+  private static final String FUNCTION_IN = "in-";
+  private static final String STEP = "(?:@?(?:\\*|[A-Za-z_][\\w.\\-]*(?::(?:\\*|[A-Za-z_][\\w.\\-]*))?)|\\.\\.?)";
+  private static final String PATH = STEP + "(?:/" + STEP + ")*";
+  private static final String LITERAL = "(?:'[^']*'|\"[^\"]*\")";
+  private static final Pattern OPERAND = Pattern.compile ("(?:" + PATH + "|normalize-space\\s*\\(\\s*(?:" + PATH + ")?\\s*\\))");
+  private static final Pattern COMPARISON_LEFT = Pattern.compile ("\\s*(.+?)\\s*=\\s*(" + LITERAL + ")\\s*");
+  private static final Pattern COMPARISON_RIGHT = Pattern.compile ("\\s*(" + LITERAL + ")\\s*=\\s*(.+?)\\s*");
+  private static final Pattern SPACE_LITERAL = Pattern.compile ("\\s*(?:' '|\" \")\\s*");
+
+  /**
+   * A single code list.
+   */
+  private static final class CodeList
+  {
+    private final Set <String> m_aValues;
+    // Only for "contains"
+    private final String m_sHaystack;
+
+    CodeList (@Nonnull final ICommonsSet <String> aValues, @Nullable final String sHaystack)
+    {
+      m_aValues = Collections.unmodifiableSet (aValues);
+      m_sHaystack = sHaystack;
+    }
+  }
+
+  private final ICommonsList <CodeList> m_aCodeLists = new CommonsArrayList <> ();
+
+  public PSXPathCodeListOptimizer ()
+  {}
+
+  /**
+   * @return The number of code lists created so far.
+   */
+  public int getCodeListCount ()
+  {
+    return m_aCodeLists.size ();
+  }
+
+  @Nonnull
+  private static String _getLiteralValue (@Nonnull final String sLiteral)
+  {
+    return sLiteral.substring (1, sLiteral.length () - 1);
+  }
+
+  @Nullable
+  private static String _getLiteralValueOrNull (@Nonnull final String s)
+  {
+    final String sTrimmed = s.trim ();
+    if (sTrimmed.length () < 2)
+      return null;
+    final char c = sTrimmed.charAt (0);
+    if ((c != '\'' && c != '"') || sTrimmed.indexOf (c, 1) != sTrimmed.length () - 1)
+      return null;
+    return _getLiteralValue (sTrimmed);
+  }
+
+  /**
+   * Split the passed string at the top-level occurrences of the separator.
+   *
+   * @param s
+   *        String to split
+   * @param sSep
+   *        Either "," or "or"
+   * @return The list of parts
+   */
+  @Nonnull
+  private static ICommonsList <String> _splitTopLevel (@Nonnull final String s, @Nonnull final String sSep)
+  {
+    final boolean bKeyword = Character.isLetter (sSep.charAt (0));
+    final ICommonsList <String> ret = new CommonsArrayList <> ();
+    int nDepth = 0;
+    char cQuote = 0;
+    int nStart = 0;
+    for (int i = 0; i < s.length (); ++i)
+    {
+      final char c = s.charAt (i);
+      if (cQuote != 0)
+      {
+        if (c == cQuote)
+          cQuote = 0;
+      }
+      else
+        if (c == '"' || c == '\'')
+          cQuote = c;
+        else
+          if (c == '(' || c == '[')
+            nDepth++;
+          else
+            if (c == ')' || c == ']')
+              nDepth--;
+            else
+              if (nDepth == 0 && s.startsWith (sSep, i))
+              {
+                final boolean bMatch;
+                if (bKeyword)
+                {
+                  // Keywords must be surrounded by whitespaces
+                  final int nEnd = i + sSep.length ();
+                  bMatch = i > 0 &&
+                           Character.isWhitespace (s.charAt (i - 1)) &&
+                           nEnd < s.length () &&
+                           Character.isWhitespace (s.charAt (nEnd));
+                }
+                else
+                  bMatch = true;
+                if (bMatch)
+                {
+                  ret.add (s.substring (nStart, i));
+                  nStart = i + sSep.length ();
+                  i = nStart - 1;
+                }
+              }
+    }
+    ret.add (s.substring (nStart));
+    return ret;
+  }
+
+  private int _addCodeList (@Nonnull final ICommonsSet <String> aValues, @Nullable final String sHaystack)
+  {
+    m_aCodeLists.add (new CodeList (aValues, sHaystack));
+    return m_aCodeLists.size () - 1;
+  }
+
+  /**
+   * Try to rewrite a chain of "or" comparisons.
+   *
+   * @return <code>null</code> if it is not such a chain
+   */
+  @Nullable
+  private String _tryRewriteOrChain (@Nonnull final String sExpr)
+  {
+    final ICommonsList <String> aTerms = _splitTopLevel (sExpr, "or");
+    if (aTerms.size () < MIN_VALUES)
+      return null;
+
+    String sOperand = null;
+    final ICommonsSet <String> aValues = new CommonsHashSet <> ();
+    for (final String sTerm : aTerms)
+    {
+      String sTermOperand;
+      String sLiteral;
+      Matcher aMatcher = COMPARISON_RIGHT.matcher (sTerm);
+      if (aMatcher.matches ())
+      {
+        sLiteral = aMatcher.group (1);
+        sTermOperand = aMatcher.group (2);
+      }
+      else
+      {
+        aMatcher = COMPARISON_LEFT.matcher (sTerm);
+        if (!aMatcher.matches ())
+          return null;
+        sTermOperand = aMatcher.group (1);
+        sLiteral = aMatcher.group (2);
+      }
+      if (!OPERAND.matcher (sTermOperand).matches ())
+        return null;
+      if (sOperand == null)
+        sOperand = sTermOperand;
+      else
+        if (!sOperand.equals (sTermOperand))
+          return null;
+      aValues.add (_getLiteralValue (sLiteral));
+    }
+
+    final int nIndex = _addCodeList (aValues, null);
+    return NAMESPACE_PREFIX + ":" + FUNCTION_IN + nIndex + "(" + sOperand + ")";
+  }
+
+  /**
+   * Try to rewrite the arguments of a call to "contains".
+   *
+   * @return <code>null</code> if it is not the code list idiom
+   */
+  @Nullable
+  private String _tryRewriteContains (@Nonnull final String sArgs)
+  {
+    final ICommonsList <String> aArgs = _splitTopLevel (sArgs, ",");
+    if (aArgs.size () != 2)
+      return null;
+    final String sHaystack = _getLiteralValueOrNull (aArgs.getFirst ());
+    if (sHaystack == null)
+      return null;
+
+    final String sNeedle = aArgs.getLast ().trim ();
+    if (!sNeedle.startsWith ("concat") || !sNeedle.endsWith (")"))
+      return null;
+    final int nOpen = sNeedle.indexOf ('(');
+    if (nOpen < 0 || !sNeedle.substring ("concat".length (), nOpen).trim ().isEmpty ())
+      return null;
+    if (_getClosingIndex (sNeedle, nOpen) != sNeedle.length () - 1)
+      return null;
+    final ICommonsList <String> aConcatArgs = _splitTopLevel (sNeedle.substring (nOpen + 1, sNeedle.length () - 1),
+                                                              ",");
+    if (aConcatArgs.size () != 3 ||
+        !SPACE_LITERAL.matcher (aConcatArgs.getFirst ()).matches () ||
+        !SPACE_LITERAL.matcher (aConcatArgs.getLast ()).matches ())
+      return null;
+
+    // ' v ' is contained in the list, if v is one of the parts that are
+    // surrounded by spaces on both sides
+    final String [] aParts = sHaystack.split (" ", -1);
+    final ICommonsSet <String> aValues = new CommonsHashSet <> ();
+    for (int i = 1; i < aParts.length - 1; ++i)
+      aValues.add (aParts[i]);
+    if (aValues.size () < MIN_VALUES)
+      return null;
+
+    final int nIndex = _addCodeList (aValues, sHaystack);
+    // concat has the same conversion rules as the original expression
+    return NAMESPACE_PREFIX + ":" + FUNCTION_CONTAINS + nIndex + "(concat(''," + aConcatArgs.get (1) + "))";
+  }
+
+  private static int _getClosingIndex (@Nonnull final String s, final int nOpenIndex)
+  {
+    int nDepth = 0;
+    char cQuote = 0;
+    for (int i = nOpenIndex; i < s.length (); ++i)
+    {
+      final char c = s.charAt (i);
+      if (cQuote != 0)
+      {
+        if (c == cQuote)
+          cQuote = 0;
+      }
+      else
+        if (c == '"' || c == '\'')
+          cQuote = c;
+        else
+          if (c == '(' || c == '[')
+            nDepth++;
+          else
+            if (c == ')' || c == ']')
+            {
+              nDepth--;
+              if (nDepth == 0)
+                return i;
+            }
+    }
+    return -1;
+  }
+
+  private static boolean _isNameChar (final char c)
+  {
+    return Character.isLetterOrDigit (c) || c == '_' || c == '-' || c == '.' || c == ':' || c == '$';
+  }
+
+  /**
+   * Rewrite all code list tests in the passed expression.
+   *
+   * @param sExpr
+   *        The XPath expression to rewrite. May not be <code>null</code>.
+   * @return The rewritten expression. Is the passed object if nothing was
+   *         rewritten.
+   */
+  @Nonnull
+  public String getRewrittenExpression (@Nonnull final String sExpr)
+  {
+    ValueEnforcer.notNull (sExpr, "Expr");
+
+    // The complete expression
+    final String sOrChain = _tryRewriteOrChain (sExpr);
+    if (sOrChain != null)
+      return sOrChain;
+
+    final int nLen = sExpr.length ();
+    final StringBuilder aSB = new StringBuilder (nLen);
+    boolean bChanged = false;
+    char cQuote = 0;
+    int i = 0;
+    while (i < nLen)
+    {
+      final char c = sExpr.charAt (i);
+      if (cQuote != 0)
+      {
+        if (c == cQuote)
+          cQuote = 0;
+      }
+      else
+        if (c == '"' || c == '\'')
+          cQuote = c;
+        else
+          if (c == '(' || c == '[')
+          {
+            final int nClose = _getClosingIndex (sExpr, i);
+            if (nClose > 0)
+            {
+              final String sContent = sExpr.substring (i + 1, nClose);
+
+              // Is it a call to "contains"?
+              int nNameEnd = aSB.length ();
+              while (nNameEnd > 0 && Character.isWhitespace (aSB.charAt (nNameEnd - 1)))
+                nNameEnd--;
+              final int nNameStart = nNameEnd - "contains".length ();
+              if (c == '(' &&
+                  nNameStart >= 0 &&
+                  aSB.substring (nNameStart, nNameEnd).equals ("contains") &&
+                  (nNameStart == 0 || !_isNameChar (aSB.charAt (nNameStart - 1))))
+              {
+                final String sContains = _tryRewriteContains (sContent);
+                if (sContains != null)
+                {
+                  aSB.setLength (nNameStart);
+                  aSB.append (sContains);
+                  bChanged = true;
+                  i = nClose + 1;
+                  continue;
+                }
+              }
+
+              // Recursively rewrite the content
+              final String sNewContent = getRewrittenExpression (sContent);
+              if (sNewContent != sContent)
+              {
+                aSB.append (c).append (sNewContent).append (sExpr.charAt (nClose));
+                bChanged = true;
+                i = nClose + 1;
+                continue;
+              }
+            }
+          }
+      aSB.append (c);
+      i++;
+    }
+    return bChanged ? aSB.toString () : sExpr;
+  }
+
+  /**
+   * Create a function resolver that resolves the internal code list functions
+   * and delegates all other functions to the passed resolver.
+   *
+   * @param aDelegate
+   *        The function resolver to delegate to. May be <code>null</code>.
+   * @return The new function resolver. Never <code>null</code>.
+   */
+  @Nonnull
+  public XPathFunctionResolver createFunctionResolver (@Nullable final XPathFunctionResolver aDelegate)
+  {
+    return (final QName aFunctionName, final int nArity) -> {
+      if (NAMESPACE_URI.equals (aFunctionName.getNamespaceURI ()) && nArity == 1)
+      {
+        final String sLocalName = aFunctionName.getLocalPart ();
+        final boolean bContains = sLocalName.startsWith (FUNCTION_CONTAINS);
+        if (bContains || sLocalName.startsWith (FUNCTION_IN))
+        {
+          final int nIndex = StringParser.parseInt (sLocalName.substring ((bContains ? FUNCTION_CONTAINS
+                                                                                     : FUNCTION_IN).length ()),
+                                                    -1);
+          if (nIndex >= 0 && nIndex < m_aCodeLists.size ())
+            return _createFunction (m_aCodeLists.get (nIndex), bContains);
+        }
+      }
+      return aDelegate == null ? null : aDelegate.resolveFunction (aFunctionName, nArity);
+    };
+  }
+
+  @Nonnull
+  private static XPathFunction _createFunction (@Nonnull final CodeList aCodeList, final boolean bContains)
+  {
+    return aArgs -> {
+      if (aArgs.size () != 1)
+        throw new XPathFunctionException ("The code list function requires 1 argument");
+      final ICommonsList <String> aValues = new CommonsArrayList <> ();
+      PSXPathKeyIndex.addAllStringValues (aArgs.get (0), aValues);
+      if (bContains)
+      {
+        if (aValues.size () != 1)
+          throw new XPathFunctionException ("The code list function requires a single string");
+        final String sValue = aValues.getFirst ();
+        if (sValue.isEmpty () || sValue.indexOf (' ') >= 0)
+        {
+          // Cannot be resolved via the set
+          return Boolean.valueOf (aCodeList.m_sHaystack.contains (' ' + sValue + ' '));
+        }
+        return Boolean.valueOf (aCodeList.m_aValues.contains (sValue));
+      }
+
+      for (final String sValue : aValues)
+        if (aCodeList.m_aValues.contains (sValue))
+          return Boolean.TRUE;
+      return Boolean.FALSE;
+    };
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("codeLists", m_aCodeLists.size ()).getToString ();
+  }
+}
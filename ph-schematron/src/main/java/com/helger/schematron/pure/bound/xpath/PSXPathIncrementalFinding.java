@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.bound.xpath;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import org.w3c.dom.Node;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * A single finding of an incremental validation - that is either a failed
+ * assert or a successful report on a specific context node.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@Immutable
+public class PSXPathIncrementalFinding
+{
+  private final PSXPathBoundRule m_aBoundRule;
+  private final PSXPathBoundAssertReport m_aBoundAssertReport;
+  private final Node m_aContextNode;
+
+  public PSXPathIncrementalFinding (@Nonnull final PSXPathBoundRule aBoundRule,
+                                    @Nonnull final PSXPathBoundAssertReport aBoundAssertReport,
+                                    @Nonnull final Node aContextNode)
+  {
+    ValueEnforcer.notNull (aBoundRule, "BoundRule");
+    ValueEnforcer.notNull (aBoundAssertReport, "BoundAssertReport");
+    ValueEnforcer.notNull (aContextNode, "ContextNode");
+    m_aBoundRule = aBoundRule;
+    m_aBoundAssertReport = aBoundAssertReport;
+    m_aContextNode = aContextNode;
+  }
+
+  /**
+   * @return The bound rule that fired. Never <code>null</code>.
+   */
+  @Nonnull
+  public final PSXPathBoundRule getBoundRule ()
+  {
+    return m_aBoundRule;
+  }
+
+  /**
+   * @return The bound assert or report that was triggered. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final PSXPathBoundAssertReport getBoundAssertReport ()
+  {
+    return m_aBoundAssertReport;
+  }
+
+  /**
+   * @return The context node of the validated document. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final Node getContextNode ()
+  {
+    return m_aContextNode;
+  }
+
+  /**
+   * @return <code>true</code> if this is a failed assert, <code>false</code>
+   *         if this is a successful report.
+   */
+  public final boolean isFailedAssert ()
+  {
+    return m_aBoundAssertReport.getAssertReport ().isAssert ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("ruleContext", m_aBoundRule.getRuleContext ())
+                                       .append ("testExpression", m_aBoundAssertReport.getTestExpression ())
+                                       .append ("contextNode", m_aContextNode)
+                                       .getToString ();
+  }
+}
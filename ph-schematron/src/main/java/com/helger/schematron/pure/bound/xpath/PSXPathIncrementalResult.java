@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.bound.xpath;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+
+/**
+ * The result of a single run of a {@link PSXPathIncrementalSession}. It
+ * contains the complete updated SVRL as well as the delta to the previous
+ * run.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@Immutable
+public class PSXPathIncrementalResult
+{
+  private final SchematronOutputType m_aSVRL;
+  private final ICommonsList <PSXPathIncrementalFinding> m_aAdded;
+  private final ICommonsList <PSXPathIncrementalFinding> m_aRemoved;
+  private final int m_nEvaluatedTests;
+  private final int m_nReusedTests;
+
+  public PSXPathIncrementalResult (@Nonnull final SchematronOutputType aSVRL,
+                                   @Nonnull final ICommonsList <PSXPathIncrementalFinding> aAdded,
+                                   @Nonnull final ICommonsList <PSXPathIncrementalFinding> aRemoved,
+                                   @Nonnegative final int nEvaluatedTests,
+                                   @Nonnegative final int nReusedTests)
+  {
+    ValueEnforcer.notNull (aSVRL, "SVRL");
+    ValueEnforcer.notNull (aAdded, "Added");
+    ValueEnforcer.notNull (aRemoved, "Removed");
+    ValueEnforcer.isGE0 (nEvaluatedTests, "EvaluatedTests");
+    ValueEnforcer.isGE0 (nReusedTests, "ReusedTests");
+    m_aSVRL = aSVRL;
+    m_aAdded = aAdded;
+    m_aRemoved = aRemoved;
+    m_nEvaluatedTests = nEvaluatedTests;
+    m_nReusedTests = nReusedTests;
+  }
+
+  /**
+   * @return The complete SVRL of the current state of the document. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final SchematronOutputType getSVRL ()
+  {
+    return m_aSVRL;
+  }
+
+  /**
+   * @return All findings that are new compared to the previous run. Never
+   *         <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public final ICommonsList <PSXPathIncrementalFinding> getAllAddedFindings ()
+  {
+    return m_aAdded.getClone ();
+  }
+
+  /**
+   * @return All findings of the previous run that are no longer present.
+   *         Never <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public final ICommonsList <PSXPathIncrementalFinding> getAllRemovedFindings ()
+  {
+    return m_aRemoved.getClone ();
+  }
+
+  /**
+   * @return <code>true</code> if the findings did not change compared to the
+   *         previous run.
+   */
+  public final boolean isUnchanged ()
+  {
+    return m_aAdded.isEmpty () && m_aRemoved.isEmpty ();
+  }
+
+  /**
+   * @return The number of assert/report tests that were evaluated in this
+   *         run.
+   */
+  @Nonnegative
+  public final int getEvaluatedTestCount ()
+  {
+    return m_nEvaluatedTests;
+  }
+
+  /**
+   * @return The number of assert/report tests whose result was reused from
+   *         the previous run.
+   */
+  @Nonnegative
+  public final int getReusedTestCount ()
+  {
+    return m_nReusedTests;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("added", m_aAdded)
+                                       .append ("removed", m_aRemoved)
+                                       .append ("evaluatedTests", m_nEvaluatedTests)
+                                       .append ("reusedTests", m_nReusedTests)
+                                       .getToString ();
+  }
+}
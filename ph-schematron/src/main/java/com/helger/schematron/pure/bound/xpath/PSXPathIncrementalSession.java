@@ -0,0 +1,575 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.bound.xpath;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.xml.xpath.XPathExpressionException;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.error.SingleError;
+import com.helger.commons.location.SimpleLocation;
+import com.helger.commons.state.EContinue;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.schematron.pure.errorhandler.IPSErrorHandler;
+import com.helger.schematron.pure.model.IPSElement;
+import com.helger.schematron.pure.model.PSAssertReport;
+import com.helger.schematron.pure.model.PSRule;
+import com.helger.schematron.pure.validation.IPSValidationHandler;
+import com.helger.schematron.pure.validation.SchematronValidationException;
+import com.helger.schematron.pure.validation.xpath.PSXPathValidationHandlerSVRL;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.schematron.xpath.XPathEvaluationHelper;
+
+/**
+ * An incremental validation session for a single document that is modified
+ * in place (e.g. in an editor). The session keeps the rule context nodes and
+ * the assert/report results of the last run. When re-validating with a set of
+ * changed nodes, the rule contexts are re-evaluated, but assert/report tests
+ * are only re-evaluated if
+ * <ul>
+ * <li>the context node is new,</li>
+ * <li>the test is not "local" (see {@link #isLocalExpression(String)}) or</li>
+ * <li>the context node is an ancestor-or-self or a descendant of a changed
+ * node.</li>
+ * </ul>
+ * All other results are taken from the previous run.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@NotThreadSafe
+public class PSXPathIncrementalSession
+{
+  /**
+   * A slash that starts an absolute path. Applied after all string literals
+   * were removed.
+   */
+  private static final Pattern ABSOLUTE_PATH = Pattern.compile ("(^|[\\(\\[,=<>!+\\-|*\\s])\\s*/");
+  private static final Pattern STRING_LITERAL = Pattern.compile ("\"[^\"]*\"|'[^']*'");
+  private static final String [] NON_LOCAL_TOKENS = { "..",
+                                                      "$",
+                                                      "ancestor",
+                                                      "parent::",
+                                                      "preceding",
+                                                      "following",
+                                                      "root(",
+                                                      "id(",
+                                                      "idref(",
+                                                      "key(",
+                                                      "doc(",
+                                                      "document(",
+                                                      "collection(",
+                                                      "current(",
+                                                      "lang(" };
+  /**
+   * A function call or a kind test, optionally with a namespace prefix.
+   * Applied after all string literals were removed.
+   */
+  private static final Pattern FUNCTION_CALL = Pattern.compile ("([A-Za-z_][\\w.\\-]*(?::[A-Za-z_][\\w.\\-]*)?)\\s*\\(");
+  /**
+   * All function names and keywords that may be followed by an opening
+   * parenthesis and only depend on their arguments or the context node.
+   * Prefixed names (extension functions, custom functions) and all other
+   * functions are considered not local.
+   */
+  private static final ICommonsSet <String> LOCAL_FUNCTIONS = new CommonsHashSet <> ("abs",
+                                                                                     "avg",
+                                                                                     "boolean",
+                                                                                     "ceiling",
+                                                                                     "concat",
+                                                                                     "contains",
+                                                                                     "count",
+                                                                                     "data",
+                                                                                     "distinct-values",
+                                                                                     "empty",
+                                                                                     "ends-with",
+                                                                                     "exists",
+                                                                                     "false",
+                                                                                     "floor",
+                                                                                     "last",
+                                                                                     "local-name",
+                                                                                     "lower-case",
+                                                                                     "matches",
+                                                                                     "max",
+                                                                                     "min",
+                                                                                     "name",
+                                                                                     "namespace-uri",
+                                                                                     "normalize-space",
+                                                                                     "normalize-unicode",
+                                                                                     "not",
+                                                                                     "number",
+                                                                                     "position",
+                                                                                     "replace",
+                                                                                     "round",
+                                                                                     "starts-with",
+                                                                                     "string",
+                                                                                     "string-join",
+                                                                                     "string-length",
+                                                                                     "substring",
+                                                                                     "substring-after",
+                                                                                     "substring-before",
+                                                                                     "sum",
+                                                                                     "tokenize",
+                                                                                     "translate",
+                                                                                     "true",
+                                                                                     "upper-case",
+                                                                                     // Kind tests
+                                                                                     "attribute",
+                                                                                     "comment",
+                                                                                     "element",
+                                                                                     "empty-sequence",
+                                                                                     "item",
+                                                                                     "node",
+                                                                                     "processing-instruction",
+                                                                                     "text",
+                                                                                     // Keywords
+                                                                                     "and",
+                                                                                     "div",
+                                                                                     "else",
+                                                                                     "eq",
+                                                                                     "except",
+                                                                                     "ge",
+                                                                                     "gt",
+                                                                                     "idiv",
+                                                                                     "if",
+                                                                                     "in",
+                                                                                     "intersect",
+                                                                                     "is",
+                                                                                     "le",
+                                                                                     "lt",
+                                                                                     "mod",
+                                                                                     "ne",
+                                                                                     "or",
+                                                                                     "return",
+                                                                                     "satisfies",
+                                                                                     "then",
+                                                                                     "to",
+                                                                                     "union");
+
+  /**
+   * The state of a single rule of the last run.
+   */
+  private static final class RuleState
+  {
+    private final ICommonsList <Node> m_aContextNodes = new CommonsArrayList <> ();
+    // Per context node: was the assert/report at index n triggered?
+    private final Map <Node, boolean []> m_aResults = new IdentityHashMap <> ();
+  }
+
+  /**
+   * Simple {@link NodeList} implementation on a list of nodes.
+   */
+  private static final class NodeListImpl implements NodeList
+  {
+    private final ICommonsList <Node> m_aNodes;
+
+    NodeListImpl (@Nonnull final ICommonsList <Node> aNodes)
+    {
+      m_aNodes = aNodes;
+    }
+
+    public Node item (final int nIndex)
+    {
+      return m_aNodes.getAtIndex (nIndex);
+    }
+
+    public int getLength ()
+    {
+      return m_aNodes.size ();
+    }
+  }
+
+  private final PSXPathBoundSchema m_aBoundSchema;
+  private final Node m_aNode;
+  private final String m_sBaseURI;
+  private final ICommonsList <PSXPathBoundPattern> m_aBoundPatterns;
+  // Status vars
+  private final Map <PSXPathBoundRule, boolean []> m_aLocality = new IdentityHashMap <> ();
+  private final Map <PSXPathBoundRule, RuleState> m_aRuleStates = new IdentityHashMap <> ();
+  private boolean m_bValidated = false;
+
+  /**
+   * Constructor
+   *
+   * @param aBoundSchema
+   *        The bound schema to use. May not be <code>null</code>.
+   * @param aNode
+   *        The node to be validated. This node is expected to be modified in
+   *        place between the runs. May not be <code>null</code>.
+   * @param sBaseURI
+   *        Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   */
+  public PSXPathIncrementalSession (@Nonnull final PSXPathBoundSchema aBoundSchema,
+                                    @Nonnull final Node aNode,
+                                    @Nullable final String sBaseURI)
+  {
+    ValueEnforcer.notNull (aBoundSchema, "BoundSchema");
+    ValueEnforcer.notNull (aNode, "Node");
+    m_aBoundSchema = aBoundSchema;
+    m_aNode = aNode;
+    m_sBaseURI = sBaseURI;
+    m_aBoundPatterns = aBoundSchema.getAllBoundPatterns ();
+
+    // Static analysis of all tests
+    for (final PSXPathBoundPattern aBoundPattern : m_aBoundPatterns)
+      for (final PSXPathBoundRule aBoundRule : aBoundPattern.getAllBoundRules ())
+      {
+        final ICommonsList <PSXPathBoundAssertReport> aBoundAssertReports = aBoundRule.getAllBoundAssertReports ();
+        final boolean [] aLocal = new boolean [aBoundAssertReports.size ()];
+        for (int i = 0; i < aLocal.length; ++i)
+          aLocal[i] = isLocalExpression (aBoundAssertReports.get (i).getTestExpression ());
+        m_aLocality.put (aBoundRule, aLocal);
+      }
+  }
+
+  /**
+   * Check if the passed XPath expression only depends on the context node and
+   * its descendants. This is a conservative textual analysis - if in doubt,
+   * the expression is considered not local. This includes all calls to
+   * prefixed (e.g. extension or custom) functions and to functions not known
+   * to be local.
+   *
+   * @param sXPath
+   *        The XPath expression to check. May not be <code>null</code>.
+   * @return <code>true</code> if the expression is local,
+   *         <code>false</code> otherwise.
+   */
+  public static boolean isLocalExpression (@Nonnull final String sXPath)
+  {
+    ValueEnforcer.notNull (sXPath, "XPath");
+
+    final String sWithoutLiterals = STRING_LITERAL.matcher (sXPath).replaceAll ("''");
+    for (final String sToken : NON_LOCAL_TOKENS)
+      if (sWithoutLiterals.contains (sToken))
+        return false;
+    final Matcher aMatcher = FUNCTION_CALL.matcher (sWithoutLiterals);
+    while (aMatcher.find ())
+      if (!LOCAL_FUNCTIONS.contains (aMatcher.group (1)))
+        return false;
+    return !ABSOLUTE_PATH.matcher (sWithoutLiterals).find ();
+  }
+
+  /**
+   * @return The validated node as passed in the constructor. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final Node getNode ()
+  {
+    return m_aNode;
+  }
+
+  /**
+   * @return <code>true</code> if at least one validation run was performed.
+   */
+  public final boolean isValidated ()
+  {
+    return m_bValidated;
+  }
+
+  @Nullable
+  private static Node _getParent (@Nonnull final Node aNode)
+  {
+    if (aNode.getNodeType () == Node.ATTRIBUTE_NODE)
+      return ((Attr) aNode).getOwnerElement ();
+    return aNode.getParentNode ();
+  }
+
+  private static boolean _isAffected (@Nonnull final Node aContextNode,
+                                      @Nonnull final Set <Node> aChangedNodes,
+                                      @Nonnull final Set <Node> aChangedAncestors)
+  {
+    // Is the change inside the subtree of the context node?
+    if (aChangedAncestors.contains (aContextNode))
+      return true;
+
+    // Is the context node inside a changed subtree?
+    Node aCur = _getParent (aContextNode);
+    while (aCur != null)
+    {
+      if (aChangedNodes.contains (aCur))
+        return true;
+      aCur = _getParent (aCur);
+    }
+    return false;
+  }
+
+  private void _error (@Nonnull final IPSElement aSourceElement,
+                       @Nonnull final String sMsg,
+                       @Nonnull final XPathExpressionException ex)
+  {
+    // Handle the cause, because it is usually a wrapper only
+    final IPSErrorHandler aErrorHandler = m_aBoundSchema.getErrorHandler ();
+    aErrorHandler.handleError (SingleError.builderError ()
+                                          .setErrorLocation (new SimpleLocation (m_aBoundSchema.getOriginalSchema ()
+                                                                                               .getResource ()
+                                                                                               .getPath ()))
+                                          .setErrorFieldName (IPSErrorHandler.getErrorFieldName (aSourceElement))
+                                          .setErrorText (sMsg)
+                                          .setLinkedException (ex.getCause () != null ? ex.getCause () : ex)
+                                          .build ());
+  }
+
+  @Nonnull
+  private SchematronOutputType _createSVRL () throws SchematronValidationException
+  {
+    final PSXPathValidationHandlerSVRL aSVRLHandler = new PSXPathValidationHandlerSVRL (m_aBoundSchema.getErrorHandler ());
+    final IPSValidationHandler aHandler = aSVRLHandler.and (m_aBoundSchema.getCustomValidationHandler ());
+
+    aHandler.onStart (m_aBoundSchema.getOriginalSchema (), m_aBoundSchema.getPhase (), m_sBaseURI);
+    for (final PSXPathBoundPattern aBoundPattern : m_aBoundPatterns)
+    {
+      aHandler.onPattern (aBoundPattern.getPattern ());
+      for (final PSXPathBoundRule aBoundRule : aBoundPattern.getAllBoundRules ())
+      {
+        final RuleState aState = m_aRuleStates.get (aBoundRule);
+        if (aState == null)
+        {
+          // Rule context could not be evaluated
+          continue;
+        }
+
+        final PSRule aRule = aBoundRule.getRule ();
+        aHandler.onRuleStart (aRule, new NodeListImpl (aState.m_aContextNodes));
+
+        final ICommonsList <PSXPathBoundAssertReport> aBoundAssertReports = aBoundRule.getAllBoundAssertReports ();
+        final int nNodeCount = aState.m_aContextNodes.size ();
+        for (int nNodeIndex = 0; nNodeIndex < nNodeCount; ++nNodeIndex)
+        {
+          final Node aContextNode = aState.m_aContextNodes.get (nNodeIndex);
+          aHandler.onFiredRule (aRule, aBoundRule.getRuleContext (), nNodeIndex, nNodeCount);
+
+          final boolean [] aResults = aState.m_aResults.get (aContextNode);
+          for (int i = 0; i < aResults.length; ++i)
+            if (aResults[i])
+            {
+              final PSXPathBoundAssertReport aBoundAssertReport = aBoundAssertReports.get (i);
+              final PSAssertReport aAssertReport = aBoundAssertReport.getAssertReport ();
+              final EContinue eContinue;
+              if (aAssertReport.isAssert ())
+                eContinue = aHandler.onFailedAssert (aAssertReport,
+                                                     aBoundAssertReport.getTestExpression (),
+                                                     aContextNode,
+                                                     nNodeIndex,
+                                                     aBoundAssertReport);
+              else
+                eContinue = aHandler.onSuccessfulReport (aAssertReport,
+                                                         aBoundAssertReport.getTestExpression (),
+                                                         aContextNode,
+                                                         nNodeIndex,
+                                                         aBoundAssertReport);
+              if (eContinue.isBreak ())
+              {
+                // Like the complete validation, onEnd is not called when
+                // stopping early
+                return aSVRLHandler.getSVRL ();
+              }
+            }
+        }
+      }
+    }
+    aHandler.onEnd (m_aBoundSchema.getOriginalSchema (), m_aBoundSchema.getPhase ());
+    return aSVRLHandler.getSVRL ();
+  }
+
+  @Nonnull
+  private PSXPathIncrementalResult _run (@Nullable final Iterable <? extends Node> aChangedNodes) throws SchematronValidationException
+  {
+    // Determine all changed nodes and all their ancestors
+    Set <Node> aChanged = null;
+    Set <Node> aChangedAncestors = null;
+    if (aChangedNodes != null)
+    {
+      aChanged = Collections.newSetFromMap (new IdentityHashMap <> ());
+      aChangedAncestors = Collections.newSetFromMap (new IdentityHashMap <> ());
+      for (final Node aChangedNode : aChangedNodes)
+        if (aChangedNode != null)
+        {
+          aChanged.add (aChangedNode);
+          Node aCur = aChangedNode;
+          while (aCur != null && aChangedAncestors.add (aCur))
+            aCur = _getParent (aCur);
+        }
+
+      // Keys may refer to any node of the modified document
+      final PSXPathKeyIndex aKeyIndex = m_aBoundSchema.getKeyIndex ();
+      if (aKeyIndex != null)
+        aKeyIndex.invalidate (m_aNode);
+    }
+
+    final ICommonsList <PSXPathIncrementalFinding> aAdded = new CommonsArrayList <> ();
+    final ICommonsList <PSXPathIncrementalFinding> aRemoved = new CommonsArrayList <> ();
+    int nEvaluated = 0;
+    int nReused = 0;
+
+    for (final PSXPathBoundPattern aBoundPattern : m_aBoundPatterns)
+      for (final PSXPathBoundRule aBoundRule : aBoundPattern.getAllBoundRules ())
+      {
+        final PSRule aRule = aBoundRule.getRule ();
+        final ICommonsList <PSXPathBoundAssertReport> aBoundAssertReports = aBoundRule.getAllBoundAssertReports ();
+        final boolean [] aLocal = m_aLocality.get (aBoundRule);
+        final RuleState aOldState = m_aRuleStates.remove (aBoundRule);
+
+        // Find all nodes matching the rules - the context may have changed
+        // anywhere in the document
+        NodeList aRuleContextNodes = null;
+        try
+        {
+          aRuleContextNodes = XPathEvaluationHelper.evaluateAsNodeList (aBoundRule.getBoundRuleContext (),
+                                                                        m_aNode,
+                                                                        m_sBaseURI);
+        }
+        catch (final XPathExpressionException ex)
+        {
+          _error (aRule,
+                  "Failed to evaluate XPath expression to a nodeset: '" + aBoundRule.getRuleContext () + "'",
+                  ex);
+        }
+
+        final RuleState aNewState = new RuleState ();
+        if (aRuleContextNodes != null)
+        {
+          final int nNodeCount = aRuleContextNodes.getLength ();
+          for (int nNodeIndex = 0; nNodeIndex < nNodeCount; ++nNodeIndex)
+          {
+            final Node aContextNode = aRuleContextNodes.item (nNodeIndex);
+            final boolean [] aOldResults = aOldState == null ? null : aOldState.m_aResults.get (aContextNode);
+            final boolean bAffected = aOldResults == null ||
+                                      aChanged == null ||
+                                      _isAffected (aContextNode, aChanged, aChangedAncestors);
+
+            final boolean [] aNewResults = new boolean [aBoundAssertReports.size ()];
+            for (int i = 0; i < aNewResults.length; ++i)
+            {
+              final PSXPathBoundAssertReport aBoundAssertReport = aBoundAssertReports.get (i);
+              if (!bAffected && aLocal[i])
+              {
+                // Nothing changed that could influence the result
+                aNewResults[i] = aOldResults[i];
+                ++nReused;
+                continue;
+              }
+
+              ++nEvaluated;
+              try
+              {
+                final boolean bTestResult = XPathEvaluationHelper.evaluateAsBoolean (aBoundAssertReport.getBoundTestExpression (),
+                                                                                     aContextNode,
+                                                                                     m_sBaseURI);
+                // Failed assert or successful report
+                aNewResults[i] = aBoundAssertReport.getAssertReport ().isAssert () ? !bTestResult : bTestResult;
+              }
+              catch (final XPathExpressionException ex)
+              {
+                _error (aRule,
+                        "Failed to evaluate XPath expression to a boolean: '" +
+                               aBoundAssertReport.getTestExpression () +
+                               "'",
+                        ex);
+              }
+
+              final boolean bOldResult = aOldResults != null && aOldResults[i];
+              if (aNewResults[i] && !bOldResult)
+                aAdded.add (new PSXPathIncrementalFinding (aBoundRule, aBoundAssertReport, aContextNode));
+              else
+                if (!aNewResults[i] && bOldResult)
+                  aRemoved.add (new PSXPathIncrementalFinding (aBoundRule, aBoundAssertReport, aContextNode));
+            }
+
+            aNewState.m_aContextNodes.add (aContextNode);
+            aNewState.m_aResults.put (aContextNode, aNewResults);
+          }
+          m_aRuleStates.put (aBoundRule, aNewState);
+        }
+
+        // All findings of context nodes that are gone
+        if (aOldState != null)
+          for (final Map.Entry <Node, boolean []> aEntry : aOldState.m_aResults.entrySet ())
+            if (!aNewState.m_aResults.containsKey (aEntry.getKey ()))
+            {
+              final boolean [] aOldResults = aEntry.getValue ();
+              for (int i = 0; i < aOldResults.length; ++i)
+                if (aOldResults[i])
+                  aRemoved.add (new PSXPathIncrementalFinding (aBoundRule, aBoundAssertReports.get (i), aEntry.getKey ()));
+            }
+      }
+
+    m_bValidated = true;
+    return new PSXPathIncrementalResult (_createSVRL (), aAdded, aRemoved, nEvaluated, nReused);
+  }
+
+  /**
+   * Validate the complete document. All previous results are discarded.
+   *
+   * @return The validation result. Never <code>null</code>. The delta is
+   *         relative to the previous run, if any.
+   * @throws SchematronValidationException
+   *         In case of validation errors
+   */
+  @Nonnull
+  public PSXPathIncrementalResult validate () throws SchematronValidationException
+  {
+    return _run (null);
+  }
+
+  /**
+   * Re-validate the document after it was modified in place. If no previous
+   * run was performed, this is identical to {@link #validate()}.
+   *
+   * @param aChangedNodes
+   *        All nodes that were changed, inserted or whose children or
+   *        attributes were changed since the last run. A changed node implies
+   *        that its complete subtree may have changed. For removed nodes, the
+   *        former parent must be passed. May not be <code>null</code>.
+   * @return The validation result. Never <code>null</code>.
+   * @throws SchematronValidationException
+   *         In case of validation errors
+   */
+  @Nonnull
+  public PSXPathIncrementalResult revalidate (@Nonnull final Iterable <? extends Node> aChangedNodes) throws SchematronValidationException
+  {
+    ValueEnforcer.notNull (aChangedNodes, "ChangedNodes");
+    return _run (m_bValidated ? aChangedNodes : null);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("boundSchema", m_aBoundSchema)
+                                       .appendIfNotNull ("baseURI", m_sBaseURI)
+                                       .append ("validated", m_bValidated)
+                                       .getToString ();
+  }
+}
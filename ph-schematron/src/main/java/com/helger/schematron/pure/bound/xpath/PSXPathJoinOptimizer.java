@@ -0,0 +1,430 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.bound.xpath;
+
+import java.util.function.BiFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+
+/**
+ * Optimizer that rewrites equality joins like
+ * <code>//X[@id = current()/@ref]</code> or <code>//X[cbc:ID = $code]</code>
+ * into lookups of a hash index (see {@link PSXPathKeyIndex}). This avoids
+ * scanning the whole document for every rule context node.
+ * <p>
+ * Only shapes that are known to be safe are rewritten:
+ * <ul>
+ * <li>The join must be an absolute path <code>//step(/step)*</code> with a
+ * single predicate consisting of exactly one general comparison using
+ * <code>=</code>.</li>
+ * <li>One side of the comparison must be a simple relative path (e.g.
+ * <code>@id</code>, <code>cbc:ID</code> or <code>.</code>).</li>
+ * <li>The other side must either start with <code>current()</code> followed by
+ * a simple relative path, or be a single variable reference. For variables
+ * the original expression is used at runtime if the variable contains
+ * anything else but nodes and strings.</li>
+ * <li>The join must be evaluated in the context of the rule context node, so
+ * it may not occur inside another predicate or path step.</li>
+ * </ul>
+ * All other expressions are left untouched. Expressions using the simple map
+ * operator <code>!</code> are never rewritten, because it changes the context
+ * item.
+ * <p>
+ * Note: the pure engine itself cannot evaluate <code>current()</code>. Joins
+ * using <code>current()</code> can therefore only be validated if they are
+ * rewritten - the optimization adds this capability for the supported shapes.
+ * <p>
+ * The optimization is only applied if it is enabled via
+ * {@link com.helger.schematron.xpath.IXPathConfig#isOptimizeJoins()}.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@Immutable
+public final class PSXPathJoinOptimizer
+{
+  private static final String XS_NS = "Q{http://www.w3.org/2001/XMLSchema}";
+  private static final String STEP = "(?:@?(?:\\*|[A-Za-z_][\\w.\\-]*(?::(?:\\*|[A-Za-z_][\\w.\\-]*))?)|\\.\\.?)";
+  private static final Pattern RELATIVE_PATH = Pattern.compile (STEP + "(?:/" + STEP + ")*");
+  private static final Pattern CURRENT_PATH = Pattern.compile ("current\\s*\\(\\s*\\)((?:/" + STEP + ")*)");
+  private static final Pattern VARIABLE = Pattern.compile ("\\$[A-Za-z_][\\w.\\-]*(?::[A-Za-z_][\\w.\\-]*)?");
+  private static final Pattern NAME_TEST = Pattern.compile ("(?:\\*|[A-Za-z_][\\w.\\-]*(?::(?:\\*|[A-Za-z_][\\w.\\-]*))?)");
+
+  private PSXPathJoinOptimizer ()
+  {}
+
+  private static boolean _isNameChar (final char c)
+  {
+    return Character.isLetterOrDigit (c) || c == '_' || c == '-' || c == '.' || c == ':' || c == '$' || c == '@';
+  }
+
+  private static char _getPrevNonWS (@Nonnull final String s, final int nIndex)
+  {
+    int i = nIndex - 1;
+    while (i >= 0 && Character.isWhitespace (s.charAt (i)))
+      i--;
+    return i >= 0 ? s.charAt (i) : 0;
+  }
+
+  private static char _getNextNonWS (@Nonnull final String s, final int nIndex)
+  {
+    int i = nIndex;
+    while (i < s.length () && Character.isWhitespace (s.charAt (i)))
+      i++;
+    return i < s.length () ? s.charAt (i) : 0;
+  }
+
+  /**
+   * Find the index of the closing bracket matching the opening bracket at the
+   * passed index.
+   *
+   * @return -1 if none was found
+   */
+  private static int _getClosingIndex (@Nonnull final String s, final int nOpenIndex)
+  {
+    int nDepth = 0;
+    char cQuote = 0;
+    for (int i = nOpenIndex; i < s.length (); ++i)
+    {
+      final char c = s.charAt (i);
+      if (cQuote != 0)
+      {
+        if (c == cQuote)
+          cQuote = 0;
+      }
+      else
+        if (c == '"' || c == '\'')
+          cQuote = c;
+        else
+          if (c == '(' || c == '[')
+            nDepth++;
+          else
+            if (c == ')' || c == ']')
+            {
+              nDepth--;
+              if (nDepth == 0)
+                return i;
+            }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The index of the only top-level "=" comparison or -1 if there is
+   *         none or more than one.
+   */
+  private static int _getSingleEqualsIndex (@Nonnull final String s)
+  {
+    int ret = -1;
+    int nDepth = 0;
+    char cQuote = 0;
+    for (int i = 0; i < s.length (); ++i)
+    {
+      final char c = s.charAt (i);
+      if (cQuote != 0)
+      {
+        if (c == cQuote)
+          cQuote = 0;
+      }
+      else
+        if (c == '"' || c == '\'')
+          cQuote = c;
+        else
+          if (c == '(' || c == '[')
+            nDepth++;
+          else
+            if (c == ')' || c == ']')
+              nDepth--;
+            else
+              if (c == '=' && nDepth == 0)
+              {
+                final char cPrev = i > 0 ? s.charAt (i - 1) : 0;
+                final char cNext = i + 1 < s.length () ? s.charAt (i + 1) : 0;
+                if (cPrev == '!' || cPrev == '<' || cPrev == '>' || cPrev == ':' || cNext == '>' || ret >= 0)
+                  return -1;
+                ret = i;
+              }
+    }
+    return ret;
+  }
+
+  /**
+   * @return <code>true</code> if the passed expression contains a
+   *         <code>!</code> outside of string literals that is not part of
+   *         <code>!=</code>.
+   */
+  private static boolean _containsSimpleMapOperator (@Nonnull final String s)
+  {
+    char cQuote = 0;
+    for (int i = 0; i < s.length (); ++i)
+    {
+      final char c = s.charAt (i);
+      if (cQuote != 0)
+      {
+        if (c == cQuote)
+          cQuote = 0;
+      }
+      else
+        if (c == '"' || c == '\'')
+          cQuote = c;
+        else
+          if (c == '!' && (i + 1 >= s.length () || s.charAt (i + 1) != '='))
+            return true;
+    }
+    return false;
+  }
+
+  private static boolean _isRelativePath (@Nonnull final String s)
+  {
+    // The keyword operators would be misinterpreted as element names
+    return RELATIVE_PATH.matcher (s).matches () &&
+           !s.equals ("and") &&
+           !s.equals ("or") &&
+           !s.equals ("div") &&
+           !s.equals ("mod");
+  }
+
+  /**
+   * Try to create the lookup expression for a single join.
+   *
+   * @param sMatch
+   *        The absolute path of the nodes to search.
+   * @param sPredicate
+   *        The content of the predicate.
+   * @param sOriginal
+   *        The original join expression.
+   * @param aKeyProvider
+   *        The key provider.
+   * @return <code>null</code> if the join cannot be rewritten
+   */
+  @Nullable
+  private static String _getLookup (@Nonnull final String sMatch,
+                                    @Nonnull final String sPredicate,
+                                    @Nonnull final String sOriginal,
+                                    @Nonnull final BiFunction <String, String, String> aKeyProvider)
+  {
+    final int nEquals = _getSingleEqualsIndex (sPredicate);
+    if (nEquals < 0)
+      return null;
+
+    final String sLeft = sPredicate.substring (0, nEquals).trim ();
+    final String sRight = sPredicate.substring (nEquals + 1).trim ();
+    final String sUse;
+    final String sValue;
+    if (_isRelativePath (sLeft))
+    {
+      sUse = sLeft;
+      sValue = sRight;
+    }
+    else
+      if (_isRelativePath (sRight))
+      {
+        sUse = sRight;
+        sValue = sLeft;
+      }
+      else
+        return null;
+
+    final String sLookupValue;
+    final boolean bIsVariable;
+    final Matcher aCurrentMatcher = CURRENT_PATH.matcher (sValue);
+    if (aCurrentMatcher.matches ())
+    {
+      // current() is the rule context node which is the context item of the
+      // outermost expression
+      final String sPath = aCurrentMatcher.group (1);
+      sLookupValue = sPath.isEmpty () ? "." : "." + sPath;
+      bIsVariable = false;
+    }
+    else
+      if (VARIABLE.matcher (sValue).matches ())
+      {
+        sLookupValue = sValue;
+        bIsVariable = true;
+      }
+      else
+        return null;
+
+    final String sKeyName = aKeyProvider.apply (sMatch, sUse);
+    if (sKeyName == null)
+      return null;
+
+    final String sLookup = PSXPathKeyIndex.NAMESPACE_PREFIX +
+                           ":" +
+                           PSXPathKeyIndex.FUNCTION_NAME +
+                           "('" +
+                           sKeyName +
+                           "', " +
+                           sLookupValue +
+                           ", root(.))";
+    if (!bIsVariable)
+      return sLookup;
+
+    // Variables may contain numbers which would require a numeric comparison
+    return "(if (every $ph_join_value in " +
+           sLookupValue +
+           " satisfies ($ph_join_value instance of node() or $ph_join_value instance of " +
+           XS_NS +
+           "string or $ph_join_value instance of " +
+           XS_NS +
+           "untypedAtomic)) then " +
+           sLookup +
+           " else " +
+           sOriginal +
+           ")";
+  }
+
+  /**
+   * Rewrite all safe equality joins in the passed expression.
+   *
+   * @param sExpr
+   *        The XPath expression to rewrite. May not be <code>null</code>.
+   * @param aKeyProvider
+   *        The callback that is invoked with the absolute match path and the
+   *        relative "use" path of every join. It must return the name of the
+   *        key in the {@link PSXPathKeyIndex} to use or <code>null</code> if
+   *        the join should not be rewritten. May not be <code>null</code>.
+   * @return The rewritten expression. Is the passed object if nothing was
+   *         rewritten.
+   */
+  @Nonnull
+  public static String getRewrittenExpression (@Nonnull final String sExpr,
+                                               @Nonnull final BiFunction <String, String, String> aKeyProvider)
+  {
+    ValueEnforcer.notNull (sExpr, "Expr");
+    ValueEnforcer.notNull (aKeyProvider, "KeyProvider");
+
+    // Quick check
+    if (sExpr.indexOf ("//") < 0 || sExpr.indexOf ('=') < 0)
+      return sExpr;
+
+    // The simple map operator changes the context item
+    if (_containsSimpleMapOperator (sExpr))
+      return sExpr;
+
+    final int nLen = sExpr.length ();
+    final StringBuilder aSB = new StringBuilder (nLen);
+    // Number of open brackets and of parenthesis that change the context
+    int nUnsafeDepth = 0;
+    // For every open parenthesis: does it change the context?
+    final ICommonsList <Boolean> aParenthesis = new CommonsArrayList <> ();
+    char cQuote = 0;
+    boolean bChanged = false;
+    int i = 0;
+    while (i < nLen)
+    {
+      final char c = sExpr.charAt (i);
+      if (cQuote != 0)
+      {
+        if (c == cQuote)
+          cQuote = 0;
+      }
+      else
+        if (c == '"' || c == '\'')
+          cQuote = c;
+        else
+          if (c == '[')
+            nUnsafeDepth++;
+          else
+            if (c == ']')
+              nUnsafeDepth--;
+            else
+              if (c == '(')
+              {
+                final boolean bUnsafe = _getPrevNonWS (sExpr, i) == '/';
+                aParenthesis.add (Boolean.valueOf (bUnsafe));
+                if (bUnsafe)
+                  nUnsafeDepth++;
+              }
+              else
+                if (c == ')')
+                {
+                  if (aParenthesis.isNotEmpty () && aParenthesis.removeLast ().booleanValue ())
+                    nUnsafeDepth--;
+                }
+                else
+                  if (c == '/' && nUnsafeDepth == 0 && sExpr.startsWith ("//", i))
+                  {
+                    final char cPrev = _getPrevNonWS (sExpr, i);
+                    if (!_isNameChar (cPrev) && cPrev != ')' && cPrev != ']' && cPrev != '*' && cPrev != '/')
+                    {
+                      final int nEnd = _tryRewriteJoin (sExpr, i, aKeyProvider, aSB);
+                      if (nEnd > 0)
+                      {
+                        bChanged = true;
+                        i = nEnd;
+                        continue;
+                      }
+                    }
+                  }
+      aSB.append (c);
+      i++;
+    }
+    return bChanged ? aSB.toString () : sExpr;
+  }
+
+  /**
+   * Try to rewrite the join starting at the passed index.
+   *
+   * @return The index after the rewritten join or -1 if nothing was rewritten.
+   */
+  private static int _tryRewriteJoin (@Nonnull final String sExpr,
+                                      final int nStart,
+                                      @Nonnull final BiFunction <String, String, String> aKeyProvider,
+                                      @Nonnull final StringBuilder aSB)
+  {
+    final int nOpen = sExpr.indexOf ('[', nStart);
+    if (nOpen < 0)
+      return -1;
+
+    // All steps up to the predicate must be simple name tests
+    final String sSteps = sExpr.substring (nStart + 2, nOpen).trim ();
+    if (sSteps.isEmpty ())
+      return -1;
+    for (final String sStep : sSteps.split ("/", -1))
+      if (!NAME_TEST.matcher (sStep.trim ()).matches ())
+        return -1;
+
+    final int nClose = _getClosingIndex (sExpr, nOpen);
+    if (nClose < 0)
+      return -1;
+
+    // No further predicates or steps
+    final char cNext = _getNextNonWS (sExpr, nClose + 1);
+    if (cNext == '[' || cNext == '/')
+      return -1;
+
+    final String sOriginal = sExpr.substring (nStart, nClose + 1);
+    final String sLookup = _getLookup ("//" + sSteps,
+                                       sExpr.substring (nOpen + 1, nClose),
+                                       sOriginal,
+                                       aKeyProvider);
+    if (sLookup == null)
+      return -1;
+
+    aSB.append (sLookup);
+    return nClose + 1;
+  }
+}
@@ -0,0 +1,614 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.bound.xpath;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFunction;
+import javax.xml.xpath.XPathFunctionException;
+import javax.xml.xpath.XPathFunctionResolver;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.CommonsLinkedHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.schematron.xpath.XPathEvaluationHelper;
+import com.helger.xml.XMLHelper;
+
+import net.sf.saxon.dom.DocumentWrapper;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.tree.wrapper.VirtualNode;
+
+/**
+ * Support for <code>xsl:key</code> declarations in the pure Schematron engine.
+ * Each key is backed by a hash index per document that is lazily built on the
+ * first lookup. The index of a document is stored as DOM user data on the
+ * document, so it lives exactly as long as the document and can be shared by
+ * all threads validating the same document.
+ * <p>
+ * As plain XPath has no <code>key()</code> function, all calls to
+ * <code>key(name, value)</code> in the Schematron expressions are rewritten to
+ * <code>ph-schematron-key:key(name, value, root(.))</code> before compilation
+ * (see {@link #getRewrittenExpression(String)}). Keys are compared as strings.
+ * <p>
+ * If a document is modified after it was validated, {@link #invalidate(Node)}
+ * must be called.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public class PSXPathKeyIndex
+{
+  /** The namespace URI of the internal key function */
+  public static final String NAMESPACE_URI = "urn:ph-schematron:pure:key";
+  /** The namespace prefix used for the internal key function */
+  public static final String NAMESPACE_PREFIX = "ph-schematron-key";
+  /** The local name of the key function */
+  public static final String FUNCTION_NAME = "key";
+
+  /** Separator between the multiple values of a "use" expression */
+  private static final char VALUE_SEPARATOR = '\uE000';
+  private static final QName FUNCTION_QNAME = new QName (NAMESPACE_URI, FUNCTION_NAME);
+  private static final AtomicLong ID_COUNTER = new AtomicLong (0);
+
+  /**
+   * A single key declaration.
+   */
+  private static final class KeyDefinition
+  {
+    private final XPathExpression m_aMatch;
+    private final XPathExpression m_aUse;
+
+    KeyDefinition (@Nonnull final XPathExpression aMatch, @Nonnull final XPathExpression aUse)
+    {
+      m_aMatch = aMatch;
+      m_aUse = aUse;
+    }
+  }
+
+  /**
+   * All indices of a single document. Stored as DOM user data.
+   */
+  private static final class DocumentIndex
+  {
+    private final ConcurrentHashMap <String, ICommonsMap <String, ICommonsList <Node>>> m_aIndices = new ConcurrentHashMap <> ();
+  }
+
+  private final String m_sUserDataKey = PSXPathKeyIndex.class.getName () + ":" + ID_COUNTER.incrementAndGet ();
+  private final ICommonsMap <String, KeyDefinition> m_aKeys = new CommonsHashMap <> ();
+
+  public PSXPathKeyIndex ()
+  {}
+
+  /**
+   * Convert an XSLT match pattern to an XPath expression that selects all
+   * matching nodes of a document.
+   *
+   * @param sMatch
+   *        The match pattern. May not be <code>null</code>.
+   * @return The XPath expression. Never <code>null</code>.
+   */
+  @Nonnull
+  public static String getMatchAsXPath (@Nonnull final String sMatch)
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (final String sPart : _splitTopLevel (sMatch, '|'))
+    {
+      final String sTrimmed = sPart.trim ();
+      if (aSB.length () > 0)
+        aSB.append (" | ");
+      if (sTrimmed.startsWith ("/"))
+        aSB.append (sTrimmed);
+      else
+        aSB.append ("//").append (sTrimmed);
+    }
+    return aSB.toString ();
+  }
+
+  /**
+   * Create the XPath expression that returns all values of a "use" expression
+   * as a single string.
+   *
+   * @param sUse
+   *        The use expression. May not be <code>null</code>.
+   * @return The XPath expression. Never <code>null</code>.
+   */
+  @Nonnull
+  public static String getUseAsXPath (@Nonnull final String sUse)
+  {
+    return "string-join(for $ph_key_value in (" + sUse + ") return string($ph_key_value), '" + VALUE_SEPARATOR + "')";
+  }
+
+  private static boolean _isNameChar (final char c)
+  {
+    return Character.isLetterOrDigit (c) || c == '_' || c == '-' || c == '.' || c == ':' || c == '$' || c == '@';
+  }
+
+  /**
+   * Split the passed string at all occurrences of the separator that are not
+   * within string literals, brackets or parenthesis.
+   */
+  @Nonnull
+  private static ICommonsList <String> _splitTopLevel (@Nonnull final String s, final char cSep)
+  {
+    final ICommonsList <String> ret = new CommonsArrayList <> ();
+    int nDepth = 0;
+    char cQuote = 0;
+    int nStart = 0;
+    for (int i = 0; i < s.length (); ++i)
+    {
+      final char c = s.charAt (i);
+      if (cQuote != 0)
+      {
+        if (c == cQuote)
+          cQuote = 0;
+      }
+      else
+        if (c == '"' || c == '\'')
+          cQuote = c;
+        else
+          if (c == '(' || c == '[')
+            nDepth++;
+          else
+            if (c == ')' || c == ']')
+              nDepth--;
+            else
+              if (c == cSep && nDepth == 0)
+              {
+                ret.add (s.substring (nStart, i));
+                nStart = i + 1;
+              }
+    }
+    ret.add (s.substring (nStart));
+    return ret;
+  }
+
+  /**
+   * Rewrite all calls to the XSLT <code>key</code> function in the passed
+   * expression to calls of the internal key function. The document to search
+   * is added as the third parameter if it is missing.
+   *
+   * @param sExpr
+   *        The XPath expression to rewrite. May not be <code>null</code>.
+   * @return The rewritten expression. Never <code>null</code>.
+   */
+  @Nonnull
+  public static String getRewrittenExpression (@Nonnull final String sExpr)
+  {
+    ValueEnforcer.notNull (sExpr, "Expr");
+
+    // Quick check
+    if (sExpr.indexOf (FUNCTION_NAME) < 0)
+      return sExpr;
+
+    final int nLen = sExpr.length ();
+    // Positions where to insert the third argument
+    final ICommonsSet <Integer> aRootInserts = new CommonsHashSet <> ();
+    // Positions of the key function names
+    final ICommonsSet <Integer> aNameStarts = new CommonsHashSet <> ();
+    char cQuote = 0;
+    for (int i = 0; i < nLen; ++i)
+    {
+      final char c = sExpr.charAt (i);
+      if (cQuote != 0)
+      {
+        if (c == cQuote)
+          cQuote = 0;
+        continue;
+      }
+      if (c == '"' || c == '\'')
+      {
+        cQuote = c;
+        continue;
+      }
+      if (!sExpr.startsWith (FUNCTION_NAME, i) || (i > 0 && _isNameChar (sExpr.charAt (i - 1))))
+        continue;
+
+      // Skip whitespaces to the opening parenthesis
+      int nOpen = i + FUNCTION_NAME.length ();
+      while (nOpen < nLen && Character.isWhitespace (sExpr.charAt (nOpen)))
+        nOpen++;
+      if (nOpen >= nLen || sExpr.charAt (nOpen) != '(')
+        continue;
+
+      // Find the closing parenthesis and count the top-level arguments
+      int nDepth = 0;
+      int nCommas = 0;
+      char cArgQuote = 0;
+      int nClose = -1;
+      for (int j = nOpen + 1; j < nLen && nClose < 0; ++j)
+      {
+        final char c2 = sExpr.charAt (j);
+        if (cArgQuote != 0)
+        {
+          if (c2 == cArgQuote)
+            cArgQuote = 0;
+        }
+        else
+          if (c2 == '"' || c2 == '\'')
+            cArgQuote = c2;
+          else
+            if (c2 == '(' || c2 == '[')
+              nDepth++;
+            else
+              if (c2 == ')' || c2 == ']')
+              {
+                if (nDepth == 0)
+                  nClose = j;
+                else
+                  nDepth--;
+              }
+              else
+                if (c2 == ',' && nDepth == 0)
+                  nCommas++;
+      }
+      if (nClose < 0 || nCommas < 1 || nCommas > 2)
+      {
+        // Syntax error or unsupported arity - leave it to the compiler
+        continue;
+      }
+
+      aNameStarts.add (Integer.valueOf (i));
+      if (nCommas == 1)
+        aRootInserts.add (Integer.valueOf (nClose));
+      // Continue after the name, to handle nested calls
+      i = nOpen;
+    }
+
+    if (aNameStarts.isEmpty ())
+      return sExpr;
+
+    final StringBuilder aSB = new StringBuilder (nLen + aNameStarts.size () * 32);
+    for (int i = 0; i < nLen; ++i)
+    {
+      if (aNameStarts.contains (Integer.valueOf (i)))
+        aSB.append (NAMESPACE_PREFIX).append (':');
+      if (aRootInserts.contains (Integer.valueOf (i)))
+        aSB.append (", root(.)");
+      aSB.append (sExpr.charAt (i));
+    }
+    return aSB.toString ();
+  }
+
+  /**
+   * Add a new key. This must only be called while binding.
+   *
+   * @param sName
+   *        The key name. May neither be <code>null</code> nor empty.
+   * @param aMatch
+   *        The compiled match expression as created from
+   *        {@link #getMatchAsXPath(String)}. May not be <code>null</code>.
+   * @param aUse
+   *        The compiled use expression as created from
+   *        {@link #getUseAsXPath(String)}. May not be <code>null</code>.
+   * @return <code>false</code> if a key with the same name is already
+   *         contained.
+   */
+  public boolean addKey (@Nonnull @Nonempty final String sName,
+                         @Nonnull final XPathExpression aMatch,
+                         @Nonnull final XPathExpression aUse)
+  {
+    ValueEnforcer.notEmpty (sName, "Name");
+    ValueEnforcer.notNull (aMatch, "Match");
+    ValueEnforcer.notNull (aUse, "Use");
+    if (m_aKeys.containsKey (sName))
+      return false;
+    m_aKeys.put (sName, new KeyDefinition (aMatch, aUse));
+    return true;
+  }
+
+  /**
+   * @return <code>true</code> if at least one key is defined.
+   */
+  public boolean hasKeys ()
+  {
+    return m_aKeys.isNotEmpty ();
+  }
+
+  @Nonnull
+  private DocumentIndex _getDocumentIndex (@Nonnull final Document aDoc)
+  {
+    synchronized (aDoc)
+    {
+      DocumentIndex ret = (DocumentIndex) aDoc.getUserData (m_sUserDataKey);
+      if (ret == null)
+      {
+        ret = new DocumentIndex ();
+        aDoc.setUserData (m_sUserDataKey, ret, null);
+      }
+      return ret;
+    }
+  }
+
+  @Nonnull
+  private static ICommonsMap <String, ICommonsList <Node>> _buildIndex (@Nonnull final KeyDefinition aKey,
+                                                                       @Nonnull final Document aDoc) throws XPathExpressionException
+  {
+    final ICommonsMap <String, ICommonsList <Node>> ret = new CommonsHashMap <> ();
+    final NodeList aMatches = XPathEvaluationHelper.evaluateAsNodeList (aKey.m_aMatch, aDoc, null);
+    if (aMatches != null)
+      for (int i = 0; i < aMatches.getLength (); ++i)
+      {
+        final Node aNode = aMatches.item (i);
+        final String sValues = XPathEvaluationHelper.evaluateAsString (aKey.m_aUse, aNode, null);
+        if (sValues != null && !sValues.isEmpty ())
+          for (final String sValue : sValues.split (Character.toString (VALUE_SEPARATOR), -1))
+            ret.computeIfAbsent (sValue, k -> new CommonsArrayList <> ()).add (aNode);
+      }
+    return ret;
+  }
+
+  /**
+   * Invalidate all indices of the document containing the passed node.
+   *
+   * @param aNode
+   *        Any node of the modified document. May not be <code>null</code>.
+   */
+  public void invalidate (@Nonnull final Node aNode)
+  {
+    ValueEnforcer.notNull (aNode, "Node");
+    final Document aDoc = XMLHelper.getOwnerDocument (aNode);
+    if (aDoc != null)
+      synchronized (aDoc)
+      {
+        aDoc.setUserData (m_sUserDataKey, null, null);
+      }
+  }
+
+  private static boolean _isDescendantOrSelf (@Nonnull final Node aNode, @Nonnull final Node aTop)
+  {
+    Node aCur = aNode;
+    while (aCur != null)
+    {
+      if (aCur == aTop)
+        return true;
+      aCur = aCur.getNodeType () == Node.ATTRIBUTE_NODE ? ((Attr) aCur).getOwnerElement ()
+                                                         : aCur.getParentNode ();
+    }
+    return false;
+  }
+
+  /**
+   * Get all nodes that have one of the passed values for the passed key.
+   *
+   * @param sKeyName
+   *        The key name. May not be <code>null</code>.
+   * @param aValues
+   *        The values to search. May not be <code>null</code>.
+   * @param aTop
+   *        The node below which to search. Usually the document node. May not
+   *        be <code>null</code>.
+   * @return All matching nodes in document order. Never <code>null</code>.
+   * @throws XPathExpressionException
+   *         If the key is unknown or the index could not be built
+   */
+  @Nonnull
+  public ICommonsList <Node> getAllNodes (@Nonnull final String sKeyName,
+                                          @Nonnull final Iterable <String> aValues,
+                                          @Nonnull final Node aTop) throws XPathExpressionException
+  {
+    final KeyDefinition aKey = m_aKeys.get (sKeyName);
+    if (aKey == null)
+      throw new XPathExpressionException ("Unknown key '" + sKeyName + "'. Available keys are: " + m_aKeys.keySet ());
+
+    final Document aDoc = XMLHelper.getOwnerDocument (aTop);
+    if (aDoc == null)
+      throw new XPathExpressionException ("The key function requires a node inside a document");
+
+    final DocumentIndex aDocIndex = _getDocumentIndex (aDoc);
+    ICommonsMap <String, ICommonsList <Node>> aIndex = aDocIndex.m_aIndices.get (sKeyName);
+    if (aIndex == null)
+    {
+      // Build outside of the map - building twice in parallel is harmless
+      final ICommonsMap <String, ICommonsList <Node>> aNewIndex = _buildIndex (aKey, aDoc);
+      aIndex = aDocIndex.m_aIndices.putIfAbsent (sKeyName, aNewIndex);
+      if (aIndex == null)
+        aIndex = aNewIndex;
+    }
+
+    final ICommonsOrderedSet <Node> aUnique = new CommonsLinkedHashSet <> ();
+    int nValues = 0;
+    for (final String sValue : aValues)
+    {
+      final ICommonsList <Node> aNodes = aIndex.get (sValue);
+      if (aNodes != null)
+        for (final Node aNode : aNodes)
+          if (aTop == aDoc || _isDescendantOrSelf (aNode, aTop))
+            aUnique.add (aNode);
+      nValues++;
+    }
+
+    final ICommonsList <Node> ret = new CommonsArrayList <> (aUnique);
+    if (nValues > 1 && ret.size () > 1)
+    {
+      // The index lists are in document order - the combination is not
+      ret.sort (PSXPathKeyIndex::compareDocumentOrder);
+    }
+    return ret;
+  }
+
+  /**
+   * Compare two nodes by document order.
+   *
+   * @param aNode1
+   *        First node. May not be <code>null</code>.
+   * @param aNode2
+   *        Second node. May not be <code>null</code>.
+   * @return 0 if both nodes are identical, a negative value if the first node
+   *         precedes the second node and a positive value otherwise.
+   */
+  static int compareDocumentOrder (@Nonnull final Node aNode1, @Nonnull final Node aNode2)
+  {
+    if (aNode1 == aNode2)
+      return 0;
+    final short nPos = aNode1.compareDocumentPosition (aNode2);
+    if ((nPos & Node.DOCUMENT_POSITION_FOLLOWING) != 0)
+      return -1;
+    if ((nPos & Node.DOCUMENT_POSITION_PRECEDING) != 0)
+      return 1;
+    return 0;
+  }
+
+  /**
+   * Get the XPath string value of the passed node. In contrast to
+   * {@link Node#getTextContent()} this also works for document nodes.
+   */
+  @Nonnull
+  private static String _getStringValue (@Nonnull final Node aNode)
+  {
+    if (aNode.getNodeType () == Node.DOCUMENT_NODE)
+    {
+      final Node aDocElement = ((Document) aNode).getDocumentElement ();
+      return aDocElement == null ? "" : StringHelper.getNotNull (aDocElement.getTextContent ());
+    }
+    return StringHelper.getNotNull (aNode.getTextContent ());
+  }
+
+  @Nullable
+  private static Object _getSingleItem (@Nullable final Object aObj)
+  {
+    if (aObj instanceof List <?> && ((List <?>) aObj).size () == 1)
+      return ((List <?>) aObj).get (0);
+    return aObj;
+  }
+
+  @Nullable
+  private static Node _getAsDOMNode (@Nullable final Object aObj)
+  {
+    Object aReal = _getSingleItem (aObj);
+    if (aReal instanceof VirtualNode)
+      aReal = ((VirtualNode) aReal).getRealNode ();
+    return aReal instanceof Node ? (Node) aReal : null;
+  }
+
+  /**
+   * Add the string values of all items of an extension function argument to
+   * the passed list. Some DOM implementations (e.g. Xerces) let elements
+   * implement {@link NodeList} as well. An argument that is a {@link Node} is
+   * therefore always handled as a single item, and only other
+   * {@link NodeList}s are handled as sequences.
+   *
+   * @param aObj
+   *        The argument as passed by the XPath engine. May be
+   *        <code>null</code>.
+   * @param aTarget
+   *        The list to add to. May not be <code>null</code>.
+   */
+  static void addAllStringValues (@Nullable final Object aObj, @Nonnull final ICommonsList <String> aTarget)
+  {
+    if (aObj == null)
+      return;
+    if (aObj instanceof List <?>)
+    {
+      for (final Object aItem : (List <?>) aObj)
+        addAllStringValues (aItem, aTarget);
+    }
+    else
+      if (aObj instanceof NodeInfo)
+        aTarget.add (((NodeInfo) aObj).getStringValue ());
+      else
+        if (aObj instanceof Node)
+          aTarget.add (_getStringValue ((Node) aObj));
+        else
+          if (aObj instanceof NodeList)
+          {
+            final NodeList aNL = (NodeList) aObj;
+            for (int i = 0; i < aNL.getLength (); ++i)
+              aTarget.add (_getStringValue (aNL.item (i)));
+          }
+          else
+            aTarget.add (String.valueOf (aObj));
+  }
+
+  /**
+   * Create a function resolver that resolves the internal key function and
+   * delegates all other functions to the passed resolver.
+   *
+   * @param aDelegate
+   *        The function resolver to delegate to. May be <code>null</code>.
+   * @return The new function resolver. Never <code>null</code>.
+   */
+  @Nonnull
+  public XPathFunctionResolver createFunctionResolver (@Nullable final XPathFunctionResolver aDelegate)
+  {
+    final XPathFunction aKeyFunction = aArgs -> {
+      if (aArgs.size () != 3)
+        throw new XPathFunctionException ("The key function requires 3 arguments");
+      final ICommonsList <String> aNames = new CommonsArrayList <> ();
+      addAllStringValues (aArgs.get (0), aNames);
+      if (aNames.size () != 1)
+        throw new XPathFunctionException ("The key name must be a single string");
+      final Node aTop = _getAsDOMNode (aArgs.get (2));
+      if (aTop == null)
+        throw new XPathFunctionException ("The key function can only be applied on DOM nodes");
+
+      final ICommonsList <String> aValues = new CommonsArrayList <> ();
+      addAllStringValues (aArgs.get (1), aValues);
+      try
+      {
+        final ICommonsList <Node> aNodes = getAllNodes (aNames.getFirst (), aValues, aTop);
+
+        // Return the nodes wrapped in the same tree as the passed root, so that
+        // node identity and document order are retained
+        final Object aRoot = _getSingleItem (aArgs.get (2));
+        if (aRoot instanceof NodeInfo && ((NodeInfo) aRoot).getTreeInfo () instanceof DocumentWrapper)
+        {
+          final DocumentWrapper aWrapper = (DocumentWrapper) ((NodeInfo) aRoot).getTreeInfo ();
+          return aNodes.getAllMapped (aWrapper::wrap);
+        }
+        return aNodes;
+      }
+      catch (final XPathExpressionException ex)
+      {
+        throw new XPathFunctionException (ex);
+      }
+    };
+    return (aFunctionName, nArity) -> {
+      if (FUNCTION_QNAME.equals (aFunctionName) && nArity == 3)
+        return aKeyFunction;
+      return aDelegate == null ? null : aDelegate.resolveFunction (aFunctionName, nArity);
+    };
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("keys", m_aKeys.keySet ()).getToString ();
+  }
+}
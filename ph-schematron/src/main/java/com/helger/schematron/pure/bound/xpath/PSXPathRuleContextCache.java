@@ -0,0 +1,228 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.bound.xpath;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.xml.xpath.XPathExpressionException;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsTreeMap;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.schematron.xpath.XPathEvaluationHelper;
+
+/**
+ * A cache for the evaluated rule contexts of a single, unmodified document.
+ * It is meant to be shared between several {@link PSXPathBoundSchema}
+ * objects validating the same document, so that identical rule contexts (same
+ * expression, same namespace bindings and same XPath resolvers) are evaluated
+ * only once.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@NotThreadSafe
+public class PSXPathRuleContextCache
+{
+  /**
+   * The part of the key that is identical for all rules of a bound schema.
+   */
+  private static final class SchemaKey
+  {
+    private final String m_sNamespaces;
+    private final Object m_aVariableResolver;
+    private final Object m_aFunctionResolver;
+
+    SchemaKey (@Nonnull final PSXPathBoundSchema aBoundSchema)
+    {
+      m_sNamespaces = new CommonsTreeMap <> (aBoundSchema.getNamespaceContext ()
+                                                         .getPrefixToNamespaceURIMap ()).toString ();
+      m_aVariableResolver = aBoundSchema.getXPathVariableResolver ();
+      m_aFunctionResolver = aBoundSchema.getXPathFunctionResolver ();
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final SchemaKey rhs = (SchemaKey) o;
+      // Resolvers are compared by identity
+      return m_sNamespaces.equals (rhs.m_sNamespaces) &&
+             m_aVariableResolver == rhs.m_aVariableResolver &&
+             m_aFunctionResolver == rhs.m_aFunctionResolver;
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return new HashCodeGenerator (this).append (m_sNamespaces)
+                                         .append (System.identityHashCode (m_aVariableResolver))
+                                         .append (System.identityHashCode (m_aFunctionResolver))
+                                         .getHashCode ();
+    }
+  }
+
+  private static final class Key
+  {
+    private final String m_sRuleContext;
+    private final SchemaKey m_aSchemaKey;
+    private final String m_sBaseURI;
+
+    Key (@Nonnull final String sRuleContext, @Nonnull final SchemaKey aSchemaKey, @Nullable final String sBaseURI)
+    {
+      m_sRuleContext = sRuleContext;
+      m_aSchemaKey = aSchemaKey;
+      m_sBaseURI = sBaseURI;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final Key rhs = (Key) o;
+      return m_sRuleContext.equals (rhs.m_sRuleContext) &&
+             m_aSchemaKey.equals (rhs.m_aSchemaKey) &&
+             EqualsHelper.equals (m_sBaseURI, rhs.m_sBaseURI);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return new HashCodeGenerator (this).append (m_sRuleContext)
+                                         .append (m_aSchemaKey)
+                                         .append (m_sBaseURI)
+                                         .getHashCode ();
+    }
+  }
+
+  private final Node m_aNode;
+  private final ICommonsMap <Key, NodeList> m_aMap = new CommonsHashMap <> ();
+  // Bound schemas are compared by identity
+  private final Map <PSXPathBoundSchema, SchemaKey> m_aSchemaKeys = new IdentityHashMap <> ();
+  private int m_nHits = 0;
+  private int m_nMisses = 0;
+
+  /**
+   * Constructor
+   *
+   * @param aNode
+   *        The node that is validated. It must not be modified while this
+   *        cache is in use. May not be <code>null</code>.
+   */
+  public PSXPathRuleContextCache (@Nonnull final Node aNode)
+  {
+    ValueEnforcer.notNull (aNode, "Node");
+    m_aNode = aNode;
+  }
+
+  /**
+   * @return The node this cache belongs to. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Node getNode ()
+  {
+    return m_aNode;
+  }
+
+  /**
+   * Get the context nodes of the passed rule - either from the cache or by
+   * evaluating the rule context.
+   *
+   * @param aBoundSchema
+   *        The bound schema the rule belongs to. May not be <code>null</code>.
+   * @param aBoundRule
+   *        The bound rule to evaluate. May not be <code>null</code>.
+   * @param aNode
+   *        The node to evaluate on. Must be the node this cache was created
+   *        for.
+   * @param sBaseURI
+   *        The base URI of the document. May be <code>null</code>.
+   * @return The matching context nodes. Never <code>null</code>.
+   * @throws XPathExpressionException
+   *         If the rule context could not be evaluated
+   */
+  @Nonnull
+  public NodeList getRuleContextNodes (@Nonnull final PSXPathBoundSchema aBoundSchema,
+                                       @Nonnull final PSXPathBoundRule aBoundRule,
+                                       @Nonnull final Node aNode,
+                                       @Nullable final String sBaseURI) throws XPathExpressionException
+  {
+    ValueEnforcer.notNull (aBoundSchema, "BoundSchema");
+    ValueEnforcer.notNull (aBoundRule, "BoundRule");
+    ValueEnforcer.isTrue (aNode == m_aNode, "The rule context cache belongs to a different node");
+
+    final SchemaKey aSchemaKey = m_aSchemaKeys.computeIfAbsent (aBoundSchema, SchemaKey::new);
+    final Key aKey = new Key (aBoundRule.getRuleContext (), aSchemaKey, sBaseURI);
+    NodeList ret = m_aMap.get (aKey);
+    if (ret != null)
+    {
+      m_nHits++;
+    }
+    else
+    {
+      m_nMisses++;
+      ret = XPathEvaluationHelper.evaluateAsNodeList (aBoundRule.getBoundRuleContext (), aNode, sBaseURI);
+      m_aMap.put (aKey, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * @return The number of rule contexts that were taken from the cache.
+   */
+  @Nonnegative
+  public final int getHitCount ()
+  {
+    return m_nHits;
+  }
+
+  /**
+   * @return The number of rule contexts that were evaluated.
+   */
+  @Nonnegative
+  public final int getMissCount ()
+  {
+    return m_nMisses;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("size", m_aMap.size ())
+                                       .append ("hits", m_nHits)
+                                       .append ("misses", m_nMisses)
+                                       .getToString ();
+  }
+}
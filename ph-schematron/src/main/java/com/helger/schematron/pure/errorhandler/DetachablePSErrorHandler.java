@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.errorhandler;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.error.IError;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * An implementation if {@link IPSErrorHandler} that forwards all errors to
+ * another error handler until it is detached. Afterwards all errors are
+ * swallowed. This is meant for bound schemas that keep their error handler: a
+ * collecting error handler can be used while the schema is bound and detached
+ * before the schema is used by several threads.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public class DetachablePSErrorHandler implements IPSErrorHandler
+{
+  private volatile IPSErrorHandler m_aTarget;
+
+  public DetachablePSErrorHandler (@Nonnull final IPSErrorHandler aTarget)
+  {
+    ValueEnforcer.notNull (aTarget, "Target");
+    m_aTarget = aTarget;
+  }
+
+  /**
+   * @return The error handler all errors are forwarded to or <code>null</code>
+   *         if this handler was detached.
+   */
+  @Nullable
+  public IPSErrorHandler getTarget ()
+  {
+    return m_aTarget;
+  }
+
+  /**
+   * @return <code>true</code> if {@link #detach()} was called.
+   */
+  public boolean isDetached ()
+  {
+    return m_aTarget == null;
+  }
+
+  /**
+   * Stop forwarding errors to the target error handler.
+   */
+  public void detach ()
+  {
+    m_aTarget = null;
+  }
+
+  public void handleError (@Nonnull final IError aError)
+  {
+    final IPSErrorHandler aTarget = m_aTarget;
+    if (aTarget != null)
+      aTarget.handleError (aError);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Target", m_aTarget).getToString ();
+  }
+}
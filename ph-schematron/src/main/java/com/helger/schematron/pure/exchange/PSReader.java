@@ -120,6 +120,16 @@ public class PSReader
     return m_aErrorHandler;
   }
 
+  /**
+   * @return The XML entity resolver used. May be <code>null</code>.
+   * @since 5.6.1
+   */
+  @Nullable
+  public final EntityResolver getEntityResolver ()
+  {
+    return m_aEntityResolver;
+  }
+
   /**
    * @return <code>true</code> if the old Schematron namespace is supported,
    *         <code>false</code> if not.
@@ -1020,45 +1030,58 @@ public class PSReader
     });
     ret.setRich (aRichGroup);
 
-    eSchema.forAllChildElements (eSchemaChild -> {
-      if (isValidSchematronNS (eSchemaChild.getNamespaceURI ()))
-      {
-        if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_INCLUDE))
-          ret.addInclude (readIncludeFromXML (eSchemaChild));
+    eSchema.forAllChildElements (eSchemaChild -> readSchemaChildFromXML (ret, eSchemaChild));
+    return ret;
+  }
+
+  /**
+   * Read a single child element of a &lt;schema&gt; element and add it to the
+   * passed schema.
+   *
+   * @param aSchema
+   *        The schema to add the read object to. May not be <code>null</code>.
+   * @param eSchemaChild
+   *        The source micro element. Never <code>null</code>.
+   * @since 5.6.1
+   */
+  protected void readSchemaChildFromXML (@Nonnull final PSSchema aSchema, @Nonnull final IMicroElement eSchemaChild)
+  {
+    if (isValidSchematronNS (eSchemaChild.getNamespaceURI ()))
+    {
+      if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_INCLUDE))
+        aSchema.addInclude (readIncludeFromXML (eSchemaChild));
+      else
+        if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_TITLE))
+          aSchema.setTitle (readTitleFromXML (eSchemaChild));
         else
-          if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_TITLE))
-            ret.setTitle (readTitleFromXML (eSchemaChild));
+          if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_NS))
+            aSchema.addNS (readNSFromXML (eSchemaChild));
           else
-            if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_NS))
-              ret.addNS (readNSFromXML (eSchemaChild));
+            if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_P))
+            {
+              final PSP aP = readPFromXML (eSchemaChild);
+              if (aSchema.hasNoPatterns ())
+                aSchema.addStartP (aP);
+              else
+                aSchema.addEndP (aP);
+            }
             else
-              if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_P))
-              {
-                final PSP aP = readPFromXML (eSchemaChild);
-                if (ret.hasNoPatterns ())
-                  ret.addStartP (aP);
-                else
-                  ret.addEndP (aP);
-              }
+              if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_LET))
+                aSchema.addLet (readLetFromXML (eSchemaChild));
               else
-                if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_LET))
-                  ret.addLet (readLetFromXML (eSchemaChild));
+                if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_PHASE))
+                  aSchema.addPhase (readPhaseFromXML (eSchemaChild));
                 else
-                  if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_PHASE))
-                    ret.addPhase (readPhaseFromXML (eSchemaChild));
+                  if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_PATTERN))
+                    aSchema.addPattern (readPatternFromXML (eSchemaChild));
                   else
-                    if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_PATTERN))
-                      ret.addPattern (readPatternFromXML (eSchemaChild));
+                    if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_DIAGNOSTICS))
+                      aSchema.setDiagnostics (readDiagnosticsFromXML (eSchemaChild));
                     else
-                      if (eSchemaChild.getLocalName ().equals (CSchematronXML.ELEMENT_DIAGNOSTICS))
-                        ret.setDiagnostics (readDiagnosticsFromXML (eSchemaChild));
-                      else
-                        _warn (ret, "Unsupported Schematron element '" + eSchemaChild.getLocalName () + "'");
-      }
-      else
-        ret.addForeignElement (eSchemaChild.getClone ());
-    });
-    return ret;
+                      _warn (aSchema, "Unsupported Schematron element '" + eSchemaChild.getLocalName () + "'");
+    }
+    else
+      aSchema.addForeignElement (eSchemaChild.getClone ());
   }
 
   /**
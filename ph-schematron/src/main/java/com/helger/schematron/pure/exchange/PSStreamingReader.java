@@ -0,0 +1,430 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.exchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.EntityResolver;
+
+import com.helger.commons.error.SingleError;
+import com.helger.commons.io.resource.IReadableResource;
+import com.helger.commons.location.SimpleLocation;
+import com.helger.commons.string.StringHelper;
+import com.helger.schematron.CSchematronXML;
+import com.helger.schematron.pure.errorhandler.IPSErrorHandler;
+import com.helger.schematron.pure.model.PSSchema;
+import com.helger.schematron.resolve.DefaultSchematronIncludeResolver;
+import com.helger.xml.microdom.IMicroDocument;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.IMicroNode;
+import com.helger.xml.microdom.IMicroText;
+import com.helger.xml.microdom.MicroElement;
+import com.helger.xml.serialize.read.SAXReaderSettings;
+
+/**
+ * A {@link PSReader} that builds the {@link PSSchema} in a single StAX pass
+ * over the source resource. In contrast to {@link PSReader#readSchema()} the
+ * complete Schematron is never materialized as a micro document. Only the
+ * direct child elements of the &lt;schema&gt; element are collected one by one
+ * and handed to the respective <code>read...FromXML</code> methods, so the
+ * created model and the reported errors are identical. &lt;include&gt;
+ * elements are resolved inline as they are met. The included resources are
+ * read via the {@link DefaultSchematronIncludeResolver} so that commonly
+ * included fragments are only parsed once per process. The StAX parser never
+ * processes DTDs or external entities - documents with a DOCTYPE declaration
+ * are therefore read with {@link PSReader#readSchema()}.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@Immutable
+public class PSStreamingReader extends PSReader
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (PSStreamingReader.class);
+
+  /**
+   * Constructor without an error handler
+   *
+   * @param aResource
+   *        The resource to read the Schematron from. May not be
+   *        <code>null</code>.
+   */
+  public PSStreamingReader (@Nonnull final IReadableResource aResource)
+  {
+    super (aResource);
+  }
+
+  /**
+   * Constructor with an error handler
+   *
+   * @param aResource
+   *        The resource to read the Schematron from. May not be
+   *        <code>null</code>.
+   * @param aErrorHandler
+   *        The error handler to use. May be <code>null</code>.
+   * @param aEntityResolver
+   *        The XML entity resolver to be used. May be <code>null</code>.
+   */
+  public PSStreamingReader (@Nonnull final IReadableResource aResource,
+                            @Nullable final IPSErrorHandler aErrorHandler,
+                            @Nullable final EntityResolver aEntityResolver)
+  {
+    super (aResource, aErrorHandler, aEntityResolver);
+  }
+
+  @Nonnull
+  private static XMLInputFactory _createInputFactory ()
+  {
+    final XMLInputFactory aFactory = XMLInputFactory.newInstance ();
+    aFactory.setProperty (XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    aFactory.setProperty (XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+    aFactory.setProperty (XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+    // Never process DTDs or external entities - documents with a DOCTYPE are
+    // read with the DOM based reader
+    aFactory.setProperty (XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    aFactory.setProperty (XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    return aFactory;
+  }
+
+  @Nonnull
+  private SchematronReadException _createIncludeException ()
+  {
+    return new SchematronReadException (getResource (),
+                                        "Failed to resolve includes in Schematron resource " + getResource ());
+  }
+
+  private void _error (@Nonnull final IReadableResource aResource,
+                       @Nonnull final String sMsg,
+                       @Nullable final Throwable t)
+  {
+    getErrorHandler ().handleError (SingleError.builderError ()
+                                               .setErrorLocation (new SimpleLocation (aResource.getPath ()))
+                                               .setErrorText (sMsg)
+                                               .setLinkedException (t)
+                                               .build ());
+  }
+
+  private boolean _isInclude (@Nonnull final IMicroElement aElement)
+  {
+    return isValidSchematronNS (aElement.getNamespaceURI ()) &&
+           aElement.getLocalName ().equals (CSchematronXML.ELEMENT_INCLUDE);
+  }
+
+  /**
+   * Create a new element with all attributes but without any children from the
+   * current start element.
+   */
+  @Nonnull
+  private static IMicroElement _createElement (@Nonnull final XMLStreamReader aReader)
+  {
+    final String sNamespaceURI = aReader.getNamespaceURI ();
+    final IMicroElement ret = new MicroElement (StringHelper.hasText (sNamespaceURI) ? sNamespaceURI : null,
+                                                aReader.getLocalName ());
+    final int nAttrCount = aReader.getAttributeCount ();
+    for (int i = 0; i < nAttrCount; ++i)
+    {
+      final String sAttrNamespaceURI = aReader.getAttributeNamespace (i);
+      ret.setAttribute (StringHelper.hasText (sAttrNamespaceURI) ? sAttrNamespaceURI : null,
+                        aReader.getAttributeLocalName (i),
+                        aReader.getAttributeValue (i));
+    }
+    return ret;
+  }
+
+  /**
+   * Skip the remaining content of the current element, up to and including its
+   * end tag.
+   */
+  private static void _skipElement (@Nonnull final XMLStreamReader aReader) throws XMLStreamException
+  {
+    int nDepth = 1;
+    while (nDepth > 0)
+    {
+      final int nEvent = aReader.next ();
+      if (nEvent == XMLStreamConstants.START_ELEMENT)
+        nDepth++;
+      else
+        if (nEvent == XMLStreamConstants.END_ELEMENT)
+          nDepth--;
+        else
+          if (nEvent == XMLStreamConstants.END_DOCUMENT)
+            throw new XMLStreamException ("Unexpected end of document", aReader.getLocation ());
+    }
+  }
+
+  private static void _appendText (@Nonnull final IMicroElement aParent, @Nonnull final String sText)
+  {
+    // Merge directly adjacent text nodes, as the micro reader does
+    final IMicroNode aLastChild = aParent.getLastChild ();
+    if (aLastChild != null && aLastChild.isText ())
+      ((IMicroText) aLastChild).appendData (sText);
+    else
+      aParent.appendText (sText);
+  }
+
+  /**
+   * Read the element the reader is currently positioned on (including all
+   * children) into a micro element. Contained &lt;include&gt; elements are
+   * replaced with the included content. After the call the reader is
+   * positioned on the end tag of the element.
+   *
+   * @return The read element or the included content, if the current element
+   *         is an include itself.
+   */
+  @Nonnull
+  private IMicroElement _readElement (@Nonnull final XMLStreamReader aReader,
+                                      @Nonnull final IReadableResource aResource,
+                                      @Nonnull final DefaultSchematronIncludeResolver aIncludeResolver) throws XMLStreamException,
+                                                                                                         SchematronReadException
+  {
+    final IMicroElement eRoot = _createElement (aReader);
+    if (_isInclude (eRoot))
+    {
+      _skipElement (aReader);
+      return _resolveInclude (eRoot, aResource, aIncludeResolver);
+    }
+
+    IMicroElement eCur = eRoot;
+    while (true)
+    {
+      final int nEvent = aReader.next ();
+      switch (nEvent)
+      {
+        case XMLStreamConstants.START_ELEMENT:
+        {
+          final IMicroElement eNew = _createElement (aReader);
+          if (_isInclude (eNew))
+          {
+            _skipElement (aReader);
+            eCur.appendChild (_resolveInclude (eNew, aResource, aIncludeResolver));
+          }
+          else
+          {
+            eCur.appendChild (eNew);
+            eCur = eNew;
+          }
+          break;
+        }
+        case XMLStreamConstants.END_ELEMENT:
+          if (eCur == eRoot)
+            return eRoot;
+          eCur = (IMicroElement) eCur.getParent ();
+          break;
+        case XMLStreamConstants.CHARACTERS:
+          _appendText (eCur, aReader.getText ());
+          break;
+        case XMLStreamConstants.CDATA:
+          eCur.appendCDATA (aReader.getText ());
+          break;
+        case XMLStreamConstants.COMMENT:
+          eCur.appendComment (aReader.getText ());
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          eCur.appendProcessingInstruction (aReader.getPITarget (), aReader.getPIData ());
+          break;
+        case XMLStreamConstants.END_DOCUMENT:
+          throw new XMLStreamException ("Unexpected end of document", aReader.getLocation ());
+        default:
+          // Ignorable whitespace, entity references etc.
+          break;
+      }
+    }
+  }
+
+  /**
+   * Replace all &lt;include&gt; elements below the passed element with the
+   * included content.
+   */
+  private void _resolveNestedIncludes (@Nonnull final IMicroElement eParent,
+                                       @Nonnull final IReadableResource aResource,
+                                       @Nonnull final DefaultSchematronIncludeResolver aIncludeResolver) throws SchematronReadException
+  {
+    for (final IMicroElement eChild : eParent.getAllChildElements ())
+      if (_isInclude (eChild))
+        eParent.replaceChild (eChild, _resolveInclude (eChild, aResource, aIncludeResolver));
+      else
+        _resolveNestedIncludes (eChild, aResource, aIncludeResolver);
+  }
+
+  @Nonnull
+  private IMicroElement _resolveInclude (@Nonnull final IMicroElement eInclude,
+                                         @Nonnull final IReadableResource aResource,
+                                         @Nonnull final DefaultSchematronIncludeResolver aIncludeResolver) throws SchematronReadException
+  {
+    String sHref = StringHelper.getNotNull (eInclude.getAttributeValue (CSchematronXML.ATTR_HREF));
+    try
+    {
+      final int nHashIndex = sHref.indexOf ('#');
+      String sAnchor = null;
+      if (nHashIndex >= 0)
+      {
+        sAnchor = sHref.substring (nHashIndex + 1);
+        sHref = sHref.substring (0, nHashIndex);
+      }
+
+      final IReadableResource aIncludeRes = StringHelper.hasText (sHref) ? aIncludeResolver.getResolvedSchematronResource (sHref)
+                                                                           : null;
+      if (aIncludeRes == null)
+      {
+        _error (aResource, "Failed to resolve include '" + sHref + "'", null);
+        throw _createIncludeException ();
+      }
+
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Resolved '" +
+                      sHref +
+                      "' relative to '" +
+                      aIncludeResolver.getBaseHref () +
+                      "' as '" +
+                      aIncludeRes.getPath () +
+                      "'");
+
+      // Read XML to be included - this goes through the include cache
+      final IMicroDocument aIncludedDoc = aIncludeResolver.readIncludedDocument (aIncludeRes,
+                                                                                new SAXReaderSettings ().setEntityResolver (getEntityResolver ()));
+      if (aIncludedDoc == null || aIncludedDoc.getDocumentElement () == null)
+      {
+        _error (aResource, "Failed to parse include " + aIncludeRes, null);
+        throw _createIncludeException ();
+      }
+
+      IMicroElement aIncludedContent = aIncludedDoc.getDocumentElement ();
+      if (sAnchor != null)
+      {
+        // Also include the root element in the search
+        IMicroElement aMatch = sAnchor.equals (aIncludedContent.getAttributeValue ("id")) ? aIncludedContent : null;
+        for (final IMicroElement aCurElement : aIncludedContent.getAllChildElementsRecursive ())
+          if (sAnchor.equals (aCurElement.getAttributeValue ("id")))
+            aMatch = aCurElement;
+        if (aMatch == null)
+        {
+          getErrorHandler ().handleError (SingleError.builderWarn ()
+                                                     .setErrorLocation (new SimpleLocation (aResource.getPath ()))
+                                                     .setErrorText ("Failed to resolve an element with the ID '" +
+                                                                    sAnchor +
+                                                                    "' in " +
+                                                                    aIncludeRes +
+                                                                    "! Therefore including the whole document!")
+                                                     .build ());
+        }
+        else
+          aIncludedContent = aMatch;
+      }
+
+      // Important to detach from parent!
+      aIncludedContent.detachFromParent ();
+
+      // Check that not a whole Schema but only a part is included
+      if (isValidSchematronNS (aIncludedContent.getNamespaceURI ()) &&
+          CSchematronXML.ELEMENT_SCHEMA.equals (aIncludedContent.getLocalName ()))
+      {
+        getErrorHandler ().handleError (SingleError.builderWarn ()
+                                                   .setErrorLocation (new SimpleLocation (aResource.getPath ()))
+                                                   .setErrorText ("The included resource " +
+                                                                  aIncludeRes +
+                                                                  " seems to be a complete schema. To includes parts of a schema the respective element must be the root element of the included resource.")
+                                                   .build ());
+      }
+
+      // Recursive resolve includes
+      _resolveNestedIncludes (aIncludedContent, aIncludeRes, new DefaultSchematronIncludeResolver (aIncludeRes));
+      return aIncludedContent;
+    }
+    catch (final IOException ex)
+    {
+      _error (aResource, "Failed to read include '" + sHref + "'", ex);
+      throw _createIncludeException ();
+    }
+  }
+
+  /**
+   * Read the schema from the resource supplied in the constructor in a single
+   * streaming pass. Includes are resolved while reading.
+   *
+   * @return The read {@link PSSchema}.
+   * @throws SchematronReadException
+   *         If reading fails
+   */
+  @Override
+  @Nonnull
+  public PSSchema readSchema () throws SchematronReadException
+  {
+    final IReadableResource aResource = getResource ();
+    try (final InputStream aIS = aResource.getInputStream ())
+    {
+      if (aIS == null)
+        throw _createIncludeException ();
+
+      final XMLStreamReader aReader = _createInputFactory ().createXMLStreamReader (aResource.getPath (), aIS);
+      try
+      {
+        // Move to the document element
+        while (aReader.hasNext ())
+        {
+          final int nEvent = aReader.next ();
+          if (nEvent == XMLStreamConstants.START_ELEMENT)
+            break;
+          if (nEvent == XMLStreamConstants.DTD)
+          {
+            // Entities are resolved by the DOM based reader only
+            return super.readSchema ();
+          }
+        }
+        if (!aReader.isStartElement ())
+          throw _createIncludeException ();
+
+        final DefaultSchematronIncludeResolver aIncludeResolver = new DefaultSchematronIncludeResolver (aResource);
+
+        // Read all attributes and check the namespace
+        final PSSchema ret = readSchemaFromXML (_createElement (aReader));
+
+        // Handle all child elements one by one
+        int nEvent;
+        while ((nEvent = aReader.next ()) != XMLStreamConstants.END_ELEMENT)
+        {
+          if (nEvent == XMLStreamConstants.START_ELEMENT)
+            readSchemaChildFromXML (ret, _readElement (aReader, aResource, aIncludeResolver));
+          else
+            if (nEvent == XMLStreamConstants.END_DOCUMENT)
+              throw new XMLStreamException ("Unexpected end of document", aReader.getLocation ());
+        }
+        return ret;
+      }
+      finally
+      {
+        aReader.close ();
+      }
+    }
+    catch (final IOException | XMLStreamException ex)
+    {
+      throw new SchematronReadException (aResource,
+                                         "Failed to resolve includes in Schematron resource " + aResource,
+                                         ex);
+    }
+  }
+}
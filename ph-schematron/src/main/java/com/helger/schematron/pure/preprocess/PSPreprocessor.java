@@ -16,11 +16,22 @@
  */
 package com.helger.schematron.pure.preprocess;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.VisibleForTesting;
+import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.commons.collection.impl.ICommonsNavigableMap;
@@ -51,6 +62,14 @@ import com.helger.schematron.pure.model.PSValueOf;
  * query binding is used, so that report test expressions can be converted to
  * assertions, and to replace the content of &lt;param&gt; elements into actual
  * values.
+ * <p>
+ * The expanded content of abstract rules is memoized per parameter map, so
+ * that abstract rules that are extended many times are only expanded once. If
+ * a schema contains at least {@link #getParallelPatternThreshold()} patterns,
+ * the patterns are preprocessed in parallel, using the executor provided via
+ * {@link #setExecutor(ExecutorService)} or the common {@link ForkJoinPool}.
+ * The unique IDs are assigned afterwards in document order, so the result is
+ * identical to sequential processing.
  *
  * @author Philip Helger
  */
@@ -62,6 +81,14 @@ public class PSPreprocessor
   public static final boolean DEFAULT_KEEP_REPORTS = false;
   public static final boolean DEFAULT_KEEP_EMPTY_PATTERNS = true;
   public static final boolean DEFAULT_KEEP_EMPTY_SCHEMA = true;
+  /**
+   * The default minimum number of patterns for parallel preprocessing.
+   *
+   * @since 5.6.1
+   */
+  public static final int DEFAULT_PARALLEL_PATTERN_THRESHOLD = 50;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (PSPreprocessor.class);
 
   private final IPSQueryBinding m_aQueryBinding;
   private boolean m_bKeepTitles = DEFAULT_KEEP_TITLES;
@@ -69,6 +96,12 @@ public class PSPreprocessor
   private boolean m_bKeepReports = DEFAULT_KEEP_REPORTS;
   private boolean m_bKeepEmptyPatterns = DEFAULT_KEEP_EMPTY_PATTERNS;
   private boolean m_bKeepEmptySchema = DEFAULT_KEEP_EMPTY_SCHEMA;
+  private int m_nParallelPatternThreshold = DEFAULT_PARALLEL_PATTERN_THRESHOLD;
+  private ExecutorService m_aExecutor;
+  private boolean m_bMemoizeRuleExpansion = true;
+  // Statistics of the last run
+  private long m_nLastDurationMillis = -1;
+  private int m_nLastReusedRuleExpansions = 0;
 
   public PSPreprocessor (@Nonnull final IPSQueryBinding aQueryBinding)
   {
@@ -205,6 +238,103 @@ public class PSPreprocessor
     return this;
   }
 
+  /**
+   * @return The minimum number of patterns a schema must contain so that the
+   *         patterns are preprocessed in parallel. 0 means parallel
+   *         preprocessing is disabled. Default is
+   *         {@value #DEFAULT_PARALLEL_PATTERN_THRESHOLD}.
+   * @since 5.6.1
+   */
+  @Nonnegative
+  public int getParallelPatternThreshold ()
+  {
+    return m_nParallelPatternThreshold;
+  }
+
+  /**
+   * Set the minimum number of patterns a schema must contain so that the
+   * patterns are preprocessed in parallel.
+   *
+   * @param nParallelPatternThreshold
+   *        The minimum number of patterns. Must be &ge; 0. Use 0 to disable
+   *        parallel preprocessing.
+   * @return this for chaining
+   * @since 5.6.1
+   */
+  @Nonnull
+  public PSPreprocessor setParallelPatternThreshold (@Nonnegative final int nParallelPatternThreshold)
+  {
+    ValueEnforcer.isGE0 (nParallelPatternThreshold, "ParallelPatternThreshold");
+    m_nParallelPatternThreshold = nParallelPatternThreshold;
+    return this;
+  }
+
+  /**
+   * @return The executor used for parallel preprocessing. If it is
+   *         <code>null</code>, the common {@link ForkJoinPool} is used.
+   * @since 5.6.1
+   */
+  @Nullable
+  public ExecutorService getExecutor ()
+  {
+    return m_aExecutor;
+  }
+
+  /**
+   * Set the executor to be used for parallel preprocessing. The executor is
+   * not shut down by this class.
+   *
+   * @param aExecutor
+   *        The executor to use. May be <code>null</code> to use the common
+   *        {@link ForkJoinPool}.
+   * @return this for chaining
+   * @since 5.6.1
+   */
+  @Nonnull
+  public PSPreprocessor setExecutor (@Nullable final ExecutorService aExecutor)
+  {
+    m_aExecutor = aExecutor;
+    return this;
+  }
+
+  /**
+   * Enable or disable the reuse of abstract rule expansions. Only needed to
+   * compare the results in tests.
+   *
+   * @param bMemoizeRuleExpansion
+   *        <code>true</code> to reuse expansions.
+   * @return this for chaining
+   */
+  @Nonnull
+  @VisibleForTesting
+  PSPreprocessor setMemoizeRuleExpansion (final boolean bMemoizeRuleExpansion)
+  {
+    m_bMemoizeRuleExpansion = bMemoizeRuleExpansion;
+    return this;
+  }
+
+  /**
+   * @return The duration of the last call to
+   *         {@link #getForcedPreprocessedSchema(PSSchema)} in milliseconds or
+   *         -1 if it was not yet called.
+   * @since 5.6.1
+   */
+  public long getLastDurationMillis ()
+  {
+    return m_nLastDurationMillis;
+  }
+
+  /**
+   * @return The number of abstract rule expansions that were reused in the
+   *         last call to {@link #getForcedPreprocessedSchema(PSSchema)}.
+   * @since 5.6.1
+   */
+  @Nonnegative
+  public int getLastReusedRuleExpansions ()
+  {
+    return m_nLastReusedRuleExpansions;
+  }
+
   @Nonnull
   private static PSPhase _getPreprocessedPhase (@Nonnull final PSPhase aPhase,
                                                 @Nonnull final PreprocessorIDPool aIDPool) throws SchematronPreprocessException
@@ -229,22 +359,16 @@ public class PSPreprocessor
   }
 
   @Nonnull
-  private PSAssertReport _getPreprocessedAssert (@Nonnull final PSAssertReport aAssertReport,
-                                                 @Nonnull final PreprocessorIDPool aIDPool,
-                                                 @Nullable final ICommonsMap <String, String> aParamValueMap)
+  private PSAssertReport _getAssertCopy (@Nonnull final PSAssertReport aAssertReport,
+                                         final boolean bIsAssert,
+                                         @Nullable final String sTest,
+                                         @Nullable final ICommonsMap <String, String> aParamValueMap)
   {
-    String sTest = aAssertReport.getTest ();
-    if (aAssertReport.isReport () && !m_bKeepReports)
-    {
-      // Negate the expression!
-      sTest = m_aQueryBinding.getNegatedTestExpression (sTest);
-    }
-
-    // Keep report or make it always an assert
-    final PSAssertReport ret = new PSAssertReport (m_bKeepReports ? aAssertReport.isAssert () : true);
-    ret.setTest (m_aQueryBinding.getWithParamTextsReplaced (sTest, aParamValueMap));
+    final PSAssertReport ret = new PSAssertReport (bIsAssert);
+    ret.setTest (sTest);
     ret.setFlag (aAssertReport.getFlag ());
-    ret.setID (aIDPool.getUniqueID (aAssertReport.getID ()));
+    // The unique ID is assigned later
+    ret.setID (aAssertReport.getID ());
     if (m_bKeepDiagnostics)
       ret.setDiagnostics (aAssertReport.getAllDiagnostics ());
     ret.setRich (aAssertReport.getRichClone ());
@@ -278,6 +402,67 @@ public class PSPreprocessor
     return ret;
   }
 
+  @Nonnull
+  private PSAssertReport _getPreprocessedAssert (@Nonnull final PSAssertReport aAssertReport,
+                                                 @Nullable final ICommonsMap <String, String> aParamValueMap)
+  {
+    String sTest = aAssertReport.getTest ();
+    if (aAssertReport.isReport () && !m_bKeepReports)
+    {
+      // Negate the expression!
+      sTest = m_aQueryBinding.getNegatedTestExpression (sTest);
+    }
+
+    // Keep report or make it always an assert
+    return _getAssertCopy (aAssertReport,
+                           m_bKeepReports ? aAssertReport.isAssert () : true,
+                           m_aQueryBinding.getWithParamTextsReplaced (sTest, aParamValueMap),
+                           aParamValueMap);
+  }
+
+  /**
+   * Copy an element of an expanded abstract rule.
+   */
+  @Nonnull
+  private IPSElement _getExpandedElementCopy (@Nonnull final IPSElement aElement)
+  {
+    if (aElement instanceof PSAssertReport)
+    {
+      final PSAssertReport aAssertReport = (PSAssertReport) aElement;
+      // Already preprocessed - no parameters needed
+      return _getAssertCopy (aAssertReport, aAssertReport.isAssert (), aAssertReport.getTest (), null);
+    }
+    return ((PSLet) aElement).getClone ();
+  }
+
+  /**
+   * Get the content of the passed abstract rule with all extends resolved and
+   * all parameters replaced. The result is memoized per parameter map.
+   */
+  @Nonnull
+  private ICommonsList <IPSElement> _getExpandedAbstractRule (@Nonnull final String sRuleID,
+                                                             @Nonnull final PSRule aBaseRule,
+                                                             @Nonnull final PreprocessorLookup aLookup,
+                                                             @Nullable final ICommonsMap <String, String> aParamValueMap,
+                                                             @Nonnull final PreprocessorRuleCache aRuleCache) throws SchematronPreprocessException
+  {
+    ICommonsList <IPSElement> ret = aRuleCache.get (sRuleID, aParamValueMap);
+    if (ret == null)
+    {
+      ret = new CommonsArrayList <> ();
+
+      // Recursively resolve the extends of the base rule
+      _resolveRuleContent (aBaseRule.getAllContentElements (), aLookup, aParamValueMap, ret, aRuleCache);
+
+      // Copy all lets
+      for (final PSLet aBaseLet : aBaseRule.getAllLets ())
+        ret.add (aBaseLet.getClone ());
+
+      aRuleCache.put (sRuleID, aParamValueMap, ret);
+    }
+    return ret;
+  }
+
   /**
    * Resolve all &lt;extends&gt; elements. This method calls itself recursively
    * until all extends elements are resolved.
@@ -287,21 +472,24 @@ public class PSPreprocessor
    *        objects. Never <code>null</code>.
    * @param aLookup
    *        The rule lookup object
+   * @param aTarget
+   *        The list to add the resolved {@link PSAssertReport} and
+   *        {@link PSLet} objects to.
    * @throws SchematronPreprocessException
    *         If the base rule of an extends object could not be resolved.
    */
   private void _resolveRuleContent (@Nonnull final ICommonsList <IPSElement> aRuleContent,
                                     @Nonnull final PreprocessorLookup aLookup,
-                                    @Nonnull final PreprocessorIDPool aIDPool,
                                     @Nullable final ICommonsMap <String, String> aParamValueMap,
-                                    @Nonnull final PSRule aTargetRule) throws SchematronPreprocessException
+                                    @Nonnull final ICommonsList <IPSElement> aTarget,
+                                    @Nonnull final PreprocessorRuleCache aRuleCache) throws SchematronPreprocessException
   {
     for (final IPSElement aElement : aRuleContent)
     {
       if (aElement instanceof PSAssertReport)
       {
         final PSAssertReport aAssertReport = (PSAssertReport) aElement;
-        aTargetRule.addAssertReport (_getPreprocessedAssert (aAssertReport, aIDPool, aParamValueMap));
+        aTarget.add (_getPreprocessedAssert (aAssertReport, aParamValueMap));
       }
       else
       {
@@ -314,12 +502,13 @@ public class PSPreprocessor
                                                    "' in extends statement. Available rules are: " +
                                                    aLookup.getAllAbstractRuleIDs ());
 
-        // Recursively resolve the extends of the base rule
-        _resolveRuleContent (aBaseRule.getAllContentElements (), aLookup, aIDPool, aParamValueMap, aTargetRule);
-
-        // Copy all lets
-        for (final PSLet aBaseLet : aBaseRule.getAllLets ())
-          aTargetRule.addLet (aBaseLet.getClone ());
+        // Add a copy of the (memoized) expanded base rule
+        for (final IPSElement aExpanded : _getExpandedAbstractRule (sRuleID,
+                                                                    aBaseRule,
+                                                                    aLookup,
+                                                                    aParamValueMap,
+                                                                    aRuleCache))
+          aTarget.add (_getExpandedElementCopy (aExpanded));
       }
     }
   }
@@ -327,8 +516,8 @@ public class PSPreprocessor
   @Nullable
   private PSRule _getPreprocessedRule (@Nonnull final PSRule aRule,
                                        @Nonnull final PreprocessorLookup aLookup,
-                                       @Nonnull final PreprocessorIDPool aIDPool,
-                                       @Nullable final ICommonsMap <String, String> aParamValueMap) throws SchematronPreprocessException
+                                       @Nullable final ICommonsMap <String, String> aParamValueMap,
+                                       @Nonnull final PreprocessorRuleCache aRuleCache) throws SchematronPreprocessException
   {
     if (aRule.isAbstract ())
     {
@@ -342,12 +531,19 @@ public class PSPreprocessor
     ret.setLinkable (aRule.getLinkableClone ());
     // abstract is always false
     ret.setContext (m_aQueryBinding.getWithParamTextsReplaced (aRule.getContext (), aParamValueMap));
-    ret.setID (aIDPool.getUniqueID (aRule.getID ()));
+    // The unique ID is assigned later
+    ret.setID (aRule.getID ());
     if (aRule.hasAnyInclude ())
       throw new SchematronPreprocessException ("Cannot preprocess <rule> with an <include>");
     for (final PSLet aLet : aRule.getAllLets ())
       ret.addLet (aLet.getClone ());
-    _resolveRuleContent (aRule.getAllContentElements (), aLookup, aIDPool, aParamValueMap, ret);
+    final ICommonsList <IPSElement> aContent = new CommonsArrayList <> ();
+    _resolveRuleContent (aRule.getAllContentElements (), aLookup, aParamValueMap, aContent, aRuleCache);
+    for (final IPSElement aElement : aContent)
+      if (aElement instanceof PSAssertReport)
+        ret.addAssertReport ((PSAssertReport) aElement);
+      else
+        ret.addLet ((PSLet) aElement);
     ret.addForeignElements (aRule.getAllForeignElements ());
     ret.addForeignAttributes (aRule.getAllForeignAttributes ());
     return ret;
@@ -356,7 +552,7 @@ public class PSPreprocessor
   @Nullable
   private PSPattern _getPreprocessedPattern (@Nonnull final PSPattern aPattern,
                                              @Nonnull final PreprocessorLookup aLookup,
-                                             @Nonnull final PreprocessorIDPool aIDPool) throws SchematronPreprocessException
+                                             @Nonnull final PreprocessorRuleCache aRuleCache) throws SchematronPreprocessException
   {
     if (aPattern.isAbstract ())
     {
@@ -367,7 +563,8 @@ public class PSPreprocessor
     final PSPattern ret = new PSPattern ();
     // abstract always false
     // is-a must be resolved
-    ret.setID (aIDPool.getUniqueID (aPattern.getID ()));
+    // The unique ID is assigned later
+    ret.setID (aPattern.getID ());
     ret.setRich (aPattern.getRichClone ());
     if (aPattern.hasAnyInclude ())
       throw new SchematronPreprocessException ("Cannot preprocess <pattern> with an <include>");
@@ -382,7 +579,7 @@ public class PSPreprocessor
         throw new SchematronPreprocessException ("Failed to resolve the pattern denoted by is-a='" + sIsA + "'");
 
       if (!ret.hasID ())
-        ret.setID (aIDPool.getUniqueID (aBasePattern.getID ()));
+        ret.setID (aBasePattern.getID ());
       if (!ret.hasRich ())
         ret.setRich (aBasePattern.getRichClone ());
 
@@ -396,7 +593,7 @@ public class PSPreprocessor
         else
           if (aElement instanceof PSRule)
           {
-            final PSRule aMinifiedRule = _getPreprocessedRule ((PSRule) aElement, aLookup, aIDPool, aParamValueMap);
+            final PSRule aMinifiedRule = _getPreprocessedRule ((PSRule) aElement, aLookup, aParamValueMap, aRuleCache);
             if (aMinifiedRule != null)
               ret.addRule (aMinifiedRule);
           }
@@ -413,7 +610,7 @@ public class PSPreprocessor
         else
           if (aElement instanceof PSRule)
           {
-            final PSRule aMinifiedRule = _getPreprocessedRule ((PSRule) aElement, aLookup, aIDPool, null);
+            final PSRule aMinifiedRule = _getPreprocessedRule ((PSRule) aElement, aLookup, null, aRuleCache);
             if (aMinifiedRule != null)
               ret.addRule (aMinifiedRule);
           }
@@ -426,6 +623,84 @@ public class PSPreprocessor
     return ret;
   }
 
+  /**
+   * Assign the unique IDs to the passed preprocessed pattern, its rules and
+   * their asserts in document order.
+   */
+  private static void _assignUniqueIDs (@Nonnull final PSPattern aPattern, @Nonnull final PreprocessorIDPool aIDPool)
+  {
+    aPattern.setID (aIDPool.getUniqueID (aPattern.getID ()));
+    for (final PSRule aRule : aPattern.getAllRules ())
+    {
+      aRule.setID (aIDPool.getUniqueID (aRule.getID ()));
+      for (final PSAssertReport aAssertReport : aRule.getAllAssertReports ())
+        aAssertReport.setID (aIDPool.getUniqueID (aAssertReport.getID ()));
+    }
+  }
+
+  @Nullable
+  private static PSPattern _getFutureResult (@Nonnull final Future <PSPattern> aFuture) throws SchematronPreprocessException
+  {
+    try
+    {
+      return aFuture.get ();
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new SchematronPreprocessException ("Interrupted while preprocessing patterns", ex);
+    }
+    catch (final ExecutionException ex)
+    {
+      final Throwable aCause = ex.getCause ();
+      if (aCause instanceof SchematronPreprocessException)
+        throw (SchematronPreprocessException) aCause;
+      if (aCause instanceof RuntimeException)
+        throw (RuntimeException) aCause;
+      throw new SchematronPreprocessException ("Failed to preprocess pattern", aCause);
+    }
+  }
+
+  /**
+   * Preprocess all patterns, in parallel if there are enough of them.
+   *
+   * @return A list with the same number of elements as the source list. The
+   *         list contains <code>null</code> elements for abstract patterns.
+   */
+  @Nonnull
+  private ICommonsList <PSPattern> _getAllPreprocessedPatterns (@Nonnull final ICommonsList <PSPattern> aPatterns,
+                                                                @Nonnull final PreprocessorLookup aLookup,
+                                                                @Nonnull final PreprocessorRuleCache aRuleCache) throws SchematronPreprocessException
+  {
+    final ICommonsList <PSPattern> ret = new CommonsArrayList <> (aPatterns.size ());
+    final ExecutorService aES = m_aExecutor != null ? m_aExecutor
+                                                    : ForkJoinPool.getCommonPoolParallelism () > 1 ? ForkJoinPool.commonPool ()
+                                                                                                   : null;
+    if (aES != null && m_nParallelPatternThreshold > 0 && aPatterns.size () >= m_nParallelPatternThreshold)
+    {
+      final ICommonsList <Future <PSPattern>> aFutures = new CommonsArrayList <> (aPatterns.size ());
+      try
+      {
+        for (final PSPattern aPattern : aPatterns)
+          aFutures.add (aES.submit ( () -> _getPreprocessedPattern (aPattern, aLookup, aRuleCache)));
+        for (final Future <PSPattern> aFuture : aFutures)
+          ret.add (_getFutureResult (aFuture));
+      }
+      finally
+      {
+        // Don't leave work behind in case of an error
+        for (final Future <PSPattern> aFuture : aFutures)
+          aFuture.cancel (true);
+      }
+    }
+    else
+    {
+      for (final PSPattern aPattern : aPatterns)
+        ret.add (_getPreprocessedPattern (aPattern, aLookup, aRuleCache));
+    }
+    return ret;
+  }
+
   @Nonnull
   private static PSDiagnostics _getPreprocessedDiagnostics (@Nonnull final PSDiagnostics aDiagnostics) throws SchematronPreprocessException
   {
@@ -504,8 +779,12 @@ public class PSPreprocessor
   {
     ValueEnforcer.notNull (aSchema, "Schema");
 
+    final long nStart = System.nanoTime ();
+    // The lookup is only read after creation, so it may be shared between
+    // threads
     final PreprocessorLookup aLookup = new PreprocessorLookup (aSchema);
     final PreprocessorIDPool aIDPool = new PreprocessorIDPool ();
+    final PreprocessorRuleCache aRuleCache = new PreprocessorRuleCache (m_bMemoizeRuleExpansion);
 
     final PSSchema ret = new PSSchema (aSchema.getResource ());
     ret.setID (aIDPool.getUniqueID (aSchema.getID ()));
@@ -524,17 +803,34 @@ public class PSPreprocessor
       ret.addLet (aLet.getClone ());
     for (final PSPhase aPhase : aSchema.getAllPhases ())
       ret.addPhase (_getPreprocessedPhase (aPhase, aIDPool));
-    for (final PSPattern aPattern : aSchema.getAllPatterns ())
+    for (final PSPattern aMinifiedPattern : _getAllPreprocessedPatterns (aSchema.getAllPatterns (), aLookup, aRuleCache))
     {
-      final PSPattern aMinifiedPattern = _getPreprocessedPattern (aPattern, aLookup, aIDPool);
       if (aMinifiedPattern != null)
       {
+        // IDs must be assigned in document order
+        _assignUniqueIDs (aMinifiedPattern, aIDPool);
+
         // Pattern without rules?
         if (aMinifiedPattern.getRuleCount () > 0 || m_bKeepEmptyPatterns)
           ret.addPattern (aMinifiedPattern);
       }
     }
 
+    m_nLastDurationMillis = (System.nanoTime () - nStart) / 1_000_000L;
+    m_nLastReusedRuleExpansions = aRuleCache.getHitCount ();
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Preprocessed Schematron " +
+                    (aSchema.getResource () == null ? "" : "'" + aSchema.getResource ().getPath () + "' ") +
+                    "with " +
+                    aSchema.getPatternCount () +
+                    " pattern(s) in " +
+                    m_nLastDurationMillis +
+                    " ms; reused " +
+                    aRuleCache.getHitCount () +
+                    " of " +
+                    (aRuleCache.getHitCount () + aRuleCache.getMissCount ()) +
+                    " abstract rule expansions");
+
     // Schema without patterns?
     if (aSchema.getPatternCount () == 0 && !m_bKeepEmptySchema)
       return null;
@@ -556,6 +852,7 @@ public class PSPreprocessor
                                        .append ("keepReports", m_bKeepReports)
                                        .append ("keepEmptyPatterns", m_bKeepEmptyPatterns)
                                        .append ("keepEmptySchema", m_bKeepEmptySchema)
+                                       .append ("parallelPatternThreshold", m_nParallelPatternThreshold)
                                        .getToString ();
   }
 
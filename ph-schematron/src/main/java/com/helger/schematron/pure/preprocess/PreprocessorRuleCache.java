@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.preprocess;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.schematron.pure.model.IPSElement;
+
+/**
+ * Memoizes the expanded content of abstract rules. An abstract rule that is
+ * referenced via &lt;extends&gt; is expanded only once per parameter map. The
+ * expanded content (preprocessed asserts/reports and lets) is stored as a
+ * template that must never be modified - users must copy the elements.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+final class PreprocessorRuleCache
+{
+  private static final class Key
+  {
+    private final String m_sRuleID;
+    private final Map <String, String> m_aParamValueMap;
+
+    Key (@Nonnull final String sRuleID, @Nullable final Map <String, String> aParamValueMap)
+    {
+      m_sRuleID = sRuleID;
+      m_aParamValueMap = aParamValueMap;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final Key rhs = (Key) o;
+      return m_sRuleID.equals (rhs.m_sRuleID) && EqualsHelper.equals (m_aParamValueMap, rhs.m_aParamValueMap);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return new HashCodeGenerator (this).append (m_sRuleID).append (m_aParamValueMap).getHashCode ();
+    }
+  }
+
+  private final boolean m_bEnabled;
+  private final Map <Key, ICommonsList <IPSElement>> m_aMap = new ConcurrentHashMap <> ();
+  private final AtomicInteger m_aHits = new AtomicInteger (0);
+  private final AtomicInteger m_aMisses = new AtomicInteger (0);
+
+  public PreprocessorRuleCache ()
+  {
+    this (true);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param bEnabled
+   *        <code>false</code> to never reuse an expansion.
+   */
+  public PreprocessorRuleCache (final boolean bEnabled)
+  {
+    m_bEnabled = bEnabled;
+  }
+
+  /**
+   * Get the expanded content of the abstract rule with the passed ID.
+   *
+   * @param sRuleID
+   *        The ID of the abstract rule. May not be <code>null</code>.
+   * @param aParamValueMap
+   *        The parameter map used for expansion. May be <code>null</code>.
+   * @return <code>null</code> if the rule was not yet expanded with this
+   *         parameter map.
+   */
+  @Nullable
+  public ICommonsList <IPSElement> get (@Nonnull final String sRuleID,
+                                        @Nullable final Map <String, String> aParamValueMap)
+  {
+    ValueEnforcer.notNull (sRuleID, "RuleID");
+    final ICommonsList <IPSElement> ret = m_aMap.get (new Key (sRuleID, aParamValueMap));
+    if (ret != null)
+      m_aHits.incrementAndGet ();
+    else
+      m_aMisses.incrementAndGet ();
+    return ret;
+  }
+
+  /**
+   * Remember the expanded content of an abstract rule.
+   *
+   * @param sRuleID
+   *        The ID of the abstract rule. May not be <code>null</code>.
+   * @param aParamValueMap
+   *        The parameter map used for expansion. May be <code>null</code>.
+   * @param aContent
+   *        The expanded content. May not be <code>null</code>.
+   */
+  public void put (@Nonnull final String sRuleID,
+                   @Nullable final Map <String, String> aParamValueMap,
+                   @Nonnull final ICommonsList <IPSElement> aContent)
+  {
+    ValueEnforcer.notNull (sRuleID, "RuleID");
+    ValueEnforcer.notNull (aContent, "Content");
+    if (m_bEnabled)
+      m_aMap.putIfAbsent (new Key (sRuleID, aParamValueMap), aContent);
+  }
+
+  /**
+   * @return The number of expansions that could be reused.
+   */
+  @Nonnegative
+  public int getHitCount ()
+  {
+    return m_aHits.get ();
+  }
+
+  /**
+   * @return The number of expansions that had to be performed.
+   */
+  @Nonnegative
+  public int getMissCount ()
+  {
+    return m_aMisses.get ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("entries", m_aMap.size ())
+                                       .append ("hits", m_aHits.get ())
+                                       .append ("misses", m_aMisses.get ())
+                                       .getToString ();
+  }
+}
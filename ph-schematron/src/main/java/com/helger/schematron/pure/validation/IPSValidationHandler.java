@@ -175,6 +175,39 @@ public interface IPSValidationHandler extends Serializable
     return EContinue.CONTINUE;
   }
 
+  /**
+   * Check if the passed assert or report should not be evaluated at all, e.g.
+   * because enough occurrences of it were already collected.
+   *
+   * @param aAssertReport
+   *        The assert or report to be evaluated next. Never <code>null</code>.
+   * @return <code>true</code> to skip the evaluation, <code>false</code> to
+   *         evaluate it. The default is <code>false</code>.
+   * @since 5.6.1
+   */
+  default boolean isSkipEvaluation (@Nonnull final PSAssertReport aAssertReport)
+  {
+    return false;
+  }
+
+  /**
+   * This method is called instead of
+   * {@link #onEnd(PSSchema, PSPhase)} if the validation was stopped early
+   * because the current
+   * {@link com.helger.schematron.SchematronCancellationToken} was cancelled.
+   *
+   * @param aSchema
+   *        The validated schema. Never <code>null</code>.
+   * @param sReason
+   *        The reason for the cancellation. Never <code>null</code>.
+   * @throws SchematronValidationException
+   *         In case of validation errors
+   * @since 5.6.1
+   */
+  default void onCancelled (@Nonnull final PSSchema aSchema,
+                            @Nonnull final String sReason) throws SchematronValidationException
+  {}
+
   /**
    * This is the last method called. It indicates that the validation for the
    * current scheme ended.
@@ -293,6 +326,19 @@ public interface IPSValidationHandler extends Serializable
         return eCtd;
       }
 
+      public boolean isSkipEvaluation (@Nonnull final PSAssertReport aAssertReport)
+      {
+        // Only skip if both agree
+        return lhs.isSkipEvaluation (aAssertReport) && rhs.isSkipEvaluation (aAssertReport);
+      }
+
+      public void onCancelled (@Nonnull final PSSchema aSchema,
+                               @Nonnull final String sReason) throws SchematronValidationException
+      {
+        lhs.onCancelled (aSchema, sReason);
+        rhs.onCancelled (aSchema, sReason);
+      }
+
       public void onEnd (@Nonnull final PSSchema aSchema,
                          @Nullable final PSPhase aActivePhase) throws SchematronValidationException
       {
@@ -16,6 +16,7 @@
  */
 package com.helger.schematron.pure.validation.xpath;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,6 +27,7 @@ import javax.xml.xpath.XPathExpressionException;
 
 import org.w3c.dom.Node;
 
+import com.helger.commons.CGlobal;
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.collection.CollectionHelper;
 import com.helger.commons.error.SingleError;
@@ -50,6 +52,7 @@ import com.helger.schematron.pure.model.PSTitle;
 import com.helger.schematron.pure.model.PSValueOf;
 import com.helger.schematron.pure.validation.IPSValidationHandler;
 import com.helger.schematron.pure.validation.SchematronValidationException;
+import com.helger.schematron.svrl.SVRLHelper;
 import com.helger.schematron.svrl.jaxb.ActivePattern;
 import com.helger.schematron.svrl.jaxb.DiagnosticReference;
 import com.helger.schematron.svrl.jaxb.FailedAssert;
@@ -64,14 +67,38 @@ import com.helger.xml.XMLHelper;
 /**
  * A special validation handler that creates an SVRL document. This class only
  * works for the XPath binding, as the special {@link PSXPathBoundAssertReport}
- * class is referenced!
+ * class is referenced!<br>
+ * To bound memory and CPU usage on badly broken documents, the number of
+ * failed asserts and successful reports can be capped per assert/report
+ * element and overall. Occurrences above the cap are only counted and are
+ * listed as <code>svrl:text</code> elements starting with
+ * {@link SVRLHelper#SUPPRESSED_TEXT_PREFIX}. Optionally, the evaluation of a
+ * capped assert/report is skipped entirely.
  *
  * @author Philip Helger
  */
 @NotThreadSafe
 public class PSXPathValidationHandlerSVRL implements IPSValidationHandler
 {
+  /** Constant for an unlimited number of occurrences */
+  public static final int UNLIMITED = CGlobal.ILLEGAL_UINT;
+
+  private static final class Occurrences
+  {
+    private int m_nKept;
+    private int m_nSuppressed;
+    private boolean m_bSkipped;
+  }
+
   private final IPSErrorHandler m_aErrorHandler;
+  private int m_nMaxOccurrencesPerAssert = UNLIMITED;
+  private int m_nMaxOccurrencesTotal = UNLIMITED;
+  private boolean m_bSkipEvaluationWhenCapped = false;
+  // PSAssertReport uses identity equality, so equal asserts in different rules
+  // are counted separately. Ordered, so that the SVRL is deterministic.
+  private final Map <PSAssertReport, Occurrences> m_aOccurrences = new LinkedHashMap <> ();
+  private int m_nKeptTotal;
+  private int m_nSuppressedTotal;
   private SchematronOutputType m_aSchematronOutput;
   private PSSchema m_aSchema;
   private String m_sBaseURI;
@@ -94,6 +121,158 @@ public class PSXPathValidationHandlerSVRL implements IPSValidationHandler
     return m_aErrorHandler;
   }
 
+  /**
+   * @return The maximum number of failed asserts/successful reports per
+   *         assert/report element or {@link #UNLIMITED}.
+   * @since 5.6.1
+   */
+  public final int getMaxOccurrencesPerAssert ()
+  {
+    return m_nMaxOccurrencesPerAssert;
+  }
+
+  /**
+   * Set the maximum number of failed asserts/successful reports that are
+   * contained in the SVRL per assert/report element.
+   *
+   * @param nMaxOccurrencesPerAssert
+   *        The maximum number. Use {@link #UNLIMITED} (or any other negative
+   *        value) for no limit.
+   * @return this for chaining
+   * @since 5.6.1
+   */
+  @Nonnull
+  public final PSXPathValidationHandlerSVRL setMaxOccurrencesPerAssert (final int nMaxOccurrencesPerAssert)
+  {
+    m_nMaxOccurrencesPerAssert = nMaxOccurrencesPerAssert;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of failed asserts/successful reports in total
+   *         or {@link #UNLIMITED}.
+   * @since 5.6.1
+   */
+  public final int getMaxOccurrencesTotal ()
+  {
+    return m_nMaxOccurrencesTotal;
+  }
+
+  /**
+   * Set the maximum number of failed asserts/successful reports that are
+   * contained in the SVRL in total.
+   *
+   * @param nMaxOccurrencesTotal
+   *        The maximum number. Use {@link #UNLIMITED} (or any other negative
+   *        value) for no limit.
+   * @return this for chaining
+   * @since 5.6.1
+   */
+  @Nonnull
+  public final PSXPathValidationHandlerSVRL setMaxOccurrencesTotal (final int nMaxOccurrencesTotal)
+  {
+    m_nMaxOccurrencesTotal = nMaxOccurrencesTotal;
+    return this;
+  }
+
+  /**
+   * @return <code>true</code> if capped asserts/reports are no longer
+   *         evaluated. Default is <code>false</code>.
+   * @since 5.6.1
+   */
+  public final boolean isSkipEvaluationWhenCapped ()
+  {
+    return m_bSkipEvaluationWhenCapped;
+  }
+
+  /**
+   * Define whether asserts/reports that reached their cap should not be
+   * evaluated any more. If enabled, the number of suppressed occurrences is
+   * only a lower bound.
+   *
+   * @param bSkipEvaluationWhenCapped
+   *        <code>true</code> to skip the evaluation.
+   * @return this for chaining
+   * @since 5.6.1
+   */
+  @Nonnull
+  public final PSXPathValidationHandlerSVRL setSkipEvaluationWhenCapped (final boolean bSkipEvaluationWhenCapped)
+  {
+    m_bSkipEvaluationWhenCapped = bSkipEvaluationWhenCapped;
+    return this;
+  }
+
+  /**
+   * @return The total number of failed asserts/successful reports that were
+   *         not contained in the SVRL because of a cap.
+   * @since 5.6.1
+   */
+  public final int getSuppressedCount ()
+  {
+    return m_nSuppressedTotal;
+  }
+
+  private boolean _isCapped (@Nonnull final Occurrences aOccurrences)
+  {
+    return (m_nMaxOccurrencesPerAssert >= 0 && aOccurrences.m_nKept >= m_nMaxOccurrencesPerAssert) ||
+           (m_nMaxOccurrencesTotal >= 0 && m_nKeptTotal >= m_nMaxOccurrencesTotal);
+  }
+
+  /**
+   * Count an occurrence of the passed assert/report.
+   *
+   * @return <code>true</code> if the occurrence should be added to the SVRL,
+   *         <code>false</code> if it is suppressed.
+   */
+  private boolean _countOccurrence (@Nonnull final PSAssertReport aAssertReport)
+  {
+    final Occurrences aOccurrences = m_aOccurrences.computeIfAbsent (aAssertReport, k -> new Occurrences ());
+    if (_isCapped (aOccurrences))
+    {
+      aOccurrences.m_nSuppressed++;
+      m_nSuppressedTotal++;
+      return false;
+    }
+    aOccurrences.m_nKept++;
+    m_nKeptTotal++;
+    return true;
+  }
+
+  private void _addSuppressedTexts ()
+  {
+    for (final Map.Entry <PSAssertReport, Occurrences> aEntry : m_aOccurrences.entrySet ())
+    {
+      final Occurrences aOccurrences = aEntry.getValue ();
+      if (aOccurrences.m_nSuppressed > 0 || aOccurrences.m_bSkipped)
+      {
+        final PSAssertReport aAssertReport = aEntry.getKey ();
+        final String sName = aAssertReport.getID () != null ? aAssertReport.getID () : aAssertReport.getTest ();
+        final Text aText = new Text ();
+        aText.addContent (SVRLHelper.SUPPRESSED_TEXT_PREFIX +
+                          (aAssertReport.isAssert () ? "assert '" : "report '") +
+                          sName +
+                          "': " +
+                          aOccurrences.m_nSuppressed +
+                          " occurrence(s) suppressed" +
+                          (aOccurrences.m_bSkipped ? ", further evaluation skipped" : ""));
+        m_aSchematronOutput.getText ().add (aText);
+      }
+    }
+  }
+
+  @Override
+  public boolean isSkipEvaluation (@Nonnull final PSAssertReport aAssertReport)
+  {
+    if (!m_bSkipEvaluationWhenCapped)
+      return false;
+
+    final Occurrences aOccurrences = m_aOccurrences.computeIfAbsent (aAssertReport, k -> new Occurrences ());
+    if (!_isCapped (aOccurrences))
+      return false;
+    aOccurrences.m_bSkipped = true;
+    return true;
+  }
+
   private void _warn (@Nonnull final IPSElement aSourceElement, @Nonnull final String sMsg)
   {
     if (m_aSchema == null)
@@ -167,6 +346,9 @@ public class PSXPathValidationHandlerSVRL implements IPSValidationHandler
     m_aSchematronOutput = aSchematronOutput;
     m_aSchema = aSchema;
     m_sBaseURI = sBaseURI;
+    m_aOccurrences.clear ();
+    m_nKeptTotal = 0;
+    m_nSuppressedTotal = 0;
   }
 
   @Override
@@ -334,6 +516,19 @@ public class PSXPathValidationHandlerSVRL implements IPSValidationHandler
     return XMLHelper.getPathToNode2 (aNode, "/");
   }
 
+  @Override
+  public void onCancelled (@Nonnull final PSSchema aSchema, @Nonnull final String sReason)
+  {
+    SVRLHelper.markIncomplete (m_aSchematronOutput, sReason);
+    _addSuppressedTexts ();
+  }
+
+  @Override
+  public void onEnd (@Nonnull final PSSchema aSchema, @Nullable final PSPhase aActivePhase)
+  {
+    _addSuppressedTexts ();
+  }
+
   @Override
   @Nonnull
   public EContinue onFailedAssert (@Nonnull final PSAssertReport aAssertReport,
@@ -345,6 +540,8 @@ public class PSXPathValidationHandlerSVRL implements IPSValidationHandler
     if (!(aContext instanceof PSXPathBoundAssertReport))
       throw new SchematronValidationException ("The passed context must be an XPath object but is a " + aContext);
     final PSXPathBoundAssertReport aBoundAssertReport = (PSXPathBoundAssertReport) aContext;
+    if (!_countOccurrence (aAssertReport))
+      return EContinue.CONTINUE;
 
     final FailedAssert aFailedAssert = new FailedAssert ();
     aFailedAssert.setFlag (aAssertReport.getFlag ());
@@ -373,6 +570,8 @@ public class PSXPathValidationHandlerSVRL implements IPSValidationHandler
     if (!(aContext instanceof PSXPathBoundAssertReport))
       throw new SchematronValidationException ("The passed context must be an XPath object but is a " + aContext);
     final PSXPathBoundAssertReport aBoundAssertReport = (PSXPathBoundAssertReport) aContext;
+    if (!_countOccurrence (aAssertReport))
+      return EContinue.CONTINUE;
 
     final SuccessfulReport aSuccessfulReport = new SuccessfulReport ();
     aSuccessfulReport.setFlag (aAssertReport.getFlag ());
@@ -0,0 +1,451 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.reload;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.CommonsLinkedHashSet;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedSet;
+import com.helger.commons.collection.impl.ICommonsSet;
+import com.helger.commons.io.resource.FileSystemResource;
+import com.helger.commons.io.resource.IReadableResource;
+import com.helger.commons.string.StringHelper;
+import com.helger.schematron.CSchematronXML;
+import com.helger.schematron.SchematronHelper;
+import com.helger.schematron.pure.bound.PSBoundSchemaCache;
+import com.helger.schematron.pure.bound.PSBoundSchemaCacheKey;
+import com.helger.schematron.resolve.DefaultSchematronIncludeResolver;
+import com.helger.schematron.resolve.FileFingerprint;
+import com.helger.schematron.xslt.SchematronResourceSCHCache;
+import com.helger.xml.microdom.IMicroDocument;
+import com.helger.xml.microdom.IMicroElement;
+import com.helger.xml.microdom.serialize.MicroReader;
+
+/**
+ * Reloads cached Schematrons when their files change. All bound schemas in a
+ * {@link PSBoundSchemaCache} and all XSLT providers in the
+ * {@link SchematronResourceSCHCache} that are backed by a
+ * {@link FileSystemResource} are watched, including all their (transitive)
+ * includes. If one of the files changes, the Schematron is bound or compiled
+ * again in a background thread and atomically swapped into the respective
+ * cache. Validations that are running on the old version finish with the old
+ * version. If the changed Schematron is invalid, the old version stays in
+ * use.
+ * <p>
+ * Changes are detected by an NIO {@link WatchService} if available, and
+ * additionally by polling the last modification date and size of all files in
+ * a configurable interval. Use {@link #checkForChanges()} to trigger a check
+ * manually.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public class SchematronReloader implements AutoCloseable
+{
+  /** The default polling interval */
+  public static final Duration DEFAULT_POLLING_INTERVAL = Duration.ofSeconds (5);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SchematronReloader.class);
+
+  private final PSBoundSchemaCache m_aBoundSchemaCache;
+  private final Duration m_aPollingInterval;
+  private final boolean m_bUseWatchService;
+  private final Lock m_aLock = new ReentrantLock ();
+  // The fingerprints of all dependent files per cache entry
+  private final ICommonsMap <PSBoundSchemaCacheKey, ICommonsMap <File, FileFingerprint>> m_aPureFiles = new CommonsHashMap <> ();
+  private final ICommonsMap <String, ICommonsMap <File, FileFingerprint>> m_aSCHFiles = new CommonsHashMap <> ();
+  private final ICommonsSet <Path> m_aWatchedDirs = new CommonsHashSet <> ();
+  private final AtomicInteger m_aReloadCount = new AtomicInteger (0);
+  private ScheduledExecutorService m_aScheduler;
+  private WatchService m_aWatchService;
+
+  /**
+   * Constructor using the global {@link PSBoundSchemaCache}, the default
+   * polling interval and a watch service.
+   */
+  public SchematronReloader ()
+  {
+    this (PSBoundSchemaCache.getInstance (), DEFAULT_POLLING_INTERVAL, true);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aBoundSchemaCache
+   *        The bound schema cache to watch. May not be <code>null</code>.
+   * @param aPollingInterval
+   *        The polling interval. May not be <code>null</code> and must be
+   *        positive.
+   * @param bUseWatchService
+   *        <code>true</code> to use an NIO watch service in addition to
+   *        polling, <code>false</code> to use polling only.
+   */
+  public SchematronReloader (@Nonnull final PSBoundSchemaCache aBoundSchemaCache,
+                             @Nonnull final Duration aPollingInterval,
+                             final boolean bUseWatchService)
+  {
+    ValueEnforcer.notNull (aBoundSchemaCache, "BoundSchemaCache");
+    ValueEnforcer.notNull (aPollingInterval, "PollingInterval");
+    ValueEnforcer.isTrue (!aPollingInterval.isNegative () && !aPollingInterval.isZero (),
+                          "PollingInterval must be positive");
+    m_aBoundSchemaCache = aBoundSchemaCache;
+    m_aPollingInterval = aPollingInterval;
+    m_bUseWatchService = bUseWatchService;
+  }
+
+  /**
+   * Get all local files the passed Schematron depends on. This is the
+   * Schematron file itself and all files that are included (directly or
+   * indirectly) via <code>include</code> or <code>extends</code>.
+   *
+   * @param aResource
+   *        The Schematron resource. May not be <code>null</code>.
+   * @return A set with all files. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsOrderedSet <File> getAllDependentFiles (@Nonnull final FileSystemResource aResource)
+  {
+    ValueEnforcer.notNull (aResource, "Resource");
+
+    final ICommonsOrderedSet <File> ret = new CommonsLinkedHashSet <> ();
+    _addAllDependentFiles (aResource, ret);
+    return ret;
+  }
+
+  private static void _addAllDependentFiles (@Nonnull final FileSystemResource aResource,
+                                             @Nonnull final ICommonsOrderedSet <File> aTarget)
+  {
+    if (!aTarget.add (aResource.getAsFile ()))
+    {
+      // Already handled (or a cyclic include)
+      return;
+    }
+
+    final IMicroDocument aDoc = MicroReader.readMicroXML (aResource);
+    if (aDoc == null || aDoc.getDocumentElement () == null)
+      return;
+
+    final DefaultSchematronIncludeResolver aIncludeResolver = new DefaultSchematronIncludeResolver (aResource);
+    for (final IMicroElement eElement : aDoc.getDocumentElement ().getAllChildElementsRecursive ())
+      if (SchematronHelper.isValidSchematronNS (eElement.getNamespaceURI (), true) &&
+          (eElement.getLocalName ().equals (CSchematronXML.ELEMENT_INCLUDE) ||
+           eElement.getLocalName ().equals (CSchematronXML.ELEMENT_EXTENDS)))
+      {
+        String sHref = eElement.getAttributeValue (CSchematronXML.ATTR_HREF);
+        if (StringHelper.hasText (sHref))
+        {
+          final int nHashIndex = sHref.indexOf ('#');
+          if (nHashIndex >= 0)
+            sHref = sHref.substring (0, nHashIndex);
+          try
+          {
+            final IReadableResource aIncludeRes = aIncludeResolver.getResolvedSchematronResource (sHref);
+            if (aIncludeRes instanceof FileSystemResource)
+              _addAllDependentFiles ((FileSystemResource) aIncludeRes, aTarget);
+          }
+          catch (final IOException ex)
+          {
+            // Don't care - binding will fail anyway
+          }
+        }
+      }
+  }
+
+  @Nonnull
+  private static ICommonsMap <File, FileFingerprint> _getAllFingerprints (@Nonnull final FileSystemResource aResource)
+  {
+    final ICommonsMap <File, FileFingerprint> ret = new CommonsHashMap <> ();
+    for (final File aFile : getAllDependentFiles (aResource))
+      ret.put (aFile, FileFingerprint.of (aFile));
+    return ret;
+  }
+
+  private static boolean _isChanged (@Nonnull final ICommonsMap <File, FileFingerprint> aFingerprints)
+  {
+    for (final Map.Entry <File, FileFingerprint> aEntry : aFingerprints.entrySet ())
+      if (!FileFingerprint.of (aEntry.getKey ()).equals (aEntry.getValue ()))
+        return true;
+    return false;
+  }
+
+  private void _registerDirectories (@Nonnull final ICommonsMap <File, FileFingerprint> aFingerprints)
+  {
+    if (m_aWatchService == null)
+      return;
+
+    for (final File aFile : aFingerprints.keySet ())
+    {
+      final File aDir = aFile.getAbsoluteFile ().getParentFile ();
+      if (aDir != null && m_aWatchedDirs.add (aDir.toPath ()))
+        try
+        {
+          aDir.toPath ()
+              .register (m_aWatchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        catch (final IOException | RuntimeException ex)
+        {
+          LOGGER.warn ("Failed to watch directory " + aDir + " - relying on polling only", ex);
+        }
+    }
+  }
+
+  /**
+   * Check all cached Schematrons for changes and rebind/recompile the changed
+   * ones in the calling thread. Cache entries that are seen for the first time
+   * are only remembered.
+   *
+   * @return The number of Schematrons that were successfully reloaded. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public int checkForChanges ()
+  {
+    int nReloaded = 0;
+    m_aLock.lock ();
+    try
+    {
+      // Bound schemas of the pure implementation
+      final ICommonsSet <PSBoundSchemaCacheKey> aActivePure = new CommonsHashSet <> ();
+      for (final PSBoundSchemaCacheKey aKey : m_aBoundSchemaCache.getAllCachedKeys ())
+        if (aKey.getResource () instanceof FileSystemResource)
+        {
+          aActivePure.add (aKey);
+          final FileSystemResource aResource = (FileSystemResource) aKey.getResource ();
+          final ICommonsMap <File, FileFingerprint> aOld = m_aPureFiles.get (aKey);
+          if (aOld == null || _isChanged (aOld))
+          {
+            // Remember first, so that an invalid Schematron is not rebound
+            // again until the next change
+            final ICommonsMap <File, FileFingerprint> aNew = _getAllFingerprints (aResource);
+            m_aPureFiles.put (aKey, aNew);
+            _registerDirectories (aNew);
+            if (aOld != null)
+            {
+              LOGGER.info ("Schematron " + aResource.getPath () + " changed - rebinding");
+              if (m_aBoundSchemaCache.rebind (aKey).isSuccess ())
+                nReloaded++;
+            }
+          }
+        }
+      m_aPureFiles.keySet ().removeIf (k -> !aActivePure.contains (k));
+
+      // XSLT providers created from SCH files
+      final ICommonsMap <String, IReadableResource> aSCHResources = SchematronResourceSCHCache.getAllCachedResources ();
+      for (final Map.Entry <String, IReadableResource> aEntry : aSCHResources.entrySet ())
+        if (aEntry.getValue () instanceof FileSystemResource)
+        {
+          final FileSystemResource aResource = (FileSystemResource) aEntry.getValue ();
+          final ICommonsMap <File, FileFingerprint> aOld = m_aSCHFiles.get (aEntry.getKey ());
+          if (aOld == null || _isChanged (aOld))
+          {
+            final ICommonsMap <File, FileFingerprint> aNew = _getAllFingerprints (aResource);
+            m_aSCHFiles.put (aEntry.getKey (), aNew);
+            _registerDirectories (aNew);
+            if (aOld != null)
+            {
+              LOGGER.info ("Schematron " + aResource.getPath () + " changed - recompiling");
+              if (SchematronResourceSCHCache.reloadSchematronXSLTProvider (aEntry.getKey ()).isSuccess ())
+                nReloaded++;
+            }
+          }
+        }
+      m_aSCHFiles.keySet ().removeIf (k -> !aSCHResources.containsKey (k));
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+    m_aReloadCount.addAndGet (nReloaded);
+    return nReloaded;
+  }
+
+  private void _checkForChangesSafe ()
+  {
+    try
+    {
+      checkForChanges ();
+    }
+    catch (final RuntimeException ex)
+    {
+      LOGGER.error ("Error checking Schematrons for changes", ex);
+    }
+  }
+
+  private void _runWatchLoop (@Nonnull final WatchService aWatchService,
+                              @Nonnull final ScheduledExecutorService aScheduler)
+  {
+    try
+    {
+      while (true)
+      {
+        final WatchKey aWatchKey = aWatchService.take ();
+        aWatchKey.pollEvents ();
+        aWatchKey.reset ();
+
+        // Check in the scheduler thread, so that there is only one check at a
+        // time
+        aScheduler.execute (this::_checkForChangesSafe);
+      }
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      // Reloader was closed
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+    }
+    catch (final ClosedWatchServiceException ex)
+    {
+      // Reloader was closed
+    }
+  }
+
+  /**
+   * Start watching in the background. Calling this method on a started
+   * reloader has no effect.
+   */
+  public void start ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      if (m_aScheduler != null)
+        return;
+
+      final ScheduledExecutorService aScheduler = Executors.newSingleThreadScheduledExecutor (r -> {
+        final Thread ret = new Thread (r, "ph-schematron-reloader");
+        ret.setDaemon (true);
+        return ret;
+      });
+      m_aScheduler = aScheduler;
+
+      if (m_bUseWatchService)
+        try
+        {
+          final WatchService aWatchService = FileSystems.getDefault ().newWatchService ();
+          m_aWatchService = aWatchService;
+          final Thread aWatchThread = new Thread ( () -> _runWatchLoop (aWatchService, aScheduler),
+                                                   "ph-schematron-watcher");
+          aWatchThread.setDaemon (true);
+          aWatchThread.start ();
+        }
+        catch (final IOException | UnsupportedOperationException ex)
+        {
+          LOGGER.warn ("No watch service available - relying on polling only", ex);
+        }
+
+      // Initial check registers all cached Schematrons
+      final long nMillis = m_aPollingInterval.toMillis ();
+      aScheduler.scheduleWithFixedDelay (this::_checkForChangesSafe, 0, nMillis, TimeUnit.MILLISECONDS);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return <code>true</code> if {@link #start()} was called and the reloader
+   *         was not yet closed.
+   */
+  public boolean isStarted ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return m_aScheduler != null;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The total number of successfully reloaded Schematrons. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public int getReloadCount ()
+  {
+    return m_aReloadCount.get ();
+  }
+
+  /**
+   * Stop watching. Reloads that are currently running are finished.
+   */
+  public void close ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      if (m_aScheduler != null)
+      {
+        m_aScheduler.shutdown ();
+        m_aScheduler = null;
+      }
+      if (m_aWatchService != null)
+      {
+        try
+        {
+          m_aWatchService.close ();
+        }
+        catch (final IOException ex)
+        {
+          LOGGER.warn ("Failed to close watch service", ex);
+        }
+        m_aWatchService = null;
+      }
+      m_aWatchedDirs.clear ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+}
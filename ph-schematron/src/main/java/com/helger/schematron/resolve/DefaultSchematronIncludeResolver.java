@@ -26,11 +26,14 @@ import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.io.resource.IReadableResource;
 import com.helger.commons.io.resourceresolver.DefaultResourceResolver;
 import com.helger.commons.string.ToStringGenerator;
+import com.helger.xml.microdom.IMicroDocument;
+import com.helger.xml.serialize.read.ISAXReaderSettings;
 
 /**
  * The default implementation of {@link ISchematronIncludeResolver} using the
  * {@link DefaultResourceResolver#getResolvedResource(String, String)} method
- * internally.
+ * internally. Included documents are read via the process-wide
+ * {@link SchematronIncludeCache}.
  *
  * @author Philip Helger
  */
@@ -67,6 +70,14 @@ public class DefaultSchematronIncludeResolver implements ISchematronIncludeResol
     return DefaultResourceResolver.getResolvedResource (sHref, getBaseHref ());
   }
 
+  @Override
+  @Nullable
+  public IMicroDocument readIncludedDocument (@Nonnull final IReadableResource aIncludeRes,
+                                              @Nullable final ISAXReaderSettings aSettings)
+  {
+    return SchematronIncludeCache.readIncludedDocument (aIncludeRes, aSettings);
+  }
+
   @Override
   public String toString ()
   {
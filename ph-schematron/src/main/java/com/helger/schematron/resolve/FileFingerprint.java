@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.resolve;
+
+import java.io.File;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * The fingerprint of a file used to detect changes. The last modification
+ * date and the size are kept as separate components, so that no two different
+ * states can map to the same fingerprint.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@Immutable
+public final class FileFingerprint
+{
+  private final long m_nLastModified;
+  private final long m_nLength;
+
+  private FileFingerprint (final long nLastModified, final long nLength)
+  {
+    m_nLastModified = nLastModified;
+    m_nLength = nLength;
+  }
+
+  /**
+   * @return The last modification date in milliseconds. Is 0 if the file does
+   *         not exist.
+   */
+  public long getLastModified ()
+  {
+    return m_nLastModified;
+  }
+
+  /**
+   * @return The file size in bytes. Is 0 if the file does not exist.
+   */
+  public long getLength ()
+  {
+    return m_nLength;
+  }
+
+  /**
+   * @return <code>true</code> if the file existed when the fingerprint was
+   *         created.
+   */
+  public boolean isExisting ()
+  {
+    return m_nLastModified > 0;
+  }
+
+  /**
+   * @return The fingerprint as a string to be used as part of a cache key.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  public String getAsString ()
+  {
+    return m_nLastModified + ":" + m_nLength;
+  }
+
+  @Override
+  public boolean equals (final Object o)
+  {
+    if (o == this)
+      return true;
+    if (o == null || !getClass ().equals (o.getClass ()))
+      return false;
+    final FileFingerprint rhs = (FileFingerprint) o;
+    return m_nLastModified == rhs.m_nLastModified && m_nLength == rhs.m_nLength;
+  }
+
+  @Override
+  public int hashCode ()
+  {
+    return new HashCodeGenerator (this).append (m_nLastModified).append (m_nLength).getHashCode ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("LastModified", m_nLastModified)
+                                       .append ("Length", m_nLength)
+                                       .getToString ();
+  }
+
+  /**
+   * Create the fingerprint of the passed file.
+   *
+   * @param aFile
+   *        The file to use. May not be <code>null</code>.
+   * @return Never <code>null</code>.
+   */
+  @Nonnull
+  public static FileFingerprint of (@Nonnull final File aFile)
+  {
+    ValueEnforcer.notNull (aFile, "File");
+    final long nLastModified = aFile.lastModified ();
+    return nLastModified <= 0 ? new FileFingerprint (0, 0) : new FileFingerprint (nLastModified, aFile.length ());
+  }
+}
@@ -19,9 +19,13 @@ package com.helger.schematron.resolve;
 import java.io.IOException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.io.resource.IReadableResource;
+import com.helger.xml.microdom.IMicroDocument;
+import com.helger.xml.microdom.serialize.MicroReader;
+import com.helger.xml.serialize.read.ISAXReaderSettings;
 
 /**
  * Generic include resolver
@@ -41,4 +45,24 @@ public interface ISchematronIncludeResolver
    */
   @Nonnull
   IReadableResource getResolvedSchematronResource (@Nonnull @Nonempty String sHref) throws IOException;
+
+  /**
+   * Read the resolved include resource as XML.
+   * 
+   * @param aIncludeRes
+   *        The resource as returned by
+   *        {@link #getResolvedSchematronResource(String)}. May not be
+   *        <code>null</code>.
+   * @param aSettings
+   *        The SAX reader settings to be used. May be <code>null</code>.
+   * @return <code>null</code> if the resource could not be read as XML. The
+   *         returned document may be modified by the caller.
+   * @since 5.6.1
+   */
+  @Nullable
+  default IMicroDocument readIncludedDocument (@Nonnull final IReadableResource aIncludeRes,
+                                               @Nullable final ISAXReaderSettings aSettings)
+  {
+    return MicroReader.readMicroXML (aIncludeRes, aSettings);
+  }
 }
@@ -0,0 +1,356 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.resolve;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.resource.FileSystemResource;
+import com.helger.commons.io.resource.IReadableResource;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.string.StringHelper;
+import com.helger.xml.microdom.IMicroDocument;
+import com.helger.xml.microdom.serialize.MicroReader;
+import com.helger.xml.serialize.read.ISAXReaderSettings;
+
+/**
+ * A process-wide, size limited cache for parsed Schematron include fragments.
+ * The cache key is the resolved URL of the included resource together with a
+ * fingerprint of its content: last modification date and size for files, the
+ * SHA-256 hash of the content for all other resources. So a changed include
+ * is always parsed again. The cached documents are never handed out - each
+ * caller receives a clone it may freely modify.
+ * <p>
+ * Documents read with a custom entity resolver are never cached, because the
+ * parse result may depend on the resolver.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public final class SchematronIncludeCache
+{
+  /** The default maximum number of cached include documents */
+  public static final int DEFAULT_MAX_SIZE = 200;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SchematronIncludeCache.class);
+  private static final Lock s_aLock = new ReentrantLock ();
+  private static int s_nMaxSize = DEFAULT_MAX_SIZE;
+  private static boolean s_bEnabled = true;
+  private static final Map <String, IMicroDocument> s_aCache = new LinkedHashMap <String, IMicroDocument> (16,
+                                                                                                              0.75f,
+                                                                                                              true)
+  {
+    @Override
+    protected boolean removeEldestEntry (final Map.Entry <String, IMicroDocument> aEldest)
+    {
+      return size () > s_nMaxSize;
+    }
+  };
+  private static long s_nHits = 0;
+  private static long s_nMisses = 0;
+
+  private SchematronIncludeCache ()
+  {}
+
+  /**
+   * @return <code>true</code> if the cache is enabled, <code>false</code> if
+   *         not. Enabled by default.
+   */
+  public static boolean isEnabled ()
+  {
+    s_aLock.lock ();
+    try
+    {
+      return s_bEnabled;
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Enable or disable the cache. Disabling the cache also clears it.
+   *
+   * @param bEnabled
+   *        <code>true</code> to enable it, <code>false</code> to disable it.
+   */
+  public static void setEnabled (final boolean bEnabled)
+  {
+    s_aLock.lock ();
+    try
+    {
+      s_bEnabled = bEnabled;
+      if (!bEnabled)
+        s_aCache.clear ();
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The maximum number of cached documents. Always &gt; 0.
+   */
+  @Nonnegative
+  public static int getMaxSize ()
+  {
+    s_aLock.lock ();
+    try
+    {
+      return s_nMaxSize;
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Set the maximum number of cached documents. If more documents are cached,
+   * the least recently used ones are evicted.
+   *
+   * @param nMaxSize
+   *        The maximum number of cached documents. Must be &gt; 0.
+   */
+  public static void setMaxSize (@Nonnegative final int nMaxSize)
+  {
+    ValueEnforcer.isGT0 (nMaxSize, "MaxSize");
+    s_aLock.lock ();
+    try
+    {
+      s_nMaxSize = nMaxSize;
+      // Evict the least recently used entries
+      while (s_aCache.size () > nMaxSize)
+        s_aCache.remove (s_aCache.keySet ().iterator ().next ());
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The number of currently cached documents. Always &ge; 0.
+   */
+  @Nonnegative
+  public static int getCacheSize ()
+  {
+    s_aLock.lock ();
+    try
+    {
+      return s_aCache.size ();
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The number of cache hits since the last {@link #clearCache()}.
+   */
+  @Nonnegative
+  public static long getHitCount ()
+  {
+    s_aLock.lock ();
+    try
+    {
+      return s_nHits;
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The number of cache misses since the last {@link #clearCache()}.
+   */
+  @Nonnegative
+  public static long getMissCount ()
+  {
+    s_aLock.lock ();
+    try
+    {
+      return s_nMisses;
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Remove all cached documents and reset the statistics.
+   */
+  public static void clearCache ()
+  {
+    s_aLock.lock ();
+    try
+    {
+      s_aCache.clear ();
+      s_nHits = 0;
+      s_nMisses = 0;
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+  }
+
+  @Nullable
+  private static String _getURL (@Nonnull final IReadableResource aResource)
+  {
+    final URL aURL = aResource.getAsURL ();
+    return aURL == null ? null : aURL.toExternalForm ();
+  }
+
+  @Nonnull
+  private static MessageDigest _createDigest ()
+  {
+    try
+    {
+      return MessageDigest.getInstance ("SHA-256");
+    }
+    catch (final NoSuchAlgorithmException ex)
+    {
+      throw new IllegalStateException ("SHA-256 message digest is not available", ex);
+    }
+  }
+
+  @Nullable
+  private static IMicroDocument _get (@Nonnull final String sKey)
+  {
+    s_aLock.lock ();
+    try
+    {
+      final IMicroDocument ret = s_aCache.get (sKey);
+      if (ret != null)
+        s_nHits++;
+      else
+        s_nMisses++;
+      return ret;
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+  }
+
+  private static void _put (@Nonnull final String sKey, @Nonnull final IMicroDocument aDoc)
+  {
+    s_aLock.lock ();
+    try
+    {
+      if (s_bEnabled)
+        s_aCache.put (sKey, aDoc);
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Read the passed included resource as a micro document, using the cache if
+   * possible.
+   *
+   * @param aResource
+   *        The included resource to be read. May not be <code>null</code>.
+   * @param aSettings
+   *        The SAX reader settings to be used. May be <code>null</code>.
+   * @return <code>null</code> if the resource could not be read as XML. The
+   *         returned document is never shared and may be modified by the
+   *         caller.
+   */
+  @Nullable
+  public static IMicroDocument readIncludedDocument (@Nonnull final IReadableResource aResource,
+                                                     @Nullable final ISAXReaderSettings aSettings)
+  {
+    ValueEnforcer.notNull (aResource, "Resource");
+
+    final String sURL = _getURL (aResource);
+    if (!isEnabled () || sURL == null || (aSettings != null && aSettings.getEntityResolver () != null))
+      return MicroReader.readMicroXML (aResource, aSettings);
+
+    if (aResource instanceof FileSystemResource)
+    {
+      final FileFingerprint aFingerprint = FileFingerprint.of (((FileSystemResource) aResource).getAsFile ());
+      if (!aFingerprint.isExisting ())
+        return MicroReader.readMicroXML (aResource, aSettings);
+
+      final String sKey = sURL + '|' + aFingerprint.getAsString ();
+      final IMicroDocument aCached = _get (sKey);
+      if (aCached != null)
+        return aCached.getClone ();
+
+      final IMicroDocument aDoc = MicroReader.readMicroXML (aResource, aSettings);
+      if (aDoc != null)
+        _put (sKey, aDoc.getClone ());
+      return aDoc;
+    }
+
+    // Any other resource: hash the content
+    final byte [] aContent;
+    try (final InputStream aIS = aResource.getInputStream ())
+    {
+      if (aIS == null)
+        return null;
+      aContent = StreamHelper.getAllBytes (aIS);
+    }
+    catch (final IOException ex)
+    {
+      LOGGER.warn ("Failed to read included resource " + aResource, ex);
+      return null;
+    }
+    if (aContent == null)
+      return null;
+
+    final String sKey = sURL + '|' + StringHelper.getHexEncoded (_createDigest ().digest (aContent));
+    final IMicroDocument aCached = _get (sKey);
+    if (aCached != null)
+      return aCached.getClone ();
+
+    final InputSource aIS = new InputSource (new NonBlockingByteArrayInputStream (aContent));
+    aIS.setSystemId (sURL);
+    final IMicroDocument aDoc = MicroReader.readMicroXML (aIS, aSettings);
+    if (aDoc != null)
+      _put (sKey, aDoc.getClone ());
+    return aDoc;
+  }
+}
@@ -0,0 +1,387 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.resultcache;
+
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.schematron.ISchematronResource;
+import com.helger.schematron.SchematronResultFingerprint;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+
+/**
+ * A size limited validation result cache that can be put in front of any
+ * {@link ISchematronResource}. It is meant for pipelines that see the same
+ * XML document several times (e.g. because of client retries), so that
+ * exact duplicates are not validated again.
+ * <p>
+ * The cache key consists of the SHA-256 hash of the XML bytes, the base URI
+ * and the result fingerprint of the Schematron (see
+ * {@link ISchematronResource#getResultFingerprint()}), which covers the
+ * Schematron content including all includes and all result relevant settings.
+ * XML read from a stream is hashed while it is read into memory, and the
+ * validation of a cache miss parses these bytes, so the input is only read
+ * once. If more results are cached than allowed, the least recently used ones
+ * are evicted. The cached results are never handed out - each caller receives
+ * a clone it may freely modify.
+ * <p>
+ * Results that are <code>null</code> or incomplete (see
+ * {@link SVRLHelper#isIncomplete(SchematronOutputType)}) are never cached.
+ * Schematrons without a result fingerprint are always validated and neither
+ * count as hit nor as miss.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public class SchematronResultCache
+{
+  /** The default maximum number of cached results */
+  public static final int DEFAULT_MAX_SIZE = 1000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger (SchematronResultCache.class);
+
+  private final Lock m_aLock = new ReentrantLock ();
+  private final int m_nMaxSize;
+  private final Map <CacheKey, SchematronOutputType> m_aCache;
+  private long m_nHits = 0;
+  private long m_nMisses = 0;
+
+  /**
+   * Constructor with the default maximum size.
+   *
+   * @see #DEFAULT_MAX_SIZE
+   */
+  public SchematronResultCache ()
+  {
+    this (DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nMaxSize
+   *        The maximum number of cached results. Must be &gt; 0.
+   */
+  public SchematronResultCache (@Nonnegative final int nMaxSize)
+  {
+    ValueEnforcer.isGT0 (nMaxSize, "MaxSize");
+    m_nMaxSize = nMaxSize;
+    m_aCache = new LinkedHashMap <CacheKey, SchematronOutputType> (16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry (final Map.Entry <CacheKey, SchematronOutputType> aEldest)
+      {
+        return size () > m_nMaxSize;
+      }
+    };
+  }
+
+  /**
+   * @return The maximum number of cached results. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxSize ()
+  {
+    return m_nMaxSize;
+  }
+
+  /**
+   * @return The number of currently cached results. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getCacheSize ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return m_aCache.size ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The number of cache hits since the last {@link #clearCache()}.
+   */
+  @Nonnegative
+  public long getHitCount ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return m_nHits;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The number of cache misses since the last {@link #clearCache()}.
+   */
+  @Nonnegative
+  public long getMissCount ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return m_nMisses;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Remove all cached results and reset the statistics.
+   */
+  public void clearCache ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      m_aCache.clear ();
+      m_nHits = 0;
+      m_nMisses = 0;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * The key of a single cached result.
+   *
+   * @author Philip Helger
+   */
+  @Immutable
+  private static final class CacheKey
+  {
+    private final String m_sDigest;
+    private final String m_sBaseURI;
+    private final SchematronResultFingerprint m_aFingerprint;
+
+    CacheKey (@Nonnull final byte [] aDigest,
+              @Nullable final String sBaseURI,
+              @Nonnull final SchematronResultFingerprint aFingerprint)
+    {
+      m_sDigest = StringHelper.getHexEncoded (aDigest);
+      m_sBaseURI = sBaseURI;
+      m_aFingerprint = aFingerprint;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final CacheKey rhs = (CacheKey) o;
+      return m_sDigest.equals (rhs.m_sDigest) &&
+             EqualsHelper.equals (m_sBaseURI, rhs.m_sBaseURI) &&
+             m_aFingerprint.equals (rhs.m_aFingerprint);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return new HashCodeGenerator (this).append (m_sDigest)
+                                         .append (m_sBaseURI)
+                                         .append (m_aFingerprint)
+                                         .getHashCode ();
+    }
+  }
+
+  @Nullable
+  private SchematronOutputType _get (@Nonnull final CacheKey aKey)
+  {
+    m_aLock.lock ();
+    try
+    {
+      final SchematronOutputType ret = m_aCache.get (aKey);
+      if (ret != null)
+        m_nHits++;
+      else
+        m_nMisses++;
+      return ret;
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  private void _put (@Nonnull final CacheKey aKey, @Nonnull final SchematronOutputType aSOT)
+  {
+    m_aLock.lock ();
+    try
+    {
+      m_aCache.put (aKey, aSOT);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  @Nonnull
+  private static MessageDigest _createDigest ()
+  {
+    try
+    {
+      return MessageDigest.getInstance ("SHA-256");
+    }
+    catch (final NoSuchAlgorithmException ex)
+    {
+      throw new IllegalStateException ("SHA-256 message digest is not available", ex);
+    }
+  }
+
+  @Nullable
+  private SchematronOutputType _getOrValidate (@Nonnull final ISchematronResource aSchematron,
+                                               @Nonnull final byte [] aXML,
+                                               @Nonnull final byte [] aDigest,
+                                               @Nullable final String sBaseURI) throws Exception
+  {
+    final SchematronResultFingerprint aFingerprint = aSchematron.getResultFingerprint ();
+    if (aFingerprint == null)
+    {
+      // The results of this Schematron cannot be cached
+      return aSchematron.applySchematronValidationToSVRL (aXML, sBaseURI);
+    }
+
+    final CacheKey aKey = new CacheKey (aDigest, sBaseURI, aFingerprint);
+    final SchematronOutputType aCached = _get (aKey);
+    if (aCached != null)
+      return aCached.clone ();
+
+    final SchematronOutputType ret = aSchematron.applySchematronValidationToSVRL (aXML, sBaseURI);
+    if (ret != null && !SVRLHelper.isIncomplete (ret))
+      _put (aKey, ret.clone ());
+    return ret;
+  }
+
+  /**
+   * Apply the passed Schematron on the passed XML bytes, using the cache if
+   * possible.
+   *
+   * @param aSchematron
+   *        The Schematron to apply. May not be <code>null</code>.
+   * @param aXML
+   *        The XML bytes to validate. May not be <code>null</code>.
+   * @param sBaseURI
+   *        The Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   * @return The SVRL object containing the result. May be <code>null</code>
+   *         when interpreting the Schematron failed. The returned object is
+   *         never shared and may be modified by the caller.
+   * @throws Exception
+   *         In case the validation somehow goes wrong.
+   */
+  @Nullable
+  public SchematronOutputType applySchematronValidationToSVRL (@Nonnull final ISchematronResource aSchematron,
+                                                               @Nonnull final byte [] aXML,
+                                                               @Nullable final String sBaseURI) throws Exception
+  {
+    ValueEnforcer.notNull (aSchematron, "Schematron");
+    ValueEnforcer.notNull (aXML, "XML");
+
+    final byte [] aDigest = _createDigest ().digest (aXML);
+    return _getOrValidate (aSchematron, aXML, aDigest, sBaseURI);
+  }
+
+  /**
+   * Apply the passed Schematron on the passed XML resource, using the cache if
+   * possible. The resource is read completely into memory and hashed while it
+   * is read.
+   *
+   * @param aSchematron
+   *        The Schematron to apply. May not be <code>null</code>.
+   * @param aXMLResource
+   *        The XML resource to validate. May not be <code>null</code>.
+   * @param sBaseURI
+   *        The Base URI of the XML document to be validated. May be
+   *        <code>null</code>.
+   * @return The SVRL object containing the result. May be <code>null</code>
+   *         when interpreting the Schematron failed or if the resource does
+   *         not exist. The returned object is never shared and may be modified
+   *         by the caller.
+   * @throws Exception
+   *         In case the validation somehow goes wrong.
+   */
+  @Nullable
+  public SchematronOutputType applySchematronValidationToSVRL (@Nonnull final ISchematronResource aSchematron,
+                                                               @Nonnull final IHasInputStream aXMLResource,
+                                                               @Nullable final String sBaseURI) throws Exception
+  {
+    ValueEnforcer.notNull (aSchematron, "Schematron");
+    ValueEnforcer.notNull (aXMLResource, "XMLResource");
+
+    final InputStream aIS = aXMLResource.getInputStream ();
+    if (aIS == null)
+    {
+      LOGGER.warn ("XML resource " + aXMLResource + " does not exist!");
+      return null;
+    }
+
+    final MessageDigest aMD = _createDigest ();
+    final byte [] aXML = StreamHelper.getAllBytes (new DigestInputStream (aIS, aMD));
+    if (aXML == null)
+      throw new IllegalArgumentException ("Failed to read resource " + aXMLResource);
+    return _getOrValidate (aSchematron, aXML, aMD.digest (), sBaseURI);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("MaxSize", m_nMaxSize)
+                                       .append ("CacheSize", getCacheSize ())
+                                       .append ("Hits", getHitCount ())
+                                       .append ("Misses", getMissCount ())
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.saxon;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.PresentForCodeCoverage;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.lib.ErrorReporter;
+import net.sf.saxon.lib.StandardErrorReporter;
+import net.sf.saxon.s9api.XmlProcessingError;
+
+/**
+ * Manages the Saxon {@link Configuration} objects used by the pure engine.
+ * <ul>
+ * <li>Instead of setting a new error reporter factory on a (potentially
+ * shared) {@link Configuration} for every schema, a routing error reporter is
+ * installed once per {@link Configuration}. It forwards all errors to the
+ * {@link ErrorReporter} that is bound to the current thread (see
+ * {@link #setCurrentErrorReporter(ErrorReporter)}).</li>
+ * <li>Optionally every bound schema uses its own {@link Configuration} (and
+ * therefore its own name pool), so that memory is released when the schema is
+ * no longer used (see {@link #setConfigurationPerSchema(boolean)}). By default
+ * all schemas share the {@link Configuration} of the XPath factory.</li>
+ * </ul>
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public final class SaxonConfigurationManager
+{
+  /** By default all schemas share one configuration */
+  public static final boolean DEFAULT_CONFIGURATION_PER_SCHEMA = false;
+
+  private static final ErrorReporter DEFAULT_ERROR_REPORTER = new StandardErrorReporter ();
+  private static final ThreadLocal <ErrorReporter> s_aCurrentErrorReporter = new ThreadLocal <> ();
+  private static final SimpleReadWriteLock s_aRWLock = new SimpleReadWriteLock ();
+  private static final Map <Configuration, Boolean> s_aInstalled = new WeakHashMap <> ();
+  private static final AtomicBoolean s_aConfigurationPerSchema = new AtomicBoolean (DEFAULT_CONFIGURATION_PER_SCHEMA);
+  private static final AtomicInteger s_aActiveConfigurations = new AtomicInteger (0);
+
+  @PresentForCodeCoverage
+  private static final SaxonConfigurationManager s_aInstance = new SaxonConfigurationManager ();
+
+  private SaxonConfigurationManager ()
+  {}
+
+  /**
+   * @return <code>true</code> if every bound schema uses its own Saxon
+   *         {@link Configuration}, <code>false</code> if the configuration of
+   *         the XPath factory is shared.
+   */
+  public static boolean isConfigurationPerSchema ()
+  {
+    return s_aConfigurationPerSchema.get ();
+  }
+
+  /**
+   * Define whether every bound schema should use its own Saxon
+   * {@link Configuration}. This is recommended for long running services
+   * where schemas are reloaded, as the name pool of a shared configuration
+   * only grows. Only affects Saxon XPath factories.
+   *
+   * @param bConfigurationPerSchema
+   *        <code>true</code> to use a configuration per schema.
+   */
+  public static void setConfigurationPerSchema (final boolean bConfigurationPerSchema)
+  {
+    s_aConfigurationPerSchema.set (bConfigurationPerSchema);
+  }
+
+  /**
+   * Install the routing error reporter on the passed configuration, if not yet
+   * done.
+   *
+   * @param aConfiguration
+   *        The configuration to use. May not be <code>null</code>.
+   */
+  public static void installRoutingErrorReporter (@Nonnull final Configuration aConfiguration)
+  {
+    ValueEnforcer.notNull (aConfiguration, "Configuration");
+
+    if (s_aRWLock.readLockedBoolean ( () -> s_aInstalled.containsKey (aConfiguration)))
+      return;
+
+    s_aRWLock.writeLocked ( () -> {
+      if (s_aInstalled.put (aConfiguration, Boolean.TRUE) == null)
+        aConfiguration.setErrorReporterFactory (cfg -> (final XmlProcessingError aError) -> {
+          final ErrorReporter aReporter = s_aCurrentErrorReporter.get ();
+          (aReporter != null ? aReporter : DEFAULT_ERROR_REPORTER).report (aError);
+        });
+    });
+  }
+
+  /**
+   * @return The error reporter bound to the current thread. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public static ErrorReporter getCurrentErrorReporter ()
+  {
+    return s_aCurrentErrorReporter.get ();
+  }
+
+  /**
+   * Bind an error reporter to the current thread. Always restore the previous
+   * one in a <code>finally</code> block.
+   *
+   * @param aErrorReporter
+   *        The error reporter to use. May be <code>null</code> to use the
+   *        default Saxon error reporter.
+   * @return The previous error reporter of the current thread. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public static ErrorReporter setCurrentErrorReporter (@Nullable final ErrorReporter aErrorReporter)
+  {
+    final ErrorReporter ret = s_aCurrentErrorReporter.get ();
+    if (aErrorReporter == null)
+      s_aCurrentErrorReporter.remove ();
+    else
+      s_aCurrentErrorReporter.set (aErrorReporter);
+    return ret;
+  }
+
+  /**
+   * Create a new Saxon configuration for a single schema. It must be handed
+   * back via {@link #retireConfiguration(Configuration)} when it is no longer
+   * needed.
+   *
+   * @return A new configuration with the routing error reporter installed.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  public static Configuration createConfiguration ()
+  {
+    final Configuration ret = new Configuration ();
+    installRoutingErrorReporter (ret);
+    s_aActiveConfigurations.incrementAndGet ();
+    return ret;
+  }
+
+  /**
+   * Retire a configuration created by {@link #createConfiguration()}. All
+   * references held by this class are removed.
+   *
+   * @param aConfiguration
+   *        The configuration to retire. May not be <code>null</code>.
+   */
+  public static void retireConfiguration (@Nonnull final Configuration aConfiguration)
+  {
+    ValueEnforcer.notNull (aConfiguration, "Configuration");
+
+    if (s_aRWLock.writeLockedGet ( () -> s_aInstalled.remove (aConfiguration)) != null)
+      s_aActiveConfigurations.decrementAndGet ();
+  }
+
+  /**
+   * @return The number of configurations created by
+   *         {@link #createConfiguration()} that were not yet retired.
+   */
+  @Nonnegative
+  public static int getActiveConfigurationCount ()
+  {
+    return s_aActiveConfigurations.get ();
+  }
+}
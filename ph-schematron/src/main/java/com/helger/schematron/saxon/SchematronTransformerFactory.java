@@ -34,9 +34,11 @@ import org.slf4j.LoggerFactory;
 import com.helger.commons.CGlobal;
 import com.helger.commons.exception.InitializationException;
 import com.helger.commons.lang.ClassLoaderHelper;
+import com.helger.schematron.xpath.function.SchematronXPathFunctionRegistry;
 import com.helger.xml.transform.DefaultTransformURIResolver;
 import com.helger.xml.transform.LoggingTransformErrorListener;
 
+import net.sf.saxon.TransformerFactoryImpl;
 import net.sf.saxon.lib.FeatureKeys;
 
 /**
@@ -150,6 +152,12 @@ public final class SchematronTransformerFactory
       }
     }
 
+    if (aFactory instanceof TransformerFactoryImpl)
+    {
+      // Make the Java implemented XPath functions available
+      SchematronXPathFunctionRegistry.registerInSaxon (((TransformerFactoryImpl) aFactory).getConfiguration ());
+    }
+
     if (aErrorListener != null)
       aFactory.setErrorListener (aErrorListener);
     if (aURIResolver != null)
@@ -0,0 +1,331 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.svrl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.schematron.svrl.jaxb.ActivePattern;
+import com.helger.schematron.svrl.jaxb.DiagnosticReference;
+import com.helger.schematron.svrl.jaxb.FailedAssert;
+import com.helger.schematron.svrl.jaxb.FiredRule;
+import com.helger.schematron.svrl.jaxb.NsPrefixInAttributeValues;
+import com.helger.schematron.svrl.jaxb.PropertyReference;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.schematron.svrl.jaxb.SuccessfulReport;
+import com.helger.schematron.svrl.jaxb.Text;
+
+/**
+ * A SAX handler that builds a {@link SchematronOutputType} directly from the
+ * SAX events of an SVRL document, without an intermediate DOM and without a
+ * JAXB unmarshalling step. It is meant to be used as the result of the XSLT
+ * based Schematron validation.
+ * <p>
+ * Only the SVRL structure created by the Schematron skeleton implementation is
+ * supported: plain text content in <code>svrl:text</code> elements and no
+ * foreign elements. If anything else is encountered, an
+ * {@link UnsupportedContentException} is thrown and the caller should fall
+ * back to the JAXB based {@link SVRLMarshaller}. In contrast to the
+ * {@link SVRLMarshaller} the SVRL is not validated against the XML Schema.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@NotThreadSafe
+public class SVRLContentHandler extends DefaultHandler
+{
+  /**
+   * The exception thrown if the SVRL contains content that cannot be handled by
+   * this class.
+   */
+  public static final class UnsupportedContentException extends SAXException
+  {
+    UnsupportedContentException (@Nonnull final String sMessage)
+    {
+      super (sMessage);
+    }
+  }
+
+  private SchematronOutputType m_aSchematronOutput;
+  // The objects of all currently open elements
+  private final ICommonsList <Object> m_aStack = new CommonsArrayList <> ();
+  private StringBuilder m_aTextContent;
+
+  public SVRLContentHandler ()
+  {}
+
+  /**
+   * Check if the passed exception (or one of its causes) was thrown because of
+   * unsupported SVRL content.
+   *
+   * @param t
+   *        The exception to check. May be <code>null</code>.
+   * @return <code>true</code> if the SVRL contained unsupported content.
+   */
+  public static boolean isUnsupportedContent (@Nullable final Throwable t)
+  {
+    Throwable aCur = t;
+    while (aCur != null)
+    {
+      if (aCur instanceof UnsupportedContentException)
+        return true;
+      if (aCur instanceof SAXException && ((SAXException) aCur).getException () != null)
+        aCur = ((SAXException) aCur).getException ();
+      else
+        aCur = aCur.getCause () == aCur ? null : aCur.getCause ();
+    }
+    return false;
+  }
+
+  /**
+   * @return The SVRL built so far. <code>null</code> if no SVRL root element
+   *         was encountered.
+   */
+  @Nullable
+  public final SchematronOutputType getSchematronOutput ()
+  {
+    return m_aSchematronOutput;
+  }
+
+  /**
+   * Collapse the whitespaces like JAXB does for <code>xs:NMTOKEN</code> and
+   * <code>xs:NCName</code> attributes.
+   */
+  @Nullable
+  private static String _collapse (@Nullable final String s)
+  {
+    if (s == null)
+      return null;
+    final StringBuilder aSB = new StringBuilder (s.length ());
+    boolean bPendingSpace = false;
+    for (final char c : s.toCharArray ())
+    {
+      if (c == ' ' || c == '\t' || c == '\n' || c == '\r')
+        bPendingSpace = aSB.length () > 0;
+      else
+      {
+        if (bPendingSpace)
+        {
+          aSB.append (' ');
+          bPendingSpace = false;
+        }
+        aSB.append (c);
+      }
+    }
+    return aSB.toString ();
+  }
+
+  @Nonnull
+  private static UnsupportedContentException _unsupported (@Nonnull final String sQName,
+                                                           @Nullable final Object aParent)
+  {
+    return new UnsupportedContentException ("Unsupported SVRL element '" +
+                                            sQName +
+                                            "'" +
+                                            (aParent == null ? "" : " in " + aParent.getClass ().getSimpleName ()));
+  }
+
+  @Override
+  public void startElement (final String sURI,
+                            final String sLocalName,
+                            final String sQName,
+                            final Attributes aAttrs) throws SAXException
+  {
+    final Object aParent = m_aStack.getLast ();
+    if (m_aTextContent != null || !CSVRL.SVRL_NAMESPACE_URI.equals (sURI))
+    {
+      // Rich text or foreign elements
+      throw _unsupported (sQName, aParent);
+    }
+
+    final Object aObj;
+    switch (sLocalName)
+    {
+      case "schematron-output":
+      {
+        if (aParent != null || m_aSchematronOutput != null)
+          throw _unsupported (sQName, aParent);
+        final SchematronOutputType aSOT = new SchematronOutputType ();
+        aSOT.setTitle (aAttrs.getValue ("title"));
+        aSOT.setPhase (_collapse (aAttrs.getValue ("phase")));
+        aSOT.setSchemaVersion (aAttrs.getValue ("schemaVersion"));
+        m_aSchematronOutput = aSOT;
+        aObj = aSOT;
+        break;
+      }
+      case "text":
+      {
+        final Text aText = new Text ();
+        aText.setSee (aAttrs.getValue ("see"));
+        aText.setIcon (aAttrs.getValue ("icon"));
+        aText.setFpi (aAttrs.getValue ("fpi"));
+        m_aTextContent = new StringBuilder ();
+        aObj = aText;
+        break;
+      }
+      case "ns-prefix-in-attribute-values":
+      {
+        if (!(aParent instanceof SchematronOutputType))
+          throw _unsupported (sQName, aParent);
+        final NsPrefixInAttributeValues aNsPrefix = new NsPrefixInAttributeValues ();
+        aNsPrefix.setPrefix (_collapse (aAttrs.getValue ("prefix")));
+        aNsPrefix.setUri (aAttrs.getValue ("uri"));
+        m_aSchematronOutput.getNsPrefixInAttributeValues ().add (aNsPrefix);
+        aObj = aNsPrefix;
+        break;
+      }
+      case "active-pattern":
+      {
+        if (!(aParent instanceof SchematronOutputType))
+          throw _unsupported (sQName, aParent);
+        final ActivePattern aPattern = new ActivePattern ();
+        aPattern.setId (_collapse (aAttrs.getValue ("id")));
+        aPattern.setDocuments (aAttrs.getValue ("documents"));
+        aPattern.setName (aAttrs.getValue ("name"));
+        aPattern.setRole (_collapse (aAttrs.getValue ("role")));
+        aPattern.setDocument (aAttrs.getValue ("document"));
+        m_aSchematronOutput.getActivePatternAndFiredRuleAndFailedAssert ().add (aPattern);
+        aObj = aPattern;
+        break;
+      }
+      case "fired-rule":
+      {
+        if (!(aParent instanceof SchematronOutputType))
+          throw _unsupported (sQName, aParent);
+        final FiredRule aRule = new FiredRule ();
+        aRule.setId (_collapse (aAttrs.getValue ("id")));
+        aRule.setName (aAttrs.getValue ("name"));
+        aRule.setContext (aAttrs.getValue ("context"));
+        aRule.setRole (_collapse (aAttrs.getValue ("role")));
+        aRule.setFlag (_collapse (aAttrs.getValue ("flag")));
+        m_aSchematronOutput.getActivePatternAndFiredRuleAndFailedAssert ().add (aRule);
+        aObj = aRule;
+        break;
+      }
+      case "failed-assert":
+      {
+        if (!(aParent instanceof SchematronOutputType))
+          throw _unsupported (sQName, aParent);
+        final FailedAssert aFailedAssert = new FailedAssert ();
+        aFailedAssert.setId (_collapse (aAttrs.getValue ("id")));
+        aFailedAssert.setLocation (aAttrs.getValue ("location"));
+        aFailedAssert.setTest (aAttrs.getValue ("test"));
+        aFailedAssert.setRole (_collapse (aAttrs.getValue ("role")));
+        aFailedAssert.setFlag (_collapse (aAttrs.getValue ("flag")));
+        m_aSchematronOutput.getActivePatternAndFiredRuleAndFailedAssert ().add (aFailedAssert);
+        aObj = aFailedAssert;
+        break;
+      }
+      case "successful-report":
+      {
+        if (!(aParent instanceof SchematronOutputType))
+          throw _unsupported (sQName, aParent);
+        final SuccessfulReport aSuccessfulReport = new SuccessfulReport ();
+        aSuccessfulReport.setId (_collapse (aAttrs.getValue ("id")));
+        aSuccessfulReport.setLocation (aAttrs.getValue ("location"));
+        aSuccessfulReport.setTest (aAttrs.getValue ("test"));
+        aSuccessfulReport.setRole (_collapse (aAttrs.getValue ("role")));
+        aSuccessfulReport.setFlag (_collapse (aAttrs.getValue ("flag")));
+        m_aSchematronOutput.getActivePatternAndFiredRuleAndFailedAssert ().add (aSuccessfulReport);
+        aObj = aSuccessfulReport;
+        break;
+      }
+      case "diagnostic-reference":
+      {
+        final DiagnosticReference aDR = new DiagnosticReference ();
+        aDR.setDiagnostic (_collapse (aAttrs.getValue ("diagnostic")));
+        if (aParent instanceof FailedAssert)
+          ((FailedAssert) aParent).getDiagnosticReference ().add (aDR);
+        else
+          if (aParent instanceof SuccessfulReport)
+            ((SuccessfulReport) aParent).getDiagnosticReference ().add (aDR);
+          else
+            throw _unsupported (sQName, aParent);
+        aObj = aDR;
+        break;
+      }
+      case "property-reference":
+      {
+        final PropertyReference aPR = new PropertyReference ();
+        aPR.setProperty (_collapse (aAttrs.getValue ("property")));
+        aPR.setRole (aAttrs.getValue ("role"));
+        aPR.setScheme (aAttrs.getValue ("scheme"));
+        if (aParent instanceof FailedAssert)
+          ((FailedAssert) aParent).getPropertyReference ().add (aPR);
+        else
+          if (aParent instanceof SuccessfulReport)
+            ((SuccessfulReport) aParent).getPropertyReference ().add (aPR);
+          else
+            throw _unsupported (sQName, aParent);
+        aObj = aPR;
+        break;
+      }
+      default:
+        throw _unsupported (sQName, aParent);
+    }
+    m_aStack.add (aObj);
+  }
+
+  @Override
+  public void endElement (final String sURI, final String sLocalName, final String sQName) throws SAXException
+  {
+    final Object aObj = m_aStack.removeLast ();
+    if (aObj instanceof Text)
+    {
+      final Text aText = (Text) aObj;
+      if (m_aTextContent.length () > 0)
+        aText.addContent (m_aTextContent.toString ());
+      m_aTextContent = null;
+
+      final Object aParent = m_aStack.getLast ();
+      if (aParent instanceof SchematronOutputType)
+        ((SchematronOutputType) aParent).getText ().add (aText);
+      else
+        if (aParent instanceof ActivePattern)
+          ((ActivePattern) aParent).setText (aText);
+        else
+          if (aParent instanceof FailedAssert)
+            ((FailedAssert) aParent).setText (aText);
+          else
+            if (aParent instanceof SuccessfulReport)
+              ((SuccessfulReport) aParent).setText (aText);
+            else
+              if (aParent instanceof DiagnosticReference)
+                ((DiagnosticReference) aParent).setText (aText);
+              else
+                if (aParent instanceof PropertyReference)
+                  ((PropertyReference) aParent).setText (aText);
+                else
+                  throw _unsupported (sQName, aParent);
+    }
+  }
+
+  @Override
+  public void characters (final char [] aChars, final int nStart, final int nLength) throws SAXException
+  {
+    // Text outside of svrl:text is ignored, like JAXB does
+    if (m_aTextContent != null)
+      m_aTextContent.append (aChars, nStart, nLength);
+  }
+}
@@ -44,6 +44,23 @@ import com.helger.schematron.svrl.jaxb.Text;
 @ThreadSafe
 public final class SVRLHelper
 {
+  /**
+   * The prefix of the <code>svrl:text</code> element that marks an incomplete
+   * SVRL.
+   *
+   * @since 5.6.1
+   */
+  public static final String INCOMPLETE_TEXT_PREFIX = "[incomplete] ";
+
+  /**
+   * The prefix of the <code>svrl:text</code> elements that list the number of
+   * failed asserts or successful reports that were suppressed, because a cap
+   * was reached.
+   *
+   * @since 5.6.1
+   */
+  public static final String SUPPRESSED_TEXT_PREFIX = "[suppressed] ";
+
   private static final SimpleReadWriteLock s_aRWLock = new SimpleReadWriteLock ();
 
   private static ISVRLErrorLevelDeterminator s_aELD = new DefaultSVRLErrorLevelDeterminator ();
@@ -54,6 +71,50 @@ public final class SVRLHelper
   private SVRLHelper ()
   {}
 
+  /**
+   * Mark the passed SVRL as incomplete, because the validation was stopped
+   * before all rules were evaluated. This adds a <code>svrl:text</code>
+   * element starting with {@link #INCOMPLETE_TEXT_PREFIX} as the first text.
+   *
+   * @param aSchematronOutput
+   *        The SVRL to be modified. May not be <code>null</code>.
+   * @param sReason
+   *        The reason why the SVRL is incomplete. May not be
+   *        <code>null</code>.
+   * @since 5.6.1
+   */
+  public static void markIncomplete (@Nonnull final SchematronOutputType aSchematronOutput,
+                                     @Nonnull final String sReason)
+  {
+    ValueEnforcer.notNull (aSchematronOutput, "SchematronOutput");
+    ValueEnforcer.notNull (sReason, "Reason");
+
+    if (!isIncomplete (aSchematronOutput))
+    {
+      final Text aText = new Text ();
+      aText.addContent (INCOMPLETE_TEXT_PREFIX + sReason);
+      aSchematronOutput.getText ().add (0, aText);
+    }
+  }
+
+  /**
+   * Check if the passed SVRL is incomplete.
+   *
+   * @param aSchematronOutput
+   *        The SVRL to check. May be <code>null</code>.
+   * @return <code>true</code> if the SVRL was marked as incomplete.
+   * @see #markIncomplete(SchematronOutputType, String)
+   * @since 5.6.1
+   */
+  public static boolean isIncomplete (@Nullable final SchematronOutputType aSchematronOutput)
+  {
+    if (aSchematronOutput != null)
+      for (final Text aText : aSchematronOutput.getText ())
+        if (StringHelper.startsWith (getAsString (aText), INCOMPLETE_TEXT_PREFIX))
+          return true;
+    return false;
+  }
+
   @Nullable
   public static String getAsString (@Nullable final Text aText)
   {
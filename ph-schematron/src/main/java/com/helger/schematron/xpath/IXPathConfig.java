@@ -54,4 +54,29 @@ public interface IXPathConfig
 
   @Nullable
   XPathFunctionResolver getXPathFunctionResolver ();
+
+  /**
+   * @return <code>true</code> if equality joins like
+   *         <code>//X[@id = current()/@ref]</code> should be rewritten to hash
+   *         lookups when binding a pure Schematron. <code>false</code> by
+   *         default.
+   * @see com.helger.schematron.pure.bound.xpath.PSXPathJoinOptimizer
+   * @since 5.6.1
+   */
+  default boolean isOptimizeJoins ()
+  {
+    return false;
+  }
+
+  /**
+   * @return <code>true</code> if code list tests should be rewritten to hash
+   *         set lookups when binding a pure Schematron. <code>false</code> by
+   *         default.
+   * @see com.helger.schematron.pure.bound.xpath.PSXPathCodeListOptimizer
+   * @since 5.6.1
+   */
+  default boolean isOptimizeCodeLists ()
+  {
+    return false;
+  }
 }
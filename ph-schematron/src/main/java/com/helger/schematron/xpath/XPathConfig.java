@@ -40,15 +40,41 @@ public class XPathConfig implements IXPathConfig
   private final XPathFactory m_aXPathFactory;
   private final XPathVariableResolver m_aXPathVariableResolver;
   private final XPathFunctionResolver m_aXPathFunctionResolver;
+  private final boolean m_bOptimizeJoins;
+  private final boolean m_bOptimizeCodeLists;
 
   public XPathConfig (@Nonnull final XPathFactory aXPathFactory,
                       @Nullable final XPathVariableResolver aXPathVariableResolver,
                       @Nullable final XPathFunctionResolver aXPathFunctionResolver)
+  {
+    this (aXPathFactory, aXPathVariableResolver, aXPathFunctionResolver, false, false);
+  }
+
+  /**
+   * @param aXPathFactory
+   *        XPath factory to use. May not be <code>null</code>.
+   * @param aXPathVariableResolver
+   *        Variable resolver. May be <code>null</code>.
+   * @param aXPathFunctionResolver
+   *        Function resolver. May be <code>null</code>.
+   * @param bOptimizeJoins
+   *        <code>true</code> to rewrite equality joins to hash lookups.
+   * @param bOptimizeCodeLists
+   *        <code>true</code> to rewrite code list tests to hash set lookups.
+   * @since 5.6.1
+   */
+  public XPathConfig (@Nonnull final XPathFactory aXPathFactory,
+                      @Nullable final XPathVariableResolver aXPathVariableResolver,
+                      @Nullable final XPathFunctionResolver aXPathFunctionResolver,
+                      final boolean bOptimizeJoins,
+                      final boolean bOptimizeCodeLists)
   {
     ValueEnforcer.notNull (aXPathFactory, "XPathFactory");
     m_aXPathFactory = aXPathFactory;
     m_aXPathVariableResolver = aXPathVariableResolver;
     m_aXPathFunctionResolver = aXPathFunctionResolver;
+    m_bOptimizeJoins = bOptimizeJoins;
+    m_bOptimizeCodeLists = bOptimizeCodeLists;
   }
 
   @Nonnull
@@ -69,6 +95,18 @@ public class XPathConfig implements IXPathConfig
     return m_aXPathFunctionResolver;
   }
 
+  @Override
+  public boolean isOptimizeJoins ()
+  {
+    return m_bOptimizeJoins;
+  }
+
+  @Override
+  public boolean isOptimizeCodeLists ()
+  {
+    return m_bOptimizeCodeLists;
+  }
+
   @Override
   public boolean equals (final Object o)
   {
@@ -79,7 +117,9 @@ public class XPathConfig implements IXPathConfig
     final XPathConfig rhs = (XPathConfig) o;
     return m_aXPathFactory.equals (rhs.m_aXPathFactory) &&
            EqualsHelper.equals (m_aXPathVariableResolver, rhs.m_aXPathVariableResolver) &&
-           EqualsHelper.equals (m_aXPathFunctionResolver, rhs.m_aXPathFunctionResolver);
+           EqualsHelper.equals (m_aXPathFunctionResolver, rhs.m_aXPathFunctionResolver) &&
+           m_bOptimizeJoins == rhs.m_bOptimizeJoins &&
+           m_bOptimizeCodeLists == rhs.m_bOptimizeCodeLists;
   }
 
   @Override
@@ -88,6 +128,8 @@ public class XPathConfig implements IXPathConfig
     return new HashCodeGenerator (this).append (m_aXPathFactory)
                                        .append (m_aXPathVariableResolver)
                                        .append (m_aXPathFunctionResolver)
+                                       .append (m_bOptimizeJoins)
+                                       .append (m_bOptimizeCodeLists)
                                        .getHashCode ();
   }
 
@@ -97,6 +139,8 @@ public class XPathConfig implements IXPathConfig
     return new ToStringGenerator (this).append ("XPathFactory", m_aXPathFactory)
                                        .append ("XPathVariableResolver", m_aXPathVariableResolver)
                                        .append ("XPathFunctionResolver", m_aXPathFunctionResolver)
+                                       .append ("OptimizeJoins", m_bOptimizeJoins)
+                                       .append ("OptimizeCodeLists", m_bOptimizeCodeLists)
                                        .getToString ();
   }
 }
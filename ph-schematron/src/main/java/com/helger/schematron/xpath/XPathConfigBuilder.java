@@ -32,6 +32,7 @@ import com.helger.commons.ValueEnforcer;
 import com.helger.commons.collection.ArrayHelper;
 import com.helger.commons.string.StringHelper;
 import com.helger.commons.system.SystemProperties;
+import com.helger.schematron.xpath.function.SchematronXPathFunctionRegistry;
 import com.helger.xml.xpath.XPathHelper;
 
 /**
@@ -43,7 +44,12 @@ import com.helger.xml.xpath.XPathHelper;
 public class XPathConfigBuilder
 {
   public static final XPathFactory XPATH_FACTORY_SAXON_FIRST = XPathHelper.createXPathFactorySaxonFirst ();
-  public static final IXPathConfig DEFAULT = new XPathConfig (XPATH_FACTORY_SAXON_FIRST, null, null);
+  public static final IXPathConfig DEFAULT = new XPathConfig (XPATH_FACTORY_SAXON_FIRST,
+                                                              null,
+                                                              SchematronXPathFunctionRegistry.createFunctionResolver (null));
+  public static final boolean DEFAULT_USE_REGISTERED_FUNCTIONS = true;
+  public static final boolean DEFAULT_OPTIMIZE_JOINS = false;
+  public static final boolean DEFAULT_OPTIMIZE_CODE_LISTS = false;
 
   private static final Logger LOGGER = LoggerFactory.getLogger (XPathConfigBuilder.class);
   private static final Class <?> [] EMPTY_CLASS_ARRAY = new Class <?> [0];
@@ -52,6 +58,9 @@ public class XPathConfigBuilder
   private String m_sGlobalXPathFactory;
   private XPathVariableResolver m_aXPathVariableResolver;
   private XPathFunctionResolver m_aXPathFunctionResolver;
+  private boolean m_bUseRegisteredFunctions = DEFAULT_USE_REGISTERED_FUNCTIONS;
+  private boolean m_bOptimizeJoins = DEFAULT_OPTIMIZE_JOINS;
+  private boolean m_bOptimizeCodeLists = DEFAULT_OPTIMIZE_CODE_LISTS;
 
   public XPathConfigBuilder ()
   {}
@@ -124,6 +133,88 @@ public class XPathConfigBuilder
     return this;
   }
 
+  /**
+   * @return <code>true</code> if the functions of the
+   *         {@link SchematronXPathFunctionRegistry} are available in addition
+   *         to the ones of the function resolver.
+   * @since 5.6.1
+   */
+  public boolean isUseRegisteredFunctions ()
+  {
+    return m_bUseRegisteredFunctions;
+  }
+
+  /**
+   * Enable or disable the usage of the functions of the
+   * {@link SchematronXPathFunctionRegistry}. The custom function resolver is
+   * always asked first. Enabled by default.
+   *
+   * @param bUseRegisteredFunctions
+   *        <code>true</code> to use them, <code>false</code> to not use them.
+   * @return this for chaining
+   * @since 5.6.1
+   */
+  @Nonnull
+  public XPathConfigBuilder setUseRegisteredFunctions (final boolean bUseRegisteredFunctions)
+  {
+    m_bUseRegisteredFunctions = bUseRegisteredFunctions;
+    return this;
+  }
+
+  /**
+   * @return <code>true</code> if equality joins are rewritten to hash lookups
+   *         when binding a pure Schematron.
+   * @since 5.6.1
+   */
+  public boolean isOptimizeJoins ()
+  {
+    return m_bOptimizeJoins;
+  }
+
+  /**
+   * Enable or disable the rewriting of equality joins to hash lookups when
+   * binding a pure Schematron. Disabled by default.
+   *
+   * @param bOptimizeJoins
+   *        <code>true</code> to enable it, <code>false</code> to disable it.
+   * @return this for chaining
+   * @see com.helger.schematron.pure.bound.xpath.PSXPathJoinOptimizer
+   * @since 5.6.1
+   */
+  @Nonnull
+  public XPathConfigBuilder setOptimizeJoins (final boolean bOptimizeJoins)
+  {
+    m_bOptimizeJoins = bOptimizeJoins;
+    return this;
+  }
+
+  /**
+   * @return <code>true</code> if code list tests are rewritten to hash set
+   *         lookups when binding a pure Schematron.
+   * @since 5.6.1
+   */
+  public boolean isOptimizeCodeLists ()
+  {
+    return m_bOptimizeCodeLists;
+  }
+
+  /**
+   * Enable or disable the rewriting of code list tests to hash set lookups
+   * when binding a pure Schematron. Disabled by default.
+   *
+   * @param bOptimizeCodeLists
+   *        <code>true</code> to enable it, <code>false</code> to disable it.
+   * @return this for chaining
+   * @see com.helger.schematron.pure.bound.xpath.PSXPathCodeListOptimizer
+   * @since 5.6.1
+   */
+  @Nonnull
+  public XPathConfigBuilder setOptimizeCodeLists (final boolean bOptimizeCodeLists)
+  {
+    m_bOptimizeCodeLists = bOptimizeCodeLists;
+    return this;
+  }
+
   @Nonnull
   public IXPathConfig build () throws XPathFactoryConfigurationException
   {
@@ -166,6 +257,12 @@ public class XPathConfigBuilder
         aXPathFactory = XPATH_FACTORY_SAXON_FIRST;
       }
 
-    return new XPathConfig (aXPathFactory, m_aXPathVariableResolver, m_aXPathFunctionResolver);
+    final XPathFunctionResolver aFunctionResolver = m_bUseRegisteredFunctions ? SchematronXPathFunctionRegistry.createFunctionResolver (m_aXPathFunctionResolver)
+                                                                              : m_aXPathFunctionResolver;
+    return new XPathConfig (aXPathFactory,
+                            m_aXPathVariableResolver,
+                            aFunctionResolver,
+                            m_bOptimizeJoins,
+                            m_bOptimizeCodeLists);
   }
 }
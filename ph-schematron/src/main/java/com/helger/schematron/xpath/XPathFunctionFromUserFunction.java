@@ -17,9 +17,12 @@
 package com.helger.schematron.xpath;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
 import javax.xml.xpath.XPathFunction;
 import javax.xml.xpath.XPathFunctionException;
 
@@ -30,20 +33,33 @@ import net.sf.saxon.Controller;
 import net.sf.saxon.expr.JPConverter;
 import net.sf.saxon.expr.XPathContextMajor;
 import net.sf.saxon.expr.instruct.UserFunction;
+import net.sf.saxon.om.GroundedValue;
 import net.sf.saxon.om.Sequence;
 import net.sf.saxon.om.StructuredQName;
+import net.sf.saxon.trans.XPathException;
 
 /**
  * A proxy for an {@link XPathFunction} that is implemented as a Saxon
  * {@link UserFunction}. This works only if Saxon is present in the classpath.
+ * <p>
+ * If created from an {@link XQueryModuleController}, each thread uses the
+ * Saxon {@link Controller} of the module, so that the function can be called
+ * concurrently. If created with a single {@link Controller}, all calls are
+ * serialized.
  *
  * @author Philip Helger
  */
+@ThreadSafe
 public final class XPathFunctionFromUserFunction implements XPathFunction
 {
   private final Configuration m_aConfiguration;
-  private final Controller m_aXQController;
+  private final XQueryModuleController m_aModuleController;
+  private final Controller m_aSharedController;
   private final UserFunction m_aUserFunc;
+  private final XQueryFunctionResultCache m_aResultCache;
+  private final String m_sFunctionID;
+  // JPConverter objects are stateless
+  private final Map <Class <?>, JPConverter> m_aConverters = new ConcurrentHashMap <> ();
 
   public XPathFunctionFromUserFunction (@Nonnull final Configuration aConfiguration,
                                         @Nonnull final Controller aXQController,
@@ -51,7 +67,43 @@ public final class XPathFunctionFromUserFunction implements XPathFunction
   {
     m_aConfiguration = ValueEnforcer.notNull (aConfiguration, "Configuration");
     m_aUserFunc = ValueEnforcer.notNull (aUserFunc, "UserFunc");
-    m_aXQController = ValueEnforcer.notNull (aXQController, "XQController");
+    m_aSharedController = ValueEnforcer.notNull (aXQController, "XQController");
+    m_aModuleController = null;
+    m_aResultCache = null;
+    m_sFunctionID = _getFunctionID (aUserFunc);
+  }
+
+  /**
+   * Constructor for a function that can be called concurrently.
+   *
+   * @param aModuleController
+   *        The controller of the XQuery module the function belongs to. It is
+   *        shared by all functions of the module. May not be
+   *        <code>null</code>.
+   * @param aUserFunc
+   *        The user function to invoke. May not be <code>null</code>.
+   * @param aResultCache
+   *        The optional cache for the results of calls with atomic arguments.
+   *        May be <code>null</code>. If present the function must be
+   *        deterministic.
+   * @since 5.6.1
+   */
+  public XPathFunctionFromUserFunction (@Nonnull final XQueryModuleController aModuleController,
+                                        @Nonnull final UserFunction aUserFunc,
+                                        @Nullable final XQueryFunctionResultCache aResultCache)
+  {
+    m_aModuleController = ValueEnforcer.notNull (aModuleController, "ModuleController");
+    m_aConfiguration = aModuleController.getConfiguration ();
+    m_aUserFunc = ValueEnforcer.notNull (aUserFunc, "UserFunc");
+    m_aSharedController = null;
+    m_aResultCache = aResultCache;
+    m_sFunctionID = _getFunctionID (aUserFunc);
+  }
+
+  @Nonnull
+  private static String _getFunctionID (@Nonnull final UserFunction aUserFunc)
+  {
+    return aUserFunc.getFunctionName ().getClarkName () + "#" + aUserFunc.getArity ();
   }
 
   /**
@@ -72,30 +124,81 @@ public final class XPathFunctionFromUserFunction implements XPathFunction
     return m_aUserFunc.getFunctionName ();
   }
 
+  /**
+   * @return The controller of the XQuery module. May be <code>null</code> if
+   *         this function was created with a single {@link Controller}.
+   * @since 5.6.1
+   */
+  @Nullable
+  public XQueryModuleController getModuleController ()
+  {
+    return m_aModuleController;
+  }
+
+  /**
+   * @return The result cache used. May be <code>null</code>.
+   * @since 5.6.1
+   */
+  @Nullable
+  public XQueryFunctionResultCache getResultCache ()
+  {
+    return m_aResultCache;
+  }
+
+  @Nonnull
+  private Sequence _call (@Nonnull final List <?> aArgs,
+                          @Nonnull final Controller aController,
+                          @Nonnull final XPathContextMajor aXPathContext) throws XPathException
+  {
+    // Convert the parameters
+    final Sequence [] aSequences = new Sequence [aArgs.size ()];
+    int nIndex = 0;
+    for (final Object aArg : aArgs)
+    {
+      // Ripped from Saxon itself; genericType is not needed
+      final JPConverter aConverter = m_aConverters.computeIfAbsent (aArg.getClass (),
+                                                                     k -> JPConverter.allocate (k,
+                                                                                                null,
+                                                                                                m_aConfiguration));
+      // Convert to Sequence
+      aSequences[nIndex] = aConverter.convert (aArg, aXPathContext);
+      ++nIndex;
+    }
+    // Finally invoke user function
+    return m_aUserFunc.call (aSequences, aController);
+  }
+
   @Nullable
   public Object evaluate (final List aArgs) throws XPathFunctionException
   {
     try
     {
-      // Convert the parameters
-      final Sequence [] aSequences = new Sequence [aArgs.size ()];
-      if (aArgs.size () > 0)
+      if (m_aSharedController != null)
       {
-        // Create a new context per evaluation
-        final XPathContextMajor aXPathContext = m_aXQController.newXPathContext ();
-
-        int nIndex = 0;
-        for (final Object aArg : aArgs)
+        // Controllers are not thread-safe
+        synchronized (m_aSharedController)
         {
-          // Ripped from Saxon itself; genericType is not needed
-          final JPConverter aConverter = JPConverter.allocate (aArg.getClass (), null, m_aConfiguration);
-          // Convert to Sequence
-          aSequences[nIndex] = aConverter.convert (aArg, aXPathContext);
-          ++nIndex;
+          return _call (aArgs, m_aSharedController, m_aSharedController.newXPathContext ());
         }
       }
-      // Finally invoke user function
-      return m_aUserFunc.call (aSequences, m_aXQController);
+
+      final List <Object> aCacheKey = m_aResultCache == null ? null
+                                                              : XQueryFunctionResultCache.getCacheKey (m_sFunctionID,
+                                                                                                       aArgs);
+      if (aCacheKey != null)
+      {
+        final GroundedValue aCached = m_aResultCache.get (aCacheKey);
+        if (aCached != null)
+          return aCached;
+      }
+
+      // The result is materialized and does not depend on the thread state
+      final GroundedValue ret = m_aModuleController.call ( (aController, aXPathContext) -> _call (aArgs,
+                                                                                                  aController,
+                                                                                                  aXPathContext));
+      if (aCacheKey != null)
+        m_aResultCache.put (aCacheKey, ret);
+      return ret;
     }
     catch (final Exception ex)
     {
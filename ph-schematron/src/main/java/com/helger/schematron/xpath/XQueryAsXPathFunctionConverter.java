@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.WillClose;
 
@@ -32,12 +33,10 @@ import com.helger.commons.io.stream.StreamHelper;
 import com.helger.xml.xpath.MapBasedXPathFunctionResolver;
 
 import net.sf.saxon.Configuration;
-import net.sf.saxon.Controller;
 import net.sf.saxon.expr.instruct.UserFunction;
 import net.sf.saxon.functions.ExecutableFunctionLibrary;
 import net.sf.saxon.functions.FunctionLibrary;
 import net.sf.saxon.functions.FunctionLibraryList;
-import net.sf.saxon.query.DynamicQueryContext;
 import net.sf.saxon.query.StaticQueryContext;
 import net.sf.saxon.query.XQueryExpression;
 import net.sf.saxon.query.XQueryFunction;
@@ -46,13 +45,19 @@ import net.sf.saxon.trans.XPathException;
 
 /**
  * This class loads XQuery modules and provides a list of XPath functions. This
- * class can only be used, if Saxon is on the classpath!
+ * class can only be used, if Saxon is on the classpath!<br>
+ * All modules loaded by one instance share the same Saxon
+ * {@link Configuration}. The created functions can be called concurrently.
+ * Optionally the results of calls with atomic arguments can be cached (see
+ * {@link #setResultCacheMaxSize(int)}).
  *
  * @author Philip Helger
  */
 public class XQueryAsXPathFunctionConverter
 {
   private final String m_sBaseURL;
+  private final Configuration m_aConfiguration;
+  private int m_nResultCacheMaxSize = 0;
 
   /**
    * Default ctor using the current working directory as the base URL for the
@@ -90,8 +95,27 @@ public class XQueryAsXPathFunctionConverter
    *        <code>null</code> nor empty.
    */
   public XQueryAsXPathFunctionConverter (@Nonnull @Nonempty final String sBaseURL)
+  {
+    this (sBaseURL, new Configuration ());
+  }
+
+  /**
+   * Constructor using the passed URL as a working directory as the base URL for
+   * the XQuery resource resolver and the passed Saxon configuration.
+   *
+   * @param sBaseURL
+   *        Base URL for XQuery resource resolving. May neither be
+   *        <code>null</code> nor empty.
+   * @param aConfiguration
+   *        The Saxon configuration to be used for all loaded modules. May not
+   *        be <code>null</code>.
+   * @since 5.6.1
+   */
+  public XQueryAsXPathFunctionConverter (@Nonnull @Nonempty final String sBaseURL,
+                                         @Nonnull final Configuration aConfiguration)
   {
     m_sBaseURL = ValueEnforcer.notEmpty (sBaseURL, "BaseURL");
+    m_aConfiguration = ValueEnforcer.notNull (aConfiguration, "Configuration");
   }
 
   /**
@@ -105,6 +129,48 @@ public class XQueryAsXPathFunctionConverter
     return m_sBaseURL;
   }
 
+  /**
+   * @return The Saxon configuration used for all loaded modules. Never
+   *         <code>null</code>.
+   * @since 5.6.1
+   */
+  @Nonnull
+  public Configuration getConfiguration ()
+  {
+    return m_aConfiguration;
+  }
+
+  /**
+   * @return The maximum number of cached function results per loaded module.
+   *         0 means no caching. Default is 0.
+   * @since 5.6.1
+   */
+  @Nonnegative
+  public int getResultCacheMaxSize ()
+  {
+    return m_nResultCacheMaxSize;
+  }
+
+  /**
+   * Set the maximum number of cached function results per loaded module. Only
+   * calls with atomic arguments are cached. Only enable this, if all functions
+   * of the loaded modules are deterministic. This affects only modules loaded
+   * afterwards.
+   *
+   * @param nResultCacheMaxSize
+   *        The maximum number of results. Must be &ge; 0. 0 disables the
+   *        cache.
+   * @return this for chaining
+   * @since 5.6.1
+   */
+  @Nonnull
+  public XQueryAsXPathFunctionConverter setResultCacheMaxSize (@Nonnegative final int nResultCacheMaxSize)
+  {
+    ValueEnforcer.isGE0 (nResultCacheMaxSize, "ResultCacheMaxSize");
+    m_nResultCacheMaxSize = nResultCacheMaxSize;
+    return this;
+  }
+
   /**
    * Load XQuery functions from an input stream. As this function is supposed to
    * work with Saxon HE, this method allows only for loading full XQuery modules
@@ -132,16 +198,18 @@ public class XQueryAsXPathFunctionConverter
     {
       final MapBasedXPathFunctionResolver aFunctionResolver = new MapBasedXPathFunctionResolver ();
 
-      // create a Configuration object
-      final Configuration aConfiguration = new Configuration ();
-      final DynamicQueryContext aDynamicQueryContext = new DynamicQueryContext (aConfiguration);
+      final Configuration aConfiguration = m_aConfiguration;
       final StaticQueryContext aStaticQueryCtx = aConfiguration.newStaticQueryContext ();
       // The base URI required for resolving within the XQuery
       aStaticQueryCtx.setBaseURI (m_sBaseURL);
       // null == auto detect
       final String sEncoding = null;
       final XQueryExpression exp = aStaticQueryCtx.compileQuery (aXQueryIS, sEncoding);
-      final Controller aXQController = exp.newController (aDynamicQueryContext);
+      // One controller per thread for all functions of the module
+      final XQueryModuleController aModuleController = new XQueryModuleController (aConfiguration, exp);
+      // One cache for all functions of the module
+      final XQueryFunctionResultCache aResultCache = m_nResultCacheMaxSize > 0 ? new XQueryFunctionResultCache (m_nResultCacheMaxSize)
+                                                                               : null;
 
       // find all loaded methods and convert them to XPath functions
       final FunctionLibraryList aFuncLibList = exp.getExecutable ().getFunctionLibrary ();
@@ -163,9 +231,9 @@ public class XQueryAsXPathFunctionConverter
                 aFunctionResolver.addUniqueFunction (aUserFunc.getFunctionName ().getNamespaceBinding ().getURI (),
                                                      aUserFunc.getFunctionName ().getLocalPart (),
                                                      aUserFunc.getArity (),
-                                                     new XPathFunctionFromUserFunction (aConfiguration,
-                                                                                        aXQController,
-                                                                                        aUserFunc));
+                                                     new XPathFunctionFromUserFunction (aModuleController,
+                                                                                        aUserFunc,
+                                                                                        aResultCache));
               }
           }
         }
@@ -181,9 +249,9 @@ public class XQueryAsXPathFunctionConverter
               aFunctionResolver.addUniqueFunction (aXQueryFunction.getFunctionName ().getNamespaceBinding ().getURI (),
                                                    aXQueryFunction.getFunctionName ().getLocalPart (),
                                                    aXQueryFunction.getNumberOfArguments (),
-                                                   new XPathFunctionFromUserFunction (aConfiguration,
-                                                                                      aXQController,
-                                                                                      aXQueryFunction.getUserFunction ()));
+                                                   new XPathFunctionFromUserFunction (aModuleController,
+                                                                                      aXQueryFunction.getUserFunction (),
+                                                                                      aResultCache));
             }
           }
       }
@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.string.ToStringGenerator;
+
+import net.sf.saxon.om.GroundedValue;
+
+/**
+ * A bounded LRU cache for the results of XQuery functions called via
+ * {@link XPathFunctionFromUserFunction}. Only calls where all arguments are
+ * atomic Java values (strings, numbers and booleans) are cached, as node
+ * arguments are specific to a single document. The cached functions must be
+ * deterministic.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public class XQueryFunctionResultCache
+{
+  private final int m_nMaxSize;
+  private final Lock m_aLock = new ReentrantLock ();
+  private final Map <List <Object>, GroundedValue> m_aCache;
+  private final AtomicInteger m_aHits = new AtomicInteger (0);
+  private final AtomicInteger m_aMisses = new AtomicInteger (0);
+
+  public XQueryFunctionResultCache (@Nonnegative final int nMaxSize)
+  {
+    ValueEnforcer.isGT0 (nMaxSize, "MaxSize");
+    m_nMaxSize = nMaxSize;
+    m_aCache = new LinkedHashMap <List <Object>, GroundedValue> (16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry (final Map.Entry <List <Object>, GroundedValue> aEldest)
+      {
+        return size () > m_nMaxSize;
+      }
+    };
+  }
+
+  /**
+   * @return The maximum number of cached results. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxSize ()
+  {
+    return m_nMaxSize;
+  }
+
+  /**
+   * Get the cache key for the passed function call.
+   *
+   * @param sFunctionID
+   *        The unique ID of the function. May not be <code>null</code>.
+   * @param aArgs
+   *        The arguments. May not be <code>null</code>.
+   * @return <code>null</code> if the call cannot be cached.
+   */
+  @Nullable
+  static List <Object> getCacheKey (@Nonnull final String sFunctionID, @Nonnull final List <?> aArgs)
+  {
+    final List <Object> ret = new CommonsArrayList <> (aArgs.size () + 1);
+    ret.add (sFunctionID);
+    for (final Object aArg : aArgs)
+    {
+      if (!(aArg instanceof String) && !(aArg instanceof Number) && !(aArg instanceof Boolean))
+        return null;
+      ret.add (aArg);
+    }
+    return ret;
+  }
+
+  @Nullable
+  GroundedValue get (@Nonnull final List <Object> aKey)
+  {
+    GroundedValue ret;
+    m_aLock.lock ();
+    try
+    {
+      ret = m_aCache.get (aKey);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+    (ret != null ? m_aHits : m_aMisses).incrementAndGet ();
+    return ret;
+  }
+
+  void put (@Nonnull final List <Object> aKey, @Nonnull final GroundedValue aValue)
+  {
+    m_aLock.lock ();
+    try
+    {
+      m_aCache.put (aKey, aValue);
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The number of cached results.
+   */
+  @Nonnegative
+  public int getCacheSize ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      return m_aCache.size ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  /**
+   * @return The number of calls answered from the cache.
+   */
+  @Nonnegative
+  public int getHitCount ()
+  {
+    return m_aHits.get ();
+  }
+
+  /**
+   * @return The number of cacheable calls not answered from the cache.
+   */
+  @Nonnegative
+  public int getMissCount ()
+  {
+    return m_aMisses.get ();
+  }
+
+  /**
+   * Remove all cached results.
+   */
+  public void clearCache ()
+  {
+    m_aLock.lock ();
+    try
+    {
+      m_aCache.clear ();
+    }
+    finally
+    {
+      m_aLock.unlock ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("maxSize", m_nMaxSize)
+                                       .append ("hits", m_aHits.get ())
+                                       .append ("misses", m_aMisses.get ())
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.Controller;
+import net.sf.saxon.expr.XPathContextMajor;
+import net.sf.saxon.om.GroundedValue;
+import net.sf.saxon.om.Sequence;
+import net.sf.saxon.query.DynamicQueryContext;
+import net.sf.saxon.query.XQueryExpression;
+import net.sf.saxon.trans.XPathException;
+
+/**
+ * Provides the Saxon {@link Controller} to call the functions of a single
+ * compiled XQuery module. All functions of a module share the same instance,
+ * so that each thread uses at most one {@link Controller} per module. The
+ * document pool of the {@link Controller} is cleared after each call, so that
+ * no documents are retained between calls.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public final class XQueryModuleController
+{
+  /**
+   * Callback to be invoked with the {@link Controller} of the current thread.
+   */
+  @FunctionalInterface
+  public interface ICallback
+  {
+    @Nonnull
+    Sequence call (@Nonnull Controller aController, @Nonnull XPathContextMajor aXPathContext) throws XPathException;
+  }
+
+  /**
+   * The per-thread state.
+   */
+  private static final class ThreadState
+  {
+    private final Controller m_aController;
+    private final XPathContextMajor m_aXPathContext;
+    // For nested calls
+    private int m_nDepth = 0;
+
+    ThreadState (@Nonnull final Controller aController)
+    {
+      m_aController = aController;
+      m_aXPathContext = aController.newXPathContext ();
+    }
+  }
+
+  private final Configuration m_aConfiguration;
+  private final XQueryExpression m_aXQExpression;
+  private final ThreadLocal <ThreadState> m_aThreadState = new ThreadLocal <> ();
+  private final AtomicInteger m_aCreatedControllers = new AtomicInteger (0);
+
+  /**
+   * Constructor
+   *
+   * @param aConfiguration
+   *        The Saxon configuration. May not be <code>null</code>.
+   * @param aXQExpression
+   *        The compiled XQuery module. May not be <code>null</code>.
+   */
+  public XQueryModuleController (@Nonnull final Configuration aConfiguration,
+                                 @Nonnull final XQueryExpression aXQExpression)
+  {
+    m_aConfiguration = ValueEnforcer.notNull (aConfiguration, "Configuration");
+    m_aXQExpression = ValueEnforcer.notNull (aXQExpression, "XQExpression");
+  }
+
+  /**
+   * @return The Saxon configuration. Never <code>null</code>.
+   */
+  @Nonnull
+  public Configuration getConfiguration ()
+  {
+    return m_aConfiguration;
+  }
+
+  /**
+   * @return The compiled XQuery module. Never <code>null</code>.
+   */
+  @Nonnull
+  public XQueryExpression getXQueryExpression ()
+  {
+    return m_aXQExpression;
+  }
+
+  /**
+   * @return The number of {@link Controller} objects created so far. This is
+   *         at most the number of different threads that called a function of
+   *         this module.
+   */
+  @Nonnegative
+  public int getCreatedControllerCount ()
+  {
+    return m_aCreatedControllers.get ();
+  }
+
+  /**
+   * Invoke the passed callback with the {@link Controller} of the current
+   * thread. The result is materialized, because it may not depend on the state
+   * of the {@link Controller} after the call.
+   *
+   * @param aCallback
+   *        The callback to invoke. May not be <code>null</code>.
+   * @return The materialized result of the callback. Never <code>null</code>.
+   * @throws XPathException
+   *         In case the callback fails
+   */
+  @Nonnull
+  public GroundedValue call (@Nonnull final ICallback aCallback) throws XPathException
+  {
+    ValueEnforcer.notNull (aCallback, "Callback");
+
+    ThreadState aState = m_aThreadState.get ();
+    if (aState == null)
+    {
+      aState = new ThreadState (m_aXQExpression.newController (new DynamicQueryContext (m_aConfiguration)));
+      m_aThreadState.set (aState);
+      m_aCreatedControllers.incrementAndGet ();
+    }
+
+    aState.m_nDepth++;
+    try
+    {
+      return aCallback.call (aState.m_aController, aState.m_aXPathContext).materialize ();
+    }
+    finally
+    {
+      aState.m_nDepth--;
+      if (aState.m_nDepth == 0)
+      {
+        // Don't keep documents loaded by the function alive
+        aState.m_aController.clearDocumentPool ();
+      }
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("XQExpression", m_aXQExpression)
+                                       .append ("CreatedControllers", m_aCreatedControllers.get ())
+                                       .getToString ();
+  }
+}
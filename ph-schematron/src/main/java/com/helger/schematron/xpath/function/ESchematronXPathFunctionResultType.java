@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath.function;
+
+/**
+ * The result type of an {@link ISchematronXPathFunction}.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+public enum ESchematronXPathFunctionResultType
+{
+  /** The function returns a {@link Boolean} */
+  BOOLEAN,
+  /** The function returns a {@link String} */
+  STRING,
+  /** The function returns a {@link Long} */
+  INTEGER;
+}
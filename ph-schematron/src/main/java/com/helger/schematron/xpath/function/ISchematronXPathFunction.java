@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath.function;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathFunctionException;
+
+/**
+ * A Java implemented function that can be called from Schematron XPath
+ * expressions in all engines (pure, SCH and XSLT). All arguments are passed as
+ * strings: the string value of the first item of the argument or
+ * <code>null</code> if the argument is the empty sequence. Implementations
+ * must be thread-safe.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+public interface ISchematronXPathFunction
+{
+  /**
+   * @return The fully qualified name of the function. The namespace URI may not
+   *         be empty. Never <code>null</code>.
+   */
+  @Nonnull
+  QName getFunctionName ();
+
+  /**
+   * @return The number of arguments of the function. Must be &ge; 0.
+   */
+  @Nonnegative
+  int getArity ();
+
+  /**
+   * @return The type of the result of {@link #call(String[])}. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  ESchematronXPathFunctionResultType getResultType ();
+
+  /**
+   * Invoke the function.
+   *
+   * @param aArgs
+   *        The arguments as strings. The length matches {@link #getArity()}.
+   *        Each element may be <code>null</code> for the empty sequence.
+   * @return The result matching {@link #getResultType()} or <code>null</code>
+   *         for the empty sequence.
+   * @throws XPathFunctionException
+   *         In case of an error
+   */
+  @Nullable
+  Object call (@Nonnull String [] aArgs) throws XPathFunctionException;
+}
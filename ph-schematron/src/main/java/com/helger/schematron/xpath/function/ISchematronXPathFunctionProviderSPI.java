@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath.function;
+
+import javax.annotation.Nonnull;
+
+import com.helger.commons.annotation.IsSPIInterface;
+import com.helger.commons.collection.impl.ICommonsList;
+
+/**
+ * Implement this SPI interface to provide Java implemented functions for
+ * Schematron XPath expressions. All implementations are registered in the
+ * {@link SchematronXPathFunctionRegistry}.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@IsSPIInterface
+public interface ISchematronXPathFunctionProviderSPI
+{
+  /**
+   * @return All functions to be registered. Never <code>null</code>.
+   */
+  @Nonnull
+  ICommonsList <ISchematronXPathFunction> getAllFunctions ();
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath.function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.namespace.QName;
+
+import com.helger.commons.annotation.IsSPIImplementation;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+
+/**
+ * The default Java implemented functions that are available in all engines.
+ * Declare the namespace {@value #NAMESPACE_URI} in the Schematron (e.g.
+ * <code>&lt;ns prefix="phf" uri="urn:ph-schematron:functions"/&gt;</code>) to
+ * use them:
+ * <ul>
+ * <li><code>is-iban($s)</code> - IBAN with ISO 7064 MOD 97-10 checksum</li>
+ * <li><code>is-mod97($s)</code> - digits with ISO 7064 MOD 97-10
+ * checksum</li>
+ * <li><code>is-gtin($s)</code> - GTIN-8/12/13/14 check digit</li>
+ * <li><code>is-luhn($s)</code> - Luhn check digit</li>
+ * <li><code>is-iso6346($s)</code> - ISO 6346 container code check digit</li>
+ * <li><code>is-date($s)</code> - valid calendar date in the format
+ * YYYY-MM-DD</li>
+ * <li><code>days-between($start, $end)</code> - number of days between two
+ * dates in the format YYYY-MM-DD or the empty sequence</li>
+ * </ul>
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@IsSPIImplementation
+@Immutable
+public final class SchematronDefaultXPathFunctionProviderSPI implements ISchematronXPathFunctionProviderSPI
+{
+  /** The namespace URI of all default functions */
+  public static final String NAMESPACE_URI = "urn:ph-schematron:functions";
+
+  @Nonnull
+  private static QName _name (@Nonnull final String sLocalName)
+  {
+    return new QName (NAMESPACE_URI, sLocalName);
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <ISchematronXPathFunction> getAllFunctions ()
+  {
+    final ESchematronXPathFunctionResultType eBool = ESchematronXPathFunctionResultType.BOOLEAN;
+    final ICommonsList <ISchematronXPathFunction> ret = new CommonsArrayList <> ();
+    ret.add (new SchematronXPathFunction (_name ("is-iban"),
+                                          1,
+                                          eBool,
+                                          a -> Boolean.valueOf (SchematronXPathFunctionHelper.isValidIBAN (a[0]))));
+    ret.add (new SchematronXPathFunction (_name ("is-mod97"),
+                                          1,
+                                          eBool,
+                                          a -> Boolean.valueOf (SchematronXPathFunctionHelper.isValidMod97 (a[0]))));
+    ret.add (new SchematronXPathFunction (_name ("is-gtin"),
+                                          1,
+                                          eBool,
+                                          a -> Boolean.valueOf (SchematronXPathFunctionHelper.isValidGTIN (a[0]))));
+    ret.add (new SchematronXPathFunction (_name ("is-luhn"),
+                                          1,
+                                          eBool,
+                                          a -> Boolean.valueOf (SchematronXPathFunctionHelper.isValidLuhn (a[0]))));
+    ret.add (new SchematronXPathFunction (_name ("is-iso6346"),
+                                          1,
+                                          eBool,
+                                          a -> Boolean.valueOf (SchematronXPathFunctionHelper.isValidISO6346 (a[0]))));
+    ret.add (new SchematronXPathFunction (_name ("is-date"),
+                                          1,
+                                          eBool,
+                                          a -> Boolean.valueOf (SchematronXPathFunctionHelper.isValidISODate (a[0]))));
+    ret.add (new SchematronXPathFunction (_name ("days-between"),
+                                          2,
+                                          ESchematronXPathFunctionResultType.INTEGER,
+                                          a -> SchematronXPathFunctionHelper.getDaysBetween (a[0], a[1])));
+    return ret;
+  }
+}
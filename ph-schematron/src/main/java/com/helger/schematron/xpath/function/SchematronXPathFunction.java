@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath.function;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathFunctionException;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * Default implementation of {@link ISchematronXPathFunction} based on a
+ * callback.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@Immutable
+public class SchematronXPathFunction implements ISchematronXPathFunction
+{
+  /**
+   * The callback that implements the function.
+   *
+   * @author Philip Helger
+   */
+  @FunctionalInterface
+  public interface ICallback
+  {
+    @Nullable
+    Object call (@Nonnull String [] aArgs) throws XPathFunctionException;
+  }
+
+  private final QName m_aFunctionName;
+  private final int m_nArity;
+  private final ESchematronXPathFunctionResultType m_eResultType;
+  private final ICallback m_aCallback;
+
+  public SchematronXPathFunction (@Nonnull final QName aFunctionName,
+                                  @Nonnegative final int nArity,
+                                  @Nonnull final ESchematronXPathFunctionResultType eResultType,
+                                  @Nonnull final ICallback aCallback)
+  {
+    ValueEnforcer.notNull (aFunctionName, "FunctionName");
+    ValueEnforcer.isTrue (StringHelper.hasText (aFunctionName.getNamespaceURI ()),
+                          "FunctionName must have a namespace URI");
+    ValueEnforcer.isGE0 (nArity, "Arity");
+    ValueEnforcer.notNull (eResultType, "ResultType");
+    ValueEnforcer.notNull (aCallback, "Callback");
+    m_aFunctionName = aFunctionName;
+    m_nArity = nArity;
+    m_eResultType = eResultType;
+    m_aCallback = aCallback;
+  }
+
+  @Nonnull
+  public final QName getFunctionName ()
+  {
+    return m_aFunctionName;
+  }
+
+  @Nonnegative
+  public final int getArity ()
+  {
+    return m_nArity;
+  }
+
+  @Nonnull
+  public final ESchematronXPathFunctionResultType getResultType ()
+  {
+    return m_eResultType;
+  }
+
+  @Nullable
+  public Object call (@Nonnull final String [] aArgs) throws XPathFunctionException
+  {
+    return m_aCallback.call (aArgs);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("functionName", m_aFunctionName)
+                                       .append ("arity", m_nArity)
+                                       .append ("resultType", m_eResultType)
+                                       .getToString ();
+  }
+}
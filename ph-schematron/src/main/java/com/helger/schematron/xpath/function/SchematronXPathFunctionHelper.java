@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath.function;
+
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoUnit;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.annotation.PresentForCodeCoverage;
+
+/**
+ * Java implementations of common checksum and date validations used by the
+ * default Schematron XPath functions (see
+ * {@link SchematronDefaultXPathFunctionProviderSPI}).
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@Immutable
+public final class SchematronXPathFunctionHelper
+{
+  private static final BigInteger BI_97 = BigInteger.valueOf (97);
+  private static final DateTimeFormatter ISO_DATE = DateTimeFormatter.ofPattern ("uuuu-MM-dd")
+                                                                     .withResolverStyle (ResolverStyle.STRICT);
+
+  @PresentForCodeCoverage
+  private static final SchematronXPathFunctionHelper s_aInstance = new SchematronXPathFunctionHelper ();
+
+  private SchematronXPathFunctionHelper ()
+  {}
+
+  private static boolean _isDigits (@Nullable final String s)
+  {
+    if (s == null || s.isEmpty ())
+      return false;
+    for (final char c : s.toCharArray ())
+      if (c < '0' || c > '9')
+        return false;
+    return true;
+  }
+
+  /**
+   * Check if the passed string is a valid IBAN. Spaces are not allowed.
+   *
+   * @param sIBAN
+   *        The IBAN to check. May be <code>null</code>.
+   * @return <code>true</code> if the structure and the ISO 7064 MOD 97-10
+   *         checksum are valid.
+   */
+  public static boolean isValidIBAN (@Nullable final String sIBAN)
+  {
+    if (sIBAN == null || sIBAN.length () < 5 || sIBAN.length () > 34)
+      return false;
+    for (int i = 0; i < sIBAN.length (); ++i)
+    {
+      final char c = sIBAN.charAt (i);
+      final boolean bLetter = c >= 'A' && c <= 'Z';
+      final boolean bDigit = c >= '0' && c <= '9';
+      if (i < 2 ? !bLetter : i < 4 ? !bDigit : !bLetter && !bDigit)
+        return false;
+    }
+    // Move the first 4 chars to the end and convert letters to numbers
+    final String sRearranged = sIBAN.substring (4) + sIBAN.substring (0, 4);
+    final StringBuilder aSB = new StringBuilder (sRearranged.length () * 2);
+    for (final char c : sRearranged.toCharArray ())
+      if (c >= 'A' && c <= 'Z')
+        aSB.append (c - 'A' + 10);
+      else
+        aSB.append (c);
+    return new BigInteger (aSB.toString ()).mod (BI_97).intValue () == 1;
+  }
+
+  /**
+   * Check if the passed string consists of digits only and has a valid ISO
+   * 7064 MOD 97-10 checksum.
+   *
+   * @param sValue
+   *        The value to check. May be <code>null</code>.
+   * @return <code>true</code> if it is valid.
+   */
+  public static boolean isValidMod97 (@Nullable final String sValue)
+  {
+    if (!_isDigits (sValue))
+      return false;
+    return new BigInteger (sValue).mod (BI_97).intValue () == 1;
+  }
+
+  /**
+   * Check if the passed string is a valid GTIN-8, GTIN-12, GTIN-13 or GTIN-14.
+   *
+   * @param sGTIN
+   *        The GTIN to check. May be <code>null</code>.
+   * @return <code>true</code> if the length and the check digit are valid.
+   */
+  public static boolean isValidGTIN (@Nullable final String sGTIN)
+  {
+    if (!_isDigits (sGTIN))
+      return false;
+    final int nLen = sGTIN.length ();
+    if (nLen != 8 && nLen != 12 && nLen != 13 && nLen != 14)
+      return false;
+
+    int nSum = 0;
+    // From right to left, excluding the check digit
+    for (int i = nLen - 2, nPos = 0; i >= 0; --i, ++nPos)
+    {
+      final int nDigit = sGTIN.charAt (i) - '0';
+      nSum += (nPos % 2) == 0 ? nDigit * 3 : nDigit;
+    }
+    final int nCheck = (10 - nSum % 10) % 10;
+    return nCheck == sGTIN.charAt (nLen - 1) - '0';
+  }
+
+  /**
+   * Check if the passed string is valid according to the Luhn algorithm.
+   *
+   * @param sValue
+   *        The value to check. May be <code>null</code>.
+   * @return <code>true</code> if it is valid.
+   */
+  public static boolean isValidLuhn (@Nullable final String sValue)
+  {
+    if (!_isDigits (sValue))
+      return false;
+    int nSum = 0;
+    for (int i = sValue.length () - 1, nPos = 0; i >= 0; --i, ++nPos)
+    {
+      int nDigit = sValue.charAt (i) - '0';
+      if ((nPos % 2) == 1)
+      {
+        nDigit *= 2;
+        if (nDigit > 9)
+          nDigit -= 9;
+      }
+      nSum += nDigit;
+    }
+    return nSum % 10 == 0;
+  }
+
+  private static int _getISO6346LetterValue (final char c)
+  {
+    // A=10, multiples of 11 are skipped
+    int ret = 10;
+    for (char cCur = 'A'; cCur < c; ++cCur)
+    {
+      ret++;
+      if (ret % 11 == 0)
+        ret++;
+    }
+    return ret;
+  }
+
+  /**
+   * Check if the passed string is a valid ISO 6346 freight container code,
+   * e.g. <code>CSQU3054383</code>.
+   *
+   * @param sCode
+   *        The container code to check. May be <code>null</code>.
+   * @return <code>true</code> if the structure and the check digit are valid.
+   */
+  public static boolean isValidISO6346 (@Nullable final String sCode)
+  {
+    if (sCode == null || sCode.length () != 11)
+      return false;
+    for (int i = 0; i < 4; ++i)
+    {
+      final char c = sCode.charAt (i);
+      if (c < 'A' || c > 'Z')
+        return false;
+    }
+    final char cCategory = sCode.charAt (3);
+    if (cCategory != 'U' && cCategory != 'J' && cCategory != 'Z')
+      return false;
+    if (!_isDigits (sCode.substring (4)))
+      return false;
+
+    int nSum = 0;
+    for (int i = 0; i < 10; ++i)
+    {
+      final char c = sCode.charAt (i);
+      final int nValue = i < 4 ? _getISO6346LetterValue (c) : c - '0';
+      nSum += nValue << i;
+    }
+    return (nSum % 11) % 10 == sCode.charAt (10) - '0';
+  }
+
+  /**
+   * Parse a date in the format <code>YYYY-MM-DD</code>.
+   *
+   * @param sDate
+   *        The date to parse. May be <code>null</code>.
+   * @return <code>null</code> if the date is invalid.
+   */
+  @Nullable
+  public static LocalDate parseISODate (@Nullable final String sDate)
+  {
+    if (sDate == null || sDate.length () != 10)
+      return null;
+    try
+    {
+      return LocalDate.parse (sDate, ISO_DATE);
+    }
+    catch (final DateTimeParseException ex)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Check if the passed string is a valid calendar date in the format
+   * <code>YYYY-MM-DD</code>.
+   *
+   * @param sDate
+   *        The date to check. May be <code>null</code>.
+   * @return <code>true</code> if it is valid.
+   */
+  public static boolean isValidISODate (@Nullable final String sDate)
+  {
+    return parseISODate (sDate) != null;
+  }
+
+  /**
+   * Get the number of days between two dates in the format
+   * <code>YYYY-MM-DD</code>.
+   *
+   * @param sStartDate
+   *        The start date. May be <code>null</code>.
+   * @param sEndDate
+   *        The end date. May be <code>null</code>.
+   * @return <code>null</code> if one of the dates is invalid. Negative if the
+   *         end date is before the start date.
+   */
+  @Nullable
+  public static Long getDaysBetween (@Nullable final String sStartDate, @Nullable final String sEndDate)
+  {
+    final LocalDate aStart = parseISODate (sStartDate);
+    final LocalDate aEnd = parseISODate (sEndDate);
+    if (aStart == null || aEnd == null)
+      return null;
+    return Long.valueOf (ChronoUnit.DAYS.between (aStart, aEnd));
+  }
+}
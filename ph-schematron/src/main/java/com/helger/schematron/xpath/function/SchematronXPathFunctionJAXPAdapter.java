@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath.function;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.xpath.XPathFunction;
+import javax.xml.xpath.XPathFunctionException;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.helger.commons.ValueEnforcer;
+
+import net.sf.saxon.om.Item;
+
+/**
+ * Adapter from {@link ISchematronXPathFunction} to the JAXP
+ * {@link XPathFunction} used by the pure engine.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@Immutable
+final class SchematronXPathFunctionJAXPAdapter implements XPathFunction
+{
+  private final ISchematronXPathFunction m_aFunction;
+
+  SchematronXPathFunctionJAXPAdapter (@Nonnull final ISchematronXPathFunction aFunction)
+  {
+    m_aFunction = ValueEnforcer.notNull (aFunction, "Function");
+  }
+
+  @Nullable
+  private static String _getAsString (@Nullable final Object aArg)
+  {
+    if (aArg == null)
+      return null;
+    if (aArg instanceof List <?>)
+    {
+      // First item only
+      final List <?> aList = (List <?>) aArg;
+      return aList.isEmpty () ? null : _getAsString (aList.get (0));
+    }
+    if (aArg instanceof Item)
+      return ((Item) aArg).getStringValue ();
+    // Check for Node first, as e.g. Xerces elements are NodeLists as well
+    if (aArg instanceof Node)
+      return ((Node) aArg).getTextContent ();
+    if (aArg instanceof NodeList)
+    {
+      final NodeList aNL = (NodeList) aArg;
+      return aNL.getLength () == 0 ? null : _getAsString (aNL.item (0));
+    }
+    if (aArg instanceof Double || aArg instanceof Float)
+    {
+      // Avoid the trailing ".0" of Java
+      final double dValue = ((Number) aArg).doubleValue ();
+      if (dValue == Math.rint (dValue) && !Double.isInfinite (dValue) && Math.abs (dValue) < 1e15)
+        return Long.toString ((long) dValue);
+    }
+    return aArg.toString ();
+  }
+
+  @Nullable
+  public Object evaluate (@SuppressWarnings ("rawtypes") final List aArgs) throws XPathFunctionException
+  {
+    final String [] aStringArgs = new String [aArgs.size ()];
+    for (int i = 0; i < aStringArgs.length; ++i)
+      aStringArgs[i] = _getAsString (aArgs.get (i));
+    return m_aFunction.call (aStringArgs);
+  }
+}
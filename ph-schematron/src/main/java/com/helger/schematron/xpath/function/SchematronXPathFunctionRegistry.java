@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath.function;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathFunctionResolver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.PresentForCodeCoverage;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.lang.ServiceLoaderHelper;
+import com.helger.commons.state.EChange;
+
+import net.sf.saxon.Configuration;
+
+/**
+ * The central registry for all Java implemented XPath functions (see
+ * {@link ISchematronXPathFunction}). All functions provided via
+ * {@link ISchematronXPathFunctionProviderSPI} are registered automatically.
+ * <ul>
+ * <li>The pure engine uses them via the function resolver created by
+ * {@link com.helger.schematron.xpath.XPathConfigBuilder}.</li>
+ * <li>The SCH and XSLT engines use them as Saxon integrated extension
+ * functions that are registered in the Saxon {@link Configuration} of the
+ * Schematron transformer factory.</li>
+ * </ul>
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public final class SchematronXPathFunctionRegistry
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger (SchematronXPathFunctionRegistry.class);
+
+  private static final SimpleReadWriteLock s_aRWLock = new SimpleReadWriteLock ();
+  private static final ICommonsOrderedMap <String, ISchematronXPathFunction> s_aMap = new CommonsLinkedHashMap <> ();
+  // All Saxon configurations the functions were registered to
+  private static final Map <Configuration, Boolean> s_aConfigurations = new WeakHashMap <> ();
+
+  static
+  {
+    for (final ISchematronXPathFunctionProviderSPI aSPI : ServiceLoaderHelper.getAllSPIImplementations (ISchematronXPathFunctionProviderSPI.class))
+      for (final ISchematronXPathFunction aFunction : aSPI.getAllFunctions ())
+        if (registerFunction (aFunction).isUnchanged ())
+          LOGGER.warn ("Ignoring duplicate XPath function " + aFunction.getFunctionName () + "#" + aFunction.getArity ());
+  }
+
+  @PresentForCodeCoverage
+  private static final SchematronXPathFunctionRegistry s_aInstance = new SchematronXPathFunctionRegistry ();
+
+  private SchematronXPathFunctionRegistry ()
+  {}
+
+  @Nonnull
+  private static String _getKey (@Nonnull final QName aFunctionName, final int nArity)
+  {
+    return aFunctionName.toString () + "#" + nArity;
+  }
+
+  /**
+   * Register a new function. It is available in all Saxon configurations that
+   * already have the functions registered, but only in XPath expressions and
+   * XSLT stylesheets that are compiled afterwards.
+   *
+   * @param aFunction
+   *        The function to register. May not be <code>null</code>.
+   * @return {@link EChange#UNCHANGED} if a function with the same name and
+   *         arity is already registered.
+   */
+  @Nonnull
+  public static EChange registerFunction (@Nonnull final ISchematronXPathFunction aFunction)
+  {
+    ValueEnforcer.notNull (aFunction, "Function");
+
+    final String sKey = _getKey (aFunction.getFunctionName (), aFunction.getArity ());
+    return s_aRWLock.writeLockedGet ( () -> {
+      if (s_aMap.containsKey (sKey))
+        return EChange.UNCHANGED;
+      s_aMap.put (sKey, aFunction);
+      for (final Configuration aConfig : s_aConfigurations.keySet ())
+        aConfig.registerExtensionFunction (new SchematronXPathFunctionSaxonAdapter (aFunction));
+      return EChange.CHANGED;
+    });
+  }
+
+  /**
+   * Get the function with the passed name and arity.
+   *
+   * @param aFunctionName
+   *        The function name. May be <code>null</code>.
+   * @param nArity
+   *        The number of arguments.
+   * @return <code>null</code> if no such function is registered.
+   */
+  @Nullable
+  public static ISchematronXPathFunction getFunction (@Nullable final QName aFunctionName, final int nArity)
+  {
+    if (aFunctionName == null)
+      return null;
+    final String sKey = _getKey (aFunctionName, nArity);
+    return s_aRWLock.readLockedGet ( () -> s_aMap.get (sKey));
+  }
+
+  /**
+   * @return A list with all registered functions. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsList <ISchematronXPathFunction> getAllFunctions ()
+  {
+    return s_aRWLock.readLockedGet ( () -> new CommonsArrayList <> (s_aMap.values ()));
+  }
+
+  /**
+   * Create a function resolver for the pure engine that first asks the passed
+   * resolver and afterwards all registered functions.
+   *
+   * @param aDelegate
+   *        The function resolver to ask first. May be <code>null</code>.
+   * @return A new function resolver. Never <code>null</code>.
+   */
+  @Nonnull
+  public static XPathFunctionResolver createFunctionResolver (@Nullable final XPathFunctionResolver aDelegate)
+  {
+    return new SchematronXPathFunctionResolver (aDelegate);
+  }
+
+  /**
+   * Register all functions as integrated extension functions in the passed
+   * Saxon configuration. Functions that are registered later on, are added as
+   * well.
+   *
+   * @param aConfiguration
+   *        The Saxon configuration to use. May not be <code>null</code>.
+   */
+  public static void registerInSaxon (@Nonnull final Configuration aConfiguration)
+  {
+    ValueEnforcer.notNull (aConfiguration, "Configuration");
+
+    s_aRWLock.writeLocked ( () -> {
+      if (s_aConfigurations.put (aConfiguration, Boolean.TRUE) == null)
+        for (final ISchematronXPathFunction aFunction : s_aMap.values ())
+          aConfiguration.registerExtensionFunction (new SchematronXPathFunctionSaxonAdapter (aFunction));
+    });
+  }
+}
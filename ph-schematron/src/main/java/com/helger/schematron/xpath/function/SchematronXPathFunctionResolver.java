@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath.function;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathFunction;
+import javax.xml.xpath.XPathFunctionResolver;
+
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * An {@link XPathFunctionResolver} that first asks an optional delegate and
+ * afterwards the {@link SchematronXPathFunctionRegistry}.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@Immutable
+public final class SchematronXPathFunctionResolver implements XPathFunctionResolver
+{
+  private final XPathFunctionResolver m_aDelegate;
+
+  public SchematronXPathFunctionResolver (@Nullable final XPathFunctionResolver aDelegate)
+  {
+    m_aDelegate = aDelegate;
+  }
+
+  /**
+   * @return The delegate function resolver. May be <code>null</code>.
+   */
+  @Nullable
+  public XPathFunctionResolver getDelegate ()
+  {
+    return m_aDelegate;
+  }
+
+  @Nullable
+  public XPathFunction resolveFunction (final QName aFunctionName, final int nArity)
+  {
+    if (m_aDelegate != null)
+    {
+      final XPathFunction ret = m_aDelegate.resolveFunction (aFunctionName, nArity);
+      if (ret != null)
+        return ret;
+    }
+    final ISchematronXPathFunction aFunction = SchematronXPathFunctionRegistry.getFunction (aFunctionName, nArity);
+    return aFunction == null ? null : new SchematronXPathFunctionJAXPAdapter (aFunction);
+  }
+
+  @Override
+  public boolean equals (final Object o)
+  {
+    if (o == this)
+      return true;
+    if (o == null || !getClass ().equals (o.getClass ()))
+      return false;
+    final SchematronXPathFunctionResolver rhs = (SchematronXPathFunctionResolver) o;
+    return EqualsHelper.equals (m_aDelegate, rhs.m_aDelegate);
+  }
+
+  @Override
+  public int hashCode ()
+  {
+    return new HashCodeGenerator (this).append (m_aDelegate).getHashCode ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).appendIfNotNull ("delegate", m_aDelegate).getToString ();
+  }
+}
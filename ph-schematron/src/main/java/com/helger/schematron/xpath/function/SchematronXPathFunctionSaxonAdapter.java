@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath.function;
+
+import javax.annotation.Nonnull;
+import javax.xml.xpath.XPathFunctionException;
+
+import com.helger.commons.ValueEnforcer;
+
+import net.sf.saxon.expr.XPathContext;
+import net.sf.saxon.lib.ExtensionFunctionCall;
+import net.sf.saxon.lib.ExtensionFunctionDefinition;
+import net.sf.saxon.om.Item;
+import net.sf.saxon.om.Sequence;
+import net.sf.saxon.om.StructuredQName;
+import net.sf.saxon.trans.XPathException;
+import net.sf.saxon.value.BooleanValue;
+import net.sf.saxon.value.EmptySequence;
+import net.sf.saxon.value.Int64Value;
+import net.sf.saxon.value.SequenceType;
+import net.sf.saxon.value.StringValue;
+
+/**
+ * Adapter from {@link ISchematronXPathFunction} to a Saxon integrated extension
+ * function used by the SCH and XSLT engines.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+final class SchematronXPathFunctionSaxonAdapter extends ExtensionFunctionDefinition
+{
+  private final ISchematronXPathFunction m_aFunction;
+  private final StructuredQName m_aQName;
+  private final SequenceType [] m_aArgTypes;
+
+  SchematronXPathFunctionSaxonAdapter (@Nonnull final ISchematronXPathFunction aFunction)
+  {
+    m_aFunction = ValueEnforcer.notNull (aFunction, "Function");
+    m_aQName = new StructuredQName ("",
+                                    aFunction.getFunctionName ().getNamespaceURI (),
+                                    aFunction.getFunctionName ().getLocalPart ());
+    m_aArgTypes = new SequenceType [aFunction.getArity ()];
+    for (int i = 0; i < m_aArgTypes.length; ++i)
+      m_aArgTypes[i] = SequenceType.ANY_SEQUENCE;
+  }
+
+  @Override
+  public StructuredQName getFunctionQName ()
+  {
+    return m_aQName;
+  }
+
+  @Override
+  public SequenceType [] getArgumentTypes ()
+  {
+    return m_aArgTypes;
+  }
+
+  @Override
+  public SequenceType getResultType (final SequenceType [] aSuppliedArgumentTypes)
+  {
+    switch (m_aFunction.getResultType ())
+    {
+      case BOOLEAN:
+        return SequenceType.OPTIONAL_BOOLEAN;
+      case INTEGER:
+        return SequenceType.OPTIONAL_INTEGER;
+      default:
+        return SequenceType.OPTIONAL_STRING;
+    }
+  }
+
+  @Override
+  public ExtensionFunctionCall makeCallExpression ()
+  {
+    return new ExtensionFunctionCall ()
+    {
+      @Override
+      public Sequence call (final XPathContext aContext, final Sequence [] aArguments) throws XPathException
+      {
+        final String [] aStringArgs = new String [aArguments.length];
+        for (int i = 0; i < aArguments.length; ++i)
+        {
+          // First item only
+          final Item aItem = aArguments[i].head ();
+          aStringArgs[i] = aItem == null ? null : aItem.getStringValue ();
+        }
+
+        final Object aResult;
+        try
+        {
+          aResult = m_aFunction.call (aStringArgs);
+        }
+        catch (final XPathFunctionException ex)
+        {
+          throw new XPathException (ex);
+        }
+
+        if (aResult == null)
+          return EmptySequence.getInstance ();
+        switch (m_aFunction.getResultType ())
+        {
+          case BOOLEAN:
+            return BooleanValue.get (((Boolean) aResult).booleanValue ());
+          case INTEGER:
+            return Int64Value.makeIntegerValue (((Number) aResult).longValue ());
+          default:
+            return new StringValue (aResult.toString ());
+        }
+      }
+    };
+  }
+}
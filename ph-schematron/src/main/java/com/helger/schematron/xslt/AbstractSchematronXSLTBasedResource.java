@@ -16,7 +16,9 @@
  */
 package com.helger.schematron.xslt;
 
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.Locale;
 import java.util.Map;
 
@@ -24,31 +26,52 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.URIResolver;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamSource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xml.sax.EntityResolver;
+import org.xml.sax.SAXException;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.OverrideOnDemand;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.CommonsTreeMap;
 import com.helger.commons.collection.impl.ICommonsOrderedMap;
 import com.helger.commons.debug.GlobalDebug;
+import com.helger.commons.io.IHasInputStream;
 import com.helger.commons.io.file.FileHelper;
 import com.helger.commons.io.resource.FileSystemResource;
 import com.helger.commons.io.resource.IReadableResource;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.state.EValidity;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.commons.traits.IGenericImplTrait;
 import com.helger.schematron.AbstractSchematronResource;
+import com.helger.schematron.PooledDOMReader;
+import com.helger.schematron.SchematronCancellationToken;
 import com.helger.schematron.SchematronDebug;
+import com.helger.schematron.SchematronResultFingerprint;
+import com.helger.schematron.saxon.SchematronTransformerFactory;
+import com.helger.schematron.svrl.CSVRL;
+import com.helger.schematron.svrl.SVRLContentHandler;
+import com.helger.schematron.svrl.SVRLHelper;
 import com.helger.schematron.svrl.SVRLMarshaller;
 import com.helger.schematron.svrl.jaxb.SchematronOutputType;
 import com.helger.schematron.xslt.validator.ISchematronXSLTValidator;
@@ -57,7 +80,9 @@ import com.helger.xml.XMLFactory;
 import com.helger.xml.serialize.write.XMLWriter;
 import com.helger.xml.transform.DefaultTransformURIResolver;
 import com.helger.xml.transform.LoggingTransformErrorListener;
+import com.helger.xml.transform.TransformSourceFactory;
 
+import net.sf.saxon.Configuration;
 import net.sf.saxon.jaxp.TransformerImpl;
 import net.sf.saxon.lib.StandardLogger;
 import net.sf.saxon.s9api.XsltTransformer;
@@ -79,12 +104,30 @@ public abstract class AbstractSchematronXSLTBasedResource <IMPLTYPE extends Abst
                                                           ISchematronXSLTBasedResource,
                                                           IGenericImplTrait <IMPLTYPE>
 {
+  /**
+   * By default the SVRL is created as a DOM and read via JAXB.
+   *
+   * @since 5.6.1
+   */
+  public static final boolean DEFAULT_BUILD_SVRL_DIRECTLY = false;
+
+  /**
+   * By default XML read from streams and bytes is read into a DOM first.
+   *
+   * @since 5.6.1
+   */
+  public static final boolean DEFAULT_USE_NATIVE_TREE = false;
+
   private static final Logger LOGGER = LoggerFactory.getLogger (AbstractSchematronXSLTBasedResource.class);
 
   protected ErrorListener m_aCustomErrorListener;
   protected URIResolver m_aCustomURIResolver = new DefaultTransformURIResolver ();
+  // The URI resolver created in the constructor
+  private final URIResolver m_aDefaultURIResolver;
   protected final ICommonsOrderedMap <String, Object> m_aCustomParameters = new CommonsLinkedHashMap <> ();
   private ISchematronXSLTValidator m_aXSLTValidator = new SchematronXSLTValidatorDefault ();
+  private boolean m_bBuildSVRLDirectly = DEFAULT_BUILD_SVRL_DIRECTLY;
+  private boolean m_bUseNativeTree = DEFAULT_USE_NATIVE_TREE;
 
   @Nullable
   private static String _findBaseURL (@Nonnull final IReadableResource aRes)
@@ -108,7 +151,8 @@ public abstract class AbstractSchematronXSLTBasedResource <IMPLTYPE extends Abst
     final String sBaseURL = _findBaseURL (aSCHResource);
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("Using '" + sBaseURL + "' as base URL for SCH resource " + aSCHResource);
-    setURIResolver (new DefaultTransformURIResolver ().setDefaultBase (sBaseURL));
+    m_aDefaultURIResolver = new DefaultTransformURIResolver ().setDefaultBase (sBaseURL);
+    setURIResolver (m_aDefaultURIResolver);
   }
 
   @Nullable
@@ -184,12 +228,154 @@ public abstract class AbstractSchematronXSLTBasedResource <IMPLTYPE extends Abst
     return thisAsT ();
   }
 
+  /**
+   * @return <code>true</code> if the {@link SchematronOutputType} is built
+   *         directly from the output of the XSLT transformation,
+   *         <code>false</code> if the output is created as a DOM first and
+   *         read via JAXB.
+   * @since 5.6.1
+   */
+  public final boolean isBuildSVRLDirectly ()
+  {
+    return m_bBuildSVRLDirectly;
+  }
+
+  /**
+   * Define whether the {@link SchematronOutputType} should be built directly
+   * from the output of the XSLT transformation via {@link SVRLContentHandler}.
+   * This avoids the intermediate DOM and the JAXB unmarshalling but the SVRL
+   * is not validated against the XML Schema. If the SVRL contains content that
+   * cannot be handled directly, the DOM and JAXB based way is used instead.
+   *
+   * @param bBuildSVRLDirectly
+   *        <code>true</code> to build the SVRL directly, <code>false</code> to
+   *        go via DOM and JAXB.
+   * @return this for chaining
+   * @since 5.6.1
+   */
+  @Nonnull
+  public final IMPLTYPE setBuildSVRLDirectly (final boolean bBuildSVRLDirectly)
+  {
+    m_bBuildSVRLDirectly = bBuildSVRLDirectly;
+    return thisAsT ();
+  }
+
+  /**
+   * @return <code>true</code> if XML read from streams or bytes is passed to
+   *         the XSLT processor to build its native tree, <code>false</code> if
+   *         a DOM is created first.
+   * @since 5.6.1
+   */
+  public final boolean isUseNativeTree ()
+  {
+    return m_bUseNativeTree;
+  }
+
+  private boolean _isUseNativeTree ()
+  {
+    return m_bUseNativeTree && isUsePooledParser ();
+  }
+
+  /**
+   * Define whether XML that is read from an {@link IHasInputStream}, a byte
+   * array or a {@link ByteBuffer} should be passed to the XSLT processor as a
+   * secured SAX source, so that Saxon can build its native TinyTree directly.
+   * Otherwise a DOM is created first, which is considerably slower to navigate
+   * for the XSLT. The entity resolver and the XML security settings are
+   * applied in both cases. Validating a {@link Node} always uses the DOM, and
+   * so does a resource with disabled pooled parsers (see
+   * {@link #setUsePooledParser(boolean)}), as the custom
+   * {@link #internalCreateDOMReaderSettings()} cannot be applied to the native
+   * tree.
+   *
+   * @param bUseNativeTree
+   *        <code>true</code> to let the XSLT processor build its own tree,
+   *        <code>false</code> to use a DOM.
+   * @return this for chaining
+   * @since 5.6.1
+   */
+  @Nonnull
+  public final IMPLTYPE setUseNativeTree (final boolean bUseNativeTree)
+  {
+    m_bUseNativeTree = bUseNativeTree;
+    return thisAsT ();
+  }
+
+  /**
+   * @return <code>true</code> if the XSLT creates the complete SVRL,
+   *         <code>false</code> if active patterns and fired rules are omitted.
+   *         In the latter case the SVRL is not validated against the XML
+   *         Schema. The default is <code>true</code>.
+   * @since 5.6.1
+   */
+  @OverrideOnDemand
+  protected boolean isFullSVRL ()
+  {
+    return true;
+  }
+
+  /**
+   * @return <code>true</code> if the validation should stop at the first failed
+   *         assert or successful report that makes the document invalid
+   *         according to the XSLT validator. The default is <code>false</code>.
+   * @since 5.6.1
+   */
+  @OverrideOnDemand
+  protected boolean isStopAtFirstError ()
+  {
+    return false;
+  }
+
   public final boolean isValidSchematron ()
   {
     final ISchematronXSLTBasedProvider aXSLTProvider = getXSLTProvider ();
     return aXSLTProvider != null && aXSLTProvider.isValidSchematron ();
   }
 
+  /**
+   * {@inheritDoc} The XSLT provider covers the Schematron content including all
+   * includes and all settings used to create the XSLT (e.g. phase, language
+   * and variant). The custom parameters are applied at validation time and are
+   * therefore part of the settings. Results are never cached if the cache is
+   * disabled (as each call would compile a new XSLT), if a parameter value has
+   * no stable string representation or if a custom URI resolver is set.
+   */
+  @Override
+  @Nullable
+  public SchematronResultFingerprint getResultFingerprint ()
+  {
+    if (!isUseCache ())
+      return null;
+    // The results of a custom URI resolver cannot be fingerprinted
+    if (m_aCustomURIResolver != null && m_aCustomURIResolver != m_aDefaultURIResolver)
+      return null;
+
+    final StringBuilder aSB = createResultConfiguration ();
+    aSB.append ("|fullSVRL=").append (isFullSVRL ()).append ("|stopAtFirstError=").append (isStopAtFirstError ());
+    aSB.append ("|uriResolver=").append (m_aCustomURIResolver != null);
+    for (final Map.Entry <String, Object> aEntry : new CommonsTreeMap <> (m_aCustomParameters).entrySet ())
+    {
+      final String sName = aEntry.getKey ();
+      final Object aValue = aEntry.getValue ();
+      if (aValue != null && !SCHTransformerCustomizer.isStableParameterValue (aValue))
+        return null;
+      final String sValue = aValue == null ? "" : aValue.getClass ().getName () + ':' + aValue;
+      // Length prefixes make the representation unambiguous
+      aSB.append ('|')
+         .append (sName.length ())
+         .append (':')
+         .append (sName)
+         .append (sValue.length ())
+         .append (':')
+         .append (sValue);
+    }
+
+    final ISchematronXSLTBasedProvider aXSLTProvider = getXSLTProvider ();
+    if (aXSLTProvider == null || !aXSLTProvider.isValidSchematron ())
+      return null;
+    return new SchematronResultFingerprint (aXSLTProvider, aSB.toString ());
+  }
+
   @Nonnull
   public final EValidity getSchematronValidity (@Nonnull final Node aXMLNode,
                                                 @Nullable final String sBaseURI) throws Exception
@@ -205,12 +391,67 @@ public abstract class AbstractSchematronXSLTBasedResource <IMPLTYPE extends Abst
     return m_aXSLTValidator.getSchematronValidity (aSO);
   }
 
+  /**
+   * @return The cancellation token bound to the current thread. May be
+   *         <code>null</code>.
+   * @throws IllegalStateException
+   *         If a token is bound, but the SVRL is not complete. The token is
+   *         checked before each SVRL element. Without active patterns and
+   *         fired rules a valid document creates no such element, so the
+   *         validation could never be cancelled.
+   */
   @Nullable
-  public final Document applySchematronValidation (@Nonnull final Node aXMLNode,
-                                                   @Nullable final String sBaseURI) throws TransformerException
+  private SchematronCancellationToken _getCancellationToken ()
   {
-    ValueEnforcer.notNull (aXMLNode, "XMLNode");
+    final SchematronCancellationToken ret = SchematronCancellationToken.getCurrent ();
+    if (ret != null && !isFullSVRL ())
+      throw new IllegalStateException ("Validations with a cancellation token require the full SVRL. Variants without active patterns and fired rules cannot be cancelled.");
+    return ret;
+  }
+
+  private static void _transformCancellable (@Nonnull final Transformer aTransformer,
+                                             @Nonnull final Source aSource,
+                                             @Nonnull final Document aTarget,
+                                             @Nonnull final SchematronCancellationToken aCancellationToken) throws TransformerException
+  {
+    final TransformerFactory aTF = SchematronTransformerFactory.getDefaultSaxonFirst ();
+    if (!(aTF instanceof SAXTransformerFactory))
+    {
+      // Cannot intercept the output
+      aTransformer.transform (aSource, new DOMResult (aTarget));
+      return;
+    }
+
+    // Build the DOM via SAX, checking the token for each SVRL element
+    final TransformerHandler aDOMBuilder = ((SAXTransformerFactory) aTF).newTransformerHandler ();
+    aDOMBuilder.setResult (new DOMResult (aTarget));
+    try
+    {
+      aTransformer.transform (aSource, new SAXResult (new CancellableContentHandler (aDOMBuilder, aCancellationToken)));
+    }
+    catch (final TransformerException ex)
+    {
+      if (!CancellableContentHandler.isCancellation (ex))
+        throw ex;
 
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Stopping Schematron XSLT validation: " + aCancellationToken.getCancellationReason ());
+
+      // Mark the partial SVRL as incomplete
+      final Element eRoot = aTarget.getDocumentElement ();
+      if (eRoot != null)
+      {
+        final Element eText = aTarget.createElementNS (CSVRL.SVRL_NAMESPACE_URI, "svrl:text");
+        eText.appendChild (aTarget.createTextNode (SVRLHelper.INCOMPLETE_TEXT_PREFIX +
+                                                   aCancellationToken.getCancellationReason ()));
+        eRoot.insertBefore (eText, eRoot.getFirstChild ());
+      }
+    }
+  }
+
+  @Nullable
+  private ISchematronXSLTBasedProvider _getValidXSLTProvider ()
+  {
     final ISchematronXSLTBasedProvider aXSLTProvider = getXSLTProvider ();
     if (aXSLTProvider == null || !aXSLTProvider.isValidSchematron ())
     {
@@ -221,12 +462,14 @@ public abstract class AbstractSchematronXSLTBasedResource <IMPLTYPE extends Abst
     // Debug print the created XSLT document
     if (SchematronDebug.isShowCreatedXSLT ())
       LOGGER.info ("Created XSLT document: " + XMLWriter.getNodeAsString (aXSLTProvider.getXSLTDocument ()));
+    return aXSLTProvider;
+  }
 
-    // Create result document
-    final Document ret = XMLFactory.newDocument ();
-
-    // Create the transformer object from the templates specified in the
-    // constructor
+  @Nonnull
+  private Transformer _createTransformer (@Nonnull final ISchematronXSLTBasedProvider aXSLTProvider) throws TransformerException
+  {
+    // Create the transformer object from the compiled templates of the
+    // provider
     final Transformer aTransformer = aXSLTProvider.getXSLTTransformer ();
 
     // Apply customizations
@@ -244,6 +487,87 @@ public abstract class AbstractSchematronXSLTBasedResource <IMPLTYPE extends Abst
     if (m_aCustomParameters != null)
       for (final Map.Entry <String, ?> aEntry : m_aCustomParameters.entrySet ())
         aTransformer.setParameter (aEntry.getKey (), aEntry.getValue ());
+    return aTransformer;
+  }
+
+  @Nonnull
+  private static DOMSource _createDOMSource (@Nonnull final Node aXMLNode, @Nullable final String sBaseURI)
+  {
+    final DOMSource ret = new DOMSource (aXMLNode);
+    ret.setSystemId (sBaseURI);
+    return ret;
+  }
+
+  /**
+   * Create a {@link SAXSource} with a secured XML reader for the passed
+   * resource.
+   *
+   * @return <code>null</code> if the resource does not exist.
+   */
+  @Nullable
+  private SAXSource _createSAXSource (@Nonnull final IHasInputStream aXMLResource) throws SAXException
+  {
+    final StreamSource aStreamSrc = TransformSourceFactory.create (aXMLResource);
+    InputStream aIS = null;
+    try
+    {
+      aIS = aStreamSrc.getInputStream ();
+    }
+    catch (final IllegalStateException ex)
+    {
+      // Fall through
+      // Happens e.g. for ResourceStreamSource with non-existing resources
+    }
+    if (aIS == null)
+    {
+      // Resource not found
+      LOGGER.warn ("XML resource " + aXMLResource + " does not exist!");
+      return null;
+    }
+    return PooledDOMReader.createSAXSource (aIS, aStreamSrc.getSystemId (), getEntityResolver ());
+  }
+
+  /**
+   * Read the passed source into the native tree model of Saxon (TinyTree), so
+   * that the XSLT does not need to navigate a DOM. For other XSLT processors a
+   * DOM is created. The input stream of the source is closed afterwards.
+   *
+   * @return The source to be used for the transformation. It can be used more
+   *         than once. Never <code>null</code>.
+   */
+  @Nonnull
+  private Source _readNativeTree (@Nonnull final Transformer aTransformer, @Nonnull final SAXSource aSAXSource)
+  {
+    final InputStream aIS = aSAXSource.getInputSource ().getByteStream ();
+    try
+    {
+      if (aTransformer instanceof TransformerImpl)
+      {
+        // Use the same configuration as the compiled XSLT
+        final Configuration aConfig = ((TransformerImpl) aTransformer).getUnderlyingXsltTransformer ()
+                                                                      .getUnderlyingController ()
+                                                                      .getConfiguration ();
+        return aConfig.buildDocumentTree (aSAXSource).getRootNode ();
+      }
+
+      return _createDOMSource (internalReadXMLDOM (aIS, aSAXSource.getSystemId ()), aSAXSource.getSystemId ());
+    }
+    catch (final Exception ex)
+    {
+      throw new IllegalArgumentException ("Failed to read resource " + aSAXSource.getSystemId () + " as XML", ex);
+    }
+    finally
+    {
+      StreamHelper.close (aIS);
+    }
+  }
+
+  @Nonnull
+  private Document _transformToDOM (@Nonnull final Transformer aTransformer,
+                                    @Nonnull final Source aSource) throws TransformerException
+  {
+    // Create result document
+    final Document ret = XMLFactory.newDocument ();
 
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("Applying Schematron XSLT on XML [start]");
@@ -277,11 +601,11 @@ public abstract class AbstractSchematronXSLTBasedResource <IMPLTYPE extends Abst
       }
 
     // Do the main transformation
-    {
-      final DOMSource aSource = new DOMSource (aXMLNode);
-      aSource.setSystemId (sBaseURI);
+    final SchematronCancellationToken aCancellationToken = _getCancellationToken ();
+    if (aCancellationToken == null)
       aTransformer.transform (aSource, new DOMResult (ret));
-    }
+    else
+      _transformCancellable (aTransformer, aSource, ret, aCancellationToken);
 
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("Applying Schematron XSLT on XML [end]");
@@ -294,18 +618,80 @@ public abstract class AbstractSchematronXSLTBasedResource <IMPLTYPE extends Abst
   }
 
   @Nullable
-  public SchematronOutputType applySchematronValidationToSVRL (@Nonnull final Node aXMLSource,
-                                                               @Nullable final String sBaseURI) throws Exception
+  public final Document applySchematronValidation (@Nonnull final Node aXMLNode,
+                                                   @Nullable final String sBaseURI) throws TransformerException
   {
-    final Document aDoc = applySchematronValidation (aXMLSource, sBaseURI);
-    if (aDoc == null)
+    ValueEnforcer.notNull (aXMLNode, "XMLNode");
+
+    final ISchematronXSLTBasedProvider aXSLTProvider = _getValidXSLTProvider ();
+    if (aXSLTProvider == null)
       return null;
 
+    return _transformToDOM (_createTransformer (aXSLTProvider), _createDOMSource (aXMLNode, sBaseURI));
+  }
+
+  /**
+   * Apply the XSLT and build the SVRL directly from the SAX events.
+   *
+   * @return <code>null</code> if the SVRL contains content that is not
+   *         supported by {@link SVRLContentHandler}.
+   */
+  @Nullable
+  private SchematronOutputType _transformToSVRLDirectly (@Nonnull final Transformer aTransformer,
+                                                         @Nonnull final Source aSource) throws TransformerException
+  {
+    final SVRLContentHandler aSVRLBuilder = isStopAtFirstError () ? new FirstErrorContentHandler (m_aXSLTValidator)
+                                                                  : new SVRLContentHandler ();
+    final SchematronCancellationToken aCancellationToken = _getCancellationToken ();
+    try
+    {
+      aTransformer.transform (aSource,
+                              new SAXResult (aCancellationToken == null ? aSVRLBuilder
+                                                                        : new CancellableContentHandler (aSVRLBuilder,
+                                                                                                         aCancellationToken)));
+    }
+    catch (final TransformerException ex)
+    {
+      if (FirstErrorContentHandler.isFirstError (ex))
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Stopping Schematron XSLT validation at the first error");
+        return aSVRLBuilder.getSchematronOutput ();
+      }
+      if (SVRLContentHandler.isUnsupportedContent (ex))
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Falling back to DOM based SVRL creation: " + ex.getMessage ());
+        return null;
+      }
+      if (aCancellationToken == null || !CancellableContentHandler.isCancellation (ex))
+        throw ex;
+
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Stopping Schematron XSLT validation: " + aCancellationToken.getCancellationReason ());
+
+      // Mark the partial SVRL as incomplete
+      final SchematronOutputType aPartial = aSVRLBuilder.getSchematronOutput ();
+      if (aPartial != null)
+        SVRLHelper.markIncomplete (aPartial, aCancellationToken.getCancellationReason ());
+      return aPartial;
+    }
+
+    final SchematronOutputType ret = aSVRLBuilder.getSchematronOutput ();
+    if (ret == null)
+      throw new IllegalStateException ("Internal error: created SVRL has no document element!");
+    return ret;
+  }
+
+  @Nullable
+  private SchematronOutputType _readSVRL (@Nonnull final Document aDoc)
+  {
     // Avoid NPE later on
     if (aDoc.getDocumentElement () == null)
       throw new IllegalStateException ("Internal error: created SVRL DOM Document has no document node!");
 
-    final SVRLMarshaller aMarshaller = new SVRLMarshaller ();
+    // Reduced SVRL is not valid according to the XML Schema
+    final SVRLMarshaller aMarshaller = new SVRLMarshaller (isFullSVRL ());
     if (GlobalDebug.isDebugMode ())
     {
       // Set an exception callback that logs the source node as well
@@ -316,9 +702,169 @@ public abstract class AbstractSchematronXSLTBasedResource <IMPLTYPE extends Abst
     return aMarshaller.read (aDoc);
   }
 
+  @Nullable
+  private SchematronOutputType _transformToSVRL (@Nonnull final ISchematronXSLTBasedProvider aXSLTProvider,
+                                                 @Nonnull final Transformer aTransformer,
+                                                 @Nonnull final Source aSource) throws TransformerException
+  {
+    if ((m_bBuildSVRLDirectly || isStopAtFirstError ()) && !SchematronDebug.isShowCreatedSVRL ())
+    {
+      final SchematronOutputType ret = _transformToSVRLDirectly (aTransformer, aSource);
+      if (ret != null)
+        return ret;
+
+      // Unsupported content - go the DOM and JAXB way with a new transformer
+      return _readSVRL (_transformToDOM (_createTransformer (aXSLTProvider), aSource));
+    }
+    return _readSVRL (_transformToDOM (aTransformer, aSource));
+  }
+
+  @Nullable
+  public SchematronOutputType applySchematronValidationToSVRL (@Nonnull final Node aXMLSource,
+                                                               @Nullable final String sBaseURI) throws Exception
+  {
+    ValueEnforcer.notNull (aXMLSource, "XMLNode");
+
+    final ISchematronXSLTBasedProvider aXSLTProvider = _getValidXSLTProvider ();
+    if (aXSLTProvider == null)
+      return null;
+
+    return _transformToSVRL (aXSLTProvider, _createTransformer (aXSLTProvider), _createDOMSource (aXMLSource, sBaseURI));
+  }
+
+  @FunctionalInterface
+  private interface ISAXSourceFactory
+  {
+    /**
+     * @return <code>null</code> if the XML does not exist.
+     */
+    @Nullable
+    SAXSource createSAXSource () throws SAXException;
+  }
+
+  @Nullable
+  private SchematronOutputType _applySchematronValidationToSVRLNative (@Nonnull final ISAXSourceFactory aFactory) throws Exception
+  {
+    final ISchematronXSLTBasedProvider aXSLTProvider = _getValidXSLTProvider ();
+    if (aXSLTProvider == null)
+      return null;
+
+    final SAXSource aSAXSource = aFactory.createSAXSource ();
+    if (aSAXSource == null)
+      return null;
+
+    final Transformer aTransformer = _createTransformer (aXSLTProvider);
+    return _transformToSVRL (aXSLTProvider, aTransformer, _readNativeTree (aTransformer, aSAXSource));
+  }
+
+  @Nonnull
+  private EValidity _getSchematronValidity (@Nullable final SchematronOutputType aSO)
+  {
+    if (aSO == null)
+      return EValidity.INVALID;
+
+    // And now filter all elements that make the passed source invalid
+    return m_aXSLTValidator.getSchematronValidity (aSO);
+  }
+
+  @Override
+  @Nullable
+  public Document applySchematronValidation (@Nonnull final IHasInputStream aXMLResource) throws Exception
+  {
+    if (!_isUseNativeTree ())
+      return super.applySchematronValidation (aXMLResource);
+
+    ValueEnforcer.notNull (aXMLResource, "XMLResource");
+
+    final ISchematronXSLTBasedProvider aXSLTProvider = _getValidXSLTProvider ();
+    if (aXSLTProvider == null)
+      return null;
+
+    final SAXSource aSAXSource = _createSAXSource (aXMLResource);
+    if (aSAXSource == null)
+      return null;
+
+    final Transformer aTransformer = _createTransformer (aXSLTProvider);
+    return _transformToDOM (aTransformer, _readNativeTree (aTransformer, aSAXSource));
+  }
+
+  @Override
+  @Nullable
+  public SchematronOutputType applySchematronValidationToSVRL (@Nonnull final IHasInputStream aXMLResource) throws Exception
+  {
+    if (!_isUseNativeTree ())
+      return super.applySchematronValidationToSVRL (aXMLResource);
+
+    ValueEnforcer.notNull (aXMLResource, "XMLResource");
+    return _applySchematronValidationToSVRLNative ( () -> _createSAXSource (aXMLResource));
+  }
+
+  @Override
+  @Nullable
+  public SchematronOutputType applySchematronValidationToSVRL (@Nonnull final byte [] aXML,
+                                                               @Nullable final String sBaseURI) throws Exception
+  {
+    if (!_isUseNativeTree ())
+      return super.applySchematronValidationToSVRL (aXML, sBaseURI);
+
+    ValueEnforcer.notNull (aXML, "XML");
+    return _applySchematronValidationToSVRLNative ( () -> PooledDOMReader.createSAXSource (new NonBlockingByteArrayInputStream (aXML),
+                                                                                          sBaseURI,
+                                                                                          getEntityResolver ()));
+  }
+
+  @Override
+  @Nullable
+  public SchematronOutputType applySchematronValidationToSVRL (@Nonnull final ByteBuffer aXML,
+                                                               @Nullable final String sBaseURI) throws Exception
+  {
+    if (!_isUseNativeTree ())
+      return super.applySchematronValidationToSVRL (aXML, sBaseURI);
+
+    ValueEnforcer.notNull (aXML, "XML");
+    return _applySchematronValidationToSVRLNative ( () -> PooledDOMReader.createSAXSource (aXML,
+                                                                                          sBaseURI,
+                                                                                          getEntityResolver ()));
+  }
+
+  @Override
+  @Nonnull
+  public EValidity getSchematronValidity (@Nonnull final IHasInputStream aXMLResource) throws Exception
+  {
+    if (!_isUseNativeTree ())
+      return super.getSchematronValidity (aXMLResource);
+
+    return _getSchematronValidity (applySchematronValidationToSVRL (aXMLResource));
+  }
+
+  @Override
+  @Nonnull
+  public EValidity getSchematronValidity (@Nonnull final byte [] aXML, @Nullable final String sBaseURI) throws Exception
+  {
+    if (!_isUseNativeTree ())
+      return super.getSchematronValidity (aXML, sBaseURI);
+
+    return _getSchematronValidity (applySchematronValidationToSVRL (aXML, sBaseURI));
+  }
+
+  @Override
+  @Nonnull
+  public EValidity getSchematronValidity (@Nonnull final ByteBuffer aXML,
+                                          @Nullable final String sBaseURI) throws Exception
+  {
+    if (!_isUseNativeTree ())
+      return super.getSchematronValidity (aXML, sBaseURI);
+
+    return _getSchematronValidity (applySchematronValidationToSVRL (aXML, sBaseURI));
+  }
+
   @Override
   public String toString ()
   {
-    return ToStringGenerator.getDerived (super.toString ()).append ("XSLTValidator", m_aXSLTValidator).getToString ();
+    return ToStringGenerator.getDerived (super.toString ())
+                            .append ("XSLTValidator", m_aXSLTValidator)
+                            .append ("BuildSVRLDirectly", m_bBuildSVRLDirectly)
+                            .append ("UseNativeTree", m_bUseNativeTree)
+                            .getToString ();
   }
 }
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xslt;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+import com.helger.schematron.SchematronCancellationToken;
+
+/**
+ * A {@link ContentHandler} that forwards all events and checks a
+ * {@link SchematronCancellationToken} before each child element of the SVRL
+ * root element after the first active pattern is started. So when the
+ * validation is cancelled, all SVRL elements written so far are complete.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@NotThreadSafe
+final class CancellableContentHandler implements ContentHandler
+{
+  /**
+   * The exception thrown to stop the transformation.
+   */
+  static final class CancelledException extends SAXException
+  {
+    CancelledException (@Nonnull final String sMessage)
+    {
+      super (sMessage);
+    }
+  }
+
+  private final ContentHandler m_aDelegate;
+  private final SchematronCancellationToken m_aCancellationToken;
+  private int m_nDepth = 0;
+  private boolean m_bAnyActivePattern = false;
+
+  CancellableContentHandler (@Nonnull final ContentHandler aDelegate,
+                             @Nonnull final SchematronCancellationToken aCancellationToken)
+  {
+    m_aDelegate = aDelegate;
+    m_aCancellationToken = aCancellationToken;
+  }
+
+  /**
+   * Check if the passed exception (or one of its causes) was thrown because of
+   * a cancellation.
+   *
+   * @param t
+   *        The exception to check. May be <code>null</code>.
+   * @return <code>true</code> if it is a cancellation.
+   */
+  static boolean isCancellation (@Nullable final Throwable t)
+  {
+    Throwable aCur = t;
+    while (aCur != null)
+    {
+      if (aCur instanceof CancelledException)
+        return true;
+      if (aCur instanceof SAXException && ((SAXException) aCur).getException () != null)
+        aCur = ((SAXException) aCur).getException ();
+      else
+        aCur = aCur.getCause () == aCur ? null : aCur.getCause ();
+    }
+    return false;
+  }
+
+  public void setDocumentLocator (final Locator aLocator)
+  {
+    m_aDelegate.setDocumentLocator (aLocator);
+  }
+
+  public void startDocument () throws SAXException
+  {
+    m_aDelegate.startDocument ();
+  }
+
+  public void endDocument () throws SAXException
+  {
+    m_aDelegate.endDocument ();
+  }
+
+  public void startPrefixMapping (final String sPrefix, final String sURI) throws SAXException
+  {
+    m_aDelegate.startPrefixMapping (sPrefix, sURI);
+  }
+
+  public void endPrefixMapping (final String sPrefix) throws SAXException
+  {
+    m_aDelegate.endPrefixMapping (sPrefix);
+  }
+
+  public void startElement (final String sURI,
+                            final String sLocalName,
+                            final String sQName,
+                            final Attributes aAttrs) throws SAXException
+  {
+    if (m_nDepth == 1)
+    {
+      // SVRL requires at least one active pattern
+      if (m_bAnyActivePattern)
+      {
+        if (m_aCancellationToken.isCancelled ())
+          throw new CancelledException (m_aCancellationToken.getCancellationReason ());
+      }
+      else
+        if ("active-pattern".equals (sLocalName))
+          m_bAnyActivePattern = true;
+    }
+    m_nDepth++;
+    m_aDelegate.startElement (sURI, sLocalName, sQName, aAttrs);
+  }
+
+  public void endElement (final String sURI, final String sLocalName, final String sQName) throws SAXException
+  {
+    m_nDepth--;
+    m_aDelegate.endElement (sURI, sLocalName, sQName);
+  }
+
+  public void characters (final char [] aChars, final int nStart, final int nLength) throws SAXException
+  {
+    m_aDelegate.characters (aChars, nStart, nLength);
+  }
+
+  public void ignorableWhitespace (final char [] aChars, final int nStart, final int nLength) throws SAXException
+  {
+    m_aDelegate.ignorableWhitespace (aChars, nStart, nLength);
+  }
+
+  public void processingInstruction (final String sTarget, final String sData) throws SAXException
+  {
+    m_aDelegate.processingInstruction (sTarget, sData);
+  }
+
+  public void skippedEntity (final String sName) throws SAXException
+  {
+    m_aDelegate.skippedEntity (sName);
+  }
+}
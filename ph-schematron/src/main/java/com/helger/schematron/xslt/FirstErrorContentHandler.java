@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xslt;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.xml.sax.SAXException;
+
+import com.helger.commons.collection.CollectionHelper;
+import com.helger.schematron.svrl.CSVRL;
+import com.helger.schematron.svrl.SVRLContentHandler;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.schematron.xslt.validator.ISchematronXSLTValidator;
+
+/**
+ * An {@link SVRLContentHandler} that stops the transformation after the first
+ * failed assert or successful report that makes the document invalid
+ * according to the passed {@link ISchematronXSLTValidator}. Each failed assert
+ * and successful report is judged on its own.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@NotThreadSafe
+final class FirstErrorContentHandler extends SVRLContentHandler
+{
+  /**
+   * The exception thrown to stop the transformation.
+   */
+  static final class FirstErrorException extends SAXException
+  {
+    FirstErrorException (@Nonnull final String sMessage)
+    {
+      super (sMessage);
+    }
+  }
+
+  private final ISchematronXSLTValidator m_aXSLTValidator;
+
+  FirstErrorContentHandler (@Nonnull final ISchematronXSLTValidator aXSLTValidator)
+  {
+    m_aXSLTValidator = aXSLTValidator;
+  }
+
+  /**
+   * Check if the passed exception (or one of its causes) was thrown because
+   * the first error was found.
+   *
+   * @param t
+   *        The exception to check. May be <code>null</code>.
+   * @return <code>true</code> if the first error was found.
+   */
+  static boolean isFirstError (@Nullable final Throwable t)
+  {
+    Throwable aCur = t;
+    while (aCur != null)
+    {
+      if (aCur instanceof FirstErrorException)
+        return true;
+      if (aCur instanceof SAXException && ((SAXException) aCur).getException () != null)
+        aCur = ((SAXException) aCur).getException ();
+      else
+        aCur = aCur.getCause () == aCur ? null : aCur.getCause ();
+    }
+    return false;
+  }
+
+  @Override
+  public void endElement (final String sURI, final String sLocalName, final String sQName) throws SAXException
+  {
+    super.endElement (sURI, sLocalName, sQName);
+
+    if (CSVRL.SVRL_NAMESPACE_URI.equals (sURI) &&
+        ("failed-assert".equals (sLocalName) || "successful-report".equals (sLocalName)))
+    {
+      // Judge the element just finished on its own
+      final Object aLast = CollectionHelper.getLastElement (getSchematronOutput ().getActivePatternAndFiredRuleAndFailedAssert ());
+      final SchematronOutputType aSingle = new SchematronOutputType ();
+      aSingle.getActivePatternAndFiredRuleAndFailedAssert ().add (aLast);
+      if (m_aXSLTValidator.getSchematronValidity (aSingle).isInvalid ())
+        throw new FirstErrorException ("Found the first error");
+    }
+  }
+}
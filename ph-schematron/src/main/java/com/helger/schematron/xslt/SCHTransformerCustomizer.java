@@ -27,9 +27,12 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.URIResolver;
 
+import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.CommonsTreeMap;
 import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.xml.transform.LoggingTransformErrorListener;
 
 /**
@@ -47,7 +50,43 @@ public class SCHTransformerCustomizer
     SCH2XSLT_3;
   }
 
+  /**
+   * The variants of the XSLT created from a Schematron.
+   *
+   * @since 5.6.1
+   */
+  public static enum EVariant
+  {
+    /** The complete SVRL including active patterns and fired rules */
+    FULL_SVRL,
+    /**
+     * Only failed asserts and successful reports are emitted - no active
+     * patterns and no fired rules. The result is not valid SVRL. This saves
+     * the fired rule for every rule context node, the additional pass over the
+     * document of every active pattern and the passes of all patterns that
+     * cannot emit a result. The rules of all other patterns are still
+     * evaluated for every rule context node.
+     */
+    FAILURES_ONLY,
+    /**
+     * Like {@link #FAILURES_ONLY} but the validation stops at the first failed
+     * assert or successful report that makes the document invalid.
+     */
+    STOP_AT_FIRST_ERROR;
+
+    /**
+     * @return <code>true</code> if the complete SVRL is created,
+     *         <code>false</code> if active patterns and fired rules are
+     *         omitted.
+     */
+    public boolean isFullSVRL ()
+    {
+      return this == FULL_SVRL;
+    }
+  }
+
   public static final boolean DEFAULT_FORCE_CACHE_RESULT = false;
+  public static final EVariant DEFAULT_VARIANT = EVariant.FULL_SVRL;
 
   private ErrorListener m_aCustomErrorListener;
   private URIResolver m_aCustomURIResolver;
@@ -55,6 +94,7 @@ public class SCHTransformerCustomizer
   private String m_sPhase;
   private String m_sLanguageCode;
   private boolean m_bForceCacheResult = DEFAULT_FORCE_CACHE_RESULT;
+  private EVariant m_eVariant = DEFAULT_VARIANT;
 
   public SCHTransformerCustomizer ()
   {}
@@ -142,11 +182,13 @@ public class SCHTransformerCustomizer
   }
 
   /**
-   * Force the caching of results.
+   * Force the caching of results. Parameter values without a stable string
+   * representation are then ignored in the cache key.
    *
    * @param bForceCacheResult
    *        <code>true</code> to force result caching, <code>false</code> to
-   *        cache only if no parameters are present.
+   *        cache only if all relevant parameters have a stable string
+   *        representation.
    * @return this for chaining
    * @since 5.2.1
    */
@@ -158,17 +200,117 @@ public class SCHTransformerCustomizer
   }
 
   /**
-   * Can the results of the XSLT transformation be cached? By default results
-   * cannot be cached if custom parameters are present, but since v.5.2.1 this
-   * can be manually overridden.
-   * 
+   * @return The variant of the XSLT to be created. Never <code>null</code>.
+   *         The default is {@link #DEFAULT_VARIANT}.
+   * @since 5.6.1
+   */
+  @Nonnull
+  public EVariant getVariant ()
+  {
+    return m_eVariant;
+  }
+
+  /**
+   * Set the variant of the XSLT to be created. Each variant is cached
+   * separately.
+   *
+   * @param eVariant
+   *        The variant to use. May not be <code>null</code>.
+   * @return this for chaining
+   * @since 5.6.1
+   */
+  @Nonnull
+  public SCHTransformerCustomizer setVariant (@Nonnull final EVariant eVariant)
+  {
+    ValueEnforcer.notNull (eVariant, "Variant");
+    m_eVariant = eVariant;
+    return this;
+  }
+
+  /**
+   * Check if the passed parameter value has a stable string representation.
+   *
+   * @param aValue
+   *        The value to check. May not be <code>null</code>.
+   * @return <code>true</code> for strings, numbers, booleans, characters and
+   *         enums.
+   */
+  static boolean isStableParameterValue (@Nonnull final Object aValue)
+  {
+    return aValue instanceof String ||
+           aValue instanceof Number ||
+           aValue instanceof Boolean ||
+           aValue instanceof Character ||
+           aValue instanceof Enum <?>;
+  }
+
+  /**
+   * Get a stable string representation of all custom parameters that may
+   * influence the XSLT created from the Schematron, to be used as part of a
+   * cache key. Parameters that are not declared by the Schematron to XSLT
+   * conversion (see
+   * {@link SchematronProviderXSLTFromSCH#getAllCompileTimeParameterNames()})
+   * are only used when the created XSLT is applied, and are therefore ignored.
+   * The parameters are sorted by name, so the order in which they were added is
+   * irrelevant.
+   *
+   * @return An empty string if no relevant parameters are present.
+   *         <code>null</code> if a relevant parameter value has no stable
+   *         string representation (only strings, numbers, booleans, characters
+   *         and enums have one) and caching is not forced. If caching is
+   *         forced, such values are ignored, so that all of them share the same
+   *         cache key.
+   * @since 5.6.1
+   */
+  @Nullable
+  public String getParametersCacheKey ()
+  {
+    if (!hasParameters ())
+      return "";
+
+    final ICommonsSet <String> aCompileTimeNames = SchematronProviderXSLTFromSCH.getAllCompileTimeParameterNames ();
+    final StringBuilder aSB = new StringBuilder ();
+    for (final Map.Entry <String, Object> aEntry : new CommonsTreeMap <> (m_aCustomParameters).entrySet ())
+    {
+      final String sName = aEntry.getKey ();
+      if (aCompileTimeNames != null && !aCompileTimeNames.contains (sName))
+        continue;
+
+      final Object aValue = aEntry.getValue ();
+      final String sValue;
+      if (aValue == null)
+        sValue = "";
+      else
+        if (isStableParameterValue (aValue))
+          sValue = aValue.getClass ().getName () + ':' + aValue;
+        else
+        {
+          // With forced caching the caller takes responsibility that the
+          // value does not matter - all values share one cache entry
+          if (!m_bForceCacheResult)
+            return null;
+          sValue = "*";
+        }
+      // Length prefixes make the representation unambiguous
+      aSB.append (sName.length ()).append (':').append (sName).append (sValue.length ()).append (':').append (sValue);
+    }
+    return aSB.toString ();
+  }
+
+  /**
+   * Can the results of the XSLT transformation be cached? Results can be
+   * cached if all custom parameters that are relevant for the Schematron to
+   * XSLT conversion have a stable string representation, as they are part of
+   * the cache key. Since v5.2.1 this can be manually overridden.
+   *
    * @return <code>true</code> if the result can be cached, <code>false</code>
    *         if not.
    * @see #setForceCacheResult(boolean) to force result caching
+   * @see #getParametersCacheKey()
    */
   public boolean canCacheResult ()
   {
-    return !hasParameters () || m_bForceCacheResult;
+    return m_bForceCacheResult || getParametersCacheKey () != null;
   }
 
   public void customize (@Nonnull final TransformerFactory aTransformer)
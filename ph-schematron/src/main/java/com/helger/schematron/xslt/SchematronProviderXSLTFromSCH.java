@@ -18,6 +18,7 @@ package com.helger.schematron.xslt;
 
 import java.io.File;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
@@ -30,20 +31,34 @@ import javax.xml.transform.dom.DOMResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.io.file.FilenameHelper;
 import com.helger.commons.io.file.SimpleFileIO;
 import com.helger.commons.io.resource.ClassPathResource;
 import com.helger.commons.io.resource.IReadableResource;
 import com.helger.schematron.SchematronDebug;
 import com.helger.schematron.saxon.SchematronTransformerFactory;
+import com.helger.schematron.svrl.CSVRL;
 import com.helger.schematron.xslt.SCHTransformerCustomizer.EStep;
 import com.helger.xml.serialize.write.XMLWriter;
 import com.helger.xml.serialize.write.XMLWriterSettings;
 import com.helger.xml.transform.TransformSourceFactory;
 import com.helger.xml.transform.XMLTransformerFactory;
 
+import net.sf.saxon.jaxp.TemplatesImpl;
+import net.sf.saxon.s9api.QName;
+
 /**
  * The XSLT preprocessor used to convert a Schematron XML document into an XSLT
  * document. This implementation uses JAXP with Saxon to be used as the
@@ -76,9 +91,12 @@ public class SchematronProviderXSLTFromSCH implements ISchematronXSLTBasedProvid
    */
   public static final String XSLT2_STEP3 = SCHEMATRON_DIRECTORY_XSLT2 + "iso_svrl_for_xslt2.xsl";
 
+  private static final String XSL_NAMESPACE_URI = "http://www.w3.org/1999/XSL/Transform";
+
   private static volatile Templates s_aStep1;
   private static volatile Templates s_aStep2;
   private static volatile Templates s_aStep3;
+  private static volatile ICommonsSet <String> s_aCompileTimeParameterNames;
 
   private final IReadableResource m_aSchematronResource;
   private Document m_aSchematronXSLTDoc;
@@ -117,7 +135,169 @@ public class SchematronProviderXSLTFromSCH implements ISchematronXSLTBasedProvid
                                                                             SchematronProviderXSLTFromSCH.class.getClassLoader ()));
       if (s_aStep3 == null)
         throw new IllegalStateException ("Failed to compile '" + XSLT2_STEP3 + "'");
+
+      s_aCompileTimeParameterNames = _getAllGlobalParameterNames (s_aStep1, s_aStep2, s_aStep3);
+    }
+  }
+
+  @Nullable
+  private static ICommonsSet <String> _getAllGlobalParameterNames (@Nonnull final Templates... aTemplates)
+  {
+    final ICommonsSet <String> ret = new CommonsHashSet <> ();
+    for (final Templates aTemplate : aTemplates)
+    {
+      // Only Saxon provides the declared parameters
+      if (!(aTemplate instanceof TemplatesImpl))
+        return null;
+      for (final QName aName : ((TemplatesImpl) aTemplate).getImplementation ().getGlobalParameters ().keySet ())
+        ret.add (aName.getClarkName ());
     }
+    return ret;
+  }
+
+  /**
+   * Get the names of all global parameters declared by the XSLTs that convert
+   * a Schematron to an XSLT. Only these parameters may influence the created
+   * XSLT - all other parameters are only relevant when the created XSLT is
+   * applied.
+   *
+   * @return The parameter names in Clark notation. <code>null</code> if the
+   *         parameters cannot be determined, because the XSLT processor is not
+   *         Saxon.
+   * @since 5.6.1
+   */
+  @Nullable
+  @ReturnsMutableCopy
+  public static ICommonsSet <String> getAllCompileTimeParameterNames ()
+  {
+    cacheXSLTTemplates ();
+    final ICommonsSet <String> ret = s_aCompileTimeParameterNames;
+    return ret == null ? null : ret.getClone ();
+  }
+
+  /**
+   * Remove all literal <code>svrl:active-pattern</code> and
+   * <code>svrl:fired-rule</code> result elements from the passed XSLT created
+   * from a Schematron. Afterwards the XSLT only emits failed asserts and
+   * successful reports. This saves the fired rule created for every rule
+   * context node, and the pass over the whole document in the default mode
+   * contained in every active pattern. The rules themselves are still
+   * evaluated for every rule context node.
+   *
+   * @param aXSLTDoc
+   *        The XSLT document to be modified. May not be <code>null</code>.
+   * @return The number of removed elements. Always &ge; 0.
+   * @since 5.6.1
+   */
+  @Nonnegative
+  public static int removeActivePatternsAndFiredRules (@Nonnull final Document aXSLTDoc)
+  {
+    ValueEnforcer.notNull (aXSLTDoc, "XSLTDoc");
+
+    final ICommonsList <Element> aToRemove = new CommonsArrayList <> ();
+    for (final String sLocalName : new String [] { "active-pattern", "fired-rule" })
+    {
+      final NodeList aNL = aXSLTDoc.getElementsByTagNameNS (CSVRL.SVRL_NAMESPACE_URI, sLocalName);
+      for (int i = 0; i < aNL.getLength (); ++i)
+        aToRemove.add ((Element) aNL.item (i));
+    }
+    for (final Element aElement : aToRemove)
+      aElement.getParentNode ().removeChild (aElement);
+    return aToRemove.size ();
+  }
+
+  /**
+   * Remove all patterns from the passed XSLT created from a Schematron that
+   * cannot emit a failed assert or a successful report, because none of their
+   * rules contains an assert or a report. Each pattern is a separate pass over
+   * the validated document, so each removed pattern saves a complete pass. This
+   * may only be applied together with
+   * {@link #removeActivePatternsAndFiredRules(Document)}, because otherwise the
+   * removed patterns would be missing in the SVRL.
+   *
+   * @param aXSLTDoc
+   *        The XSLT document to be modified. May not be <code>null</code>.
+   * @return The number of removed patterns. Always &ge; 0.
+   * @since 5.6.1
+   */
+  @Nonnegative
+  public static int removePatternsWithoutResults (@Nonnull final Document aXSLTDoc)
+  {
+    ValueEnforcer.notNull (aXSLTDoc, "XSLTDoc");
+
+    final Element eRoot = aXSLTDoc.getDocumentElement ();
+    if (eRoot == null)
+      return 0;
+
+    // Group all top-level templates by mode
+    Element eMainTemplate = null;
+    final ICommonsMap <String, ICommonsList <Element>> aTemplatesPerMode = new CommonsHashMap <> ();
+    for (Node aChild = eRoot.getFirstChild (); aChild != null; aChild = aChild.getNextSibling ())
+      if (aChild instanceof Element &&
+          XSL_NAMESPACE_URI.equals (aChild.getNamespaceURI ()) &&
+          "template".equals (aChild.getLocalName ()))
+      {
+        final Element eTemplate = (Element) aChild;
+        final String sMode = eTemplate.getAttribute ("mode");
+        if (sMode.isEmpty ())
+        {
+          if ("/".equals (eTemplate.getAttribute ("match")))
+            eMainTemplate = eTemplate;
+        }
+        else
+          aTemplatesPerMode.computeIfAbsent (sMode, k -> new CommonsArrayList <> ()).add (eTemplate);
+      }
+    if (eMainTemplate == null)
+      return 0;
+
+    // Each pattern is applied from the main template in its own mode
+    int ret = 0;
+    for (final Element eApply : _getAllElements (eMainTemplate, XSL_NAMESPACE_URI, "apply-templates"))
+    {
+      final String sMode = eApply.getAttribute ("mode");
+      final ICommonsList <Element> aTemplates = aTemplatesPerMode.get (sMode);
+      if ("/".equals (eApply.getAttribute ("select")) && aTemplates != null && !_canEmitResults (sMode, aTemplates))
+      {
+        eApply.getParentNode ().removeChild (eApply);
+        for (final Element eTemplate : aTemplates)
+          eRoot.removeChild (eTemplate);
+        ret++;
+      }
+    }
+    return ret;
+  }
+
+  @Nonnull
+  private static ICommonsList <Element> _getAllElements (@Nonnull final Element aParent,
+                                                         @Nonnull final String sNamespaceURI,
+                                                         @Nonnull final String sLocalName)
+  {
+    // Copy, because the node list is live
+    final ICommonsList <Element> ret = new CommonsArrayList <> ();
+    final NodeList aNL = aParent.getElementsByTagNameNS (sNamespaceURI, sLocalName);
+    for (int i = 0; i < aNL.getLength (); ++i)
+      ret.add ((Element) aNL.item (i));
+    return ret;
+  }
+
+  private static boolean _canEmitResults (@Nonnull final String sMode, @Nonnull final ICommonsList <Element> aTemplates)
+  {
+    for (final Element eTemplate : aTemplates)
+    {
+      if (!_getAllElements (eTemplate, CSVRL.SVRL_NAMESPACE_URI, "failed-assert").isEmpty () ||
+          !_getAllElements (eTemplate, CSVRL.SVRL_NAMESPACE_URI, "successful-report").isEmpty ())
+        return true;
+
+      // Be conservative with everything that may have side effects or may
+      // emit results elsewhere
+      for (final String sLocalName : new String [] { "message", "result-document", "call-template" })
+        if (!_getAllElements (eTemplate, XSL_NAMESPACE_URI, sLocalName).isEmpty ())
+          return true;
+      for (final Element eApply : _getAllElements (eTemplate, XSL_NAMESPACE_URI, "apply-templates"))
+        if (!sMode.equals (eApply.getAttribute ("mode")))
+          return true;
+    }
+    return false;
   }
 
   /**
@@ -181,6 +361,11 @@ public class SchematronProviderXSLTFromSCH implements ISchematronXSLTBasedProvid
       // Save the underlying XSLT document....
       // Note: Saxon 6.5.5 does not allow to clone the document node!!!!
       m_aSchematronXSLTDoc = (Document) aResult3.getNode ();
+      if (!aTransformerCustomizer.getVariant ().isFullSVRL ())
+      {
+        removeActivePatternsAndFiredRules (m_aSchematronXSLTDoc);
+        removePatternsWithoutResults (m_aSchematronXSLTDoc);
+      }
 
       if (SchematronDebug.isSaveIntermediateXSLTFiles ())
       {
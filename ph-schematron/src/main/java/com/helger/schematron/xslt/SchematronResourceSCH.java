@@ -22,11 +22,13 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
+import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.OverrideOnDemand;
 import com.helger.commons.io.resource.ClassPathResource;
 import com.helger.commons.io.resource.FileSystemResource;
 import com.helger.commons.io.resource.IReadableResource;
+import com.helger.schematron.xslt.SCHTransformerCustomizer.EVariant;
 
 /**
  * A Schematron resource that is based on the original SCH file.
@@ -39,6 +41,7 @@ public class SchematronResourceSCH extends AbstractSchematronXSLTBasedResource <
   private String m_sPhase;
   private String m_sLanguageCode;
   private boolean m_bForceCacheResult = SCHTransformerCustomizer.DEFAULT_FORCE_CACHE_RESULT;
+  private EVariant m_eVariant = SCHTransformerCustomizer.DEFAULT_VARIANT;
 
   /**
    * Constructor
@@ -85,11 +88,13 @@ public class SchematronResourceSCH extends AbstractSchematronXSLTBasedResource <
 
   /**
    * Force the caching of results. This only applies when Schematron to XSLT
-   * conversion is performed.
+   * conversion is performed. Parameter values without a stable string
+   * representation are then ignored in the cache key.
    *
    * @param bForceCacheResult
    *        <code>true</code> to force result caching, <code>false</code> to
-   *        cache only if no parameters are present.
+   *        cache only if all relevant parameters have a stable string
+   *        representation.
    * @since 5.2.1
    */
   public final void setForceCacheResult (final boolean bForceCacheResult)
@@ -97,6 +102,46 @@ public class SchematronResourceSCH extends AbstractSchematronXSLTBasedResource <
     m_bForceCacheResult = bForceCacheResult;
   }
 
+  /**
+   * @return The variant of the XSLT created from the Schematron. Never
+   *         <code>null</code>.
+   * @since 5.6.1
+   */
+  @Nonnull
+  public final EVariant getVariant ()
+  {
+    return m_eVariant;
+  }
+
+  /**
+   * Set the variant of the XSLT created from the Schematron. Use
+   * {@link EVariant#FAILURES_ONLY} or {@link EVariant#STOP_AT_FIRST_ERROR} if
+   * only the validity or the failures are of interest. Validations with a
+   * {@link com.helger.schematron.SchematronCancellationToken} require
+   * {@link EVariant#FULL_SVRL}.
+   *
+   * @param eVariant
+   *        The variant to use. May not be <code>null</code>.
+   * @since 5.6.1
+   */
+  public final void setVariant (@Nonnull final EVariant eVariant)
+  {
+    ValueEnforcer.notNull (eVariant, "Variant");
+    m_eVariant = eVariant;
+  }
+
+  @Override
+  protected boolean isFullSVRL ()
+  {
+    return m_eVariant.isFullSVRL ();
+  }
+
+  @Override
+  protected boolean isStopAtFirstError ()
+  {
+    return m_eVariant == EVariant.STOP_AT_FIRST_ERROR;
+  }
+
   @Nonnull
   @OverrideOnDemand
   protected SCHTransformerCustomizer createTransformerCustomizer ()
@@ -106,7 +151,8 @@ public class SchematronResourceSCH extends AbstractSchematronXSLTBasedResource <
                                           .setParameters (parameters ())
                                           .setPhase (m_sPhase)
                                           .setLanguageCode (m_sLanguageCode)
-                                          .setForceCacheResult (m_bForceCacheResult);
+                                          .setForceCacheResult (m_bForceCacheResult)
+                                          .setVariant (m_eVariant);
   }
 
   @Override
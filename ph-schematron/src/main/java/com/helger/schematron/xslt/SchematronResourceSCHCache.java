@@ -16,6 +16,7 @@
  */
 package com.helger.schematron.xslt;
 
+import java.util.Map;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -28,13 +29,18 @@ import org.slf4j.LoggerFactory;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.collection.impl.ICommonsMap;
 import com.helger.commons.io.resource.IReadableResource;
+import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
 import com.helger.xml.serialize.write.XMLWriter;
 
 /**
- * Factory for creating {@link ISchematronXSLTBasedProvider} objects.
+ * Factory for creating {@link ISchematronXSLTBasedProvider} objects.<br>
+ * Cached providers can be replaced with a freshly compiled version via
+ * {@link #reloadSchematronXSLTProvider(String)}. Callers that already
+ * retrieved the old provider continue to use it.
  *
  * @author Philip Helger
  */
@@ -43,7 +49,23 @@ public final class SchematronResourceSCHCache
 {
   private static final Logger LOGGER = LoggerFactory.getLogger (SchematronResourceSCHCache.class);
   private static final Lock s_aLock = new ReentrantLock ();
-  private static final ICommonsMap <String, SchematronProviderXSLTFromSCH> s_aCache = new CommonsHashMap <> ();
+  private static final ICommonsMap <String, CacheEntry> s_aCache = new CommonsHashMap <> ();
+
+  private static final class CacheEntry
+  {
+    private final IReadableResource m_aResource;
+    private final SCHTransformerCustomizer m_aTransformerCustomizer;
+    private final SchematronProviderXSLTFromSCH m_aProvider;
+
+    CacheEntry (@Nonnull final IReadableResource aResource,
+                @Nonnull final SCHTransformerCustomizer aTransformerCustomizer,
+                @Nonnull final SchematronProviderXSLTFromSCH aProvider)
+    {
+      m_aResource = aResource;
+      m_aTransformerCustomizer = aTransformerCustomizer;
+      m_aProvider = aProvider;
+    }
+  }
 
   private SchematronResourceSCHCache ()
   {}
@@ -94,10 +116,12 @@ public final class SchematronResourceSCHCache
   }
 
   /**
-   * Get the Schematron validator for the passed resource. If no custom
-   * parameter are present, the result is cached. The respective cache key is a
-   * combination of the Schematron resource path, the phase and the language
-   * code.
+   * Get the Schematron validator for the passed resource. If the custom
+   * parameters can be represented in the cache key (see
+   * {@link SCHTransformerCustomizer#getParametersCacheKey()}), the result is
+   * cached. The respective cache key is a combination of the Schematron
+   * resource path, the phase, the language code, the XSLT variant and the
+   * relevant custom parameters.
    *
    * @param aSchematronResource
    *        The resource of the Schematron rules. May not be <code>null</code>.
@@ -120,10 +144,12 @@ public final class SchematronResourceSCHCache
       return null;
     }
 
-    if (!aTransformerCustomizer.canCacheResult ())
+    final String sParametersCacheKey = aTransformerCustomizer.getParametersCacheKey ();
+    if (sParametersCacheKey == null)
     {
       // Create new object and return without cache handling because the custom
-      // parameters may have side effects on the created XSLT!
+      // parameters may have side effects on the created XSLT and cannot be
+      // represented in the cache key!
       return createSchematronXSLTProvider (aSchematronResource, aTransformerCustomizer);
     }
 
@@ -131,20 +157,23 @@ public final class SchematronResourceSCHCache
     final String sCacheKey = StringHelper.<String> getImploded (':',
                                                                 aSchematronResource.getResourceID (),
                                                                 StringHelper.getNotNull (aTransformerCustomizer.getPhase ()),
-                                                                StringHelper.getNotNull (aTransformerCustomizer.getLanguageCode ()));
+                                                                StringHelper.getNotNull (aTransformerCustomizer.getLanguageCode ()),
+                                                                aTransformerCustomizer.getVariant ().name (),
+                                                                sParametersCacheKey);
 
     s_aLock.lock ();
     try
     {
       // Validator already in the cache?
-      SchematronProviderXSLTFromSCH aProvider = s_aCache.get (sCacheKey);
-      if (aProvider == null)
-      {
-        // Create new object and put in cache
-        aProvider = createSchematronXSLTProvider (aSchematronResource, aTransformerCustomizer);
-        if (aProvider != null)
-          s_aCache.put (sCacheKey, aProvider);
-      }
+      final CacheEntry aEntry = s_aCache.get (sCacheKey);
+      if (aEntry != null)
+        return aEntry.m_aProvider;
+
+      // Create new object and put in cache
+      final SchematronProviderXSLTFromSCH aProvider = createSchematronXSLTProvider (aSchematronResource,
+                                                                                   aTransformerCustomizer);
+      if (aProvider != null)
+        s_aCache.put (sCacheKey, new CacheEntry (aSchematronResource, aTransformerCustomizer, aProvider));
       return aProvider;
     }
     finally
@@ -152,4 +181,83 @@ public final class SchematronResourceSCHCache
       s_aLock.unlock ();
     }
   }
+
+  /**
+   * @return A copy of all cached Schematron resources, indexed by their cache
+   *         key. Never <code>null</code>.
+   * @since 5.6.1
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public static ICommonsMap <String, IReadableResource> getAllCachedResources ()
+  {
+    s_aLock.lock ();
+    try
+    {
+      final ICommonsMap <String, IReadableResource> ret = new CommonsHashMap <> ();
+      for (final Map.Entry <String, CacheEntry> aEntry : s_aCache.entrySet ())
+        ret.put (aEntry.getKey (), aEntry.getValue ().m_aResource);
+      return ret;
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+  }
+
+  /**
+   * Compile the Schematron resource of the passed cache entry again and
+   * replace the cached provider with the new one. The compilation happens
+   * outside of the lock, so other threads continue to retrieve the old
+   * provider until the new one is ready. If the compilation fails, the old
+   * provider stays in the cache.
+   *
+   * @param sCacheKey
+   *        The cache key as returned by {@link #getAllCachedResources()}. May
+   *        not be <code>null</code>.
+   * @return {@link ESuccess#SUCCESS} if the provider was replaced,
+   *         {@link ESuccess#FAILURE} if no such cache entry exists or if the
+   *         Schematron is invalid.
+   * @since 5.6.1
+   */
+  @Nonnull
+  public static ESuccess reloadSchematronXSLTProvider (@Nonnull final String sCacheKey)
+  {
+    ValueEnforcer.notNull (sCacheKey, "CacheKey");
+
+    s_aLock.lock ();
+    final CacheEntry aOldEntry;
+    try
+    {
+      aOldEntry = s_aCache.get (sCacheKey);
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+    if (aOldEntry == null)
+      return ESuccess.FAILURE;
+
+    final SchematronProviderXSLTFromSCH aProvider = createSchematronXSLTProvider (aOldEntry.m_aResource,
+                                                                                 aOldEntry.m_aTransformerCustomizer);
+    if (aProvider == null)
+    {
+      LOGGER.warn ("Keeping the previous version of Schematron resource '" +
+                   aOldEntry.m_aResource.getResourceID () +
+                   "'");
+      return ESuccess.FAILURE;
+    }
+
+    s_aLock.lock ();
+    try
+    {
+      // Atomically swap
+      s_aCache.put (sCacheKey, new CacheEntry (aOldEntry.m_aResource, aOldEntry.m_aTransformerCustomizer, aProvider));
+    }
+    finally
+    {
+      s_aLock.unlock ();
+    }
+    return ESuccess.SUCCESS;
+  }
 }
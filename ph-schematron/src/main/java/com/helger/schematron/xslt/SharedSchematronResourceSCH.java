@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xslt;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.io.resource.IReadableResource;
+
+/**
+ * A {@link SchematronResourceSCH} that keeps the XSLT provider once it was
+ * created, so that all threads share the same compiled XSLT - even if it
+ * cannot be put in the global cache (e.g. because of custom parameters or
+ * because caching is disabled). The resource must be fully configured before
+ * it is used for the first time, because later configuration changes are not
+ * reflected in the shared XSLT provider.
+ *
+ * @author Philip Helger
+ * @since 5.6.1
+ */
+@ThreadSafe
+public class SharedSchematronResourceSCH extends SchematronResourceSCH
+{
+  private volatile ISchematronXSLTBasedProvider m_aSharedProvider;
+
+  /**
+   * Constructor
+   *
+   * @param aSCHResource
+   *        The Schematron resource. May not be <code>null</code>.
+   */
+  public SharedSchematronResourceSCH (@Nonnull final IReadableResource aSCHResource)
+  {
+    super (aSCHResource);
+  }
+
+  @Override
+  @Nullable
+  public ISchematronXSLTBasedProvider getXSLTProvider ()
+  {
+    ISchematronXSLTBasedProvider ret = m_aSharedProvider;
+    if (ret == null)
+    {
+      synchronized (this)
+      {
+        ret = m_aSharedProvider;
+        if (ret == null)
+          ret = m_aSharedProvider = super.getXSLTProvider ();
+      }
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.io.resource.inmemory.ReadableResourceByteArray;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.xml.EXMLParserFeature;
+import com.helger.xml.serialize.read.DOMReaderSettings;
+
+/**
+ * Test class for class {@link PooledDOMReader}.
+ *
+ * @author Philip Helger
+ */
+public final class PooledDOMReaderTest
+{
+  private static final String VALID_SCHEMATRON = "test-sch/valid01.sch";
+  private static final String VALID_XMLINSTANCE = "test-xml/valid01.xml";
+
+  @Test
+  public void testReadVariants () throws Exception
+  {
+    final byte [] aBytes = StreamHelper.getAllBytes (new ClassPathResource (VALID_XMLINSTANCE));
+    assertNotNull (aBytes);
+
+    final Document aDoc1 = PooledDOMReader.readXMLDOM (aBytes, null, null);
+    assertNotNull (aDoc1.getDocumentElement ());
+
+    // Reading again on the same thread reuses the parser
+    final Document aDoc2 = PooledDOMReader.readXMLDOM (ByteBuffer.wrap (aBytes), null, null);
+    assertEquals (aDoc1.getDocumentElement ().getNodeName (), aDoc2.getDocumentElement ().getNodeName ());
+
+    final ByteBuffer aDirect = ByteBuffer.allocateDirect (aBytes.length);
+    aDirect.put (aBytes).flip ();
+    final Document aDoc3 = PooledDOMReader.readXMLDOM (aDirect, null, null);
+    assertEquals (aDoc1.getDocumentElement ().getNodeName (), aDoc3.getDocumentElement ().getNodeName ());
+    // Position is unchanged
+    assertEquals (0, aDirect.position ());
+  }
+
+  @Test
+  public void testDoctypeIsRejected () throws Exception
+  {
+    final String sXML = "<?xml version='1.0'?><!DOCTYPE a [<!ENTITY x 'y'>]><a>&x;</a>";
+    try
+    {
+      PooledDOMReader.readXMLDOM (sXML.getBytes (StandardCharsets.UTF_8), null, null);
+      fail ();
+    }
+    catch (final SAXException ex)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testValidation () throws Exception
+  {
+    final ISchematronResource aSch = SchematronResourcePure.fromClassPath (VALID_SCHEMATRON);
+    final SchematronOutputType aExpected = aSch.applySchematronValidationToSVRL (new ClassPathResource (VALID_XMLINSTANCE));
+    assertNotNull (aExpected);
+    final int nExpected = SVRLHelper.getAllFailedAssertions (aExpected).size ();
+
+    final byte [] aBytes = StreamHelper.getAllBytes (new ClassPathResource (VALID_XMLINSTANCE));
+    SchematronOutputType aSOT = aSch.applySchematronValidationToSVRL (aBytes, null);
+    assertNotNull (aSOT);
+    assertEquals (nExpected, SVRLHelper.getAllFailedAssertions (aSOT).size ());
+
+    aSOT = aSch.applySchematronValidationToSVRL (ByteBuffer.wrap (aBytes), null);
+    assertNotNull (aSOT);
+    assertEquals (nExpected, SVRLHelper.getAllFailedAssertions (aSOT).size ());
+
+    final File aFile = new ClassPathResource (VALID_XMLINSTANCE).getAsFile ();
+    if (aFile != null && aFile.isFile ())
+    {
+      aSOT = aSch.applySchematronValidationToSVRLMapped (aFile.toPath ());
+      assertNotNull (aSOT);
+      assertEquals (nExpected, SVRLHelper.getAllFailedAssertions (aSOT).size ());
+    }
+  }
+
+  private static final class DoctypeAllowingSchematronResourcePure extends SchematronResourcePure
+  {
+    private final AtomicInteger m_aCalls = new AtomicInteger (0);
+
+    DoctypeAllowingSchematronResourcePure ()
+    {
+      super (new ClassPathResource (VALID_SCHEMATRON));
+      setUsePooledParser (false);
+    }
+
+    @Override
+    protected DOMReaderSettings internalCreateDOMReaderSettings ()
+    {
+      m_aCalls.incrementAndGet ();
+      final DOMReaderSettings ret = super.internalCreateDOMReaderSettings ();
+      ret.setFeatureValue (EXMLParserFeature.DISALLOW_DOCTYPE_DECL, false);
+      return ret;
+    }
+  }
+
+  @Test
+  public void testCustomDOMReaderSettings () throws Exception
+  {
+    final String sXML = "<?xml version='1.0'?><!DOCTYPE a [<!ENTITY x 'y'>]><a>&x;</a>";
+    final byte [] aBytes = sXML.getBytes (StandardCharsets.UTF_8);
+
+    // The pooled parser rejects the DOCTYPE
+    final SchematronResourcePure aDefault = SchematronResourcePure.fromClassPath (VALID_SCHEMATRON);
+    assertTrue (aDefault.isUsePooledParser ());
+    try
+    {
+      aDefault.applySchematronValidationToSVRL (aBytes, null);
+      fail ();
+    }
+    catch (final SAXException ex)
+    {
+      // expected
+    }
+
+    // The overridden settings are used for all input types
+    final DoctypeAllowingSchematronResourcePure aCustom = new DoctypeAllowingSchematronResourcePure ();
+    assertFalse (aCustom.isUsePooledParser ());
+    assertNotNull (aCustom.applySchematronValidationToSVRL (aBytes, null));
+    assertNotNull (aCustom.applySchematronValidationToSVRL (ByteBuffer.wrap (aBytes), null));
+    assertNotNull (aCustom.applySchematronValidationToSVRL (new ReadableResourceByteArray (aBytes)));
+    assertEquals (3, aCustom.m_aCalls.get ());
+  }
+}
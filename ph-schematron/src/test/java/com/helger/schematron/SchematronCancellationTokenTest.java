@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.schematron.xslt.SCHTransformerCustomizer.EVariant;
+import com.helger.schematron.xslt.SchematronResourceSCH;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link SchematronCancellationToken}.
+ *
+ * @author Philip Helger
+ */
+public final class SchematronCancellationTokenTest
+{
+  private static final String SCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                    "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\">\n" +
+                                    "  <pattern>\n" +
+                                    "    <rule context=\"item\">\n" +
+                                    "      <assert test=\"@id\">Missing ID</assert>\n" +
+                                    "    </rule>\n" +
+                                    "  </pattern>\n" +
+                                    "</schema>";
+
+  @Test
+  public void testToken ()
+  {
+    final SchematronCancellationToken aToken = new SchematronCancellationToken ();
+    assertFalse (aToken.hasDeadline ());
+    assertFalse (aToken.isCancelled ());
+    aToken.cancel ();
+    assertTrue (aToken.isCancelled ());
+
+    assertTrue (new SchematronCancellationToken (Duration.ZERO).isCancelled ());
+    assertFalse (new SchematronCancellationToken (Duration.ofHours (1)).isCancelled ());
+  }
+
+  @Test
+  public void testPure () throws Exception
+  {
+    final Document aDoc = DOMReader.readXMLDOM ("<root><item/><item/></root>");
+    final SchematronResourcePure aSchematron = SchematronResourcePure.fromString (SCH, StandardCharsets.UTF_8);
+
+    final SchematronCancellationToken aNotExpired = new SchematronCancellationToken (Duration.ofHours (1));
+    SchematronOutputType aSVRL = aNotExpired.call ( () -> aSchematron.applySchematronValidationToSVRL (aDoc, null));
+    assertFalse (SVRLHelper.isIncomplete (aSVRL));
+    assertEquals (2, SVRLHelper.getAllFailedAssertions (aSVRL).size ());
+
+    final SchematronCancellationToken aToken = new SchematronCancellationToken ();
+    aToken.cancel ();
+    aSVRL = aToken.call ( () -> aSchematron.applySchematronValidationToSVRL (aDoc, null));
+    assertTrue (SVRLHelper.isIncomplete (aSVRL));
+    assertEquals (0, SVRLHelper.getAllFailedAssertions (aSVRL).size ());
+    assertFalse (SVRLHelper.isIncomplete (aSchematron.applySchematronValidationToSVRL (aDoc, null)));
+  }
+
+  @Test
+  public void testXSLT () throws Exception
+  {
+    final SchematronResourceSCH aSchematron = SchematronResourceSCH.fromClassPath ("test-sch/valid01.sch");
+    final ClassPathResource aXML = new ClassPathResource ("test-xml/valid01.xml");
+
+    final SchematronCancellationToken aToken = new SchematronCancellationToken (Duration.ZERO);
+    final SchematronOutputType aSVRL = aToken.call ( () -> aSchematron.applySchematronValidationToSVRL (aXML));
+    assertNotNull (aSVRL);
+    assertTrue (SVRLHelper.isIncomplete (aSVRL));
+    assertFalse (SVRLHelper.isIncomplete (aSchematron.applySchematronValidationToSVRL (aXML)));
+  }
+
+  @Test
+  public void testXSLTReducedSVRL () throws Exception
+  {
+    final ClassPathResource aXML = new ClassPathResource ("test-xml/valid01.xml");
+    for (final EVariant eVariant : new EVariant [] { EVariant.FAILURES_ONLY, EVariant.STOP_AT_FIRST_ERROR })
+    {
+      final SchematronResourceSCH aSchematron = SchematronResourceSCH.fromClassPath ("test-sch/valid01.sch");
+      aSchematron.setVariant (eVariant);
+
+      // A valid document creates no SVRL element to check the token at
+      final SchematronCancellationToken aToken = new SchematronCancellationToken (Duration.ofHours (1));
+      try
+      {
+        aToken.call ( () -> aSchematron.applySchematronValidationToSVRL (aXML));
+        fail ();
+      }
+      catch (final IllegalStateException ex)
+      {
+        // expected
+      }
+
+      // Without a token it works
+      assertNotNull (aSchematron.applySchematronValidationToSVRL (aXML));
+    }
+  }
+}
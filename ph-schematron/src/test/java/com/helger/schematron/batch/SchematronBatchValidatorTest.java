@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.io.resource.IReadableResource;
+import com.helger.commons.io.resource.inmemory.ReadableResourceString;
+import com.helger.schematron.ISchematronResource;
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.pure.validation.xpath.PSXPathValidationHandlerSVRL;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+
+/**
+ * Test class for class {@link SchematronBatchValidator}.
+ *
+ * @author Philip Helger
+ */
+public final class SchematronBatchValidatorTest
+{
+  private static final String VALID_SCHEMATRON = "test-sch/valid01.sch";
+  private static final String VALID_XMLINSTANCE = "test-xml/valid01.xml";
+  private static final int RUNS = 200;
+
+  @Test
+  public void testSubmitAll () throws Exception
+  {
+    final ISchematronResource aSch = SchematronResourcePure.fromClassPath (VALID_SCHEMATRON);
+    final SchematronOutputType aExpected = aSch.applySchematronValidationToSVRL (new ClassPathResource (VALID_XMLINSTANCE));
+    assertNotNull (aExpected);
+    final int nExpectedFailures = SVRLHelper.getAllFailedAssertions (aExpected).size ();
+
+    final ICommonsList <IReadableResource> aXMLs = new CommonsArrayList <> ();
+    for (int i = 0; i < RUNS; ++i)
+      aXMLs.add (new ClassPathResource (VALID_XMLINSTANCE));
+    aXMLs.add (new ClassPathResource ("test-xml/this.file.does.not.exist"));
+
+    final ExecutorService aES = Executors.newFixedThreadPool (4);
+    try
+    {
+      final SchematronBatchValidator aBV = new SchematronBatchValidator (aSch, aES, 8);
+      final ICommonsList <CompletableFuture <SchematronOutputType>> aResults = aBV.submitAll (aXMLs);
+      assertEquals (aXMLs.size (), aResults.size ());
+      for (int i = 0; i < RUNS; ++i)
+      {
+        final SchematronOutputType aSOT = aResults.get (i).get ();
+        assertNotNull (aSOT);
+        assertEquals (nExpectedFailures, SVRLHelper.getAllFailedAssertions (aSOT).size ());
+      }
+      // Non-existing resource
+      assertNull (aResults.getLast ().get ());
+      assertEquals (0, aBV.getInFlightCount ());
+    }
+    finally
+    {
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aES);
+    }
+  }
+
+  @Test
+  public void testValidateAllWithCallback () throws Exception
+  {
+    final ISchematronResource aSch = SchematronResourcePure.fromClassPath (VALID_SCHEMATRON);
+
+    final ICommonsList <IReadableResource> aXMLs = new CommonsArrayList <> ();
+    for (int i = 0; i < RUNS; ++i)
+      aXMLs.add (new ClassPathResource (VALID_XMLINSTANCE));
+
+    final ExecutorService aES = Executors.newFixedThreadPool (4);
+    try
+    {
+      final AtomicInteger aCount = new AtomicInteger (0);
+      final AtomicInteger aErrors = new AtomicInteger (0);
+      new SchematronBatchValidator (aSch, aES, 4).validateAll (aXMLs, (nIndex, aXML, aSVRL, ex) -> {
+        aCount.incrementAndGet ();
+        if (aSVRL == null || ex != null)
+          aErrors.incrementAndGet ();
+      });
+      assertEquals (RUNS, aCount.get ());
+      assertEquals (0, aErrors.get ());
+    }
+    finally
+    {
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aES);
+    }
+  }
+
+  @Test
+  public void testOccurrenceCaps () throws Exception
+  {
+    final String sSCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                        "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\">\n" +
+                        "  <pattern>\n" +
+                        "    <rule context=\"item\">\n" +
+                        "      <assert id=\"id\" test=\"@id\">Missing ID</assert>\n" +
+                        "    </rule>\n" +
+                        "  </pattern>\n" +
+                        "</schema>";
+    final SchematronResourcePure aSch = SchematronResourcePure.fromString (sSCH, StandardCharsets.UTF_8);
+    aSch.setOccurrenceCaps (PSXPathValidationHandlerSVRL.UNLIMITED, 5, false);
+
+    final StringBuilder aSB = new StringBuilder ("<root>");
+    for (int i = 0; i < 20; ++i)
+      aSB.append ("<item/>");
+    aSB.append ("</root>");
+
+    final ICommonsList <IReadableResource> aXMLs = new CommonsArrayList <> ();
+    for (int i = 0; i < 10; ++i)
+      aXMLs.add (new ReadableResourceString (aSB.toString (), StandardCharsets.UTF_8));
+
+    final ExecutorService aES = Executors.newFixedThreadPool (4);
+    try
+    {
+      final ICommonsList <CompletableFuture <SchematronOutputType>> aResults = new SchematronBatchValidator (aSch,
+                                                                                                            aES,
+                                                                                                            4).submitAll (aXMLs);
+      for (final CompletableFuture <SchematronOutputType> aResult : aResults)
+      {
+        final SchematronOutputType aSOT = aResult.get ();
+        assertNotNull (aSOT);
+        // The caps must also be applied in batch validation
+        assertEquals (5, SVRLHelper.getAllFailedAssertions (aSOT).size ());
+        assertEquals (1, aSOT.getText ().size ());
+        assertTrue (SVRLHelper.getAsString (aSOT.getText ().get (0))
+                              .startsWith (SVRLHelper.SUPPRESSED_TEXT_PREFIX));
+      }
+    }
+    finally
+    {
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aES);
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.composite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.pure.validation.xpath.PSXPathValidationHandlerSVRL;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link SchematronCompositeValidator}.
+ *
+ * @author Philip Helger
+ */
+public final class SchematronCompositeValidatorTest
+{
+  private static final String VALID_SCHEMATRON = "test-sch/valid01.sch";
+  private static final String VALID_XMLINSTANCE = "test-xml/valid01.xml";
+
+  @Test
+  public void testBasic () throws Exception
+  {
+    final SchematronOutputType aExpected = SchematronResourcePure.fromClassPath (VALID_SCHEMATRON)
+                                                                 .applySchematronValidationToSVRL (new ClassPathResource (VALID_XMLINSTANCE));
+    assertNotNull (aExpected);
+    final int nFailedAsserts = SVRLHelper.getAllFailedAssertions (aExpected).size ();
+    final int nSuccessfulReports = SVRLHelper.getAllSuccessfulReports (aExpected).size ();
+
+    // Three pure Schematrons sharing the rule contexts
+    final SchematronCompositeValidator aValidator = new SchematronCompositeValidator (SchematronResourcePure.fromClassPath (VALID_SCHEMATRON),
+                                                                                      SchematronResourcePure.fromClassPath (VALID_SCHEMATRON),
+                                                                                      SchematronResourcePure.fromClassPath (VALID_SCHEMATRON));
+    final ICommonsList <SchematronOutputType> aSOTs = aValidator.applySchematronValidationToSVRL (new ClassPathResource (VALID_XMLINSTANCE));
+    assertNotNull (aSOTs);
+    assertEquals (3, aSOTs.size ());
+    for (final SchematronOutputType aSOT : aSOTs)
+    {
+      assertEquals (nFailedAsserts, SVRLHelper.getAllFailedAssertions (aSOT).size ());
+      assertEquals (nSuccessfulReports, SVRLHelper.getAllSuccessfulReports (aSOT).size ());
+    }
+
+    final SchematronOutputType aMerged = SchematronCompositeValidator.getMergedSVRL (aSOTs);
+    assertEquals (3 * nFailedAsserts, SVRLHelper.getAllFailedAssertions (aMerged).size ());
+    assertEquals (3 * nSuccessfulReports, SVRLHelper.getAllSuccessfulReports (aMerged).size ());
+
+    // Non-existing resource
+    assertNull (aValidator.applySchematronValidationToSVRL (new ClassPathResource ("test-xml/this.file.does.not.exist")));
+  }
+
+  @Test
+  public void testOccurrenceCaps () throws Exception
+  {
+    final String sSCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                        "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\">\n" +
+                        "  <pattern>\n" +
+                        "    <rule context=\"item\">\n" +
+                        "      <assert test=\"@id\">Missing ID</assert>\n" +
+                        "    </rule>\n" +
+                        "  </pattern>\n" +
+                        "</schema>";
+    final StringBuilder aSB = new StringBuilder ("<root>");
+    for (int i = 0; i < 20; ++i)
+      aSB.append ("<item/>");
+    aSB.append ("</root>");
+    final Document aDoc = DOMReader.readXMLDOM (aSB.toString ());
+
+    // The caps of each Schematron must be honoured
+    final SchematronResourcePure aCapped = SchematronResourcePure.fromString (sSCH, StandardCharsets.UTF_8);
+    aCapped.setOccurrenceCaps (PSXPathValidationHandlerSVRL.UNLIMITED, 5, false);
+    final SchematronCompositeValidator aValidator = new SchematronCompositeValidator (SchematronResourcePure.fromString (sSCH,
+                                                                                                                        StandardCharsets.UTF_8),
+                                                                                      aCapped);
+    final ICommonsList <SchematronOutputType> aSOTs = aValidator.applySchematronValidationToSVRL (aDoc, null);
+    assertEquals (2, aSOTs.size ());
+    assertEquals (20, SVRLHelper.getAllFailedAssertions (aSOTs.get (0)).size ());
+    assertEquals (5, SVRLHelper.getAllFailedAssertions (aSOTs.get (1)).size ());
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.bound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsVector;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.resource.inmemory.ReadableResourceString;
+import com.helger.schematron.pure.bound.xpath.PSXPathBoundSchema;
+import com.helger.schematron.saxon.SaxonConfigurationManager;
+import com.helger.schematron.xpath.XPathConfigBuilder;
+
+/**
+ * Test class for class {@link PSBoundSchemaCache}.
+ *
+ * @author Philip Helger
+ */
+public final class PSBoundSchemaCacheTest
+{
+  private static final String SCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                    "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\">\n" +
+                                    "  <pattern>\n" +
+                                    "    <rule context=\"item\">\n" +
+                                    "      <assert test=\"@id\">Missing ID</assert>\n" +
+                                    "    </rule>\n" +
+                                    "  </pattern>\n" +
+                                    "</schema>";
+
+  /**
+   * A cache that remembers all retired bound schemas.
+   */
+  private static final class RecordingCache extends PSBoundSchemaCache
+  {
+    private final ICommonsList <IPSBoundSchema> m_aRetired = new CommonsVector <> ();
+
+    RecordingCache ()
+    {
+      super ("test");
+    }
+
+    @Override
+    protected void retire (@Nonnull final IPSBoundSchema aBoundSchema)
+    {
+      m_aRetired.add (aBoundSchema);
+      super.retire (aBoundSchema);
+    }
+  }
+
+  @Nonnull
+  private static PSBoundSchemaCacheKey _createKey () throws Exception
+  {
+    return new PSBoundSchemaCacheKey (new ReadableResourceString (SCH, StandardCharsets.UTF_8),
+                                      null,
+                                      null,
+                                      null,
+                                      new XPathConfigBuilder ().build (),
+                                      null,
+                                      false);
+  }
+
+  @Test
+  public void testRetireOnRemoveRebindAndClear () throws Exception
+  {
+    final boolean bOld = SaxonConfigurationManager.isConfigurationPerSchema ();
+    SaxonConfigurationManager.setConfigurationPerSchema (true);
+    try
+    {
+      final RecordingCache aCache = new RecordingCache ();
+      final PSBoundSchemaCacheKey aKey = _createKey ();
+
+      // Simulate reloads of the same schema
+      for (int i = 0; i < 10; ++i)
+      {
+        final PSXPathBoundSchema aBoundSchema = (PSXPathBoundSchema) aCache.getFromCache (aKey);
+        assertNotNull (aBoundSchema.getOwnConfiguration ());
+        assertSame (aBoundSchema, aCache.getFromCache (aKey));
+
+        aCache.removeFromCache (aKey);
+        assertEquals (i + 1, aCache.m_aRetired.size ());
+        assertSame (aBoundSchema, aCache.m_aRetired.getLast ());
+        assertNull (aBoundSchema.getOwnConfiguration ());
+      }
+      aCache.m_aRetired.clear ();
+
+      // Rebind retires the previous version
+      final PSXPathBoundSchema aFirst = (PSXPathBoundSchema) aCache.getFromCache (aKey);
+      assertTrue (aCache.rebind (aKey).isSuccess ());
+      final PSXPathBoundSchema aSecond = (PSXPathBoundSchema) aCache.getFromCache (aKey);
+      assertEquals (new CommonsArrayList <> (aFirst), aCache.m_aRetired);
+      assertNull (aFirst.getOwnConfiguration ());
+      assertNotNull (aSecond.getOwnConfiguration ());
+
+      // Clear retires as well
+      aCache.clearCache ();
+      assertEquals (new CommonsArrayList <> (aFirst, aSecond), aCache.m_aRetired);
+      assertNull (aSecond.getOwnConfiguration ());
+    }
+    finally
+    {
+      SaxonConfigurationManager.setConfigurationPerSchema (bOld);
+    }
+  }
+
+  @Test
+  public void testConcurrentCreation () throws Exception
+  {
+    final boolean bOld = SaxonConfigurationManager.isConfigurationPerSchema ();
+    SaxonConfigurationManager.setConfigurationPerSchema (true);
+    try
+    {
+      final RecordingCache aCache = new RecordingCache ();
+      final PSBoundSchemaCacheKey aKey = _createKey ();
+
+      final int nThreads = 8;
+      final CountDownLatch aStart = new CountDownLatch (1);
+      final ExecutorService aES = Executors.newFixedThreadPool (nThreads);
+      final ICommonsList <Future <IPSBoundSchema>> aFutures = new CommonsArrayList <> ();
+      for (int i = 0; i < nThreads; ++i)
+        aFutures.add (aES.submit ( () -> {
+          aStart.await ();
+          return aCache.getFromCache (aKey);
+        }));
+      aStart.countDown ();
+      aES.shutdown ();
+      assertTrue (aES.awaitTermination (1, TimeUnit.MINUTES));
+
+      // All threads use the same bound schema, even if it was created more
+      // than once
+      final PSXPathBoundSchema aBoundSchema = (PSXPathBoundSchema) aFutures.getFirst ().get ();
+      for (final Future <IPSBoundSchema> aFuture : aFutures)
+        assertSame (aBoundSchema, aFuture.get ());
+      assertSame (aBoundSchema, aCache.getFromCache (aKey));
+      assertNotNull (aBoundSchema.getOwnConfiguration ());
+
+      // The tracked bound schema is the one that is retired
+      aCache.removeFromCache (aKey);
+      assertEquals (new CommonsArrayList <> (aBoundSchema), aCache.m_aRetired);
+      assertNull (aBoundSchema.getOwnConfiguration ());
+    }
+    finally
+    {
+      SaxonConfigurationManager.setConfigurationPerSchema (bOld);
+    }
+  }
+}
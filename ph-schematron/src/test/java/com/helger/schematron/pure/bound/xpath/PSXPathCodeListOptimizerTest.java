@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.bound.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.schematron.xpath.XPathConfigBuilder;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link PSXPathCodeListOptimizer}.
+ *
+ * @author Philip Helger
+ */
+public final class PSXPathCodeListOptimizerTest
+{
+  private static final String CONTAINS = "contains(' AED EUR USD GBP CHF ', concat(' ', normalize-space(.), ' '))";
+  private static final String OR_CHAIN = "@c = 'A' or @c = 'B' or @c = 'C' or @c = 'D' or 'E' = @c";
+
+  @Test
+  public void testGetRewrittenExpression ()
+  {
+    final PSXPathCodeListOptimizer aOptimizer = new PSXPathCodeListOptimizer ();
+    assertEquals ("ph-schematron-codelist:contains-0(concat('', normalize-space(.)))",
+                  aOptimizer.getRewrittenExpression (CONTAINS));
+    assertEquals ("ph-schematron-codelist:in-1(@c)", aOptimizer.getRewrittenExpression (OR_CHAIN));
+    assertEquals ("not(ph-schematron-codelist:in-2(@c)) and x", aOptimizer.getRewrittenExpression ("not(" + OR_CHAIN + ") and x"));
+    assertEquals ("a[ph-schematron-codelist:in-3(@c)]", aOptimizer.getRewrittenExpression ("a[" + OR_CHAIN + "]"));
+    assertEquals (4, aOptimizer.getCodeListCount ());
+
+    // Not rewritten
+    for (final String s : new String [] { "contains(' A B ', concat(' ', ., ' '))",
+                                          "contains(' AED EUR USD GBP CHF ', concat('x', ., ' '))",
+                                          "contains(@list, concat(' ', ., ' '))",
+                                          "@c = 'A' or @c = 'B' or @c = 'C' or @d = 'D' or @c = 'E'",
+                                          "@c = 'A' or @c = 'B' or @c = 'C' or @c = 'D' or @c != 'E'",
+                                          "@c = 'A' or @c = 'B' or @c = 'C' or @c = 'D' or @c = 'E' and x",
+                                          "'@c = 1 or @c = 2 or @c = 3 or @c = 4 or @c = 5'" })
+      assertSame (s, aOptimizer.getRewrittenExpression (s));
+    assertEquals (4, aOptimizer.getCodeListCount ());
+  }
+
+  private static int _getFailedAssertCount (final String sSCH,
+                                           final Document aDoc,
+                                           final boolean bOptimize) throws Exception
+  {
+    final SchematronResourcePure aRes = SchematronResourcePure.fromString (sSCH, StandardCharsets.UTF_8);
+    aRes.setUseCache (false);
+    aRes.setXPathConfig (new XPathConfigBuilder ().setOptimizeCodeLists (bOptimize).build ());
+    // Rewrites only happen if explicitly enabled
+    assertEquals (bOptimize,
+                  ((PSXPathBoundSchema) aRes.getOrCreateBoundSchema ()).getAllRewrittenExpressions ().isNotEmpty ());
+    final SchematronOutputType aOT = aRes.applySchematronValidationToSVRL (aDoc, null);
+    return SVRLHelper.getAllFailedAssertions (aOT).size ();
+  }
+
+  @Test
+  public void testValidate () throws Exception
+  {
+    final String sSCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                        "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\">\n" +
+                        "  <pattern>\n" +
+                        "    <rule context=\"v\">\n" +
+                        "      <assert test=\"" +
+                        CONTAINS +
+                        "\">Unknown currency</assert>\n" +
+                        "      <assert test=\"" +
+                        OR_CHAIN +
+                        "\">Unknown code</assert>\n" +
+                        "    </rule>\n" +
+                        "  </pattern>\n" +
+                        "</schema>";
+    final Document aDoc = DOMReader.readXMLDOM ("<?xml version='1.0'?><root>" +
+                                                "<v c='A'>EUR</v><v c='E'> USD </v><v c='F'>XXX</v>" +
+                                                "<v c='B'>EUR USD</v><v>  </v><v c=''>AED</v>" +
+                                                "</root>");
+    // Currencies "XXX" and "  "; codes "F", missing and ""
+    final int nExpected = 5;
+    assertEquals (nExpected, _getFailedAssertCount (sSCH, aDoc, true));
+    assertEquals (nExpected, _getFailedAssertCount (sSCH, aDoc, false));
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.bound.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link PSXPathIncrementalSession}.
+ *
+ * @author Philip Helger
+ */
+public final class PSXPathIncrementalSessionTest
+{
+  private static final String SCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                    "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\">\n" +
+                                    "  <pattern>\n" +
+                                    "    <rule context=\"chapter\">\n" +
+                                    "      <assert test=\"count(//para) &lt; 3\">Too many paragraphs</assert>\n" +
+                                    "    </rule>\n" +
+                                    "    <rule context=\"para\">\n" +
+                                    "      <assert test=\"string-length(.) &gt; 0\">Empty paragraph</assert>\n" +
+                                    "    </rule>\n" +
+                                    "  </pattern>\n" +
+                                    "</schema>";
+
+  @Test
+  public void testIsLocalExpression ()
+  {
+    assertTrue (PSXPathIncrementalSession.isLocalExpression ("string-length(.) > 0"));
+    assertTrue (PSXPathIncrementalSession.isLocalExpression ("count(a/b) = 2"));
+    assertTrue (PSXPathIncrementalSession.isLocalExpression ("@id = '/abs/..'"));
+    assertFalse (PSXPathIncrementalSession.isLocalExpression ("count(//para) < 3"));
+    assertFalse (PSXPathIncrementalSession.isLocalExpression ("/root/a"));
+    assertFalse (PSXPathIncrementalSession.isLocalExpression ("../a"));
+    assertFalse (PSXPathIncrementalSession.isLocalExpression ("preceding-sibling::a"));
+    assertFalse (PSXPathIncrementalSession.isLocalExpression ("a = $x"));
+    assertTrue (PSXPathIncrementalSession.isLocalExpression ("substring-before(child::text(), 'x') != ''"));
+    assertTrue (PSXPathIncrementalSession.isLocalExpression ("if (@a) then count(b) else 0"));
+    assertFalse (PSXPathIncrementalSession.isLocalExpression ("lang('en')"));
+    assertFalse (PSXPathIncrementalSession.isLocalExpression ("phf:is-valid(.)"));
+    assertFalse (PSXPathIncrementalSession.isLocalExpression ("count(a) = fn:count(b)"));
+    assertFalse (PSXPathIncrementalSession.isLocalExpression ("base-uri() != ''"));
+    assertFalse (PSXPathIncrementalSession.isLocalExpression ("unknown-function(.)"));
+  }
+
+  @Test
+  public void testRevalidate () throws Exception
+  {
+    final Document aDoc = DOMReader.readXMLDOM ("<?xml version='1.0'?><chapter><para>First</para><para>Second</para></chapter>");
+    assertNotNull (aDoc);
+    final Element eChapter = aDoc.getDocumentElement ();
+    final Element ePara1 = (Element) eChapter.getFirstChild ();
+
+    final PSXPathIncrementalSession aSession = SchematronResourcePure.fromString (SCH, StandardCharsets.UTF_8)
+                                                                     .createIncrementalSession (aDoc, null);
+    assertFalse (aSession.isValidated ());
+
+    // Initial validation
+    PSXPathIncrementalResult aResult = aSession.validate ();
+    assertTrue (aSession.isValidated ());
+    assertTrue (aResult.isUnchanged ());
+    assertEquals (3, aResult.getEvaluatedTestCount ());
+    assertEquals (0, aResult.getReusedTestCount ());
+    assertEquals (0, SVRLHelper.getAllFailedAssertions (aResult.getSVRL ()).size ());
+
+    // Empty the first paragraph
+    ePara1.setTextContent ("");
+    aResult = aSession.revalidate (new CommonsArrayList <> (ePara1));
+    assertEquals (1, aResult.getAllAddedFindings ().size ());
+    assertSame (ePara1, aResult.getAllAddedFindings ().getFirst ().getContextNode ());
+    assertTrue (aResult.getAllRemovedFindings ().isEmpty ());
+    // The non-local assert and the first para are evaluated
+    assertEquals (2, aResult.getEvaluatedTestCount ());
+    assertEquals (1, aResult.getReusedTestCount ());
+    assertEquals (1, SVRLHelper.getAllFailedAssertions (aResult.getSVRL ()).size ());
+
+    // Add a new paragraph and fix the first one
+    ePara1.setTextContent ("First");
+    final Element ePara3 = aDoc.createElement ("para");
+    ePara3.setTextContent ("Third");
+    eChapter.appendChild (ePara3);
+    aResult = aSession.revalidate (new CommonsArrayList <> (ePara1, eChapter));
+    assertEquals (1, aResult.getAllAddedFindings ().size ());
+    assertSame (eChapter, aResult.getAllAddedFindings ().getFirst ().getContextNode ());
+    assertEquals (1, aResult.getAllRemovedFindings ().size ());
+    assertSame (ePara1, aResult.getAllRemovedFindings ().getFirst ().getContextNode ());
+    assertEquals (1, SVRLHelper.getAllFailedAssertions (aResult.getSVRL ()).size ());
+
+    // Nothing changed
+    aResult = aSession.revalidate (new CommonsArrayList <> ());
+    assertTrue (aResult.isUnchanged ());
+    assertEquals (1, aResult.getEvaluatedTestCount ());
+    assertEquals (3, aResult.getReusedTestCount ());
+  }
+}
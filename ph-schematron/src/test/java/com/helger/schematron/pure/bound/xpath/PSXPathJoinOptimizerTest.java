@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.bound.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiFunction;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.xpath.XPathVariableResolver;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.schematron.xpath.XPathConfigBuilder;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link PSXPathJoinOptimizer}.
+ *
+ * @author Philip Helger
+ */
+public final class PSXPathJoinOptimizerTest
+{
+  private static final BiFunction <String, String, String> KEY_PROVIDER = (sMatch, sUse) -> "k";
+
+  private static void _assertUnchanged (final String sExpr)
+  {
+    assertSame (sExpr, PSXPathJoinOptimizer.getRewrittenExpression (sExpr, KEY_PROVIDER));
+  }
+
+  @Test
+  public void testGetRewrittenExpression ()
+  {
+    assertEquals ("exists(ph-schematron-key:key('k', ./@ref, root(.)))",
+                  PSXPathJoinOptimizer.getRewrittenExpression ("exists(//item[@id = current()/@ref])", KEY_PROVIDER));
+    assertEquals ("count(ph-schematron-key:key('k', ., root(.))) = 1",
+                  PSXPathJoinOptimizer.getRewrittenExpression ("count(//a/b[current() = c]) = 1", KEY_PROVIDER));
+    assertEquals ("(if (every $ph_join_value in $code satisfies ($ph_join_value instance of node() or $ph_join_value instance of Q{http://www.w3.org/2001/XMLSchema}string or $ph_join_value instance of Q{http://www.w3.org/2001/XMLSchema}untypedAtomic)) then ph-schematron-key:key('k', $code, root(.)) else //cac:Item[cbc:ID = $code])",
+                  PSXPathJoinOptimizer.getRewrittenExpression ("//cac:Item[cbc:ID = $code]", KEY_PROVIDER));
+
+    // Not safe to rewrite
+    _assertUnchanged ("//item[@id != current()/@ref]");
+    _assertUnchanged ("//item[@id = current()/@ref][1]");
+    _assertUnchanged ("//item[@id = current()/@ref]/@name");
+    _assertUnchanged ("//item[@id = current()/@ref and @x]");
+    _assertUnchanged ("//item[@id = 'abc']");
+    _assertUnchanged ("//item[@id = ../@ref]");
+    _assertUnchanged ("a//item[@id = current()/@ref]");
+    _assertUnchanged ("$doc//item[@id = current()/@ref]");
+    _assertUnchanged ("a[//item[@id = current()/@ref]]");
+    _assertUnchanged ("a/(//item[@id = current()/@ref])");
+    _assertUnchanged ("'//item[@id = current()/@ref]'");
+    _assertUnchanged ("//item[1 = current()/@ref]");
+    // The simple map operator changes the context item
+    _assertUnchanged ("$refs ! //item[@id = current()/@ref]");
+    _assertUnchanged ("$refs ! exists(//item[@id = current()/@ref])");
+    assertEquals ("ph-schematron-key:key('k', ./@ref, root(.)) != '!'",
+                  PSXPathJoinOptimizer.getRewrittenExpression ("//item[@id = current()/@ref] != '!'", KEY_PROVIDER));
+  }
+
+  @Nonnull
+  private static SchematronResourcePure _create (@Nonnull final String sSCH,
+                                                 final boolean bOptimize,
+                                                 @Nullable final XPathVariableResolver aVariableResolver) throws Exception
+  {
+    final SchematronResourcePure aRes = SchematronResourcePure.fromString (sSCH, StandardCharsets.UTF_8);
+    aRes.setUseCache (false);
+    aRes.setXPathConfig (new XPathConfigBuilder ().setOptimizeJoins (bOptimize)
+                                                  .setXPathVariableResolver (aVariableResolver)
+                                                  .build ());
+    return aRes;
+  }
+
+  private static int _getFailedAssertCount (@Nonnull final SchematronResourcePure aRes,
+                                           @Nonnull final Document aDoc,
+                                           final boolean bOptimize) throws Exception
+  {
+    // Rewrites only happen if explicitly enabled
+    assertEquals (bOptimize,
+                  ((PSXPathBoundSchema) aRes.getOrCreateBoundSchema ()).getAllRewrittenExpressions ().isNotEmpty ());
+    final SchematronOutputType aOT = aRes.applySchematronValidationToSVRL (aDoc, null);
+    return SVRLHelper.getAllFailedAssertions (aOT).size ();
+  }
+
+  private static final String XML = "<?xml version='1.0'?><root>" +
+                                    "<item id='a'/><item id='b'/><item id='b'/>" +
+                                    "<ref to='a'/><ref to='b'/><ref to='c'/>" +
+                                    "</root>";
+
+  @Test
+  public void testValidateCurrent () throws Exception
+  {
+    final String sSCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                        "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\">\n" +
+                        "  <pattern>\n" +
+                        "    <rule context=\"ref\">\n" +
+                        "      <assert test=\"//item[@id = current()/@to]\">Unknown item</assert>\n" +
+                        "      <assert test=\"count(//item[@id = current()/@to]) &lt; 2\">Duplicate item</assert>\n" +
+                        "    </rule>\n" +
+                        "  </pattern>\n" +
+                        "</schema>";
+    final Document aDoc = DOMReader.readXMLDOM (XML);
+    assertEquals (2, _getFailedAssertCount (_create (sSCH, true, null), aDoc, true));
+
+    // The pure engine does not support current() - the rewrite adds this
+    // capability for the supported join shapes
+    try
+    {
+      _create (sSCH, false, null).getOrCreateBoundSchema ();
+      fail ();
+    }
+    catch (final IllegalStateException ex)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testValidateVariable () throws Exception
+  {
+    final String sSCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                        "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\">\n" +
+                        "  <pattern>\n" +
+                        "    <rule context=\"root\">\n" +
+                        "      <assert test=\"//item[@id = $code]\">Unknown item</assert>\n" +
+                        "      <assert test=\"count(//item[@id = $code]) &lt; 2\">Duplicate item</assert>\n" +
+                        "    </rule>\n" +
+                        "  </pattern>\n" +
+                        "</schema>";
+    final Document aDoc = DOMReader.readXMLDOM (XML);
+    for (final String sCode : new String [] { "a", "b", "c" })
+    {
+      final XPathVariableResolver aVR = aName -> "code".equals (aName.getLocalPart ()) ? sCode : null;
+      // Same result with and without the rewrite
+      final int nExpected = "a".equals (sCode) ? 0 : 1;
+      assertEquals (nExpected, _getFailedAssertCount (_create (sSCH, true, aVR), aDoc, true));
+      assertEquals (nExpected, _getFailedAssertCount (_create (sSCH, false, aVR), aDoc, false));
+    }
+  }
+}
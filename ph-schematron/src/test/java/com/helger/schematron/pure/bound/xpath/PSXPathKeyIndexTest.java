@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.bound.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link PSXPathKeyIndex}.
+ *
+ * @author Philip Helger
+ */
+public final class PSXPathKeyIndexTest
+{
+  @Test
+  public void testGetRewrittenExpression ()
+  {
+    assertEquals ("count(a) > 0", PSXPathKeyIndex.getRewrittenExpression ("count(a) > 0"));
+    assertEquals ("ph-schematron-key:key('k', @ref, root(.))",
+                  PSXPathKeyIndex.getRewrittenExpression ("key('k', @ref)"));
+    assertEquals ("exists(ph-schematron-key:key ('k', string(@ref), root(.)))",
+                  PSXPathKeyIndex.getRewrittenExpression ("exists(key ('k', string(@ref)))"));
+    assertEquals ("ph-schematron-key:key('k', @ref, $doc)", PSXPathKeyIndex.getRewrittenExpression ("key('k', @ref, $doc)"));
+    // No function calls
+    assertEquals ("@key = 'key(a, b)'", PSXPathKeyIndex.getRewrittenExpression ("@key = 'key(a, b)'"));
+    assertEquals ("monkey(a, b) and x:key(a, b)", PSXPathKeyIndex.getRewrittenExpression ("monkey(a, b) and x:key(a, b)"));
+  }
+
+  @Test
+  public void testGetRewrittenExpressionMultiple ()
+  {
+    assertEquals ("ph-schematron-key:key('k', @a, root(.)) | ph-schematron-key:key('k', ph-schematron-key:key('j', @b, root(.)), root(.))",
+                  PSXPathKeyIndex.getRewrittenExpression ("key('k', @a) | key('k', key('j', @b))"));
+  }
+
+  @Test
+  public void testCompareDocumentOrder ()
+  {
+    final Document aDoc = DOMReader.readXMLDOM ("<?xml version='1.0'?><root><a/><b/></root>");
+    final Element eA = (Element) aDoc.getDocumentElement ().getFirstChild ();
+    final Element eB = (Element) eA.getNextSibling ();
+    assertEquals (0, PSXPathKeyIndex.compareDocumentOrder (eA, eA));
+    assertTrue (PSXPathKeyIndex.compareDocumentOrder (eA, eB) < 0);
+    assertTrue (PSXPathKeyIndex.compareDocumentOrder (eB, eA) > 0);
+    assertTrue (PSXPathKeyIndex.compareDocumentOrder (aDoc.getDocumentElement (), eA) < 0);
+  }
+
+  @Test
+  public void testAddAllStringValues ()
+  {
+    final Document aDoc = DOMReader.readXMLDOM ("<?xml version='1.0'?><root>a<x>b</x></root>");
+    final ICommonsList <String> aValues = new CommonsArrayList <> ();
+    PSXPathKeyIndex.addAllStringValues (aDoc, aValues);
+    PSXPathKeyIndex.addAllStringValues (aDoc.getDocumentElement ().getLastChild (), aValues);
+    // Xerces returns the element itself as its child node list - it is a Node
+    // and therefore a single item
+    PSXPathKeyIndex.addAllStringValues (aDoc.getDocumentElement ().getChildNodes (), aValues);
+    // A real node list as returned by the XPath engine
+    final Node aFirst = aDoc.getDocumentElement ().getFirstChild ();
+    final Node aLast = aDoc.getDocumentElement ().getLastChild ();
+    PSXPathKeyIndex.addAllStringValues (new NodeList ()
+    {
+      public Node item (final int nIndex)
+      {
+        return nIndex == 0 ? aFirst : nIndex == 1 ? aLast : null;
+      }
+
+      public int getLength ()
+      {
+        return 2;
+      }
+    }, aValues);
+    assertEquals (new CommonsArrayList <> ("ab", "b", "ab", "a", "b"), aValues);
+  }
+
+  @Test
+  public void testGetMatchAsXPath ()
+  {
+    assertEquals ("//item", PSXPathKeyIndex.getMatchAsXPath ("item"));
+    assertEquals ("//item[@a|@b] | /root/x", PSXPathKeyIndex.getMatchAsXPath ("item[@a|@b] | /root/x"));
+  }
+
+  @Test
+  public void testValidate () throws Exception
+  {
+    final String sSCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                        "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">\n" +
+                        "  <xsl:key name=\"item-by-id\" match=\"item\" use=\"@id\"/>\n" +
+                        "  <pattern>\n" +
+                        "    <rule context=\"ref\">\n" +
+                        "      <assert test=\"key('item-by-id', @to)\">Unknown item</assert>\n" +
+                        "      <assert test=\"count(key('item-by-id', @to)) &lt; 2\">Duplicate item</assert>\n" +
+                        "    </rule>\n" +
+                        "  </pattern>\n" +
+                        "</schema>";
+    final Document aDoc = DOMReader.readXMLDOM ("<?xml version='1.0'?><root>" +
+                                                "<item id='a'/><item id='b'/><item id='b'/>" +
+                                                "<ref to='a'/><ref to='b'/><ref to='c'/>" +
+                                                "</root>");
+    final SchematronOutputType aOT = SchematronResourcePure.fromString (sSCH, StandardCharsets.UTF_8)
+                                                           .applySchematronValidationToSVRL (aDoc, null);
+    assertEquals (2, SVRLHelper.getAllFailedAssertions (aOT).size ());
+  }
+
+  @Test
+  public void testValidateMultipleValues () throws Exception
+  {
+    final String sSCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                        "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">\n" +
+                        "  <xsl:key name=\"item-by-id\" match=\"item\" use=\"@id\"/>\n" +
+                        "  <pattern>\n" +
+                        "    <rule context=\"ref\">\n" +
+                        "      <assert test=\"key('item-by-id', tokenize(@to, ' '))[1]/@id = 'a'\">Wrong order</assert>\n" +
+                        "      <assert test=\"count(key('item-by-id', tokenize(@to, ' '))) = 3\">Wrong count</assert>\n" +
+                        "    </rule>\n" +
+                        "  </pattern>\n" +
+                        "</schema>";
+    final Document aDoc = DOMReader.readXMLDOM ("<?xml version='1.0'?><root>" +
+                                                "<item id='a'/><item id='b'/><item id='c'/>" +
+                                                "<ref to='c b a a'/>" +
+                                                "</root>");
+    final SchematronOutputType aOT = SchematronResourcePure.fromString (sSCH, StandardCharsets.UTF_8)
+                                                           .applySchematronValidationToSVRL (aDoc, null);
+    assertEquals (0, SVRLHelper.getAllFailedAssertions (aOT).size ());
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import com.helger.commons.io.resource.FileSystemResource;
+import com.helger.commons.io.resource.IReadableResource;
+import com.helger.schematron.pure.errorhandler.CollectingPSErrorHandler;
+import com.helger.schematron.pure.model.PSSchema;
+import com.helger.schematron.testfiles.SchematronTestHelper;
+import com.helger.xml.microdom.serialize.MicroWriter;
+import com.helger.xml.sax.DefaultEntityResolver;
+
+/**
+ * Test class for class {@link PSStreamingReader}.
+ *
+ * @author Philip Helger
+ */
+public final class PSStreamingReaderTest
+{
+  @Test
+  public void testSameAsPSReader () throws Exception
+  {
+    for (final IReadableResource aRes : SchematronTestHelper.getAllValidSchematronFiles ())
+    {
+      final CollectingPSErrorHandler aErrors1 = new CollectingPSErrorHandler ();
+      final PSSchema aSchema1 = new PSReader (aRes, aErrors1, null).readSchema ();
+      assertNotNull (aSchema1);
+
+      final CollectingPSErrorHandler aErrors2 = new CollectingPSErrorHandler ();
+      final PSSchema aSchema2 = new PSStreamingReader (aRes, aErrors2, null).readSchema ();
+      assertNotNull (aSchema2);
+
+      // Both readers must create the same model and report the same errors
+      assertEquals (aRes.getPath (),
+                    MicroWriter.getNodeAsString (aSchema1.getAsMicroElement ()),
+                    MicroWriter.getNodeAsString (aSchema2.getAsMicroElement ()));
+      assertEquals (aRes.getPath (), aErrors1.getErrorList ().size (), aErrors2.getErrorList ().size ());
+    }
+  }
+
+  @Test
+  public void testDoctypeWithExternalEntity () throws Exception
+  {
+    // Uses an external entity - must be resolved via the entity resolver
+    final IReadableResource aRes = new FileSystemResource ("src/test/resources/issues/github30/ph-test.sch");
+    final PSSchema aSchema1 = new PSReader (aRes, null, DefaultEntityResolver.createOnDemand (aRes)).readSchema ();
+    final PSSchema aSchema2 = new PSStreamingReader (aRes, null, DefaultEntityResolver.createOnDemand (aRes)).readSchema ();
+    assertEquals (MicroWriter.getNodeAsString (aSchema1.getAsMicroElement ()),
+                  MicroWriter.getNodeAsString (aSchema2.getAsMicroElement ()));
+  }
+}
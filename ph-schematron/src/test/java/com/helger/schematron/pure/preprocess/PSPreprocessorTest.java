@@ -16,11 +16,14 @@
  */
 package com.helger.schematron.pure.preprocess;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -94,6 +97,46 @@ public final class PSPreprocessorTest
     }
   }
 
+  @Test
+  public void testParallelIsIdentical () throws Exception
+  {
+    // Sequential and without reusing abstract rule expansions
+    final PSPreprocessor aBaseline = new PSPreprocessor (PSXPathQueryBinding.getInstance ()).setParallelPatternThreshold (0)
+                                                                                            .setMemoizeRuleExpansion (false);
+    final PSPreprocessor aSequential = new PSPreprocessor (PSXPathQueryBinding.getInstance ()).setParallelPatternThreshold (0);
+    // Always parallel
+    final PSPreprocessor aParallel = new PSPreprocessor (PSXPathQueryBinding.getInstance ()).setParallelPatternThreshold (1);
+    final ExecutorService aES = Executors.newFixedThreadPool (4);
+    try
+    {
+      // Always parallel with a caller supplied executor
+      final PSPreprocessor aParallelCustom = new PSPreprocessor (PSXPathQueryBinding.getInstance ()).setParallelPatternThreshold (1)
+                                                                                                    .setExecutor (aES);
+      for (final IReadableResource aRes : SchematronTestHelper.getAllValidSchematronFiles ())
+      {
+        final PSSchema aSchema = new PSReader (aRes).readSchema ();
+
+        final PSSchema aSchema0 = aBaseline.getForcedPreprocessedSchema (aSchema);
+        assertNotNull (aSchema0);
+        final String sExpected = MicroWriter.getNodeAsString (aSchema0.getAsMicroElement ());
+
+        for (final PSPreprocessor aPreprocessor : new PSPreprocessor [] { aSequential, aParallel, aParallelCustom })
+        {
+          final PSSchema aSchema1 = aPreprocessor.getForcedPreprocessedSchema (aSchema);
+          assertNotNull (aSchema1);
+          assertEquals (aRes.getPath (), sExpected, MicroWriter.getNodeAsString (aSchema1.getAsMicroElement ()));
+        }
+        assertTrue (aSequential.getLastDurationMillis () >= 0);
+      }
+      // The caller supplied executor is not shut down by the preprocessor
+      assertFalse (aES.isShutdown ());
+    }
+    finally
+    {
+      aES.shutdownNow ();
+    }
+  }
+
   @Test
   public void testWithTitle () throws SchematronException
   {
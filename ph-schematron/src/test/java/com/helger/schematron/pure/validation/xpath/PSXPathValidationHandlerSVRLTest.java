@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.pure.validation.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.schematron.svrl.jaxb.Text;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link PSXPathValidationHandlerSVRL}.
+ *
+ * @author Philip Helger
+ */
+public final class PSXPathValidationHandlerSVRLTest
+{
+  private static final String SCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                    "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\">\n" +
+                                    "  <pattern>\n" +
+                                    "    <rule context=\"item\">\n" +
+                                    "      <assert id=\"id\" test=\"@id\">Missing ID</assert>\n" +
+                                    "      <assert id=\"currency\" test=\"@currency = 'EUR'\">Wrong currency</assert>\n" +
+                                    "    </rule>\n" +
+                                    "  </pattern>\n" +
+                                    "</schema>";
+
+  private static int _getSuppressedTextCount (final SchematronOutputType aSVRL)
+  {
+    int ret = 0;
+    for (final Text aText : aSVRL.getText ())
+      if (SVRLHelper.getAsString (aText).startsWith (SVRLHelper.SUPPRESSED_TEXT_PREFIX))
+        ret++;
+    return ret;
+  }
+
+  @Test
+  public void testCaps () throws Exception
+  {
+    final StringBuilder aSB = new StringBuilder ("<root>");
+    for (int i = 0; i < 50; ++i)
+      aSB.append ("<item currency='USD'/>");
+    aSB.append ("</root>");
+    final Document aDoc = DOMReader.readXMLDOM (aSB.toString ());
+    final SchematronResourcePure aSchematron = SchematronResourcePure.fromString (SCH, StandardCharsets.UTF_8);
+
+    // Unlimited
+    SchematronOutputType aSVRL = aSchematron.applySchematronValidationToSVRL (aDoc, null);
+    assertEquals (100, SVRLHelper.getAllFailedAssertions (aSVRL).size ());
+    assertEquals (0, _getSuppressedTextCount (aSVRL));
+
+    // Per assert
+    aSchematron.setOccurrenceCaps (3, PSXPathValidationHandlerSVRL.UNLIMITED, false);
+    aSVRL = aSchematron.applySchematronValidationToSVRL (aDoc, null);
+    assertEquals (6, SVRLHelper.getAllFailedAssertions (aSVRL).size ());
+    assertEquals (2, _getSuppressedTextCount (aSVRL));
+
+    // Total
+    aSchematron.setOccurrenceCaps (PSXPathValidationHandlerSVRL.UNLIMITED, 5, false);
+    aSVRL = aSchematron.applySchematronValidationToSVRL (aDoc, null);
+    assertEquals (5, SVRLHelper.getAllFailedAssertions (aSVRL).size ());
+    assertEquals (2, _getSuppressedTextCount (aSVRL));
+
+    // Skip evaluation
+    aSchematron.setOccurrenceCaps (1, PSXPathValidationHandlerSVRL.UNLIMITED, true);
+    aSVRL = aSchematron.applySchematronValidationToSVRL (aDoc, null);
+    assertEquals (2, SVRLHelper.getAllFailedAssertions (aSVRL).size ());
+    assertTrue (SVRLHelper.getAsString (aSVRL.getText ().get (0)).contains ("further evaluation skipped"));
+  }
+
+  @Test
+  public void testSuppressedTextOrder () throws Exception
+  {
+    final StringBuilder aSB = new StringBuilder ("<root>");
+    for (int i = 0; i < 10; ++i)
+      aSB.append ("<item currency='USD'/>");
+    aSB.append ("</root>");
+    final Document aDoc = DOMReader.readXMLDOM (aSB.toString ());
+    final SchematronResourcePure aSchematron = SchematronResourcePure.fromString (SCH, StandardCharsets.UTF_8);
+    aSchematron.setOccurrenceCaps (1, PSXPathValidationHandlerSVRL.UNLIMITED, false);
+
+    // Run multiple times - the order must always be the schema order
+    for (int i = 0; i < 5; ++i)
+    {
+      final SchematronOutputType aSVRL = aSchematron.applySchematronValidationToSVRL (aDoc, null);
+      assertEquals (2, _getSuppressedTextCount (aSVRL));
+      assertTrue (SVRLHelper.getAsString (aSVRL.getText ().get (0)).contains ("'id'"));
+      assertTrue (SVRLHelper.getAsString (aSVRL.getText ().get (1)).contains ("'currency'"));
+    }
+  }
+}
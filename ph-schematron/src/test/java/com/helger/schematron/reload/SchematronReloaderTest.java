@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.reload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.commons.io.file.FileOperations;
+import com.helger.commons.io.file.SimpleFileIO;
+import com.helger.commons.io.resource.FileSystemResource;
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.pure.bound.PSBoundSchemaCache;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link SchematronReloader}.
+ *
+ * @author Philip Helger
+ */
+public final class SchematronReloaderTest
+{
+  private static void _writeInclude (@Nonnull final File aFile, @Nonnull final String sTest)
+  {
+    SimpleFileIO.writeFile (aFile,
+                            "<rule xmlns=\"http://purl.oclc.org/dsdl/schematron\" context=\"item\">" +
+                                   "<assert test=\"" +
+                                   sTest +
+                                   "\">Failed</assert>" +
+                                   "</rule>",
+                            StandardCharsets.UTF_8);
+  }
+
+  @Nonnull
+  private static File _createSchematron (@Nonnull final String sDirName)
+  {
+    final File aDir = new File ("target/" + sDirName);
+    FileOperations.createDirRecursiveIfNotExisting (aDir);
+    final File aSCH = new File (aDir, "main.sch");
+    SimpleFileIO.writeFile (aSCH,
+                            "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\">" +
+                                  "<pattern><include href=\"rule.sch\"/></pattern>" +
+                                  "</schema>",
+                            StandardCharsets.UTF_8);
+    _writeInclude (new File (aDir, "rule.sch"), "@id");
+    return aSCH;
+  }
+
+  @Test
+  public void testReloadChangedInclude () throws Exception
+  {
+    final File aSCH = _createSchematron ("reloader-test");
+    final File aInclude = new File (aSCH.getParentFile (), "rule.sch");
+
+    final Document aDoc = DOMReader.readXMLDOM ("<root><item/><item id='a'/></root>");
+    final SchematronResourcePure aSchematron = new SchematronResourcePure (new FileSystemResource (aSCH));
+    assertEquals (1, SVRLHelper.getAllFailedAssertions (aSchematron.applySchematronValidationToSVRL (aDoc, null)).size ());
+
+    assertEquals (2, SchematronReloader.getAllDependentFiles (new FileSystemResource (aSCH)).size ());
+
+    try (final SchematronReloader aReloader = new SchematronReloader (PSBoundSchemaCache.getInstance (),
+                                                                      SchematronReloader.DEFAULT_POLLING_INTERVAL,
+                                                                      false))
+    {
+      // Remember only
+      assertEquals (0, aReloader.checkForChanges ());
+      assertEquals (0, aReloader.checkForChanges ());
+
+      // Change the include
+      _writeInclude (aInclude, "false()");
+      aInclude.setLastModified (aInclude.lastModified () + 2000);
+      assertEquals (1, aReloader.checkForChanges ());
+      assertEquals (1, aReloader.getReloadCount ());
+
+      // The same resource object uses the new version
+      assertEquals (2,
+                    SVRLHelper.getAllFailedAssertions (aSchematron.applySchematronValidationToSVRL (aDoc, null)).size ());
+    }
+    finally
+    {
+      PSBoundSchemaCache.getInstance ().clearCache ();
+    }
+  }
+
+  @Test
+  public void testBackgroundReload () throws Exception
+  {
+    final File aSCH = _createSchematron ("reloader-test-background");
+    final File aInclude = new File (aSCH.getParentFile (), "rule.sch");
+
+    final Document aDoc = DOMReader.readXMLDOM ("<root><item/><item id='a'/></root>");
+    final SchematronResourcePure aSchematron = new SchematronResourcePure (new FileSystemResource (aSCH));
+    assertEquals (1, SVRLHelper.getAllFailedAssertions (aSchematron.applySchematronValidationToSVRL (aDoc, null)).size ());
+
+    try (final SchematronReloader aReloader = new SchematronReloader (PSBoundSchemaCache.getInstance (),
+                                                                      Duration.ofMillis (50),
+                                                                      true))
+    {
+      assertFalse (aReloader.isStarted ());
+      aReloader.start ();
+      assertTrue (aReloader.isStarted ());
+      // Starting twice has no effect
+      aReloader.start ();
+
+      // Wait until the initial check remembered the files
+      Thread.sleep (500);
+
+      _writeInclude (aInclude, "false()");
+      aInclude.setLastModified (aInclude.lastModified () + 2000);
+
+      // Detected by the watch service or by polling
+      for (int i = 0; i < 200 && aReloader.getReloadCount () == 0; ++i)
+        Thread.sleep (50);
+      assertEquals (1, aReloader.getReloadCount ());
+      assertEquals (2,
+                    SVRLHelper.getAllFailedAssertions (aSchematron.applySchematronValidationToSVRL (aDoc, null)).size ());
+
+      aReloader.close ();
+      assertFalse (aReloader.isStarted ());
+
+      // No more reloads after closing
+      _writeInclude (aInclude, "@id");
+      aInclude.setLastModified (aInclude.lastModified () + 2000);
+      Thread.sleep (500);
+      assertEquals (1, aReloader.getReloadCount ());
+    }
+    finally
+    {
+      PSBoundSchemaCache.getInstance ().clearCache ();
+    }
+  }
+
+  @Test
+  public void testNoImplicitRebindAfterClear () throws Exception
+  {
+    final File aSCH = _createSchematron ("reloader-test-clear");
+    final Document aDoc = DOMReader.readXMLDOM ("<root><item/><item id='a'/></root>");
+    final SchematronResourcePure aSchematron = new SchematronResourcePure (new FileSystemResource (aSCH));
+    final PSBoundSchemaCache aCache = PSBoundSchemaCache.getInstance ();
+    try
+    {
+      assertEquals (1,
+                    SVRLHelper.getAllFailedAssertions (aSchematron.applySchematronValidationToSVRL (aDoc, null)).size ());
+      assertEquals (1, aCache.getAllCachedKeys ().size ());
+
+      // The resource keeps its bound schema, but does not put it back
+      aCache.clearCache ();
+      assertEquals (1,
+                    SVRLHelper.getAllFailedAssertions (aSchematron.applySchematronValidationToSVRL (aDoc, null)).size ());
+      assertTrue (aCache.getAllCachedKeys ().isEmpty ());
+    }
+    finally
+    {
+      aCache.clearCache ();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.resolve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.helger.commons.io.file.FileOperations;
+import com.helger.commons.io.file.SimpleFileIO;
+import com.helger.commons.string.StringHelper;
+
+/**
+ * Test class for class {@link FileFingerprint}.
+ *
+ * @author Philip Helger
+ */
+public final class FileFingerprintTest
+{
+  @Test
+  public void testBasic ()
+  {
+    final FileFingerprint aMissing = FileFingerprint.of (new File ("target/does-not-exist.xml"));
+    assertFalse (aMissing.isExisting ());
+    assertEquals (0, aMissing.getLength ());
+
+    final File aDir = new File ("target/fingerprint-test");
+    FileOperations.createDirRecursiveIfNotExisting (aDir);
+    final File aFile1 = new File (aDir, "a.txt");
+    final File aFile2 = new File (aDir, "b.txt");
+    try
+    {
+      // These two states had the same combined fingerprint
+      // "lastModified * 31 + length" before
+      SimpleFileIO.writeFile (aFile1, StringHelper.getRepeated ('x', 31_000), StandardCharsets.ISO_8859_1);
+      assertTrue (aFile1.setLastModified (1_000_000));
+      SimpleFileIO.writeFile (aFile2, "", StandardCharsets.ISO_8859_1);
+      assertTrue (aFile2.setLastModified (1_001_000));
+
+      final FileFingerprint a1 = FileFingerprint.of (aFile1);
+      final FileFingerprint a2 = FileFingerprint.of (aFile2);
+      assertTrue (a1.isExisting ());
+      assertTrue (a2.isExisting ());
+      assertEquals (a1.getLastModified () * 31 + a1.getLength (), a2.getLastModified () * 31 + a2.getLength ());
+      assertNotEquals (a1, a2);
+      assertNotEquals (a1.getAsString (), a2.getAsString ());
+
+      // Unchanged
+      assertEquals (a1, FileFingerprint.of (aFile1));
+    }
+    finally
+    {
+      FileOperations.deleteDirRecursive (aDir);
+    }
+  }
+}
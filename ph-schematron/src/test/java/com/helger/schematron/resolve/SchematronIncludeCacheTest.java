@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.resolve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.io.resource.IReadableResource;
+import com.helger.xml.microdom.IMicroDocument;
+
+/**
+ * Test class for class {@link SchematronIncludeCache}.
+ *
+ * @author Philip Helger
+ */
+public final class SchematronIncludeCacheTest
+{
+  @Test
+  public void testBasic ()
+  {
+    SchematronIncludeCache.clearCache ();
+    try
+    {
+      final IReadableResource aRes = new ClassPathResource ("test-sch/valid01.sch");
+      final IMicroDocument aDoc1 = SchematronIncludeCache.readIncludedDocument (aRes, null);
+      assertNotNull (aDoc1);
+      assertEquals (0, SchematronIncludeCache.getHitCount ());
+      assertEquals (1, SchematronIncludeCache.getMissCount ());
+      assertEquals (1, SchematronIncludeCache.getCacheSize ());
+
+      final IMicroDocument aDoc2 = SchematronIncludeCache.readIncludedDocument (aRes, null);
+      assertNotNull (aDoc2);
+      assertEquals (1, SchematronIncludeCache.getHitCount ());
+
+      // Never the same object
+      assertNotSame (aDoc1, aDoc2);
+      assertTrue (aDoc1.isEqualContent (aDoc2));
+
+      // Modifying a returned document must not modify the cache
+      aDoc2.getDocumentElement ().removeAllChildren ();
+      final IMicroDocument aDoc3 = SchematronIncludeCache.readIncludedDocument (aRes, null);
+      assertTrue (aDoc1.isEqualContent (aDoc3));
+    }
+    finally
+    {
+      SchematronIncludeCache.clearCache ();
+    }
+  }
+}
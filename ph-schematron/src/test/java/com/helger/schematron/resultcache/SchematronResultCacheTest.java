@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.resultcache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.io.resource.inmemory.ReadableResourceByteArray;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.pure.validation.LoggingPSValidationHandler;
+import com.helger.schematron.pure.validation.xpath.PSXPathValidationHandlerSVRL;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.schematron.xslt.SCHTransformerCustomizer.EVariant;
+import com.helger.schematron.xslt.SchematronResourceSCH;
+import com.helger.xml.transform.DefaultTransformURIResolver;
+
+/**
+ * Test class for class {@link SchematronResultCache}.
+ *
+ * @author Philip Helger
+ */
+public final class SchematronResultCacheTest
+{
+  private static final String SCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                    "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\">\n" +
+                                    "  <pattern>\n" +
+                                    "    <rule context=\"item\">\n" +
+                                    "      <assert test=\"@id\">Missing ID</assert>\n" +
+                                    "    </rule>\n" +
+                                    "  </pattern>\n" +
+                                    "</schema>";
+
+  @Test
+  public void testBasic () throws Exception
+  {
+    final SchematronResourcePure aSchematron = SchematronResourcePure.fromString (SCH, StandardCharsets.UTF_8);
+    final SchematronResultCache aCache = new SchematronResultCache (2);
+    final byte [] aXML1 = "<root><item/><item/></root>".getBytes (StandardCharsets.UTF_8);
+    final byte [] aXML2 = "<root><item id='a'/><item/></root>".getBytes (StandardCharsets.UTF_8);
+
+    final SchematronOutputType aSVRL1 = aCache.applySchematronValidationToSVRL (aSchematron, aXML1, null);
+    assertNotNull (aSVRL1);
+    assertEquals (2, SVRLHelper.getAllFailedAssertions (aSVRL1).size ());
+    assertEquals (0, aCache.getHitCount ());
+    assertEquals (1, aCache.getMissCount ());
+
+    // Duplicate as byte array
+    final SchematronOutputType aSVRL1b = aCache.applySchematronValidationToSVRL (aSchematron, aXML1.clone (), null);
+    assertNotSame (aSVRL1, aSVRL1b);
+    assertEquals (aSVRL1, aSVRL1b);
+    assertEquals (1, aCache.getHitCount ());
+
+    // Duplicate as stream
+    final SchematronOutputType aSVRL1c = aCache.applySchematronValidationToSVRL (aSchematron,
+                                                                                new ReadableResourceByteArray (aXML1),
+                                                                                null);
+    assertEquals (aSVRL1, aSVRL1c);
+    assertEquals (2, aCache.getHitCount ());
+
+    // Different content
+    final SchematronOutputType aSVRL2 = aCache.applySchematronValidationToSVRL (aSchematron, aXML2, null);
+    assertEquals (1, SVRLHelper.getAllFailedAssertions (aSVRL2).size ());
+    assertEquals (2, aCache.getMissCount ());
+
+    // Different base URI
+    aCache.applySchematronValidationToSVRL (aSchematron, aXML2, "urn:other");
+    assertEquals (3, aCache.getMissCount ());
+    assertEquals (2, aCache.getCacheSize ());
+
+    aCache.clearCache ();
+    assertEquals (0, aCache.getCacheSize ());
+    assertEquals (0, aCache.getHitCount ());
+  }
+
+  @Test
+  public void testPureConfiguration () throws Exception
+  {
+    final SchematronResultCache aCache = new SchematronResultCache ();
+    final byte [] aXML = "<root><item/><item/><item/></root>".getBytes (StandardCharsets.UTF_8);
+
+    final SchematronResourcePure aSchematron = SchematronResourcePure.fromString (SCH, StandardCharsets.UTF_8);
+    final SchematronOutputType aSVRL1 = aCache.applySchematronValidationToSVRL (aSchematron, aXML, null);
+    assertEquals (3, SVRLHelper.getAllFailedAssertions (aSVRL1).size ());
+    assertEquals (1, aCache.getMissCount ());
+
+    // Changed caps
+    aSchematron.setOccurrenceCaps (PSXPathValidationHandlerSVRL.UNLIMITED, 1, false);
+    final SchematronOutputType aSVRL2 = aCache.applySchematronValidationToSVRL (aSchematron, aXML, null);
+    assertEquals (1, SVRLHelper.getAllFailedAssertions (aSVRL2).size ());
+    assertEquals (0, aCache.getHitCount ());
+    assertEquals (2, aCache.getMissCount ());
+
+    // Same content but a different resource
+    final SchematronResourcePure aSchematron2 = SchematronResourcePure.fromString (SCH.replace ("@id", "@name"),
+                                                                                   StandardCharsets.UTF_8);
+    aSchematron2.setOccurrenceCaps (PSXPathValidationHandlerSVRL.UNLIMITED, 1, false);
+    aCache.applySchematronValidationToSVRL (aSchematron2, aXML, null);
+    assertEquals (0, aCache.getHitCount ());
+    assertEquals (3, aCache.getMissCount ());
+
+    // Custom validation handler - never cached
+    final SchematronResourcePure aSchematron3 = SchematronResourcePure.fromString (SCH, StandardCharsets.UTF_8);
+    aSchematron3.setCustomValidationHandler (new LoggingPSValidationHandler ());
+    assertNull (aSchematron3.getResultFingerprint ());
+    assertNotNull (aCache.applySchematronValidationToSVRL (aSchematron3, aXML, null));
+    assertNotNull (aCache.applySchematronValidationToSVRL (aSchematron3, aXML, null));
+    assertEquals (0, aCache.getHitCount ());
+    assertEquals (3, aCache.getMissCount ());
+  }
+
+  @Test
+  public void testXSLTVariants () throws Exception
+  {
+    final SchematronResultCache aCache = new SchematronResultCache ();
+    final byte [] aXML = StreamHelper.getAllBytes (new ClassPathResource ("test-xml/valid01.xml"));
+
+    final SchematronResourceSCH aFull = SchematronResourceSCH.fromClassPath ("test-sch/valid01.sch");
+    final SchematronResourceSCH aFailuresOnly = SchematronResourceSCH.fromClassPath ("test-sch/valid01.sch");
+    aFailuresOnly.setVariant (EVariant.FAILURES_ONLY);
+    assertNotEquals (aFull.getResultFingerprint (), aFailuresOnly.getResultFingerprint ());
+
+    final SchematronOutputType aSVRLFull = aCache.applySchematronValidationToSVRL (aFull, aXML, null);
+    final SchematronOutputType aSVRLFailuresOnly = aCache.applySchematronValidationToSVRL (aFailuresOnly, aXML, null);
+    assertNotEquals (aSVRLFull, aSVRLFailuresOnly);
+    assertEquals (0, aCache.getHitCount ());
+    assertEquals (2, aCache.getMissCount ());
+
+    // Equally configured resources share the results
+    final SchematronResourceSCH aFull2 = SchematronResourceSCH.fromClassPath ("test-sch/valid01.sch");
+    assertEquals (aSVRLFull, aCache.applySchematronValidationToSVRL (aFull2, aXML, null));
+    assertEquals (1, aCache.getHitCount ());
+
+    // Different runtime parameter
+    aFull2.parameters ().put ("foo", "bar");
+    aCache.applySchematronValidationToSVRL (aFull2, aXML, null);
+    assertEquals (1, aCache.getHitCount ());
+    assertEquals (3, aCache.getMissCount ());
+
+    // A custom URI resolver disables caching
+    assertNotNull (aFull.getResultFingerprint ());
+    aFull.setURIResolver (new DefaultTransformURIResolver ());
+    assertNull (aFull.getResultFingerprint ());
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.svrl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.io.resource.IReadableResource;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.schematron.testfiles.SchematronTestHelper;
+import com.helger.schematron.xslt.SchematronResourceSCH;
+
+/**
+ * Test class for class {@link SVRLContentHandler}.
+ *
+ * @author Philip Helger
+ */
+public final class SVRLContentHandlerTest
+{
+  @Test
+  public void testReadAllValidSVRLFiles () throws Exception
+  {
+    final SAXParserFactory aSPF = SAXParserFactory.newInstance ();
+    aSPF.setNamespaceAware (true);
+
+    for (final IReadableResource aRes : SchematronTestHelper.getAllValidSVRLFiles ())
+    {
+      final SVRLContentHandler aHandler = new SVRLContentHandler ();
+      try (final InputStream aIS = aRes.getInputStream ())
+      {
+        aSPF.newSAXParser ().parse (aIS, aHandler);
+      }
+      catch (final SAXException ex)
+      {
+        // Rich text etc. is handled by the JAXB fallback
+        assertTrue (aRes.getPath (), SVRLContentHandler.isUnsupportedContent (ex));
+        continue;
+      }
+      final SchematronOutputType aExpected = new SVRLMarshaller ().read (aRes);
+      assertNotNull (aRes.getPath (), aExpected);
+      assertEquals (aRes.getPath (), aExpected, aHandler.getSchematronOutput ());
+    }
+  }
+
+  @Test
+  public void testXSLT () throws Exception
+  {
+    final SchematronResourceSCH aSch = SchematronResourceSCH.fromClassPath ("test-sch/valid01.sch");
+    final SchematronOutputType aExpected = aSch.applySchematronValidationToSVRL (new ClassPathResource ("test-xml/valid01.xml"));
+    assertNotNull (aExpected);
+
+    aSch.setBuildSVRLDirectly (true);
+    final SchematronOutputType aDirect = aSch.applySchematronValidationToSVRL (new ClassPathResource ("test-xml/valid01.xml"));
+    assertEquals (aExpected, aDirect);
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPathFunction;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.xml.xpath.MapBasedXPathFunctionResolver;
+
+import net.sf.saxon.om.Sequence;
+
+/**
+ * Test class for class {@link XQueryAsXPathFunctionConverter}.
+ *
+ * @author Philip Helger
+ */
+public final class XQueryAsXPathFunctionConverterTest
+{
+  @Test
+  public void testConcurrentCalls () throws Exception
+  {
+    final XQueryAsXPathFunctionConverter aConverter = new XQueryAsXPathFunctionConverter ().setResultCacheMaxSize (100);
+    final MapBasedXPathFunctionResolver aFunctionResolver = aConverter.loadXQuery (ClassPathResource.getInputStream ("xquery/functx-1.0-nodoc-2007-01.xq"));
+    final XPathFunction aFunction = aFunctionResolver.resolveFunction (new QName ("http://www.functx.com",
+                                                                                  "capitalize-first"),
+                                                                       1);
+    assertNotNull (aFunction);
+
+    final ExecutorService aES = Executors.newFixedThreadPool (4);
+    final ICommonsList <Future <String>> aFutures = new CommonsArrayList <> ();
+    for (int i = 0; i < 200; ++i)
+    {
+      final String sArg = "value" + (i % 10);
+      aFutures.add (aES.submit ( () -> ((Sequence) aFunction.evaluate (new CommonsArrayList <> (sArg))).head ()
+                                                                                                     .getStringValue ()));
+    }
+    aES.shutdown ();
+    assertTrue (aES.awaitTermination (1, TimeUnit.MINUTES));
+
+    for (int i = 0; i < aFutures.size (); ++i)
+      assertEquals ("Value" + (i % 10), aFutures.get (i).get ());
+
+    final XQueryFunctionResultCache aCache = ((XPathFunctionFromUserFunction) aFunction).getResultCache ();
+    assertNotNull (aCache);
+    assertEquals (10, aCache.getCacheSize ());
+    assertEquals (200, aCache.getHitCount () + aCache.getMissCount ());
+  }
+
+  @Test
+  public void testSharedModuleController () throws Exception
+  {
+    final XQueryAsXPathFunctionConverter aConverter = new XQueryAsXPathFunctionConverter ();
+    final MapBasedXPathFunctionResolver aFunctionResolver = aConverter.loadXQuery (ClassPathResource.getInputStream ("xquery/functx-1.0-nodoc-2007-01.xq"));
+    final XPathFunctionFromUserFunction aFunction1 = (XPathFunctionFromUserFunction) aFunctionResolver.resolveFunction (new QName ("http://www.functx.com",
+                                                                                                                                   "capitalize-first"),
+                                                                                                                        1);
+    final XPathFunctionFromUserFunction aFunction2 = (XPathFunctionFromUserFunction) aFunctionResolver.resolveFunction (new QName ("http://www.functx.com",
+                                                                                                                                   "trim"),
+                                                                                                                        1);
+    assertNotNull (aFunction1);
+    assertNotNull (aFunction2);
+
+    // All functions of a module share the same controller
+    final XQueryModuleController aModuleController = aFunction1.getModuleController ();
+    assertNotNull (aModuleController);
+    assertSame (aModuleController, aFunction2.getModuleController ());
+
+    final int nThreads = 4;
+    final ExecutorService aES = Executors.newFixedThreadPool (nThreads);
+    final ICommonsList <Future <String>> aFutures = new CommonsArrayList <> ();
+    for (int i = 0; i < 100; ++i)
+    {
+      final String sArg = "  value" + i + " ";
+      aFutures.add (aES.submit ( () -> {
+        final String sTrimmed = ((Sequence) aFunction2.evaluate (new CommonsArrayList <> (sArg))).head ()
+                                                                                                 .getStringValue ();
+        return ((Sequence) aFunction1.evaluate (new CommonsArrayList <> (sTrimmed))).head ().getStringValue ();
+      }));
+    }
+    aES.shutdown ();
+    assertTrue (aES.awaitTermination (1, TimeUnit.MINUTES));
+
+    for (int i = 0; i < aFutures.size (); ++i)
+      assertEquals ("Value" + i, aFutures.get (i).get ());
+
+    // At most one controller per thread for both functions
+    assertTrue (aModuleController.getCreatedControllerCount () <= nThreads);
+  }
+}
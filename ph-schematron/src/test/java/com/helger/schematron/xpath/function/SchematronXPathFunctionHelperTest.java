@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xpath.function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.commons.io.resource.inmemory.ReadableResourceString;
+import com.helger.schematron.pure.SchematronResourcePure;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.schematron.xslt.SchematronResourceSCH;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link SchematronXPathFunctionHelper}.
+ *
+ * @author Philip Helger
+ */
+public final class SchematronXPathFunctionHelperTest
+{
+  @Test
+  public void testChecksums ()
+  {
+    assertTrue (SchematronXPathFunctionHelper.isValidIBAN ("DE89370400440532013000"));
+    assertTrue (SchematronXPathFunctionHelper.isValidIBAN ("GB82WEST12345698765432"));
+    assertFalse (SchematronXPathFunctionHelper.isValidIBAN ("DE89370400440532013001"));
+    assertFalse (SchematronXPathFunctionHelper.isValidIBAN ("DE89 3704 0044 0532 0130 00"));
+    assertFalse (SchematronXPathFunctionHelper.isValidIBAN (null));
+
+    assertTrue (SchematronXPathFunctionHelper.isValidGTIN ("4006381333931"));
+    assertTrue (SchematronXPathFunctionHelper.isValidGTIN ("96385074"));
+    assertFalse (SchematronXPathFunctionHelper.isValidGTIN ("4006381333932"));
+    assertFalse (SchematronXPathFunctionHelper.isValidGTIN ("400638133393"));
+
+    assertTrue (SchematronXPathFunctionHelper.isValidLuhn ("79927398713"));
+    assertFalse (SchematronXPathFunctionHelper.isValidLuhn ("79927398710"));
+
+    assertTrue (SchematronXPathFunctionHelper.isValidISO6346 ("CSQU3054383"));
+    assertFalse (SchematronXPathFunctionHelper.isValidISO6346 ("CSQU3054384"));
+    assertFalse (SchematronXPathFunctionHelper.isValidISO6346 ("CSQA3054383"));
+
+    assertTrue (SchematronXPathFunctionHelper.isValidISODate ("2020-02-29"));
+    assertFalse (SchematronXPathFunctionHelper.isValidISODate ("2019-02-29"));
+    assertFalse (SchematronXPathFunctionHelper.isValidISODate ("2019-2-28"));
+    assertEquals (Long.valueOf (366), SchematronXPathFunctionHelper.getDaysBetween ("2020-01-01", "2021-01-01"));
+    assertNull (SchematronXPathFunctionHelper.getDaysBetween ("2020-01-01", "x"));
+  }
+
+  @Nonnull
+  private static String _getSchematron ()
+  {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+           "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\" queryBinding=\"xslt2\">\n" +
+           "  <ns prefix=\"phf\" uri=\"" +
+           SchematronDefaultXPathFunctionProviderSPI.NAMESPACE_URI +
+           "\"/>\n" +
+           "  <pattern>\n" +
+           "    <rule context=\"iban\">\n" +
+           "      <assert test=\"phf:is-iban(.)\">Invalid IBAN</assert>\n" +
+           "    </rule>\n" +
+           "    <rule context=\"period\">\n" +
+           "      <assert test=\"phf:days-between(@start, @end) &gt;= 0\">Invalid period</assert>\n" +
+           "    </rule>\n" +
+           "  </pattern>\n" +
+           "</schema>";
+  }
+
+  @Nonnull
+  private static Document _getTestDocument ()
+  {
+    return DOMReader.readXMLDOM ("<?xml version='1.0'?><root>" +
+                                 "<iban>DE89370400440532013000</iban><iban>DE89370400440532013001</iban>" +
+                                 "<period start='2020-01-01' end='2020-12-31'/><period start='2020-01-01' end='2019-12-31'/>" +
+                                 "</root>");
+  }
+
+  @Test
+  public void testPure () throws Exception
+  {
+    final SchematronOutputType aOT = SchematronResourcePure.fromString (_getSchematron (), StandardCharsets.UTF_8)
+                                                           .applySchematronValidationToSVRL (_getTestDocument (), null);
+    assertEquals (2, SVRLHelper.getAllFailedAssertions (aOT).size ());
+  }
+
+  @Test
+  public void testSCH () throws Exception
+  {
+    // The functions are registered in the Saxon configuration of the
+    // transformer factory used for the XSLT based engines
+    final SchematronResourceSCH aRes = new SchematronResourceSCH (new ReadableResourceString (_getSchematron (),
+                                                                                               StandardCharsets.UTF_8));
+    aRes.setUseCache (false);
+    assertTrue (aRes.isValidSchematron ());
+    final SchematronOutputType aOT = aRes.applySchematronValidationToSVRL (_getTestDocument (), null);
+    assertEquals (2, SVRLHelper.getAllFailedAssertions (aOT).size ());
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xslt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.commons.io.resource.inmemory.ReadableResourceString;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.jaxb.ActivePattern;
+import com.helger.schematron.svrl.jaxb.FiredRule;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.schematron.xslt.SCHTransformerCustomizer.EVariant;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link SCHTransformerCustomizer}.
+ *
+ * @author Philip Helger
+ */
+public final class SCHTransformerCustomizerTest
+{
+  private static final String SCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                    "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\" queryBinding=\"xslt2\">\n" +
+                                    "  <pattern>\n" +
+                                    "    <rule context=\"item\">\n" +
+                                    "      <assert test=\"@id\">Missing ID</assert>\n" +
+                                    "    </rule>\n" +
+                                    "  </pattern>\n" +
+                                    "</schema>";
+
+  @Nonnull
+  private static SchematronResourceSCH _create (@Nonnull final EVariant eVariant)
+  {
+    final SchematronResourceSCH ret = new SchematronResourceSCH (new ReadableResourceString (SCH,
+                                                                                             StandardCharsets.UTF_8));
+    ret.setVariant (eVariant);
+    return ret;
+  }
+
+  private static int _countStructure (@Nonnull final SchematronOutputType aSVRL)
+  {
+    int ret = 0;
+    for (final Object aObj : aSVRL.getActivePatternAndFiredRuleAndFailedAssert ())
+      if (aObj instanceof ActivePattern || aObj instanceof FiredRule)
+        ret++;
+    return ret;
+  }
+
+  @Test
+  public void testVariants () throws Exception
+  {
+    final Document aDoc = DOMReader.readXMLDOM ("<root><item/><item id='a'/><item/></root>");
+
+    final SchematronOutputType aFull = _create (EVariant.FULL_SVRL).applySchematronValidationToSVRL (aDoc, null);
+    assertNotNull (aFull);
+    assertEquals (2, SVRLHelper.getAllFailedAssertions (aFull).size ());
+    assertTrue (_countStructure (aFull) > 0);
+
+    final SchematronOutputType aFailuresOnly = _create (EVariant.FAILURES_ONLY).applySchematronValidationToSVRL (aDoc,
+                                                                                                               null);
+    assertNotNull (aFailuresOnly);
+    assertEquals (2, SVRLHelper.getAllFailedAssertions (aFailuresOnly).size ());
+    assertEquals (0, _countStructure (aFailuresOnly));
+
+    final SchematronResourceSCH aStop = _create (EVariant.STOP_AT_FIRST_ERROR);
+    final SchematronOutputType aFirstError = aStop.applySchematronValidationToSVRL (aDoc, null);
+    assertNotNull (aFirstError);
+    assertEquals (1, SVRLHelper.getAllFailedAssertions (aFirstError).size ());
+    assertTrue (aStop.getSchematronValidity (aDoc, null).isInvalid ());
+    assertTrue (aStop.getSchematronValidity (DOMReader.readXMLDOM ("<root><item id='a'/></root>"), null).isValid ());
+  }
+
+  @Test
+  public void testRemovePatternsWithoutResults () throws Exception
+  {
+    final String sXSL = "http://www.w3.org/1999/XSL/Transform";
+    final Document aXSLT = DOMReader.readXMLDOM ("<xsl:stylesheet xmlns:xsl='" +
+                                                 sXSL +
+                                                 "' xmlns:svrl='http://purl.oclc.org/dsdl/svrl' version='2.0'>" +
+                                                 "<xsl:template match='/'><svrl:schematron-output>" +
+                                                 "<xsl:apply-templates select='/' mode='M1'/>" +
+                                                 "<xsl:apply-templates select='/' mode='M2'/>" +
+                                                 "</svrl:schematron-output></xsl:template>" +
+                                                 "<xsl:template match='item' priority='1000' mode='M1'>" +
+                                                 "<xsl:choose><xsl:when test='@id'/><xsl:otherwise><svrl:failed-assert/></xsl:otherwise></xsl:choose>" +
+                                                 "<xsl:apply-templates select='*' mode='M1'/></xsl:template>" +
+                                                 "<xsl:template match='text()' priority='-1' mode='M1'/>" +
+                                                 "<xsl:template match='item' priority='1000' mode='M2'>" +
+                                                 "<xsl:apply-templates select='*' mode='M2'/></xsl:template>" +
+                                                 "<xsl:template match='text()' priority='-1' mode='M2'/>" +
+                                                 "</xsl:stylesheet>");
+    assertEquals (1, SchematronProviderXSLTFromSCH.removePatternsWithoutResults (aXSLT));
+    assertEquals (3, aXSLT.getElementsByTagNameNS (sXSL, "template").getLength ());
+    assertEquals (2, aXSLT.getElementsByTagNameNS (sXSL, "apply-templates").getLength ());
+    // Nothing left to remove
+    assertEquals (0, SchematronProviderXSLTFromSCH.removePatternsWithoutResults (aXSLT));
+  }
+}
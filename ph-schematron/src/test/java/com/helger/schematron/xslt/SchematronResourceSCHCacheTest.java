@@ -16,8 +16,12 @@
  */
 package com.helger.schematron.xslt;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Locale;
@@ -29,6 +33,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
 import com.helger.commons.concurrent.ExecutorServiceHelper;
 import com.helger.commons.error.IError;
 import com.helger.commons.error.list.IErrorList;
@@ -112,6 +118,49 @@ public final class SchematronResourceSCHCacheTest
                  " microsecs/run");
   }
 
+  @Test
+  public void testParameters ()
+  {
+    final IReadableResource aRes = new ClassPathResource (VALID_SCHEMATRON);
+
+    // Compile time parameter
+    final ICommonsOrderedMap <String, Object> aParams = new CommonsLinkedHashMap <> ();
+    aParams.put ("generate-paths", "true");
+    aParams.put ("tenant", "a");
+    final SchematronProviderXSLTFromSCH aProvider1 = SchematronResourceSCHCache.getSchematronXSLTProvider (aRes,
+                                                                                                          new SCHTransformerCustomizer ().setParameters (aParams));
+    assertNotNull (aProvider1);
+
+    // Only a runtime parameter changed - same compiled XSLT
+    aParams.put ("tenant", "b");
+    assertSame (aProvider1,
+                SchematronResourceSCHCache.getSchematronXSLTProvider (aRes,
+                                                                      new SCHTransformerCustomizer ().setParameters (aParams)));
+
+    // Compile time parameter changed
+    aParams.put ("generate-paths", "false");
+    final SchematronProviderXSLTFromSCH aProvider2 = SchematronResourceSCHCache.getSchematronXSLTProvider (aRes,
+                                                                                                          new SCHTransformerCustomizer ().setParameters (aParams));
+    assertNotNull (aProvider2);
+    assertNotSame (aProvider1, aProvider2);
+
+    // Value without stable representation
+    aParams.put ("generate-paths", new Object ());
+    assertNull (new SCHTransformerCustomizer ().setParameters (aParams).getParametersCacheKey ());
+    final String sForcedKey = new SCHTransformerCustomizer ().setParameters (aParams)
+                                                             .setForceCacheResult (true)
+                                                             .getParametersCacheKey ();
+    assertNotNull (sForcedKey);
+
+    // With forced caching, all values without stable representation share
+    // the same key
+    aParams.put ("generate-paths", new Object ());
+    assertEquals (sForcedKey,
+                  new SCHTransformerCustomizer ().setParameters (aParams)
+                                                 .setForceCacheResult (true)
+                                                 .getParametersCacheKey ());
+  }
+
   @Test
   public void testInvalidSchematron ()
   {
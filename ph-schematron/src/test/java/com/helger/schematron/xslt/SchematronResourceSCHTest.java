@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xslt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.io.resource.inmemory.ReadableResourceString;
+import com.helger.schematron.svrl.SVRLHelper;
+import com.helger.schematron.svrl.SVRLMarshaller;
+import com.helger.schematron.svrl.jaxb.SchematronOutputType;
+import com.helger.xml.serialize.read.DOMReader;
+import com.helger.xml.serialize.read.DOMReaderSettings;
+
+/**
+ * Test class for class {@link SchematronResourceSCH}.
+ *
+ * @author Philip Helger
+ */
+public final class SchematronResourceSCHTest
+{
+  private static final String SCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                    "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\" queryBinding=\"xslt2\">\n" +
+                                    "  <pattern>\n" +
+                                    "    <rule context=\"item\">\n" +
+                                    "      <assert test=\"@id\">Missing ID</assert>\n" +
+                                    "    </rule>\n" +
+                                    "  </pattern>\n" +
+                                    "</schema>";
+  private static final String XML = "<root><item/><item id='a'/><item/></root>";
+
+  @Nonnull
+  private static SchematronResourceSCH _create (final boolean bUseNativeTree)
+  {
+    final SchematronResourceSCH ret = new SchematronResourceSCH (new ReadableResourceString (SCH,
+                                                                                             StandardCharsets.UTF_8));
+    ret.setUseNativeTree (bUseNativeTree);
+    return ret;
+  }
+
+  @Test
+  public void testNativeTree () throws Exception
+  {
+    final byte [] aXML = XML.getBytes (StandardCharsets.UTF_8);
+    final SchematronOutputType aDOM = _create (false).applySchematronValidationToSVRL (DOMReader.readXMLDOM (XML),
+                                                                                        null);
+    assertNotNull (aDOM);
+    // Compare the serialized SVRL, because the lazy JAXB list getters modify
+    // the objects when they are inspected
+    final SVRLMarshaller aMarshaller = new SVRLMarshaller ();
+    final String sDOM = aMarshaller.getAsString (aDOM);
+    assertNotNull (sDOM);
+    assertEquals (2, SVRLHelper.getAllFailedAssertions (aDOM).size ());
+
+    final SchematronResourceSCH aNative = _create (true);
+    assertTrue (aNative.isUseNativeTree ());
+    assertEquals (sDOM, aMarshaller.getAsString (aNative.applySchematronValidationToSVRL (aXML, null)));
+    assertEquals (sDOM, aMarshaller.getAsString (aNative.applySchematronValidationToSVRL (ByteBuffer.wrap (aXML), null)));
+    // The resource ID is used as the document URI
+    final ReadableResourceString aRes = new ReadableResourceString (XML, StandardCharsets.UTF_8);
+    assertEquals (aMarshaller.getAsString (_create (false).applySchematronValidationToSVRL (aRes)),
+                  aMarshaller.getAsString (aNative.applySchematronValidationToSVRL (aRes)));
+    assertTrue (aNative.getSchematronValidity (aXML, null).isInvalid ());
+
+    // Non-existing resource
+    assertNull (aNative.applySchematronValidationToSVRL (new ClassPathResource ("does-not-exist.xml")));
+  }
+
+  @Test
+  public void testNativeTreeIsOptIn ()
+  {
+    assertFalse (new SchematronResourceSCH (new ReadableResourceString (SCH, StandardCharsets.UTF_8)).isUseNativeTree ());
+  }
+
+  @Test
+  public void testNativeTreeWithCustomDOMReaderSettings () throws Exception
+  {
+    final AtomicInteger aCount = new AtomicInteger (0);
+    final SchematronResourceSCH aSchematron = new SchematronResourceSCH (new ReadableResourceString (SCH,
+                                                                                                     StandardCharsets.UTF_8))
+    {
+      @Override
+      protected DOMReaderSettings internalCreateDOMReaderSettings ()
+      {
+        aCount.incrementAndGet ();
+        return super.internalCreateDOMReaderSettings ();
+      }
+    };
+    aSchematron.setUsePooledParser (false);
+    aSchematron.setUseNativeTree (true);
+
+    // The custom settings must be used, even though the native tree is enabled
+    final SchematronOutputType aSVRL = aSchematron.applySchematronValidationToSVRL (XML.getBytes (StandardCharsets.UTF_8),
+                                                                                   null);
+    assertNotNull (aSVRL);
+    assertEquals (2, SVRLHelper.getAllFailedAssertions (aSVRL).size ());
+    assertTrue (aCount.get () > 0);
+  }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2014-2020 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.schematron.xslt;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.helger.commons.io.resource.inmemory.ReadableResourceString;
+
+/**
+ * Test class for class {@link SharedSchematronResourceSCH}.
+ *
+ * @author Philip Helger
+ */
+public final class SharedSchematronResourceSCHTest
+{
+  private static final String SCH = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                    "<schema xmlns=\"http://purl.oclc.org/dsdl/schematron\" queryBinding=\"xslt2\">\n" +
+                                    "  <pattern>\n" +
+                                    "    <rule context=\"item\">\n" +
+                                    "      <assert test=\"@id\">Missing ID</assert>\n" +
+                                    "    </rule>\n" +
+                                    "  </pattern>\n" +
+                                    "</schema>";
+
+  @Test
+  public void testProviderIsShared ()
+  {
+    final SharedSchematronResourceSCH aSCH = new SharedSchematronResourceSCH (new ReadableResourceString (SCH,
+                                                                                                          StandardCharsets.UTF_8));
+    // Without sharing, a new provider would be created for each call
+    aSCH.setUseCache (false);
+    final ISchematronXSLTBasedProvider aProvider = aSCH.getXSLTProvider ();
+    assertNotNull (aProvider);
+    assertSame (aProvider, aSCH.getXSLTProvider ());
+  }
+}